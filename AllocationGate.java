@@ -0,0 +1,156 @@
+import java.awt.Graphics2D;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import motive.CommandStreamManager;
+import motive.MotiveSimulator;
+
+/**
+ * This class checks that the game stays garbage-free in steady state
+ * (see ApplicationCanvas): it drives simulated frames through the real
+ * stream manager, dispatcher and canvas while a round is played, paints
+ * the canvas to an offscreen image, and measures the bytes allocated by
+ * the receiving, dispatch and painting threads with ThreadMXBean.
+ *
+ * The canvas is painted as often as it can keep up with the frames. The
+ * bytes allocated per frame are those allocated receiving and handling
+ * one frame plus those allocated painting once. The program exits with
+ * status 1 if this is over budget (measured after a warm-up, so that the
+ * JIT has compiled the hot paths), which makes it usable as a build step.
+ *
+ * The game's own code allocates nothing per frame, but Java2D creates a
+ * small clip rectangle for some image copies when the JIT doesn't
+ * optimize it away; the default budget allows for those (a few dozen
+ * bytes a paint) while catching any per-frame image, String or vector.
+ *
+ * Usage: java AllocationGate [budget bytes per frame] [frames] [frame rate]
+ *
+ * @author Lauren Knight
+ */
+public class AllocationGate {
+
+    private static final long DEFAULT_BUDGET = 128;
+    private static final int DEFAULT_FRAMES = 5000;
+    private static final double DEFAULT_FRAME_RATE = 500;
+
+    // frames received before measuring starts
+    private static final int WARM_UP_FRAMES = 3000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile long framesReceived;
+    private static long paintCount;
+
+    public static void main(String[] args) throws Exception {
+        long budget = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_BUDGET;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_FRAMES;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_FRAME_RATE;
+
+        System.setProperty("java.awt.headless", "true");
+        Path sessions = Files.createTempDirectory("allocation-gate");
+        System.setProperty(ApplicationCanvas.SESSION_DIRECTORY_PROPERTY, sessions.toString());
+        System.setProperty(ApplicationCanvas.EVENT_LOG_DIRECTORY_PROPERTY, sessions.toString());
+        System.setProperty(ApplicationCanvas.LEADERBOARD_FILE_PROPERTY,
+                sessions.resolve("leaderboard.dat").toString());
+
+        CompletableFuture<Sprites> sprites = Sprites.loadAsync();
+        sprites.join();
+        try (MotiveSimulator simulator = new MotiveSimulator(0, rate, 2)) {
+            CommandStreamManager streamManager = new CommandStreamManager(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                            simulator.getCommandPort()), 0);
+            streamManager.addFrameUpdateListener(() -> framesReceived++);
+            ApplicationCanvas canvas = new ApplicationCanvas(sprites, streamManager);
+            canvas.setSize(canvas.getPreferredSize());
+            BufferedImage image = new BufferedImage(canvas.getWidth(), canvas.getHeight(),
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+
+            // start a round, then warm up
+            canvas.keyPressed(new KeyEvent(canvas, KeyEvent.KEY_PRESSED,
+                    System.currentTimeMillis(), 0, KeyEvent.VK_SPACE, ' '));
+            paintUntil(canvas, g, WARM_UP_FRAMES);
+
+            Thread receiver = findThread("motive-stream");
+            Thread dispatcher = findThread("listener-dispatch");
+            long receiverStart = THREADS.getThreadAllocatedBytes(receiver.getId());
+            long dispatcherStart = THREADS.getThreadAllocatedBytes(dispatcher.getId());
+            long firstFrame = framesReceived;
+            paintCount = 0;
+            long paintBytes = paintUntil(canvas, g, firstFrame + frames);
+            long measuredFrames = framesReceived - firstFrame;
+            long receiverBytes = THREADS.getThreadAllocatedBytes(receiver.getId())
+                    - receiverStart;
+            long dispatcherBytes = THREADS.getThreadAllocatedBytes(dispatcher.getId())
+                    - dispatcherStart;
+
+            streamManager.stop();
+            g.dispose();
+
+            double perFrame = (double) (receiverBytes + dispatcherBytes) / measuredFrames
+                    + (double) paintBytes / paintCount;
+            System.out.printf("%d frames: receiving %d, dispatch %d bytes%n",
+                    measuredFrames, receiverBytes, dispatcherBytes);
+            System.out.printf("%d paints: %d bytes%n", paintCount, paintBytes);
+            System.out.printf("%.1f bytes per frame (budget %d)%n", perFrame, budget);
+            deleteSessions(sessions);
+            if (perFrame > budget) {
+                System.out.println("FAILED: allocation budget exceeded");
+                System.exit(1);
+            }
+            System.out.println("PASSED");
+        }
+    }
+
+    /**
+     * Paints the canvas after each new frame (or batch of frames,
+     * if painting falls behind) until the given number of frames
+     * has been received
+     * @return the bytes allocated while painting
+     */
+    private static long paintUntil(ApplicationCanvas canvas, Graphics2D g, long frames)
+            throws InterruptedException {
+        long allocated = 0;
+        long painted = framesReceived;
+        while (framesReceived < frames) {
+            if (framesReceived != painted) {
+                painted = framesReceived;
+                long before = THREADS.getCurrentThreadAllocatedBytes();
+                canvas.paint(g);
+                allocated += THREADS.getCurrentThreadAllocatedBytes() - before;
+                paintCount++;
+            } else {
+                Thread.sleep(1);
+            }
+        }
+        return allocated;
+    }
+
+    private static Thread findThread(String namePrefix) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(namePrefix)) {
+                return thread;
+            }
+        }
+        throw new IllegalStateException("No " + namePrefix + " thread");
+    }
+
+    private static void deleteSessions(Path sessions) throws IOException {
+        try (Stream<Path> files = Files.list(sessions)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(sessions);
+    }
+
+}
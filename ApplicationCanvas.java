@@ -1,24 +1,57 @@
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
+import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
-import javax.imageio.ImageIO;
 import javax.swing.JPanel;
 
+import eventlog.EventLog;
+import eventlog.EventLogFormat;
+import leaderboard.Leaderboard;
+import leaderboard.LeaderboardEntry;
+import motive.ActivityLevel;
 import motive.CommandStreamManager;
+import motive.ConnectionState;
+import motive.DispatchPolicy;
+import motive.FrameTiming;
+import motive.FrameTimingListener;
 import motive.FrameUpdateListener;
+import motive.KinematicsTracker;
+import motive.ListenerDispatcher;
+import motive.MultiSourceStreamManager;
 import motive.RigidBodyUpdateListener;
+import motive.StreamSource;
+import session.PoseSlot;
+import session.PoseStream;
+import session.RoundSummary;
+import session.SessionFormat;
+import session.SessionWriter;
+import session.TrajectoryQueryEngine;
+import spectator.GameState;
+import spectator.SpectatorServer;
+import telemetry.GoalHitEvent;
+import telemetry.PaintEvent;
+import telemetry.RoundEndEvent;
+import telemetry.RoundStartEvent;
+import vector.Intersections;
 import vector.Quaternion;
 import vector.Vector2D;
 import vector.Vector3D;
@@ -30,13 +63,53 @@ import vector.Vector3D;
  * The game "loop" is defined within this class.
  * 
  * The animation of the panel is driven by the frameUpdateReceived method,
- * which is called by the CommandStreamManager created within this class's
- * constructor.
+ * which is called (via a ListenerDispatcher) by the StreamSource created
+ * within this class's constructor: a CommandStreamManager for Motive on
+ * this computer or, if the MOTIVE_SOURCES_PROPERTY system property lists
+ * several Motive servers, a MultiSourceStreamManager merging them (for a
+ * track that spans several capture volumes). The end of each round is
+ * driven separately by a TimerWheel, so it does not depend on frames
+ * arriving.
+ * 
+ * Between rounds, once no tracked body has moved for IDLE_DELAY, the
+ * canvas marks the scene as idle and repaints only every
+ * IDLE_REPAINT_INTERVAL instead of on every frame. The stream manager
+ * is told too, so that other consumers can reduce their work. The first
+ * frame with movement, or a key press, makes the scene active again.
+ * 
+ * Rounds, goals, highscores, calibration and the connection to Motive
+ * are logged to an EventLog (in EVENT_LOG_DIRECTORY, or the directory
+ * given by the EVENT_LOG_DIRECTORY_PROPERTY system property).
+ * 
+ * Each round's score is added to a persistent Leaderboard under the
+ * name given by the PLAYER_NAME_PROPERTY system property, and today's
+ * and all-time best scores are shown between rounds.
+ * 
+ * Pressing P between rounds switches to the parking challenge, where
+ * each point is scored by parking in the highlighted bay, lined up with
+ * it, for PARK_HOLD_TIME_MICROS. The room's walls, obstacles and bays
+ * come from the file given by the PARKING_LAYOUT_PROPERTY system
+ * property, or the built-in layout, and the car's footprint is checked
+ * against them each frame with a ParkingField. Touching a wall or an
+ * obstacle counts as a bump. Parking rounds have their own highscore
+ * and are not added to the leaderboard.
+ * 
+ * The car's speed, worked out by a KinematicsTracker on the receiving
+ * thread, is shown while playing, and its top speed after each round.
+ * 
+ * While playing, a translucent ghost car replays the best recorded
+ * round of the same mode (found among the session recordings), at the
+ * same time into the round. The recording is streamed from disk by a
+ * PoseStream rather than loaded. G turns the ghost on and off.
+ * 
+ * If the TILED_RENDERING_PROPERTY system property is "true", everything
+ * but the text is drawn by a TiledRenderer, which splits the canvas
+ * into tiles and draws them in parallel, for large canvases.
  * 
  * @author Lauren Knight
  */
 public class ApplicationCanvas extends JPanel implements RigidBodyUpdateListener,
-        FrameUpdateListener, KeyListener {
+        FrameUpdateListener, FrameTimingListener, KeyListener {
     
     // the width and height of the canvas, in pixels
     private static final int CANVAS_WIDTH_HEIGHT = 600;
@@ -49,12 +122,42 @@ public class ApplicationCanvas extends JPanel implements RigidBodyUpdateListener
     private static final double DEFAULT_ROOM_LENGTH = 1.0;
     private static final double DEFAULT_ROOM_WIDTH = 1.0;
 
-    private static final double GOAL_LOCATION_TOLERANCE = 0.105;
+    // the directory each round is recorded to, unless the
+    // session.directory system property gives another
+    private static final String SESSION_DIRECTORY = "sessions";
+    public static final String SESSION_DIRECTORY_PROPERTY = "session.directory";
+    // how many of the ghost's samples are read ahead of it
+    private static final int GHOST_READ_AHEAD = 2 * SessionFormat.BLOCK_SIZE;
+    // how opaque the ghost car is
+    private static final float GHOST_ALPHA = 0.4f;
+    // the longest gap (in microseconds) between frames that the car is
+    // swept across to the goal; after a longer one (as KinematicsTracker
+    // does with DEFAULT_MAX_GAP) only its new position is checked
+    private static final long MAX_SWEEP_GAP_MICROS =
+            Math.round(KinematicsTracker.DEFAULT_MAX_GAP * 1e6);
 
-    private static final int ID_PLAYER_CAR = 0;
-    private static final int ID_ALIGNMENT_TOOL = 1;
-
-    private static final int TIME_PER_ROUND = 3 * 60 * 1000; // 3 minutes
+    // the system property giving the port to serve spectators on
+    // (no spectator server is started if it isn't set)
+    public static final String SPECTATOR_PORT_PROPERTY = "spectator.port";
+    // the directory the event log is written to
+    private static final String EVENT_LOG_DIRECTORY = "logs";
+    public static final String EVENT_LOG_DIRECTORY_PROPERTY = "event.log.directory";
+    // the leaderboard file, and the name rounds are recorded under
+    private static final String LEADERBOARD_FILE = "leaderboard.dat";
+    public static final String LEADERBOARD_FILE_PROPERTY = "leaderboard.file";
+    private static final String DEFAULT_PLAYER_NAME = "Player";
+    public static final String PLAYER_NAME_PROPERTY = "player.name";
+    // set to "true" to draw the scene in parallel tiles (see TiledRenderer)
+    public static final String TILED_RENDERING_PROPERTY = "tiled.rendering";
+    // the file the parking challenge's layout is read from
+    public static final String PARKING_LAYOUT_PROPERTY = "parking.layout";
+    // the Motive servers to merge frames from, as read by
+    // MultiSourceStreamManager.parse (Motive on this computer if not set)
+    public static final String MOTIVE_SOURCES_PROPERTY = "motive.sources";
+    // the number of leaderboard places shown
+    private static final int LEADERBOARD_LINES = 5;
+    // longer names are cut short, so the columns don't overlap
+    private static final int LEADERBOARD_NAME_LENGTH = 16;
 
     private double roomXLowerBound = DEFAULT_ROOM_X_LOWER_LIMIT;
     private double roomYLowerBound = DEFAULT_ROOM_Y_LOWER_LIMIT;
@@ -76,43 +179,213 @@ public class ApplicationCanvas extends JPanel implements RigidBodyUpdateListener
 
     private final Random rng = new Random();
 
-    private boolean playing;
+    private volatile boolean playing;
     private int score;
     private int highscore;
-    private long roundOverTime;
+
+    // runs the round timer and the countdown display; rounds are
+    // started, scored and ended while holding roundLock, since this
+    // happens on the Swing, dispatch and timer threads
+    private final TimerWheel timers = new TimerWheel("game-timer");
+    private final Object roundLock = new Object();
+    private TimerWheel.Timer roundTimer;
+    private TimerWheel.Timer countdownTimer;
 
     private SceneObject[] sceneObjects = new SceneObject[2];
 
-    private BufferedImage carImage;
+    // the state of the connection to Motive, shown while not connected
+    private volatile ConnectionState connectionState = ConnectionState.CONNECTING;
+
+    // the car at every rotation it is drawn at (null until loaded)
+    private volatile RotatedSprite carSprite;
 
     private double rotationOffsetRadians;
 
+    // the car's speed and its top speed this round, in centimeters per
+    // second (set on the receiving thread by the KinematicsTracker)
+    private volatile int carSpeed;
+    private volatile int topSpeed;
+    // speeds above this are shown as this
+    private static final int MAX_SHOWN_SPEED = 500;
+
+    // the number and time (in microseconds) of the most recent Motive frame
+    private long frameNumber;
+    private long frameTimeMicros;
+
+    // the player car's position and time (in microseconds) in the
+    // previous frame, used to find when it passed through the goal
+    private double previousCarX;
+    private double previousCarY;
+    private long previousCarTimeMicros;
+    private boolean hasPreviousCarPosition;
+    // set when the connection state changes, so that the next frame
+    // does not sweep the car from where it was before
+    private volatile boolean carSweepReset;
+
+    // records the current round (null when not playing)
+    private SessionWriter session;
+
+    // the player's trail and the heatmap of where they have driven
+    private final TrailOverlay trailOverlay = new TrailOverlay(
+            CANVAS_WIDTH_HEIGHT, CANVAS_WIDTH_HEIGHT, sceneObjects.length);
+
+    // broadcasts the game to spectators (null if not enabled)
+    private SpectatorServer spectatorServer;
+    private final GameState spectatorState = new GameState();
+
+    // how far a body must move or turn to count as activity
+    private static final double IDLE_MOTION_THRESHOLD = 0.005; // meters
+    private static final double IDLE_ROTATION_THRESHOLD = 0.02; // radians
+    // how long the scene must be still before it is idle
+    private static final long IDLE_DELAY = TimeUnit.SECONDS.toNanos(3);
+    // how often an idle scene is repainted
+    private static final long IDLE_REPAINT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final StreamSource streamManager;
+    private final EventLog eventLog = new EventLog(Paths.get(
+            System.getProperty(EVENT_LOG_DIRECTORY_PROPERTY, EVENT_LOG_DIRECTORY)));
+
+    private final Leaderboard leaderboard = new Leaderboard(Paths.get(
+            System.getProperty(LEADERBOARD_FILE_PROPERTY, LEADERBOARD_FILE)));
+    private final String playerName =
+            System.getProperty(PLAYER_NAME_PROPERTY, DEFAULT_PLAYER_NAME);
+    // the leaderboard as drawn between rounds (rebuilt when it changes)
+    private volatile String[] todayLines = new String[0];
+    private volatile String[] allTimeLines = new String[0];
+    // each body's pose when it last counted as moving
+    private final double[] stillX = new double[sceneObjects.length];
+    private final double[] stillY = new double[sceneObjects.length];
+    private final double[] stillRotations = new double[sceneObjects.length];
+    private volatile long lastActivityNanos = System.nanoTime();
+    private long lastIdleRepaintNanos;
+
+    // the parking challenge, played instead of the goal chase while
+    // parkingMode is set; its state is guarded by roundLock
+    private final ParkingField parkingField = new ParkingField(loadParkingLayout());
+    private volatile boolean parkingMode;
+    private int parkingHighscore;
+    private int targetBay;
+    // the frame time the car was first parked in the target bay, or -1
+    private long parkedSinceMicros = -1;
+    private volatile boolean touching;
+    private int bumps;
+    // only used on the dispatch thread
+    private final ParkingField.Check parkingCheck = new ParkingField.Check();
+
+    private final Path sessionDirectory = Paths.get(
+            System.getProperty(SESSION_DIRECTORY_PROPERTY, SESSION_DIRECTORY));
+    // the best recorded round of each mode, replayed as the ghost
+    // (null until one is found); guarded by roundLock
+    private volatile RoundSummary chaseGhostRound;
+    private volatile RoundSummary parkingGhostRound;
+    private volatile boolean ghostEnabled = true;
+    // the ghost of the current round (null if there is none),
+    // the round it replays and the frame time the current round started
+    private PoseStream ghost;
+    private RoundSummary ghostRound;
+    private long roundStartMicros;
+    // the ghost's pose, updated on the dispatch thread each frame
+    private final PoseSlot ghostPose = new PoseSlot();
+    private final SceneObject ghostCar = new SceneObject();
+    private double ghostHeading;
+    private volatile boolean ghostVisible;
+    private volatile RotatedSprite ghostSprite;
+
     /**
      * Initializes the ApplicationCanvas
+     * @param sprites the game's sprites, which may still be loading;
+     * the car is drawn once they have loaded
+     */
+    public ApplicationCanvas(CompletableFuture<Sprites> sprites) {
+        this(sprites, createStreamSource());
+    }
+
+    /**
+     * Initializes an ApplicationCanvas fed by the given (not yet started)
+     * stream source, for example one connected to a MotiveSimulator
+     * @param sprites the game's sprites, which may still be loading
+     * @param streamManager the source to receive frames from; it is
+     * started by this constructor
      */
-    public ApplicationCanvas() {
+    ApplicationCanvas(CompletableFuture<Sprites> sprites,
+            StreamSource streamManager) {
         // set size of the canvas
         setPreferredSize(new Dimension(CANVAS_WIDTH_HEIGHT, CANVAS_WIDTH_HEIGHT));
+        roomWidth = parkingField.getLayout().getWidth();
+        roomLength = parkingField.getLayout().getLength();
+        this.streamManager = streamManager;
+        StreamEventLogger streamLogger = new StreamEventLogger(eventLog);
+        streamManager.addStreamEventListener(streamLogger);
+        streamManager.addConnectionStateListener(streamLogger);
+        streamManager.addActivityLevelListener(streamLogger);
+        // write out the last events and results when the game exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            leaderboard.close();
+            eventLog.close();
+            if (eventLog.getWriteFailure() != null) {
+                System.out.println("Unable to write event log: "
+                        + eventLog.getWriteFailure().getMessage());
+            }
+        }, "game-close"));
+        leaderboard.getLoaded().thenRun(() -> {
+            synchronized (roundLock) {
+                highscore = Math.max(highscore, leaderboard.getBestScore());
+                updateLeaderboardLines();
+            }
+            repaint();
+        });
+
+        createBayImages();
 
         alignmentTool = new SceneObject();
         playerCar = new SceneObject();
         goal = new SceneObject();
 
-        try {
-            carImage = squarifyImage(ImageIO.read(new File("images/car-yellow.png")));
-        } catch (IOException e) {
-            System.out.println("Unable to load car images!");
-            e.printStackTrace();
-        }
+        sprites.thenAccept(loaded -> {
+            BufferedImage carImage = loaded.get(Sprites.CAR_YELLOW);
+            if (carImage != null) {
+                carSprite = new RotatedSprite(carImage);
+                ghostSprite = new RotatedSprite(createGhostImage(carImage));
+                repaint();
+            }
+        });
+        CompletableFuture.runAsync(this::findGhostRounds);
+
+        sceneObjects[GameRules.ID_PLAYER_CAR] = playerCar;
+        sceneObjects[GameRules.ID_ALIGNMENT_TOOL] = alignmentTool;
 
-        sceneObjects[ID_PLAYER_CAR] = playerCar;
-        sceneObjects[ID_ALIGNMENT_TOOL] = alignmentTool;
+        // work out how the bodies are moving on the receiving thread,
+        // before the dispatcher is registered (so each frame's motion is
+        // known by the time the frame is handed on)
+        KinematicsTracker kinematics = new KinematicsTracker(sceneObjects.length);
+        kinematics.attachTo(streamManager);
+        kinematics.addKinematicsListener(this::kinematicsUpdated);
 
-        // begin listening for updates from Motive
-        CommandStreamManager streamManager = new CommandStreamManager();
-        streamManager.addRigidBodyUpdateListener(this);
-        streamManager.addFrameUpdateListener(this);
-        new Thread(streamManager).start();
+        // begin listening for updates from Motive.
+        // Updates are handed to this canvas on its own dispatch thread,
+        // keeping only the latest pose of each body, so that a slow
+        // frame never holds up the stream manager
+        ListenerDispatcher dispatcher = new ListenerDispatcher(this, this,
+                DispatchPolicy.CONFLATE, sceneObjects.length);
+        streamManager.addRigidBodyUpdateListener(dispatcher,
+                GameRules.ID_PLAYER_CAR, GameRules.ID_ALIGNMENT_TOOL);
+        streamManager.addFrameTimingListener(dispatcher);
+        streamManager.addFrameUpdateListener(dispatcher);
+        streamManager.addConnectionStateListener(state -> {
+            connectionState = state;
+            carSweepReset = true;
+            repaint();
+        });
+        streamManager.start();
+
+        String spectatorPort = System.getProperty(SPECTATOR_PORT_PROPERTY);
+        if (spectatorPort != null) {
+            try {
+                spectatorServer = new SpectatorServer(Integer.parseInt(spectatorPort));
+            } catch (IOException | NumberFormatException e) {
+                System.out.println("Unable to start spectator server: " + e.getMessage());
+            }
+        }
 
         setFocusable(true);
         requestFocus();
@@ -121,23 +394,187 @@ public class ApplicationCanvas extends JPanel implements RigidBodyUpdateListener
     }
 
     /**
-     * Expands the dimensions of an image without altering the original
-     * image, making the width and height equal and centering the original
-     * image in the middle of the new image.
-     * @param img The image to 'squarify'
-     * @return A new BufferedImage containing the expanded image
+     * Creates the source of frames: a MultiSourceStreamManager for the
+     * servers listed by MOTIVE_SOURCES_PROPERTY, or a CommandStreamManager
+     * for Motive on this computer
      */
-    private BufferedImage squarifyImage(BufferedImage img) {
-        int newWidthHeight = Math.max(img.getWidth(), img.getHeight());
-        BufferedImage newImg = new BufferedImage(newWidthHeight, newWidthHeight, BufferedImage.TYPE_4BYTE_ABGR);
-        newImg.getGraphics().drawImage(img, 0, newWidthHeight / 4, null);
-        return newImg;
+    private static StreamSource createStreamSource() {
+        String sources = System.getProperty(MOTIVE_SOURCES_PROPERTY);
+        if (sources != null) {
+            try {
+                return MultiSourceStreamManager.parse(sources);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Unable to use Motive sources: " + e.getMessage());
+            }
+        }
+        return new CommandStreamManager();
+    }
+
+    /**
+     * Reads the parking challenge's layout from the file given by
+     * PARKING_LAYOUT_PROPERTY, or creates the built-in one
+     */
+    private static ParkingLayout loadParkingLayout() {
+        String file = System.getProperty(PARKING_LAYOUT_PROPERTY);
+        if (file != null) {
+            try {
+                return ParkingLayout.load(Paths.get(file),
+                        DEFAULT_ROOM_WIDTH, DEFAULT_ROOM_LENGTH);
+            } catch (IOException e) {
+                System.out.println("Unable to load parking layout: " + e.getMessage());
+            }
+        }
+        return ParkingLayout.createDefault(DEFAULT_ROOM_WIDTH, DEFAULT_ROOM_LENGTH);
     }
 
     // Colors for the paint method
     private static final Color BACKGROUND_COLOR = new Color(51, 51, 51);
     private static final Color GOAL_COLOR = Color.GREEN;
     private static final Color TEXT_COLOR = Color.WHITE;
+    private static final Color WALL_COLOR = new Color(170, 170, 170);
+    private static final Color OBSTACLE_COLOR = new Color(120, 120, 120);
+    private static final Color BAY_COLOR = Color.WHITE;
+    private static final Color TARGET_BAY_COLOR = new Color(0, 255, 0, 90);
+    private static final Color BUMP_COLOR = Color.RED;
+
+    // the diameter of the goal, in pixels
+    private static final int GOAL_SIZE = 17;
+
+    // In steady state (while frames arrive and a round is being played)
+    // receiving, decoding, game logic and painting create no objects, so
+    // that the garbage collector never has to pause the game: poses are
+    // kept in primitive fields, points are reused, the car and goal are
+    // drawn from prerendered images and text is only formatted
+    // when it changes. AllocationGate checks that this stays true.
+    //
+    // The following are only used on the Swing thread.
+    private final Point carScreenPoint = new Point();
+    private final Point goalScreenPoint = new Point();
+    private final Point ghostScreenPoint = new Point();
+    // draws the scene if TILED_RENDERING_PROPERTY is set (created on first use)
+    private final boolean tiledRendering = Boolean.getBoolean(TILED_RENDERING_PROPERTY);
+    private TiledRenderer tiledRenderer;
+    private final BufferedImage goalImage = createGoalImage();
+    private final TextCache timeText = new TextCache(
+            seconds -> String.format("%d:%02d", seconds / 60, seconds % 60));
+    private final TextCache scoreText = new TextCache(
+            score -> String.format("Score: %d", score));
+    private final TextCache previousScoreText = new TextCache(
+            score -> String.format("Previous score: %d", score));
+    private final TextCache highscoreText = new TextCache(
+            highscore -> String.format("Highscore: %d", highscore));
+    private final TextCache parkedText = new TextCache(
+            parked -> String.format("Parked: %d", parked));
+    private final TextCache bumpsText = new TextCache(
+            bumps -> String.format("Bumps: %d", bumps));
+    private final TextCache topSpeedText = new TextCache(
+            speed -> String.format("Top speed: %.2f m/s", speed / 100.0));
+    // the speed shown while playing, formatted once for each value
+    private final String[] speedTexts = new String[MAX_SHOWN_SPEED + 1];
+    // the parking layout, and each bay highlighted (drawn at bayImageX, bayImageY)
+    private final BufferedImage parkingImage = createParkingImage(parkingField.getLayout());
+    private final int bayCount = parkingField.getLayout().getBays().size();
+    private final BufferedImage[] bayImages = new BufferedImage[bayCount];
+    private final int[] bayImageX = new int[bayCount];
+    private final int[] bayImageY = new int[bayCount];
+    // only used on the dispatch thread
+    private final Point trailScreenPoint = new Point();
+
+    /**
+     * Draws the goal once, so painting it is a plain image copy
+     */
+    private static BufferedImage createGoalImage() {
+        BufferedImage image = new BufferedImage(GOAL_SIZE, GOAL_SIZE,
+                BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = image.createGraphics();
+        setRenderingHints(g);
+        g.setColor(GOAL_COLOR);
+        g.fillOval(0, 0, GOAL_SIZE, GOAL_SIZE);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * @return a translucent copy of the car, to draw the ghost with
+     */
+    private static BufferedImage createGhostImage(BufferedImage car) {
+        BufferedImage image = new BufferedImage(car.getWidth(), car.getHeight(),
+                BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = image.createGraphics();
+        g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, GHOST_ALPHA));
+        g.drawImage(car, 0, 0, null);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Draws the parking layout once: the walls around the edge of the
+     * room, the obstacles and the outlines of the bays
+     */
+    private static BufferedImage createParkingImage(ParkingLayout layout) {
+        BufferedImage image = new BufferedImage(CANVAS_WIDTH_HEIGHT, CANVAS_WIDTH_HEIGHT,
+                BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = image.createGraphics();
+        setRenderingHints(g);
+        g.setColor(WALL_COLOR);
+        g.setStroke(new BasicStroke(6));
+        g.drawRect(0, 0, CANVAS_WIDTH_HEIGHT, CANVAS_WIDTH_HEIGHT);
+        g.setColor(OBSTACLE_COLOR);
+        for (ParkingLayout.Box obstacle : layout.getObstacles()) {
+            g.fill(screenOutline(obstacle, layout));
+        }
+        g.setColor(BAY_COLOR);
+        g.setStroke(new BasicStroke(2));
+        for (ParkingLayout.Box bay : layout.getBays()) {
+            g.draw(screenOutline(bay, layout));
+        }
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Draws each bay highlighted once, each in an image just big enough
+     * for it, so painting the target bay is a plain image copy
+     */
+    private void createBayImages() {
+        ParkingLayout layout = parkingField.getLayout();
+        for (int i = 0; i < bayCount; i++) {
+            Path2D outline = screenOutline(layout.getBays().get(i), layout);
+            Rectangle bounds = outline.getBounds();
+            bayImageX[i] = bounds.x;
+            bayImageY[i] = bounds.y;
+            outline.transform(AffineTransform.getTranslateInstance(-bounds.x, -bounds.y));
+            bayImages[i] = new BufferedImage(bounds.width, bounds.height,
+                    BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = bayImages[i].createGraphics();
+            setRenderingHints(g);
+            g.setColor(TARGET_BAY_COLOR);
+            g.fill(outline);
+            g.dispose();
+        }
+    }
+
+    /**
+     * @return the outline of a box in the parking layout, on a canvas
+     * CANVAS_WIDTH_HEIGHT across
+     */
+    private static Path2D screenOutline(ParkingLayout.Box box, ParkingLayout layout) {
+        double[] xs = new double[4];
+        double[] ys = new double[4];
+        box.corners(xs, ys);
+        Path2D outline = new Path2D.Double();
+        for (int i = 0; i < 4; i++) {
+            double x = (xs[i] / layout.getWidth() + 0.5) * CANVAS_WIDTH_HEIGHT;
+            double y = (0.5 - ys[i] / layout.getLength()) * CANVAS_WIDTH_HEIGHT;
+            if (i == 0) {
+                outline.moveTo(x, y);
+            } else {
+                outline.lineTo(x, y);
+            }
+        }
+        outline.closePath();
+        return outline;
+    }
 
     /**
      * This method is called each time the component needs to redraw itself.
@@ -145,44 +582,190 @@ public class ApplicationCanvas extends JPanel implements RigidBodyUpdateListener
      */
     @Override
     public void paint(Graphics g) {
+        PaintEvent paintEvent = PaintEvent.startIfEnabled();
         Graphics2D g2d = (Graphics2D)g;
         // turn on shape anti-aliasing (reduces jagged pixels)
         setRenderingHints(g);
         final int width = getWidth();
         final int height = getHeight();
 
-        // draw over the previous frame with the background color
-        g.setColor(BACKGROUND_COLOR);
-        g.fillRect(0, 0, width, height);
-        
-        drawCar(g2d, width, height);
-
-        if (playing) {
-            g.setColor(GOAL_COLOR);
-            Point p = goal.getScreenLocation(roomXLowerBound, roomYLowerBound,
-                    roomWidth, roomLength, width, height);
-            g.fillOval(p.x - 8, p.y - 8, 17, 17);
+        boolean parking = parkingMode;
+        if (tiledRendering && width > 0 && height > 0) {
+            renderScene(g2d, width, height, parking);
+        } else {
+            drawScene(g2d, width, height, parking);
         }
 
         g.setColor(TEXT_COLOR);
-        long timeRemaining = (roundOverTime - System.currentTimeMillis()) / 1000;
-        long minutes = timeRemaining / 60;
-        long seconds = timeRemaining % 60;
-        if (playing) {
-            g.drawString(String.format("%d:%02d", minutes, seconds), 8, 20);
-            g.drawString(String.format("Score: %d", score), 8, 36);
-            if (highscore > 0) {
-                g.drawString(String.format("Highscore: %d", highscore), 8, 52);
+        if (connectionState != ConnectionState.CONNECTED) {
+            g.drawString("Waiting for Motive...", width - 136, 20);
+        }
+        int best = parking ? parkingHighscore : highscore;
+        TimerWheel.Timer roundTimer = this.roundTimer;
+        if (playing && roundTimer != null) {
+            int timeRemaining = (int) roundTimer.getRemaining(TimeUnit.SECONDS);
+            g.drawString(timeText.get(timeRemaining), 8, 20);
+            if (connectionState == ConnectionState.CONNECTED) {
+                g.drawString(speedText(carSpeed), width - 70, 20);
+            }
+            if (parking) {
+                g.drawString(parkedText.get(score), 8, 36);
+                g.drawString(bumpsText.get(bumps), 8, 52);
+                if (best > 0) {
+                    g.drawString(highscoreText.get(best), 8, 68);
+                }
+            } else {
+                g.drawString(scoreText.get(score), 8, 36);
+                if (best > 0) {
+                    g.drawString(highscoreText.get(best), 8, 52);
+                }
             }
         } else {
             g.drawString("Press any key to play!", 240, 385);
             if (score > 0) {
-                g.drawString(String.format("Previous score: %d", score), 250, 411);
+                g.drawString(previousScoreText.get(score), 250, 411);
+            }
+            if (best > 0) {
+                g.drawString(highscoreText.get(best), 264, 427);
+            }
+            if (topSpeed > 0) {
+                g.drawString(topSpeedText.get(topSpeed), 246, 443);
+            }
+            if ((parking ? parkingGhostRound : chaseGhostRound) != null) {
+                g.drawString(ghostEnabled ? "Press G to hide the ghost"
+                        : "Press G to show the ghost", 226, 261);
+            }
+            if (parking) {
+                g.drawString("Press P for the goal chase", 226, 245);
+            } else {
+                g.drawString("Press P for the parking challenge", 206, 245);
+                drawLeaderboard(g, "Today", todayLines, 120);
+                drawLeaderboard(g, "All time", allTimeLines, 360);
+            }
+        }
+        if (paintEvent != null) {
+            paintEvent.finish(g.getClipBounds(), width, height);
+        }
+    }
+
+    /**
+     * Draws everything but the text
+     */
+    private void drawScene(Graphics2D g, int width, int height, boolean parking) {
+        // draw over the previous frame with the background color
+        g.setColor(BACKGROUND_COLOR);
+        g.fillRect(0, 0, width, height);
+
+        if (parking) {
+            g.drawImage(parkingImage, 0, 0, null);
+            if (playing) {
+                int bay = targetBay;
+                g.drawImage(bayImages[bay], bayImageX[bay], bayImageY[bay], null);
+            }
+        }
+
+        trailOverlay.draw(g);
+
+        if (playing && ghostVisible) {
+            BufferedImage ghostImage = ghostImage(width, height);
+            if (ghostImage != null) {
+                g.drawImage(ghostImage, ghostScreenPoint.x, ghostScreenPoint.y, null);
             }
-            if (highscore > 0) {
-                g.drawString(String.format("Highscore: %d", highscore), 264, 427);
+        }
+        BufferedImage carImage = carImage(width, height);
+        if (carImage != null) {
+            g.drawImage(carImage, carScreenPoint.x, carScreenPoint.y, null);
+        }
+
+        if (playing && !parking) {
+            Point p = goal.getScreenLocation(roomXLowerBound, roomYLowerBound,
+                    roomWidth, roomLength, width, height, goalScreenPoint);
+            g.drawImage(goalImage, p.x - GOAL_SIZE / 2, p.y - GOAL_SIZE / 2, null);
+        }
+        if (playing && parking && touching) {
+            // a border around the canvas while the car touches something
+            g.setColor(BUMP_COLOR);
+            g.fillRect(0, 0, width, 4);
+            g.fillRect(0, height - 4, width, 4);
+            g.fillRect(0, 0, 4, height);
+            g.fillRect(width - 4, 0, 4, height);
+        }
+    }
+
+    /**
+     * Draws the same as drawScene, but with a TiledRenderer, then
+     * copies the result to the screen
+     */
+    private void renderScene(Graphics2D g, int width, int height, boolean parking) {
+        TiledRenderer r = tiledRenderer;
+        if (r == null || r.getWidth() != width || r.getHeight() != height) {
+            r = tiledRenderer = new TiledRenderer(width, height);
+        }
+        r.begin();
+        r.fillRect(0, 0, width, height, BACKGROUND_COLOR);
+
+        if (parking) {
+            r.drawImage(parkingImage, 0, 0);
+            if (playing) {
+                int bay = targetBay;
+                r.drawImage(bayImages[bay], bayImageX[bay], bayImageY[bay]);
+            }
+        }
+
+        trailOverlay.draw(r);
+
+        if (playing && ghostVisible) {
+            r.drawImage(ghostImage(width, height), ghostScreenPoint.x, ghostScreenPoint.y);
+        }
+        r.drawImage(carImage(width, height), carScreenPoint.x, carScreenPoint.y);
+
+        if (playing && !parking) {
+            Point p = goal.getScreenLocation(roomXLowerBound, roomYLowerBound,
+                    roomWidth, roomLength, width, height, goalScreenPoint);
+            r.drawImage(goalImage, p.x - GOAL_SIZE / 2, p.y - GOAL_SIZE / 2);
+        }
+        if (playing && parking && touching) {
+            r.fillRect(0, 0, width, 4, BUMP_COLOR);
+            r.fillRect(0, height - 4, width, 4, BUMP_COLOR);
+            r.fillRect(0, 0, 4, height, BUMP_COLOR);
+            r.fillRect(width - 4, 0, 4, height, BUMP_COLOR);
+        }
+        r.render();
+        r.draw(g, 0, 0);
+    }
+
+    /**
+     * Draws one of the leaderboards as a column of places
+     */
+    private static void drawLeaderboard(Graphics g, String title, String[] lines, int x) {
+        if (lines.length == 0) {
+            return;
+        }
+        g.drawString(title, x, 120);
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], x, 146 + 16 * i);
+        }
+    }
+
+    /**
+     * Rebuilds the leaderboard text drawn between rounds, so that
+     * painting doesn't format it every frame
+     */
+    private void updateLeaderboardLines() {
+        todayLines = leaderboardLines(leaderboard.getToday());
+        allTimeLines = leaderboardLines(leaderboard.getAllTime());
+    }
+
+    private static String[] leaderboardLines(LeaderboardEntry[] entries) {
+        String[] lines = new String[Math.min(entries.length, LEADERBOARD_LINES)];
+        for (int i = 0; i < lines.length; i++) {
+            String name = entries[i].getPlayerName();
+            if (name.length() > LEADERBOARD_NAME_LENGTH) {
+                name = name.substring(0, LEADERBOARD_NAME_LENGTH - 3) + "...";
             }
+            lines[i] = (i + 1) + ". " + name + "  " + entries[i].getScore();
         }
+        return lines;
     }
 
     /**
@@ -194,38 +777,116 @@ public class ApplicationCanvas extends JPanel implements RigidBodyUpdateListener
         do {
             location.x = (rng.nextDouble() * 0.85 + 0.075) * roomWidth + roomXLowerBound;
             location.y = (rng.nextDouble() * 0.85 + 0.075) * roomLength + roomYLowerBoundGoal;
-        } while (playerLocation.distanceFrom(location) < GOAL_LOCATION_TOLERANCE);
+        } while (playerLocation.distanceFrom(location) < GameRules.GOAL_LOCATION_TOLERANCE);
+    }
+
+    /**
+     * Makes a bay the parking challenge's target, placing the goal
+     * (which spectators are shown) at its center
+     */
+    private void moveTargetBay(int bay) {
+        targetBay = bay;
+        parkedSinceMicros = -1;
+        ParkingLayout.Box box = parkingField.getLayout().getBays().get(bay);
+        Vector3D location = goal.getLocation();
+        location.x = box.x + roomXLowerBound + roomWidth / 2;
+        location.y = box.y + roomYLowerBoundGoal + roomLength / 2;
     }
 
     /**
-     * Draws the player's car to the screen based on its location in the scene.
+     * Checks the player car's footprint against the parking layout,
+     * counting bumps and scoring once it has stayed parked in the
+     * target bay for PARK_HOLD_TIME_MICROS.
+     * Called on the dispatch thread while holding roundLock.
+     */
+    private void updateParking(Vector3D location) {
+        double heading = GameRules.calibratedHeading(rotationOffsetRadians,
+                rotationsRadians[GameRules.ID_PLAYER_CAR],
+                initialRotationsRadians[GameRules.ID_PLAYER_CAR]);
+        if (Double.isNaN(heading)) {
+            return;
+        }
+        // the car's position from the center of the room
+        double x = location.x - (roomXLowerBound + roomWidth / 2);
+        double y = location.y - (roomYLowerBoundGoal + roomLength / 2);
+        parkingField.check(x, y, heading,
+                GameRules.CAR_LENGTH / 2, GameRules.CAR_WIDTH / 2, parkingCheck);
+
+        boolean touchingNow = parkingCheck.outOfBounds || parkingCheck.collision;
+        if (touchingNow && !touching) {
+            bumps++;
+            eventLog.log(EventLogFormat.EVENT_BUMP, bumps, parkingCheck.outOfBounds ? 1 : 0,
+                    (float) location.x, (float) location.y, 0);
+        }
+        touching = touchingNow;
+
+        ParkingLayout.Box bay = parkingField.getLayout().getBays().get(targetBay);
+        if (touchingNow || parkingCheck.bay != targetBay
+                || !GameRules.isAlignedWith(heading, bay.angle)) {
+            parkedSinceMicros = -1;
+        } else if (parkedSinceMicros < 0) {
+            parkedSinceMicros = frameTimeMicros;
+        } else if (frameTimeMicros - parkedSinceMicros >= GameRules.PARK_HOLD_TIME_MICROS) {
+            score++;
+            Vector3D goalLocation = goal.getLocation();
+            eventLog.log(EventLogFormat.EVENT_PARKED, score, targetBay,
+                    (float) goalLocation.x, (float) goalLocation.y, 0);
+            // any bay but the one the car is in
+            int next = rng.nextInt(Math.max(1, bayCount - 1));
+            moveTargetBay(bayCount > 1 && next >= targetBay ? next + 1 : next);
+            if (session != null) {
+                session.recordEvent(frameTimeMicros, SessionFormat.EVENT_GOAL_SCORED,
+                        score, 0);
+                session.recordEvent(frameTimeMicros, SessionFormat.EVENT_GOAL_PLACED,
+                        (float) goalLocation.x, (float) goalLocation.y);
+            }
+        }
+    }
+
+    /**
+     * Finds how to draw the player's car based on its location in the scene.
      * Rotates the car image based on the rotation of the physical car.
-     * @param g The canvas to draw to
      * @param width The width of the canvas
      * @param height The height of the canvas
+     * @return the car's image (null until loaded), with where its top
+     * left corner goes stored in carScreenPoint
      */
-    private void drawCar(Graphics2D g, int width, int height) {
+    private BufferedImage carImage(int width, int height) {
         Point p = playerCar.getScreenLocation(roomXLowerBound, roomYLowerBound,
-                roomWidth, roomLength, width, height);
-        BufferedImage image = carImage;
-        int halfImageWidth = image.getWidth(null) / 2;
-        int halfImageHeight = image.getHeight(null) / 2;
-
-        p.x -= halfImageWidth;
-        p.y -= halfImageHeight;
+                roomWidth, roomLength, width, height, carScreenPoint);
+        RotatedSprite sprite = carSprite;
+        if (sprite == null) {
+            return null;
+        }
 
-        double r = -(rotationOffsetRadians + rotationsRadians[ID_PLAYER_CAR] 
-                - initialRotationsRadians[ID_PLAYER_CAR]);
+        double r = -GameRules.calibratedHeading(rotationOffsetRadians,
+                rotationsRadians[GameRules.ID_PLAYER_CAR],
+                initialRotationsRadians[GameRules.ID_PLAYER_CAR]);
         if (Double.isNaN(r)) {
             r = -rotationOffsetRadians;
         }
 
-        AffineTransform tx = AffineTransform.getRotateInstance(
-                r, halfImageWidth, halfImageHeight);
-        AffineTransformOp op = new AffineTransformOp(tx, AffineTransformOp.TYPE_BILINEAR);
+        // the prerotated image is drawn centered on the car
+        int halfSize = sprite.getSize() / 2;
+        p.translate(-halfSize, -halfSize);
+        return sprite.get(r);
+    }
 
-        // Drawing the rotated image at the required drawing locations
-        g.drawImage(op.filter(image, null), p.x, p.y, null);
+    /**
+     * Finds how to draw the ghost car at its replayed pose
+     * @return the ghost's image (null until loaded), with where its
+     * top left corner goes stored in ghostScreenPoint
+     */
+    private BufferedImage ghostImage(int width, int height) {
+        RotatedSprite sprite = ghostSprite;
+        if (sprite == null) {
+            return null;
+        }
+        Point p = ghostCar.getScreenLocation(roomXLowerBound, roomYLowerBound,
+                roomWidth, roomLength, width, height, ghostScreenPoint);
+        int halfSize = sprite.getSize() / 2;
+        p.translate(-halfSize, -halfSize);
+        return sprite.get(-ghostHeading);
     }
 
     /**
@@ -244,42 +905,233 @@ public class ApplicationCanvas extends JPanel implements RigidBodyUpdateListener
      */
     private void initRound() {
         score = 0;
-        moveGoal();
-        roundOverTime = System.currentTimeMillis() + TIME_PER_ROUND;
+        topSpeed = 0;
+        if (parkingMode) {
+            bumps = 0;
+            touching = false;
+            moveTargetBay(rng.nextInt(bayCount));
+        } else {
+            moveGoal();
+        }
+        trailOverlay.clear();
+        roundTimer = timers.schedule(this::roundTimeUp,
+                GameRules.TIME_PER_ROUND, TimeUnit.MILLISECONDS);
+        // repaint each second, so the countdown keeps moving
+        // even if no frames arrive
+        countdownTimer = timers.scheduleAtFixedRate(this::repaint, 1, TimeUnit.SECONDS);
+
+        // the wall clock is only used to name the recording
+        long now = System.currentTimeMillis();
+        String prefix = parkingMode
+                ? GameRules.PARKING_ROUND_FILE_PREFIX : GameRules.ROUND_FILE_PREFIX;
+        session = new SessionWriter(sessionDirectory.resolve(
+                prefix + now + SessionFormat.FILE_EXTENSION), now);
+        roundStartMicros = frameTimeMicros;
+        ghostRound = parkingMode ? parkingGhostRound : chaseGhostRound;
+        if (ghostEnabled && ghostRound != null) {
+            ghost = new PoseStream(ghostRound.getPath(), GameRules.ID_PLAYER_CAR,
+                    GHOST_READ_AHEAD);
+        }
+        session.recordEvent(frameTimeMicros, SessionFormat.EVENT_ROUND_START, 0, 0);
+        RoundStartEvent.emit(parkingMode ? parkingHighscore : highscore);
+        eventLog.log(EventLogFormat.EVENT_ROUND_START,
+                parkingMode ? parkingHighscore : highscore);
+        session.recordEvent(frameTimeMicros, SessionFormat.EVENT_CALIBRATION,
+                (float) rotationOffsetRadians,
+                (float) initialRotationsRadians[GameRules.ID_PLAYER_CAR]);
+        session.recordEvent(frameTimeMicros, SessionFormat.EVENT_GOAL_PLACED,
+                (float) goal.getLocation().x, (float) goal.getLocation().y);
+    }
+
+    /**
+     * Ends the round, updating the highscore and finishing
+     * the round's recording.
+     */
+    private void endRound() {
+        playing = false;
+        roundTimer.cancel();
+        countdownTimer.cancel();
+        // each mode has its own highscore, and only the goal
+        // chase is on the leaderboard
+        int best = parkingMode ? parkingHighscore : highscore;
+        if (score > best) {
+            best = score;
+            if (parkingMode) {
+                parkingHighscore = best;
+            } else {
+                highscore = best;
+            }
+            eventLog.log(EventLogFormat.EVENT_HIGHSCORE, best);
+        }
+        if (parkingMode) {
+            touching = false;
+        } else {
+            leaderboard.submit(playerName, score, GameRules.ID_PLAYER_CAR);
+            updateLeaderboardLines();
+        }
+        RoundEndEvent.emit(score, best);
+        eventLog.log(EventLogFormat.EVENT_ROUND_END, score, best);
+        if (ghost != null) {
+            ghost.close();
+            ghost = null;
+        }
+        ghostVisible = false;
+        if (session != null) {
+            session.recordEvent(frameTimeMicros, SessionFormat.EVENT_ROUND_END,
+                    score, 0);
+            session.close();
+            SessionWriter finished = session;
+            boolean parking = parkingMode;
+            CompletableFuture.runAsync(() -> addGhostRound(finished, parking));
+            session = null;
+        }
+    }
+
+    /**
+     * Finds the best recorded round of each mode, to replay as the ghost
+     */
+    private void findGhostRounds() {
+        List<Path> sessions;
+        try {
+            sessions = TrajectoryQueryEngine.listSessions(sessionDirectory);
+        } catch (IOException e) {
+            // nothing has been recorded yet
+            return;
+        }
+        RoundSummary chase = RoundSummary.findBest(
+                withPrefix(sessions, GameRules.ROUND_FILE_PREFIX));
+        RoundSummary parking = RoundSummary.findBest(
+                withPrefix(sessions, GameRules.PARKING_ROUND_FILE_PREFIX));
+        synchronized (roundLock) {
+            offerGhostRound(chase, false);
+            offerGhostRound(parking, true);
+        }
+        repaint();
+    }
+
+    private static List<Path> withPrefix(List<Path> sessions, String prefix) {
+        return sessions.stream()
+                .filter(p -> p.getFileName().toString().startsWith(prefix))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Makes a round that has just been played the ghost, if it beat the
+     * current one, once its recording has been written
+     */
+    private void addGhostRound(SessionWriter session, boolean parking) {
+        try {
+            session.awaitClose();
+            RoundSummary summary = RoundSummary.read(session.getPath());
+            synchronized (roundLock) {
+                offerGhostRound(summary, parking);
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to read " + session.getPath() + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Replaces a mode's ghost with a round if it scored more.
+     * Called while holding roundLock.
+     */
+    private void offerGhostRound(RoundSummary summary, boolean parking) {
+        if (summary == null || summary.getScore() <= 0) {
+            return;
+        }
+        RoundSummary current = parking ? parkingGhostRound : chaseGhostRound;
+        if (current == null || summary.getScore() > current.getScore()) {
+            if (parking) {
+                parkingGhostRound = summary;
+            } else {
+                chaseGhostRound = summary;
+            }
+        }
     }
 
     /**
-     * Determines whether the game timer is up.
-     * @return true if the timer has passed, otherwise false.
+     * Moves the ghost to its pose at the current time into the round.
+     * Called on the dispatch thread while holding roundLock.
      */
-    private boolean isRoundOver() {
-        return System.currentTimeMillis() >= roundOverTime;
+    private void updateGhost() {
+        if (ghost == null) {
+            return;
+        }
+        long time = ghostRound.getStartTime() + frameTimeMicros - roundStartMicros;
+        boolean visible = ghost.poseAt(time, ghostPose);
+        if (visible) {
+            ghostCar.moveTo(ghostPose.x, ghostPose.y, ghostPose.z);
+            double heading = GameRules.calibratedHeading(ghostRound.getRotationOffset(),
+                    ghostPose.heading, ghostRound.getInitialRotation());
+            if (!Double.isNaN(heading)) {
+                ghostHeading = heading;
+            }
+        }
+        ghostVisible = visible;
+    }
+
+    /**
+     * Method called by the round timer when the round's time is up
+     */
+    private void roundTimeUp() {
+        synchronized (roundLock) {
+            if (playing) {
+                endRound();
+            }
+            publishSpectatorState();
+        }
+        repaint();
+    }
+
+    /**
+     * Publishes the state of the game to spectators, if enabled.
+     * Called while holding roundLock.
+     */
+    private void publishSpectatorState() {
+        if (spectatorServer == null) {
+            return;
+        }
+        TimerWheel.Timer roundTimer = this.roundTimer;
+        long timeRemaining = playing && roundTimer != null
+                ? roundTimer.getRemaining(TimeUnit.MILLISECONDS) : 0;
+        spectatorState.setRound(playing, score,
+                parkingMode ? parkingHighscore : highscore, timeRemaining);
+        Vector3D goalLocation = goal.getLocation();
+        spectatorState.setGoal(goalLocation.x, goalLocation.y);
+        spectatorState.clearCars();
+        if (playerCarInitialPosition != null) {
+            Vector3D location = playerCar.getLocation();
+            double heading = GameRules.calibratedHeading(rotationOffsetRadians,
+                    rotationsRadians[GameRules.ID_PLAYER_CAR],
+                    initialRotationsRadians[GameRules.ID_PLAYER_CAR]);
+            spectatorState.addCar(GameRules.ID_PLAYER_CAR, location.x, location.y,
+                    Double.isNaN(heading) ? 0 : heading);
+        }
+        spectatorServer.publish(spectatorState);
     }
 
     @Override
     /**
-     * Method called once per frame for each rigid body being tracked
-     * by Motive.
+     * Method called once per frame for the player car and the
+     * alignment tool (the only bodies this canvas subscribes to).
      */
     public void rigidBodyUpdateReceived(int id, float x, float y, float z,
             float qw, float qx, float qy, float qz) {
-        if (id > 1) {
-            return;
-        }
-        Quaternion quaternion = new Quaternion(qw, qx, qy, qz);
-        double rotationRadians = quaternion.toUpVector().to2DDirectionVector().getTheta();
+        double rotationRadians = Quaternion.upVectorHeading(qw, qx, qy, qz);
         rotationsRadians[id] = rotationRadians;
         switch (id) {
-            case ID_ALIGNMENT_TOOL:
+            case GameRules.ID_ALIGNMENT_TOOL:
                 if (alignmentToolInitialPosition == null) {
                     alignmentToolInitialPosition = new Vector3D(x, y, z);
-                    initialRotationsRadians[ID_ALIGNMENT_TOOL] = rotationRadians;
+                    initialRotationsRadians[GameRules.ID_ALIGNMENT_TOOL] = rotationRadians;
                 }
                 break;
-            case ID_PLAYER_CAR:
+            case GameRules.ID_PLAYER_CAR:
                 if (playerCarInitialPosition == null) {
                     playerCarInitialPosition = new Vector3D(x, y, z);
-                    initialRotationsRadians[ID_PLAYER_CAR] = rotationRadians;
+                    initialRotationsRadians[GameRules.ID_PLAYER_CAR] = rotationRadians;
                     roomXLowerBound = x - roomWidth / 2;
                     roomYLowerBound = -y - roomLength / 2;
                     roomYLowerBoundGoal = y - roomLength / 2;
@@ -292,29 +1144,170 @@ public class ApplicationCanvas extends JPanel implements RigidBodyUpdateListener
         obj.rotateTo(qw, qx, qy, qz);
     }
 
+    /**
+     * Method called by the KinematicsTracker, on the receiving thread,
+     * with the motion of each body in a frame
+     */
+    private void kinematicsUpdated(int id, float vx, float vy, float vz, float speed,
+            float ax, float ay, float az, float yawRate) {
+        if (id != GameRules.ID_PLAYER_CAR) {
+            return;
+        }
+        int centimetersPerSecond = Math.min(MAX_SHOWN_SPEED, Math.round(speed * 100));
+        carSpeed = centimetersPerSecond;
+        if (playing && centimetersPerSecond > topSpeed) {
+            topSpeed = centimetersPerSecond;
+        }
+    }
+
+    /**
+     * @param centimetersPerSecond a speed, from 0 to MAX_SHOWN_SPEED
+     * @return the speed as shown while playing (formatted only the
+     * first time it is shown, so that painting creates no Strings)
+     */
+    private String speedText(int centimetersPerSecond) {
+        String text = speedTexts[centimetersPerSecond];
+        if (text == null) {
+            text = String.format("%.2f m/s", centimetersPerSecond / 100.0);
+            speedTexts[centimetersPerSecond] = text;
+        }
+        return text;
+    }
+
+    /**
+     * Method called with the timing of each frame received from Motive,
+     * just before frameUpdateReceived
+     */
+    @Override
+    public void frameTimingReceived(FrameTiming timing) {
+        frameNumber = timing.getFrameNumber();
+        frameTimeMicros = Math.round(timing.getTimestamp() * 1e6);
+    }
+
     /**
      * Method called each time a frame packet is received from Motive
      */
     @Override
     public void frameUpdateReceived() {
-        if (playing && playerCar.getLocation().distanceFrom(goal.getLocation()) < GOAL_LOCATION_TOLERANCE) {
-            score++;
-            moveGoal();
+        Vector3D location = playerCar.getLocation();
+        long sweepMicros = frameTimeMicros - previousCarTimeMicros;
+        if (carSweepReset || sweepMicros <= 0 || sweepMicros > MAX_SWEEP_GAP_MICROS) {
+            // the previous position is stale, so don't sweep from it
+            carSweepReset = false;
+            hasPreviousCarPosition = false;
+        }
+        if (!hasPreviousCarPosition) {
+            previousCarX = location.x;
+            previousCarY = location.y;
+            previousCarTimeMicros = frameTimeMicros;
+            hasPreviousCarPosition = true;
+        }
+        synchronized (roundLock) {
+            if (playing) {
+                if (session != null) {
+                    session.recordPose(GameRules.ID_PLAYER_CAR, frameNumber, frameTimeMicros,
+                            (float) location.x, (float) location.y, (float) location.z,
+                            (float) rotationsRadians[GameRules.ID_PLAYER_CAR]);
+                }
+
+                Point p = playerCar.getScreenLocation(roomXLowerBound, roomYLowerBound,
+                        roomWidth, roomLength, getWidth(), getHeight(), trailScreenPoint);
+                trailOverlay.addPoint(GameRules.ID_PLAYER_CAR, p.x, p.y);
+                updateGhost();
+
+                if (parkingMode) {
+                    updateParking(location);
+                } else {
+                    // sweep the car along its path since the previous frame,
+                    // so that a fast car cannot pass through the goal between frames
+                    // (with no usable previous frame the path is just the car's
+                    // position, so this is a point in circle test)
+                    Vector3D goalLocation = goal.getLocation();
+                    double t = Intersections.segmentCircleEntry(previousCarX, previousCarY,
+                            location.x, location.y, goalLocation.x, goalLocation.y,
+                            GameRules.GOAL_LOCATION_TOLERANCE);
+                    if (!Double.isNaN(t)) {
+                        // the time the car reached the goal, between the two frames
+                        long hitTimeMicros = previousCarTimeMicros
+                                + Math.round(t * (frameTimeMicros - previousCarTimeMicros));
+                        score++;
+                        GoalHitEvent.emit(score, goalLocation.x, goalLocation.y,
+                                frameTimeMicros - hitTimeMicros);
+                        eventLog.log(EventLogFormat.EVENT_GOAL_HIT, score,
+                                (int) (frameTimeMicros - hitTimeMicros),
+                                (float) goalLocation.x, (float) goalLocation.y, 0);
+                        moveGoal();
+                        if (session != null) {
+                            session.recordEvent(hitTimeMicros, SessionFormat.EVENT_GOAL_SCORED,
+                                    score, 0);
+                            session.recordEvent(frameTimeMicros, SessionFormat.EVENT_GOAL_PLACED,
+                                    (float) goal.getLocation().x, (float) goal.getLocation().y);
+                        }
+                    }
+                }
+            }
+            publishSpectatorState();
         }
+        previousCarX = location.x;
+        previousCarY = location.y;
+        previousCarTimeMicros = frameTimeMicros;
         if (alignmentVector == null && alignmentToolInitialPosition != null
                 && playerCarInitialPosition != null) {
             Vector2D at2d = new Vector2D(alignmentToolInitialPosition.x, alignmentToolInitialPosition.y);
             Vector2D pc2d = new Vector2D(playerCarInitialPosition.x, playerCarInitialPosition.y);
             alignmentVector = pc2d.directionTowards(at2d);
             rotationOffsetRadians = Math.atan2(alignmentVector.y, alignmentVector.x);
+            eventLog.log(EventLogFormat.EVENT_CALIBRATION, 0, 0, (float) alignmentVector.x,
+                    (float) alignmentVector.y, (float) rotationOffsetRadians);
         }
-        if (isRoundOver()) {
-            playing = false;
-            if (score > highscore) {
-                highscore = score;
+        if (playing || hasMoved()) {
+            markActive();
+            repaint();
+        } else {
+            long now = System.nanoTime();
+            if (streamManager.getActivityLevel() == ActivityLevel.ACTIVE
+                    && now - lastActivityNanos >= IDLE_DELAY) {
+                streamManager.setActivityLevel(ActivityLevel.IDLE);
+            }
+            if (streamManager.getActivityLevel() == ActivityLevel.ACTIVE
+                    || now - lastIdleRepaintNanos >= IDLE_REPAINT_INTERVAL) {
+                lastIdleRepaintNanos = now;
+                repaint();
             }
         }
-        repaint();
+    }
+
+    /**
+     * Checks whether any tracked body has moved or turned more than the
+     * idle thresholds since it last did
+     */
+    private boolean hasMoved() {
+        boolean moved = false;
+        for (int id = 0; id < sceneObjects.length; id++) {
+            Vector3D location = sceneObjects[id].getLocation();
+            double rotation = rotationsRadians[id];
+            // a NaN heading (body on its side) is not counted as turning
+            if (Math.abs(location.x - stillX[id]) > IDLE_MOTION_THRESHOLD
+                    || Math.abs(location.y - stillY[id]) > IDLE_MOTION_THRESHOLD
+                    || Math.abs(Math.IEEEremainder(rotation - stillRotations[id],
+                            2 * Math.PI)) > IDLE_ROTATION_THRESHOLD) {
+                stillX[id] = location.x;
+                stillY[id] = location.y;
+                if (!Double.isNaN(rotation)) {
+                    stillRotations[id] = rotation;
+                }
+                moved = true;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Restarts the idle delay, and makes the scene active if it was idle
+     */
+    private void markActive() {
+        lastActivityNanos = System.nanoTime();
+        streamManager.setActivityLevel(ActivityLevel.ACTIVE);
     }
 
     @Override
@@ -323,10 +1316,20 @@ public class ApplicationCanvas extends JPanel implements RigidBodyUpdateListener
      * window has focus
      */
     public void keyPressed(KeyEvent e) {
-        if (!playing) {
-            initRound();
-            playing = true;
+        markActive();
+        synchronized (roundLock) {
+            if (!playing && e.getKeyCode() == KeyEvent.VK_P) {
+                parkingMode = !parkingMode;
+                score = 0;
+            } else if (!playing && e.getKeyCode() == KeyEvent.VK_G) {
+                ghostEnabled = !ghostEnabled;
+            } else if (!playing) {
+                initRound();
+                playing = true;
+                publishSpectatorState();
+            }
         }
+        repaint();
     }
 
     @Override
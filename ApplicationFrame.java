@@ -1,3 +1,5 @@
+import java.util.concurrent.CompletableFuture;
+
 import javax.swing.JFrame;
 
 /**
@@ -11,13 +13,17 @@ public class ApplicationFrame extends JFrame {
 
     private final ApplicationCanvas canvas;
     
-    public ApplicationFrame() {
+    /**
+     * Creates the main window
+     * @param sprites the game's sprites, which may still be loading
+     */
+    public ApplicationFrame(CompletableFuture<Sprites> sprites) {
         super("Goal Chase Challenge");
         setResizable(false);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         // Add a canvas to the frame
-        canvas = new ApplicationCanvas();
+        canvas = new ApplicationCanvas(sprites);
         add(canvas);
 
         // resize the frame to fit the menu bar and canvas component
@@ -0,0 +1,64 @@
+/**
+ * This class holds the rules of the goal chase game that are shared
+ * between the game itself (ApplicationCanvas) and the tools that
+ * analyze recorded rounds (SessionAnalyzer).
+ * 
+ * @author Lauren Knight
+ */
+final class GameRules {
+
+    // how close (in meters) the car must get to a goal to score
+    static final double GOAL_LOCATION_TOLERANCE = 0.105;
+
+    // the streaming IDs of the rigid bodies used by the game
+    static final int ID_PLAYER_CAR = 0;
+    static final int ID_ALIGNMENT_TOOL = 1;
+
+    static final int TIME_PER_ROUND = 3 * 60 * 1000; // 3 minutes
+
+    // recorded rounds are named for the mode they were played in
+    static final String ROUND_FILE_PREFIX = "round-";
+    static final String PARKING_ROUND_FILE_PREFIX = "park-";
+
+    // the parking challenge: the size of the car's footprint, in meters
+    // (the size of the car sprite on a 1 m room), how far its heading may
+    // be from a bay's (either way round) and how long it must stay parked
+    static final double CAR_LENGTH = 0.21;
+    static final double CAR_WIDTH = 0.105;
+    static final double PARK_HEADING_TOLERANCE = Math.toRadians(15);
+    static final long PARK_HOLD_TIME_MICROS = 500_000;
+
+    private GameRules() {}
+
+    /**
+     * Determines which way the car is facing within the room.
+     * 
+     * Motive's rotation of the car is only meaningful relative to the
+     * rotation it had when the alignment tool was placed in front of it,
+     * so the direction towards the alignment tool (the rotation offset)
+     * is added to the car's change in rotation since then.
+     * @param rotationOffsetRadians the direction from the car to the
+     * alignment tool at startup
+     * @param rotationRadians the car's current rotation, as reported by Motive
+     * @param initialRotationRadians the car's rotation at startup
+     * @return the direction the car is facing, in radians
+     * (counterclockwise from the room's x axis)
+     */
+    static double calibratedHeading(double rotationOffsetRadians,
+            double rotationRadians, double initialRotationRadians) {
+        return rotationOffsetRadians + rotationRadians - initialRotationRadians;
+    }
+
+    /**
+     * Determines whether a car is lined up with a parking bay, facing
+     * either way along it
+     * @param headingRadians the direction the car is facing
+     * @param bayAngleRadians the bay's angle
+     * @return true if the car is within PARK_HEADING_TOLERANCE of the bay
+     */
+    static boolean isAlignedWith(double headingRadians, double bayAngleRadians) {
+        double difference = Math.IEEEremainder(headingRadians - bayAngleRadians, Math.PI);
+        return Math.abs(difference) <= PARK_HEADING_TOLERANCE;
+    }
+
+}
@@ -0,0 +1,251 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class answers the parking challenge's questions about where a
+ * car is (out of the room, touching an obstacle, inside a bay) with a
+ * few lookups, however complicated the layout is.
+ *
+ * When it is created, it samples the layout on a grid covering the room
+ * (and a margin around it) and stores, for each cell:
+ *   the distance to the nearest wall (negative outside the room),
+ *   the distance to the nearest obstacle (negative inside one),
+ *   the smaller of the two (the clearance),
+ *   the distance to the edge of the bay the cell is in (negative
+ *   outside every bay), and which bay that is.
+ * Distances between cell centers are interpolated bilinearly.
+ *
+ * A car is checked along the edges of its footprint, starting at each
+ * corner and stepping by the clearance there (nothing can be closer
+ * than that), so a car in open space is checked with one lookup per
+ * edge and one near an obstacle with a step per cell at most. The cost
+ * never depends on the number of obstacles. Obstacles thinner than a
+ * cell may be missed, and one entirely under the car is not seen (a
+ * car can't get there without touching it first). The car is inside a
+ * bay if all four corners are inside the same bay (bays are rectangles,
+ * so the rest of the footprint is then inside too).
+ *
+ * A field never changes once created, so it may be used from any thread.
+ *
+ * @author Lauren Knight
+ */
+final class ParkingField {
+
+    // the size of a grid cell, in meters
+    static final double DEFAULT_CELL_SIZE = 0.005;
+    // how far the grid reaches beyond the walls, in meters
+    private static final double MARGIN = 0.25;
+    // the distance stored when there are no obstacles at all
+    private static final float FAR = 1000;
+
+    /**
+     * Where a car's footprint is; filled in by check()
+     */
+    static final class Check {
+        // part of the footprint is outside the room
+        boolean outOfBounds;
+        // part of the footprint is inside an obstacle
+        boolean collision;
+        // the bay the whole footprint is inside, or -1
+        int bay;
+    }
+
+    private final ParkingLayout layout;
+    private final double cellSize;
+    private final double cellsPerMeter;
+    private final double originX;
+    private final double originY;
+    private final int columns;
+    private final int rows;
+    private final float[] wallDistance;
+    private final float[] obstacleDistance;
+    private final float[] clearance;
+    private final float[] bayDistance;
+    private final short[] bayIndex;
+
+    /**
+     * Creates the fields for a layout with the default cell size
+     */
+    ParkingField(ParkingLayout layout) {
+        this(layout, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Creates the fields for a layout
+     * @param layout the room
+     * @param cellSize the size of a grid cell, in meters
+     */
+    ParkingField(ParkingLayout layout, double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        this.layout = layout;
+        this.cellSize = cellSize;
+        cellsPerMeter = 1 / cellSize;
+        originX = -layout.getWidth() / 2 - MARGIN;
+        originY = -layout.getLength() / 2 - MARGIN;
+        columns = Math.max(2, (int) Math.ceil((layout.getWidth() + 2 * MARGIN) / cellSize));
+        rows = Math.max(2, (int) Math.ceil((layout.getLength() + 2 * MARGIN) / cellSize));
+        int cells = columns * rows;
+        wallDistance = new float[cells];
+        obstacleDistance = new float[cells];
+        clearance = new float[cells];
+        bayDistance = new float[cells];
+        bayIndex = new short[cells];
+
+        // the room's walls, as a box the car must stay inside
+        ParkingLayout.Box room = new ParkingLayout.Box(0, 0,
+                layout.getLength(), layout.getWidth(), 0);
+        List<ParkingLayout.Box> obstacles = layout.getObstacles();
+        List<ParkingLayout.Box> bays = layout.getBays();
+        Arrays.fill(obstacleDistance, FAR);
+        for (int row = 0; row < rows; row++) {
+            double y = originY + (row + 0.5) * cellSize;
+            for (int column = 0; column < columns; column++) {
+                double x = originX + (column + 0.5) * cellSize;
+                int cell = row * columns + column;
+                wallDistance[cell] = (float) -room.signedDistance(x, y);
+                for (ParkingLayout.Box obstacle : obstacles) {
+                    obstacleDistance[cell] = Math.min(obstacleDistance[cell],
+                            (float) obstacle.signedDistance(x, y));
+                }
+                clearance[cell] = Math.min(wallDistance[cell], obstacleDistance[cell]);
+                float inside = -FAR;
+                short index = -1;
+                for (int b = 0; b < bays.size(); b++) {
+                    float distance = (float) -bays.get(b).signedDistance(x, y);
+                    if (distance > inside) {
+                        inside = distance;
+                        index = distance >= 0 ? (short) b : -1;
+                    }
+                }
+                bayDistance[cell] = inside;
+                bayIndex[cell] = index;
+            }
+        }
+    }
+
+    ParkingLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Checks where a car's footprint is
+     * @param x the x coordinate of the car's center (from the room's center)
+     * @param y the y coordinate of the car's center
+     * @param heading the direction the car faces, in radians
+     * @param halfLength half of the car's length
+     * @param halfWidth half of the car's width
+     * @param result where to store the result
+     */
+    void check(double x, double y, double heading, double halfLength, double halfWidth,
+            Check result) {
+        result.outOfBounds = false;
+        result.collision = false;
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        // the footprint's half-axes
+        double lx = cos * halfLength;
+        double ly = sin * halfLength;
+        double wx = -sin * halfWidth;
+        double wy = cos * halfWidth;
+
+        int bay = -2;
+        for (int corner = 0; corner < 4; corner++) {
+            // corners in order around the footprint: (+l,-w), (+l,+w), (-l,+w), (-l,-w)
+            double sl = corner < 2 ? 1 : -1;
+            double sw = corner == 0 || corner == 3 ? -1 : 1;
+            double cx = x + sl * lx + sw * wx;
+            double cy = y + sl * ly + sw * wy;
+            int cornerBay = bayAt(cx, cy);
+            if (bay == -2) {
+                bay = cornerBay;
+            } else if (bay != cornerBay) {
+                bay = -1;
+            }
+
+            // step along the edge to the next corner
+            int next = (corner + 1) % 4;
+            double nl = next < 2 ? 1 : -1;
+            double nw = next == 0 || next == 3 ? -1 : 1;
+            double dx = x + nl * lx + nw * wx - cx;
+            double dy = y + nl * ly + nw * wy - cy;
+            double edge = corner % 2 == 0 ? 2 * halfWidth : 2 * halfLength;
+            double along = 0;
+            while (along < edge && !(result.outOfBounds && result.collision)) {
+                double px = cx + dx * (along / edge);
+                double py = cy + dy * (along / edge);
+                // once one kind of contact is found, only look for the other
+                float[] field = result.collision ? wallDistance
+                        : result.outOfBounds ? obstacleDistance : clearance;
+                float clear = sample(field, px, py);
+                if (clear < 0) {
+                    if (sample(wallDistance, px, py) < 0) {
+                        result.outOfBounds = true;
+                    }
+                    if (sample(obstacleDistance, px, py) < 0) {
+                        result.collision = true;
+                    }
+                }
+                along += Math.max(clear, cellSize);
+            }
+        }
+        result.bay = bay;
+    }
+
+    /**
+     * @return the bay a point is inside, or -1 if it isn't in one
+     */
+    int bayAt(double x, double y) {
+        int cell = cellAt(x, y);
+        if (bayIndex[cell] < 0 || sample(bayDistance, x, y) < 0) {
+            return -1;
+        }
+        return bayIndex[cell];
+    }
+
+    /**
+     * @return the distance from a point to the nearest wall,
+     * negative outside the room
+     */
+    double wallDistance(double x, double y) {
+        return sample(wallDistance, x, y);
+    }
+
+    /**
+     * @return the distance from a point to the nearest obstacle,
+     * negative inside one
+     */
+    double obstacleDistance(double x, double y) {
+        return sample(obstacleDistance, x, y);
+    }
+
+    private int cellAt(double x, double y) {
+        int column = (int) Math.floor((x - originX) * cellsPerMeter);
+        int row = (int) Math.floor((y - originY) * cellsPerMeter);
+        column = Math.min(Math.max(column, 0), columns - 1);
+        row = Math.min(Math.max(row, 0), rows - 1);
+        return row * columns + column;
+    }
+
+    /**
+     * Interpolates a field between the four nearest cell centers.
+     * Points beyond the grid take the value at its edge.
+     */
+    private float sample(float[] field, double x, double y) {
+        double gx = (x - originX) * cellsPerMeter - 0.5;
+        double gy = (y - originY) * cellsPerMeter - 0.5;
+        gx = Math.min(Math.max(gx, 0), columns - 1);
+        gy = Math.min(Math.max(gy, 0), rows - 1);
+        int column = Math.min((int) gx, columns - 2);
+        int row = Math.min((int) gy, rows - 2);
+        float fx = (float) (gx - column);
+        float fy = (float) (gy - row);
+        int cell = row * columns + column;
+        float bottom = field[cell] + (field[cell + 1] - field[cell]) * fx;
+        float top = field[cell + columns]
+                + (field[cell + columns + 1] - field[cell + columns]) * fx;
+        return bottom + (top - bottom) * fy;
+    }
+
+}
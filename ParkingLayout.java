@@ -0,0 +1,232 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class describes the room used by the parking challenge: its
+ * walls (the edges of the room), the obstacles in it and the parking
+ * bays the car must be parked in.
+ *
+ * Coordinates are in meters from the center of the room, with x to
+ * the right and y away from the player (up the screen). Angles are
+ * counterclockwise from the x axis.
+ *
+ * A layout can be read from a text file with one shape per line:
+ *
+ *   room width length
+ *   obstacle x y width length angle
+ *   bay x y width length angle
+ *
+ * where x and y are the shape's center, width and length its size
+ * across and along its angle, and angle is in degrees. A bay's angle
+ * is the direction a car parked in it faces (either way round).
+ * Blank lines and lines starting with # are ignored.
+ *
+ * @author Lauren Knight
+ */
+final class ParkingLayout {
+
+    /**
+     * A rectangle at any angle
+     */
+    static final class Box {
+        final double x;
+        final double y;
+        final double halfWidth;
+        final double halfLength;
+        final double angle;
+        private final double cos;
+        private final double sin;
+
+        /**
+         * @param x the x coordinate of the center
+         * @param y the y coordinate of the center
+         * @param width the size across the box
+         * @param length the size along the box's angle
+         * @param angle the box's angle, in radians
+         */
+        Box(double x, double y, double width, double length, double angle) {
+            if (!(width > 0 && length > 0)) {
+                throw new IllegalArgumentException("Size must be positive");
+            }
+            this.x = x;
+            this.y = y;
+            this.halfWidth = width / 2;
+            this.halfLength = length / 2;
+            this.angle = angle;
+            cos = Math.cos(angle);
+            sin = Math.sin(angle);
+        }
+
+        /**
+         * @return the distance from a point to the edge of the box,
+         * negative inside the box
+         */
+        double signedDistance(double px, double py) {
+            // the point in the box's own frame, folded into one quadrant
+            double dx = px - x;
+            double dy = py - y;
+            double along = Math.abs(dx * cos + dy * sin) - halfLength;
+            double across = Math.abs(-dx * sin + dy * cos) - halfWidth;
+            double outside = Math.hypot(Math.max(along, 0), Math.max(across, 0));
+            return outside + Math.min(Math.max(along, across), 0);
+        }
+
+        /**
+         * Stores the box's corners, counterclockwise
+         * @param xs the corners' x coordinates (at least 4 long)
+         * @param ys the corners' y coordinates (at least 4 long)
+         */
+        void corners(double[] xs, double[] ys) {
+            double lx = cos * halfLength;
+            double ly = sin * halfLength;
+            double wx = -sin * halfWidth;
+            double wy = cos * halfWidth;
+            xs[0] = x + lx - wx;
+            ys[0] = y + ly - wy;
+            xs[1] = x + lx + wx;
+            ys[1] = y + ly + wy;
+            xs[2] = x - lx + wx;
+            ys[2] = y - ly + wy;
+            xs[3] = x - lx - wx;
+            ys[3] = y - ly - wy;
+        }
+    }
+
+    private final double width;
+    private final double length;
+    private final List<Box> obstacles;
+    private final List<Box> bays;
+
+    ParkingLayout(double width, double length, List<Box> obstacles, List<Box> bays) {
+        if (!(width > 0 && length > 0)) {
+            throw new IllegalArgumentException("Room size must be positive");
+        }
+        if (bays.isEmpty()) {
+            throw new IllegalArgumentException("A layout needs at least one bay");
+        }
+        this.width = width;
+        this.length = length;
+        this.obstacles = Collections.unmodifiableList(new ArrayList<>(obstacles));
+        this.bays = Collections.unmodifiableList(new ArrayList<>(bays));
+    }
+
+    /**
+     * @return the width of the room (along x), in meters
+     */
+    double getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the length of the room (along y), in meters
+     */
+    double getLength() {
+        return length;
+    }
+
+    List<Box> getObstacles() {
+        return obstacles;
+    }
+
+    List<Box> getBays() {
+        return bays;
+    }
+
+    /**
+     * Creates the built-in layout: a row of three bays along each side
+     * of the room, with a traffic island on either side of the middle
+     * (which is kept clear, as that is where the car starts)
+     * @param width the width of the room, in meters
+     * @param length the length of the room, in meters
+     */
+    static ParkingLayout createDefault(double width, double length) {
+        List<Box> obstacles = new ArrayList<>();
+        List<Box> bays = new ArrayList<>();
+        double bayWidth = 0.16;
+        double bayLength = 0.26;
+        for (int i = -1; i <= 1; i++) {
+            double x = i * 0.22 * width;
+            // bays face into the room, with a divider between each pair
+            bays.add(new Box(x, length / 2 - bayLength / 2 - 0.02,
+                    bayWidth, bayLength, Math.PI / 2));
+            bays.add(new Box(x, -length / 2 + bayLength / 2 + 0.02,
+                    bayWidth, bayLength, Math.PI / 2));
+        }
+        for (int i = -1; i <= 1; i += 2) {
+            double x = i * 0.11 * width;
+            obstacles.add(new Box(x, length / 2 - 0.1, 0.02, 0.16, Math.PI / 2));
+            obstacles.add(new Box(x, -length / 2 + 0.1, 0.02, 0.16, Math.PI / 2));
+        }
+        obstacles.add(new Box(-0.32 * width, 0, 0.08, 0.2, Math.PI / 2));
+        obstacles.add(new Box(0.32 * width, 0, 0.08, 0.2, Math.PI / 2));
+        return new ParkingLayout(width, length, obstacles, bays);
+    }
+
+    /**
+     * Reads a layout from a file (see the class description)
+     * @param path the file
+     * @param width the width of the room if the file doesn't give it
+     * @param length the length of the room if the file doesn't give it
+     * @throws IOException if the file can't be read or is not a valid layout
+     */
+    static ParkingLayout load(Path path, double width, double length) throws IOException {
+        List<Box> obstacles = new ArrayList<>();
+        List<Box> bays = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                try {
+                    switch (parts[0]) {
+                        case "room":
+                            checkFieldCount(parts, 3);
+                            width = Double.parseDouble(parts[1]);
+                            length = Double.parseDouble(parts[2]);
+                            break;
+                        case "obstacle":
+                            obstacles.add(parseBox(parts));
+                            break;
+                        case "bay":
+                            bays.add(parseBox(parts));
+                            break;
+                        default:
+                            throw new IllegalArgumentException("unknown shape " + parts[0]);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(path + " line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        try {
+            return new ParkingLayout(width, length, obstacles, bays);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(path + ": " + e.getMessage());
+        }
+    }
+
+    private static Box parseBox(String[] parts) {
+        checkFieldCount(parts, 6);
+        return new Box(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]),
+                Double.parseDouble(parts[3]), Double.parseDouble(parts[4]),
+                Math.toRadians(Double.parseDouble(parts[5])));
+    }
+
+    private static void checkFieldCount(String[] parts, int count) {
+        if (parts.length != count) {
+            throw new IllegalArgumentException(parts[0] + " needs " + (count - 1) + " numbers");
+        }
+    }
+
+}
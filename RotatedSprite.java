@@ -0,0 +1,101 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * This class holds a sprite prerendered at a fixed number of evenly
+ * spaced rotations, so that a rotating sprite can be drawn each frame
+ * as a plain image copy. (Drawing an image through a rotation creates
+ * new objects inside Java2D on every call, and rotating it into a new
+ * image creates a whole new image.)
+ *
+ * Each rotation is rendered about the sprite's center, into a square
+ * large enough to hold the sprite's visible pixels at any angle.
+ *
+ * @author Lauren Knight
+ */
+public class RotatedSprite {
+
+    // the default number of rotations (about 2.8 degrees apart)
+    public static final int DEFAULT_ROTATIONS = 128;
+
+    private final BufferedImage[] rotations;
+    private final int size;
+
+    /**
+     * Renders a sprite at DEFAULT_ROTATIONS rotations
+     * @param sprite the unrotated sprite
+     */
+    public RotatedSprite(BufferedImage sprite) {
+        this(sprite, DEFAULT_ROTATIONS);
+    }
+
+    /**
+     * Renders a sprite at the given number of rotations
+     * @param sprite the unrotated sprite
+     * @param rotationCount the number of rotations to render
+     */
+    public RotatedSprite(BufferedImage sprite, int rotationCount) {
+        if (rotationCount <= 0) {
+            throw new IllegalArgumentException("At least one rotation is needed");
+        }
+        double centerX = sprite.getWidth() / 2.0;
+        double centerY = sprite.getHeight() / 2.0;
+        size = 2 * (int) Math.ceil(visibleRadius(sprite, centerX, centerY)) + 2;
+        rotations = new BufferedImage[rotationCount];
+        for (int i = 0; i < rotationCount; i++) {
+            BufferedImage image = new BufferedImage(sprite.getColorModel(),
+                    sprite.getColorModel().createCompatibleWritableRaster(size, size),
+                    sprite.isAlphaPremultiplied(), null);
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.translate(size / 2.0 - centerX, size / 2.0 - centerY);
+            g.rotate(2 * Math.PI * i / rotationCount, centerX, centerY);
+            g.drawImage(sprite, 0, 0, null);
+            g.dispose();
+            rotations[i] = image;
+        }
+    }
+
+    /**
+     * Finds how far the sprite's furthest visible pixel is from its center
+     */
+    private static double visibleRadius(BufferedImage sprite, double centerX,
+            double centerY) {
+        double radiusSquared = 0;
+        for (int y = 0; y < sprite.getHeight(); y++) {
+            for (int x = 0; x < sprite.getWidth(); x++) {
+                if ((sprite.getRGB(x, y) >>> 24) != 0) {
+                    // measure to the pixel's furthest corner
+                    double dx = Math.max(Math.abs(x - centerX), Math.abs(x + 1 - centerX));
+                    double dy = Math.max(Math.abs(y - centerY), Math.abs(y + 1 - centerY));
+                    radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy);
+                }
+            }
+        }
+        return Math.sqrt(radiusSquared);
+    }
+
+    /**
+     * @param radians the rotation (clockwise on screen, as for
+     * Graphics2D.rotate)
+     * @return the sprite at the nearest prerendered rotation
+     */
+    public BufferedImage get(double radians) {
+        int count = rotations.length;
+        int i = (int) Math.round(radians / (2 * Math.PI) * count) % count;
+        if (i < 0) {
+            i += count;
+        }
+        return rotations[i];
+    }
+
+    /**
+     * @return the width and height of each rotation, in pixels
+     */
+    public int getSize() {
+        return size;
+    }
+
+}
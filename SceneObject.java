@@ -75,7 +75,20 @@ public class SceneObject {
      */
     public Point getScreenLocation(double roomXLowerBound, double roomYLowerBound,
             double roomWidth, double roomLength, int screenWidth, int screenHeight) {
-        Point p = new Point();
+        return getScreenLocation(roomXLowerBound, roomYLowerBound, roomWidth,
+                roomLength, screenWidth, screenHeight, new Point());
+    }
+
+    /**
+     * Translates this object's 3D location to a screen location,
+     * reusing the given Point (so that no objects are created each frame)
+     * @param p the Point to store the translation in
+     * @return p
+     * @see #getScreenLocation(double, double, double, double, int, int)
+     */
+    public Point getScreenLocation(double roomXLowerBound, double roomYLowerBound,
+            double roomWidth, double roomLength, int screenWidth, int screenHeight,
+            Point p) {
         p.x = (int) ((location.x - roomXLowerBound) / roomWidth * screenWidth);
         p.y = (int) -((location.y + roomYLowerBound) / roomLength * screenHeight);
         return p;
@@ -0,0 +1,342 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import session.BlockHeader;
+import session.EventBlock;
+import session.PoseBlock;
+import session.SessionFormat;
+import session.SessionIndex;
+import session.SessionReader;
+import session.TrajectoryQueryEngine;
+import vector.Vector2D;
+
+/**
+ * Command-line tool that summarizes a directory of recorded goal chase
+ * rounds without opening the game. Parking rounds, which are recorded
+ * to the same directory, are left out.
+ *
+ * Usage: java SessionAnalyzer <session directory> [output file]
+ *
+ * Session files are analyzed in parallel, one block at a time, so only
+ * a few blocks per worker are ever in memory. For each player (car),
+ * the tool reports the distance driven, average speed, the distribution
+ * of times taken to reach each goal, how far the car's heading differed
+ * from its direction of travel (using the alignment calibration stored
+ * with each round) and the share of Motive frames missing from the
+ * recordings. Frames go missing both when packets are lost and when the
+ * game skips frames because it fell behind, so this is not a measure
+ * of network loss alone. The summary is written as a tab-separated
+ * table, to the output file if one is given and otherwise to
+ * System.out; errors go to System.err.
+ *
+ * @author Lauren Knight
+ */
+public class SessionAnalyzer {
+
+    // below this speed (m/s), the direction of travel is too noisy
+    // for the heading error to mean anything
+    private static final double MIN_HEADING_SPEED = 0.05;
+
+    // times to goal are counted in buckets of this width (ms), up to
+    // the length of a round; this keeps the distribution a fixed size
+    private static final int TIME_TO_GOAL_BUCKET_MILLIS = 100;
+    private static final int TIME_TO_GOAL_BUCKETS =
+            GameRules.TIME_PER_ROUND / TIME_TO_GOAL_BUCKET_MILLIS + 1;
+
+    /**
+     * Program entry point
+     * @param args the session directory, and optionally an output file
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: java SessionAnalyzer "
+                    + "<session directory> [output file]");
+            System.exit(2);
+        }
+        try {
+            long start = System.nanoTime();
+            List<Path> sessions = TrajectoryQueryEngine.listSessions(
+                    Paths.get(args[0])).stream()
+                    .filter(p -> p.getFileName().toString()
+                            .startsWith(GameRules.ROUND_FILE_PREFIX))
+                    .collect(Collectors.toList());
+            Map<Integer, PlayerStats> stats = analyze(sessions);
+            if (args.length == 2) {
+                try (PrintStream out = new PrintStream(
+                        Files.newOutputStream(Paths.get(args[1])))) {
+                    writeTable(stats, out);
+                }
+            } else {
+                writeTable(stats, System.out);
+            }
+            System.err.printf("Analyzed %d sessions in %.2f s%n",
+                    sessions.size(), (System.nanoTime() - start) / 1e9);
+        } catch (IOException e) {
+            System.err.println("Unable to analyze sessions: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Analyzes session files in parallel
+     * @param sessions the files to analyze
+     * @return the combined statistics of each player, by car ID
+     */
+    static Map<Integer, PlayerStats> analyze(List<Path> sessions) {
+        return sessions.parallelStream()
+                .map(SessionAnalyzer::analyzeSession)
+                .reduce(new TreeMap<>(), SessionAnalyzer::merge);
+    }
+
+    /**
+     * Combines two sets of player statistics into a new set
+     */
+    private static Map<Integer, PlayerStats> merge(Map<Integer, PlayerStats> a,
+            Map<Integer, PlayerStats> b) {
+        Map<Integer, PlayerStats> result = new TreeMap<>();
+        for (Map<Integer, PlayerStats> stats : List.of(a, b)) {
+            for (Map.Entry<Integer, PlayerStats> entry : stats.entrySet()) {
+                result.computeIfAbsent(entry.getKey(), PlayerStats::new)
+                        .add(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Analyzes a single session file
+     * @param path the file to analyze
+     * @return the statistics of each player in the session, by car ID
+     */
+    static Map<Integer, PlayerStats> analyzeSession(Path path) {
+        Map<Integer, PlayerStats> result = new TreeMap<>();
+        try (SessionReader reader = new SessionReader(path)) {
+            SessionIndex index = reader.getIndex();
+
+            // events come first, since the calibration is needed
+            // to make sense of the poses
+            double rotationOffset = Double.NaN;
+            double initialRotation = Double.NaN;
+            PlayerStats player = result.computeIfAbsent(GameRules.ID_PLAYER_CAR,
+                    PlayerStats::new);
+            long goalPlacedTime = -1;
+            for (BlockHeader header : index.getBlocks()) {
+                if (header.getType() != SessionFormat.BLOCK_EVENTS) {
+                    continue;
+                }
+                reader.seek(header);
+                EventBlock events = reader.events();
+                for (int i = 0; i < events.getCount(); i++) {
+                    switch (events.getType(i)) {
+                        case SessionFormat.EVENT_CALIBRATION:
+                            rotationOffset = events.getA(i);
+                            initialRotation = events.getB(i);
+                            break;
+                        case SessionFormat.EVENT_GOAL_PLACED:
+                            goalPlacedTime = events.getTime(i);
+                            break;
+                        case SessionFormat.EVENT_GOAL_SCORED:
+                            if (goalPlacedTime >= 0) {
+                                player.addTimeToGoal(events.getTime(i) - goalPlacedTime);
+                                goalPlacedTime = -1;
+                            }
+                            break;
+                        default:
+                    }
+                }
+            }
+
+            Set<Integer> bodyIDs = new TreeSet<>();
+            for (BlockHeader header : index.getBlocks()) {
+                if (header.getType() == SessionFormat.BLOCK_POSES) {
+                    bodyIDs.add(header.getBodyID());
+                }
+            }
+            for (int bodyID : bodyIDs) {
+                PoseTracker tracker = new PoseTracker(result.computeIfAbsent(
+                        bodyID, PlayerStats::new), rotationOffset, initialRotation);
+                for (BlockHeader header : index.getPoseBlocks(bodyID)) {
+                    reader.seek(header);
+                    tracker.add(reader.poses());
+                }
+                tracker.finish();
+            }
+            for (PlayerStats stats : result.values()) {
+                stats.sessions = 1;
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to read session " + path + ": "
+                    + e.getMessage());
+            result.clear();
+        }
+        return result;
+    }
+
+    /**
+     * Follows one body's poses through a session,
+     * accumulating its statistics
+     */
+    private static class PoseTracker {
+        private final PlayerStats stats;
+        private final double rotationOffset;
+        private final double initialRotation;
+        private final Vector2D previous = new Vector2D(0, 0);
+        private final Vector2D current = new Vector2D(0, 0);
+        private boolean hasPrevious;
+        private long previousTime;
+        private long firstFrame;
+        private long lastFrame;
+        private long firstTime;
+        private long sampleCount;
+
+        PoseTracker(PlayerStats stats, double rotationOffset,
+                double initialRotation) {
+            this.stats = stats;
+            this.rotationOffset = rotationOffset;
+            this.initialRotation = initialRotation;
+        }
+
+        void add(PoseBlock poses) {
+            for (int i = 0; i < poses.getCount(); i++) {
+                current.x = poses.getX(i);
+                current.y = poses.getY(i);
+                long time = poses.getTime(i);
+                if (!hasPrevious) {
+                    firstFrame = poses.getFrameNumber(i);
+                    firstTime = time;
+                } else {
+                    double distance = current.distanceFrom(previous);
+                    stats.pathLength += distance;
+                    double dt = (time - previousTime) / 1e6;
+                    if (dt > 0 && !Double.isNaN(rotationOffset)
+                            && distance / dt >= MIN_HEADING_SPEED) {
+                        double travel = previous.directionTowards(current).getTheta();
+                        double facing = GameRules.calibratedHeading(rotationOffset,
+                                poses.getHeading(i), initialRotation);
+                        stats.headingErrorSum += Math.abs(wrapAngle(travel - facing));
+                        stats.headingErrorSamples++;
+                    }
+                }
+                previous.x = current.x;
+                previous.y = current.y;
+                previousTime = time;
+                lastFrame = poses.getFrameNumber(i);
+                hasPrevious = true;
+                sampleCount++;
+            }
+        }
+
+        void finish() {
+            if (!hasPrevious) {
+                return;
+            }
+            stats.samples += sampleCount;
+            stats.expectedFrames += lastFrame - firstFrame + 1;
+            stats.drivingTime += (previousTime - firstTime) / 1e6;
+        }
+    }
+
+    /**
+     * Wraps an angle into the range -pi to pi
+     */
+    private static double wrapAngle(double radians) {
+        return Math.atan2(Math.sin(radians), Math.cos(radians));
+    }
+
+    /**
+     * The statistics of a single player (car)
+     */
+    static class PlayerStats {
+        final int bodyID;
+        int sessions;
+        long samples;
+        long expectedFrames;
+        double pathLength;
+        double drivingTime;
+        double headingErrorSum;
+        long headingErrorSamples;
+        long goals;
+        double timeToGoalSum;
+        final long[] timeToGoalBuckets = new long[TIME_TO_GOAL_BUCKETS];
+
+        PlayerStats(int bodyID) {
+            this.bodyID = bodyID;
+        }
+
+        void addTimeToGoal(long micros) {
+            goals++;
+            timeToGoalSum += micros / 1e6;
+            int bucket = (int) Math.min(TIME_TO_GOAL_BUCKETS - 1,
+                    Math.max(0, micros / 1000 / TIME_TO_GOAL_BUCKET_MILLIS));
+            timeToGoalBuckets[bucket]++;
+        }
+
+        void add(PlayerStats other) {
+            sessions += other.sessions;
+            samples += other.samples;
+            expectedFrames += other.expectedFrames;
+            pathLength += other.pathLength;
+            drivingTime += other.drivingTime;
+            headingErrorSum += other.headingErrorSum;
+            headingErrorSamples += other.headingErrorSamples;
+            goals += other.goals;
+            timeToGoalSum += other.timeToGoalSum;
+            for (int i = 0; i < TIME_TO_GOAL_BUCKETS; i++) {
+                timeToGoalBuckets[i] += other.timeToGoalBuckets[i];
+            }
+        }
+
+        /**
+         * @param fraction the percentile, from 0 to 1
+         * @return the time to goal at the given percentile, in seconds
+         * (the upper edge of its bucket), or NaN if no goals were scored
+         */
+        double timeToGoalPercentile(double fraction) {
+            if (goals == 0) {
+                return Double.NaN;
+            }
+            long target = (long) Math.ceil(fraction * goals);
+            long seen = 0;
+            for (int i = 0; i < TIME_TO_GOAL_BUCKETS; i++) {
+                seen += timeToGoalBuckets[i];
+                if (seen >= Math.max(1, target)) {
+                    return (i + 1) * TIME_TO_GOAL_BUCKET_MILLIS / 1000.0;
+                }
+            }
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Writes the summary table
+     */
+    static void writeTable(Map<Integer, PlayerStats> stats, PrintStream out) {
+        out.println("car\tsessions\tsamples\tpath_m\tavg_speed_mps\tgoals"
+                + "\tttg_mean_s\tttg_p50_s\tttg_p90_s\theading_err_deg"
+                + "\tframes_missing_pct");
+        for (PlayerStats s : stats.values()) {
+            double speed = s.drivingTime > 0 ? s.pathLength / s.drivingTime : 0;
+            double headingError = s.headingErrorSamples > 0
+                    ? Math.toDegrees(s.headingErrorSum / s.headingErrorSamples)
+                    : Double.NaN;
+            double missing = s.expectedFrames > 0
+                    ? 100.0 * (s.expectedFrames - s.samples) / s.expectedFrames
+                    : 0;
+            out.printf("%d\t%d\t%d\t%.2f\t%.3f\t%d\t%.2f\t%.1f\t%.1f\t%.1f\t%.2f%n",
+                    s.bodyID, s.sessions, s.samples, s.pathLength, speed,
+                    s.goals, s.goals > 0 ? s.timeToGoalSum / s.goals : Double.NaN,
+                    s.timeToGoalPercentile(0.5), s.timeToGoalPercentile(0.9),
+                    headingError, missing);
+        }
+    }
+
+}
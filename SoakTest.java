@@ -0,0 +1,411 @@
+import java.awt.Graphics2D;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import jdk.jfr.consumer.RecordingStream;
+import motive.CommandStreamManager;
+import motive.FrameUpdateListener;
+import motive.MotiveSimulator;
+
+/**
+ * This class runs the whole game against simulated Motive streams for
+ * a long time, to catch throughput and latency regressions: a
+ * MotiveSimulator feeds the real CommandStreamManager and a headless
+ * ApplicationCanvas, which plays rounds continuously and is painted to
+ * an offscreen image at the display's rate.
+ *
+ * Every combination of the given frame rates and rigid body counts is
+ * run in turn for the given time. For each, the report gives:
+ *  - frames sent and received, frames lost and packets received per second
+ *  - UDP receive buffer errors counted by the kernel during the step
+ *    (Linux only; system-wide, so other programs' drops are included)
+ *  - frame decode times (from the game's FrameDecoded flight recorder
+ *    events) and paint times: p50, p99, p99.9 and max, in nanoseconds
+ *  - garbage collection pauses: count, total and longest
+ *  - heap in use after a full collection before and after the step
+ *
+ * The report is JSON, written to standard output or to a file.
+ *
+ * Usage (from the project directory, so the sprites are found):
+ *   java SoakTest [seconds per step] [frame rates] [body counts] [report file]
+ *   e.g. java SoakTest 3600 60,120,240,480,1000 1,10,100,500 soak.json
+ *
+ * @author Lauren Knight
+ */
+public class SoakTest {
+
+    private static final int DEFAULT_SECONDS = 10;
+    private static final String DEFAULT_RATES = "60,120,240,480,1000";
+    private static final String DEFAULT_BODY_COUNTS = "1,10,100,500";
+
+    // the canvas is painted at most this often, like a display would
+    private static final double PAINT_RATE = 60;
+    // time given to each step to settle before it is measured
+    private static final long SETTLE_MILLIS = 1000;
+    // time given to the flight recorder to deliver the last events
+    private static final long RECORDING_FLUSH_MILLIS = 3000;
+
+    private static volatile long framesReceived;
+
+    /**
+     * The measurements of one combination of frame rate and body count
+     */
+    private static final class Step {
+        final double rate;
+        final int bodies;
+        // read by the flight recorder's thread
+        volatile Instant start;
+        volatile Instant end;
+        double seconds;
+        long framesSent;
+        long framesReceived;
+        long udpReceiveBufferErrors = -1;
+        long heapBefore;
+        long heapAfter;
+        final LatencyHistogram decode = new LatencyHistogram();
+        final LatencyHistogram paint = new LatencyHistogram();
+        long gcPauseCount;
+        long gcPauseTotalNanos;
+        long gcPauseMaxNanos;
+
+        Step(double rate, int bodies) {
+            this.rate = rate;
+            this.bodies = bodies;
+        }
+
+        boolean contains(Instant time) {
+            return start != null && !time.isBefore(start)
+                    && (end == null || time.isBefore(end));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SECONDS;
+        double[] rates = parseList(args.length > 1 ? args[1] : DEFAULT_RATES);
+        double[] bodyCounts = parseList(args.length > 2 ? args[2] : DEFAULT_BODY_COUNTS);
+        Path reportFile = args.length > 3 ? Paths.get(args[3]) : null;
+
+        System.setProperty("java.awt.headless", "true");
+        Path sessions = Files.createTempDirectory("soak-test");
+        System.setProperty(ApplicationCanvas.SESSION_DIRECTORY_PROPERTY, sessions.toString());
+        System.setProperty(ApplicationCanvas.EVENT_LOG_DIRECTORY_PROPERTY, sessions.toString());
+        System.setProperty(ApplicationCanvas.LEADERBOARD_FILE_PROPERTY,
+                sessions.resolve("leaderboard.dat").toString());
+
+        List<Step> steps = new ArrayList<>();
+        for (double rate : rates) {
+            for (double bodies : bodyCounts) {
+                steps.add(new Step(rate, (int) bodies));
+            }
+        }
+
+        // decode times and GC pauses come from the flight recorder;
+        // each event is credited to the step it happened in
+        RecordingStream recording = new RecordingStream();
+        recording.enable("goalchase.FrameDecoded").withoutThreshold();
+        recording.enable("jdk.GarbageCollection");
+        recording.onEvent("goalchase.FrameDecoded", event -> {
+            Step step = findStep(steps, event.getEndTime());
+            if (step != null) {
+                synchronized (step) {
+                    step.decode.record(event.getDuration().toNanos());
+                }
+            }
+        });
+        recording.onEvent("jdk.GarbageCollection", event -> {
+            Step step = findStep(steps, event.getStartTime());
+            if (step != null) {
+                long pauses = event.getDuration("sumOfPauses").toNanos();
+                synchronized (step) {
+                    step.gcPauseCount++;
+                    step.gcPauseTotalNanos += pauses;
+                    step.gcPauseMaxNanos = Math.max(step.gcPauseMaxNanos,
+                            event.getDuration("longestPause").toNanos());
+                }
+            }
+        });
+        recording.startAsync();
+
+        CompletableFuture<Sprites> sprites = Sprites.loadAsync();
+        sprites.join();
+        try (MotiveSimulator simulator = new MotiveSimulator(0, rates[0],
+                (int) bodyCounts[0])) {
+            CommandStreamManager streamManager = new CommandStreamManager(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                            simulator.getCommandPort()), 0);
+            FrameUpdateListener counter = () -> framesReceived++;
+            streamManager.addFrameUpdateListener(counter);
+            ApplicationCanvas canvas = new ApplicationCanvas(sprites, streamManager);
+            canvas.setSize(canvas.getPreferredSize());
+            BufferedImage image = new BufferedImage(canvas.getWidth(), canvas.getHeight(),
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            KeyEvent startRound = new KeyEvent(canvas, KeyEvent.KEY_PRESSED,
+                    System.currentTimeMillis(), 0, KeyEvent.VK_SPACE, ' ');
+
+            for (Step step : steps) {
+                System.err.printf("%.0f Hz, %d bodies...%n", step.rate, step.bodies);
+                simulator.setFrameRate(step.rate);
+                simulator.setBodyCount(step.bodies);
+                canvas.keyPressed(startRound);
+                paintFor(canvas, g, step, SETTLE_MILLIS * 1_000_000, startRound);
+
+                step.heapBefore = usedHeapAfterGC();
+                long udpErrors = readUdpReceiveBufferErrors();
+                long sent = simulator.getFramesSent();
+                long received = framesReceived;
+                long startNanos = System.nanoTime();
+                step.start = Instant.now();
+                paintFor(canvas, g, step, seconds * 1_000_000_000L, startRound);
+                step.end = Instant.now();
+                step.seconds = (System.nanoTime() - startNanos) / 1e9;
+                step.framesSent = simulator.getFramesSent() - sent;
+                step.framesReceived = framesReceived - received;
+                long udpErrorsAfter = readUdpReceiveBufferErrors();
+                if (udpErrors >= 0 && udpErrorsAfter >= 0) {
+                    step.udpReceiveBufferErrors = udpErrorsAfter - udpErrors;
+                }
+                step.heapAfter = usedHeapAfterGC();
+            }
+            streamManager.stop();
+            g.dispose();
+        }
+
+        Thread.sleep(RECORDING_FLUSH_MILLIS);
+        recording.close();
+        deleteSessions(sessions);
+
+        if (reportFile != null) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(reportFile),
+                    false, StandardCharsets.UTF_8)) {
+                writeReport(out, seconds, steps);
+            }
+        } else {
+            writeReport(System.out, seconds, steps);
+        }
+    }
+
+    /**
+     * Paints the canvas whenever a new frame has arrived (at most
+     * PAINT_RATE times a second) for the given time, starting a new
+     * round whenever one ends
+     */
+    private static void paintFor(ApplicationCanvas canvas, Graphics2D g, Step step,
+            long nanos, KeyEvent startRound) throws InterruptedException {
+        long paintInterval = Math.round(1e9 / PAINT_RATE);
+        long start = System.nanoTime();
+        long nextPaint = start;
+        long nextRoundCheck = start;
+        long painted = framesReceived;
+        long now;
+        while ((now = System.nanoTime()) - start < nanos) {
+            if (now - nextRoundCheck >= 0) {
+                // does nothing while a round is being played
+                canvas.keyPressed(startRound);
+                nextRoundCheck = now + 1_000_000_000L;
+            }
+            if (now - nextPaint >= 0 && framesReceived != painted) {
+                painted = framesReceived;
+                long before = System.nanoTime();
+                canvas.paint(g);
+                long duration = System.nanoTime() - before;
+                if (step.start != null) {
+                    synchronized (step) {
+                        step.paint.record(duration);
+                    }
+                }
+                nextPaint = before + paintInterval;
+            } else {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static Step findStep(List<Step> steps, Instant time) {
+        for (Step step : steps) {
+            if (step.contains(time)) {
+                return step;
+            }
+        }
+        return null;
+    }
+
+    private static long usedHeapAfterGC() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Reads the kernel's count of UDP datagrams dropped because a
+     * socket's receive buffer was full
+     * @return the count, or -1 if it isn't available
+     */
+    private static long readUdpReceiveBufferErrors() {
+        try {
+            List<String> lines = Files.readAllLines(Paths.get("/proc/net/snmp"));
+            for (int i = 0; i + 1 < lines.size(); i++) {
+                if (lines.get(i).startsWith("Udp:") && lines.get(i + 1).startsWith("Udp:")) {
+                    String[] names = lines.get(i).trim().split("\\s+");
+                    String[] values = lines.get(i + 1).trim().split("\\s+");
+                    for (int f = 1; f < names.length && f < values.length; f++) {
+                        if (names[f].equals("RcvbufErrors")) {
+                            return Long.parseLong(values[f]);
+                        }
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // not Linux, or not readable
+        }
+        return -1;
+    }
+
+    private static void writeReport(PrintStream out, int seconds, List<Step> steps) {
+        out.println("{");
+        out.printf(Locale.ROOT, "  \"javaVersion\": \"%s\",%n",
+                System.getProperty("java.version"));
+        out.print("  \"garbageCollectors\": [");
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        for (int i = 0; i < collectors.size(); i++) {
+            out.printf(Locale.ROOT, "%s\"%s\"", i == 0 ? "" : ", ",
+                    collectors.get(i).getName());
+        }
+        out.println("],");
+        out.printf(Locale.ROOT, "  \"secondsPerStep\": %d,%n", seconds);
+        out.println("  \"steps\": [");
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            synchronized (step) {
+                out.println("    {");
+                out.printf(Locale.ROOT, "      \"frameRate\": %s,%n", number(step.rate));
+                out.printf(Locale.ROOT, "      \"bodyCount\": %d,%n", step.bodies);
+                out.printf(Locale.ROOT, "      \"seconds\": %s,%n", number(step.seconds));
+                out.printf(Locale.ROOT, "      \"framesSent\": %d,%n", step.framesSent);
+                out.printf(Locale.ROOT, "      \"framesReceived\": %d,%n", step.framesReceived);
+                out.printf(Locale.ROOT, "      \"framesLost\": %d,%n",
+                        Math.max(0, step.framesSent - step.framesReceived));
+                out.printf(Locale.ROOT, "      \"packetsPerSecond\": %s,%n",
+                        number(step.framesReceived / step.seconds));
+                out.printf(Locale.ROOT, "      \"udpReceiveBufferErrors\": %s,%n",
+                        step.udpReceiveBufferErrors >= 0
+                                ? Long.toString(step.udpReceiveBufferErrors) : "null");
+                out.printf(Locale.ROOT, "      \"decodeNanos\": %s,%n", step.decode.toJson());
+                out.printf(Locale.ROOT, "      \"paintNanos\": %s,%n", step.paint.toJson());
+                out.printf(Locale.ROOT, "      \"gcPauses\": {\"count\": %d, \"totalNanos\": %d, "
+                        + "\"maxNanos\": %d},%n", step.gcPauseCount,
+                        step.gcPauseTotalNanos, step.gcPauseMaxNanos);
+                out.printf(Locale.ROOT, "      \"heapUsedBeforeBytes\": %d,%n", step.heapBefore);
+                out.printf(Locale.ROOT, "      \"heapUsedAfterBytes\": %d,%n", step.heapAfter);
+                out.printf(Locale.ROOT, "      \"heapGrowthBytes\": %d%n",
+                        step.heapAfter - step.heapBefore);
+                out.printf(Locale.ROOT, "    }%s%n", i + 1 < steps.size() ? "," : "");
+            }
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static double[] parseList(String list) {
+        String[] parts = list.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+
+    private static void deleteSessions(Path sessions) throws IOException {
+        try (Stream<Path> files = Files.list(sessions)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(sessions);
+    }
+
+    /**
+     * A histogram of durations with about 1.6% precision, in constant
+     * memory however long the test runs: each power of two is split
+     * into SUB_BUCKETS / 2 linear buckets
+     */
+    private static final class LatencyHistogram {
+        private static final int SUB_BUCKET_BITS = 7;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final long[] counts = new long[64 * SUB_BUCKETS];
+        private long total;
+        private long max;
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            counts[bucketOf(nanos)]++;
+            total++;
+            max = Math.max(max, nanos);
+        }
+
+        private static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+            int subBucket = (int) (value >>> exponent) - SUB_BUCKETS / 2;
+            return exponent * SUB_BUCKETS / 2 + SUB_BUCKETS / 2 + subBucket;
+        }
+
+        /**
+         * @return the largest value that falls in a bucket
+         */
+        private static long highestValueIn(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = (bucket - SUB_BUCKETS / 2) / (SUB_BUCKETS / 2);
+            int subBucket = (bucket - SUB_BUCKETS / 2) % (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+            return (((long) subBucket + 1) << exponent) - 1;
+        }
+
+        long percentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100 * total);
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    return Math.min(highestValueIn(bucket), max);
+                }
+            }
+            return max;
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT, "{\"count\": %d, \"p50\": %d, \"p99\": %d, "
+                    + "\"p999\": %d, \"max\": %d}", total, percentile(50),
+                    percentile(99), percentile(99.9), max);
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.imageio.ImageIO;
+
+/**
+ * This class holds the game's sprites (the car images).
+ *
+ * Sprites are loaded in the background, in parallel, while the window
+ * is being shown. Each one is decoded, made square and converted to
+ * the display's own image format, so drawing it later doesn't need a
+ * format conversion every frame.
+ *
+ * @author Lauren Knight
+ */
+public final class Sprites {
+
+    public static final String CAR_YELLOW = "images/car-yellow.png";
+    public static final String CAR_GREEN = "images/car-green.png";
+    public static final String CAR_PURPLE = "images/car-purple.png";
+
+    private static final String[] ALL = { CAR_YELLOW, CAR_GREEN, CAR_PURPLE };
+
+    private final Map<String, BufferedImage> images;
+
+    private Sprites(Map<String, BufferedImage> images) {
+        this.images = images;
+    }
+
+    /**
+     * Starts loading every sprite, each on its own worker thread
+     * @return a future that completes once all of the sprites have been
+     * loaded; sprites that could not be loaded are left out
+     */
+    public static CompletableFuture<Sprites> loadAsync() {
+        List<CompletableFuture<BufferedImage>> loads = new ArrayList<>();
+        for (String path : ALL) {
+            loads.add(CompletableFuture.supplyAsync(() -> load(path))
+                    .exceptionally(e -> {
+                        System.out.println("Unable to load image " + path + "!");
+                        e.printStackTrace();
+                        return null;
+                    }));
+        }
+        CompletableFuture<?>[] all = loads.toArray(new CompletableFuture<?>[0]);
+        return CompletableFuture.allOf(all).thenApply(done -> {
+            Map<String, BufferedImage> images = new HashMap<>();
+            for (int i = 0; i < ALL.length; i++) {
+                BufferedImage image = loads.get(i).join();
+                if (image != null) {
+                    images.put(ALL[i], image);
+                }
+            }
+            return new Sprites(images);
+        });
+    }
+
+    /**
+     * @param path the path of the sprite, one of this class's constants
+     * @return the sprite, or null if it could not be loaded
+     */
+    public BufferedImage get(String path) {
+        return images.get(path);
+    }
+
+    private static BufferedImage load(String path) {
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new File(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (image == null) {
+            throw new UncheckedIOException(new IOException("Unknown image format"));
+        }
+        return squarifyImage(image);
+    }
+
+    /**
+     * Expands the dimensions of an image without altering the original
+     * image, making the width and height equal and centering the original
+     * image in the middle of the new image.
+     * @param img The image to 'squarify'
+     * @return A new image, compatible with the display, containing the
+     * expanded image
+     */
+    private static BufferedImage squarifyImage(BufferedImage img) {
+        int newWidthHeight = Math.max(img.getWidth(), img.getHeight());
+        BufferedImage newImg;
+        if (GraphicsEnvironment.isHeadless()) {
+            newImg = new BufferedImage(newWidthHeight, newWidthHeight,
+                    BufferedImage.TYPE_INT_ARGB_PRE);
+        } else {
+            GraphicsConfiguration config = GraphicsEnvironment
+                    .getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDefaultConfiguration();
+            newImg = config.createCompatibleImage(newWidthHeight, newWidthHeight,
+                    Transparency.TRANSLUCENT);
+        }
+        Graphics2D g = newImg.createGraphics();
+        g.drawImage(img, 0, newWidthHeight / 4, null);
+        g.dispose();
+        return newImg;
+    }
+
+}
@@ -0,0 +1,60 @@
+import java.io.IOException;
+
+import eventlog.EventLog;
+import eventlog.EventLogFormat;
+import motive.ActivityLevel;
+import motive.ActivityLevelListener;
+import motive.ConnectionState;
+import motive.ConnectionStateListener;
+import motive.StreamEventListener;
+
+/**
+ * This class writes what happens to the game's connection to Motive
+ * (connection changes, stalls, bad packets and activity levels) to the
+ * game's EventLog, so that the stream manager never prints them.
+ *
+ * @author Lauren Knight
+ */
+public class StreamEventLogger implements StreamEventListener,
+        ConnectionStateListener, ActivityLevelListener {
+
+    private final EventLog log;
+
+    /**
+     * @param log the log to write the events to
+     */
+    public StreamEventLogger(EventLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public void serverInfoReceived(int natNetMajor, int natNetMinor) {
+        log.log(EventLogFormat.EVENT_SERVER_INFO, natNetMajor, natNetMinor);
+    }
+
+    @Override
+    public void connectionLost(IOException cause) {
+        // logged as the DISCONNECTED state that follows
+    }
+
+    @Override
+    public void streamStalled(long timeoutMillis) {
+        log.log(EventLogFormat.EVENT_STREAM_STALLED, (int) timeoutMillis);
+    }
+
+    @Override
+    public void badPacketReceived(short messageType, RuntimeException cause) {
+        log.log(EventLogFormat.EVENT_BAD_PACKET, messageType);
+    }
+
+    @Override
+    public void connectionStateChanged(ConnectionState state) {
+        log.log(EventLogFormat.EVENT_CONNECTION_STATE, state.ordinal());
+    }
+
+    @Override
+    public void activityLevelChanged(ActivityLevel level) {
+        log.log(EventLogFormat.EVENT_ACTIVITY_LEVEL, level.ordinal());
+    }
+
+}
@@ -0,0 +1,37 @@
+import java.util.function.IntFunction;
+
+/**
+ * This class caches the text shown for a number (a score, the time
+ * remaining, ...), formatting it again only when the number changes,
+ * so that painting doesn't create new Strings every frame.
+ *
+ * A TextCache should only be used from one thread (the Swing thread).
+ *
+ * @author Lauren Knight
+ */
+public class TextCache {
+
+    private final IntFunction<String> formatter;
+    private int value;
+    private String text;
+
+    /**
+     * @param formatter formats a number as text
+     */
+    public TextCache(IntFunction<String> formatter) {
+        this.formatter = formatter;
+    }
+
+    /**
+     * @param value the number to show
+     * @return the text for the number
+     */
+    public String get(int value) {
+        if (text == null || value != this.value) {
+            this.value = value;
+            text = formatter.apply(value);
+        }
+        return text;
+    }
+
+}
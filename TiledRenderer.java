@@ -0,0 +1,417 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class draws a frame in parallel: the frame is split into square
+ * tiles, which are drawn at the same time by the threads of a
+ * ForkJoinPool, straight into the pixels of a single image. The image
+ * can then be copied to the screen in one drawImage call.
+ *
+ * A frame is described by calling begin(), then fillRect(), drawImage()
+ * and drawLine() in drawing order (much as with a Graphics), then
+ * render(). render() sorts the items into bins, one per tile, by the
+ * tiles they overlap, so each tile only looks at what is drawn on it.
+ * Tiles never share pixels, so the threads need no locking, and drawing
+ * a frame takes roughly the time of the slowest tile rather than of
+ * the whole frame.
+ *
+ * Images are drawn unscaled, blended with SRC_OVER. Images that are not
+ * TYPE_INT_ARGB or TYPE_INT_ARGB_PRE are converted once, when first
+ * drawn, and the copy kept (so they must not change afterwards). Lines
+ * are one pixel wide and not anti-aliased.
+ *
+ * Describing and rendering a frame create no objects once the item and
+ * bin arrays have grown to fit. The describing methods and render() must
+ * be called from one thread at a time.
+ *
+ * @author Lauren Knight
+ */
+public class TiledRenderer {
+
+    // the default width and height of a tile, in pixels
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private static final int ITEM_IMAGE = 0;
+    private static final int ITEM_RECT = 1;
+    private static final int ITEM_LINE = 2;
+
+    private final ForkJoinPool pool;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tileColumns;
+    private final int tileRows;
+    private final BufferedImage image;
+    private final int[] pixels;
+
+    // the frame's items, in drawing order: a rectangle (or for lines,
+    // the two end points), a premultiplied color, and an image's pixels
+    private int itemCount;
+    private int[] itemKinds = new int[64];
+    private int[] itemX = new int[64];
+    private int[] itemY = new int[64];
+    private int[] itemX2 = new int[64];
+    private int[] itemY2 = new int[64];
+    private int[] itemColors = new int[64];
+    private int[][] itemPixels = new int[64][];
+    private int[] itemStrides = new int[64];
+    private boolean[] itemPremultiplied = new boolean[64];
+
+    // for each tile, the items that overlap it, in drawing order
+    private final int[][] bins;
+    private final int[] binSizes;
+
+    // one task per tile, reused every frame
+    private final TileTask[] tasks;
+    private final RecursiveAction allTiles = new RecursiveAction() {
+        @Override
+        protected void compute() {
+            ForkJoinTask.invokeAll(tasks);
+        }
+    };
+
+    // copies of images that are not in a format drawn directly
+    private final Map<BufferedImage, int[]> converted = new WeakHashMap<>();
+
+    /**
+     * Creates a renderer with tiles of DEFAULT_TILE_SIZE, drawn by the
+     * common ForkJoinPool
+     * @param width the width of the frame, in pixels
+     * @param height the height of the frame, in pixels
+     */
+    public TiledRenderer(int width, int height) {
+        this(width, height, DEFAULT_TILE_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a renderer
+     * @param width the width of the frame, in pixels
+     * @param height the height of the frame, in pixels
+     * @param tileSize the width and height of a tile, in pixels
+     * @param pool the pool to draw the tiles with
+     */
+    public TiledRenderer(int width, int height, int tileSize, ForkJoinPool pool) {
+        if (width <= 0 || height <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException("Sizes must be positive");
+        }
+        this.pool = pool;
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        tileColumns = (width + tileSize - 1) / tileSize;
+        tileRows = (height + tileSize - 1) / tileSize;
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int tiles = tileColumns * tileRows;
+        bins = new int[tiles][16];
+        binSizes = new int[tiles];
+        tasks = new TileTask[tiles];
+        for (int i = 0; i < tiles; i++) {
+            tasks[i] = new TileTask(i);
+        }
+    }
+
+    /**
+     * Draws one tile; a task is reinitialized and forked again each frame
+     */
+    @SuppressWarnings("serial")
+    private final class TileTask extends RecursiveAction {
+        private final int tile;
+
+        TileTask(int tile) {
+            this.tile = tile;
+        }
+
+        @Override
+        protected void compute() {
+            drawTile(tile);
+        }
+    }
+
+    /**
+     * Starts describing a new frame, forgetting the previous frame's items
+     */
+    public void begin() {
+        // let go of the previous frame's images
+        Arrays.fill(itemPixels, 0, itemCount, null);
+        itemCount = 0;
+    }
+
+    /**
+     * Fills a rectangle with a color
+     */
+    public void fillRect(int x, int y, int width, int height, Color color) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        int i = addItem(ITEM_RECT, x, y, x + width, y + height);
+        itemColors[i] = premultiply(color.getRGB());
+    }
+
+    /**
+     * Draws a one pixel wide line between two points (inclusive)
+     */
+    public void drawLine(int x1, int y1, int x2, int y2, Color color) {
+        int i = addItem(ITEM_LINE, x1, y1, x2, y2);
+        itemColors[i] = premultiply(color.getRGB());
+    }
+
+    /**
+     * Draws an image, unscaled, with its top left corner at (x, y)
+     */
+    public void drawImage(BufferedImage image, int x, int y) {
+        if (image == null) {
+            return;
+        }
+        int[] source;
+        boolean premultiplied;
+        int type = image.getType();
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_ARGB_PRE)
+                && image.getRaster().getParent() == null) {
+            source = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            premultiplied = type == BufferedImage.TYPE_INT_ARGB_PRE;
+        } else {
+            source = converted.get(image);
+            if (source == null) {
+                source = convert(image);
+                converted.put(image, source);
+            }
+            premultiplied = true;
+        }
+        int i = addItem(ITEM_IMAGE, x, y, x + image.getWidth(), y + image.getHeight());
+        itemPixels[i] = source;
+        itemStrides[i] = image.getWidth();
+        itemPremultiplied[i] = premultiplied;
+    }
+
+    /**
+     * Draws the frame described since begin(), returning once every
+     * tile has been drawn
+     */
+    public void render() {
+        Arrays.fill(binSizes, 0);
+        for (int i = 0; i < itemCount; i++) {
+            int x1 = Math.min(itemX[i], itemX2[i]);
+            int x2 = Math.max(itemX[i], itemX2[i]);
+            int y1 = Math.min(itemY[i], itemY2[i]);
+            int y2 = Math.max(itemY[i], itemY2[i]);
+            if (itemKinds[i] != ITEM_LINE) {
+                // rectangles and images end before x2, y2
+                x2--;
+                y2--;
+            }
+            if (x2 < 0 || y2 < 0 || x1 >= width || y1 >= height) {
+                continue;
+            }
+            int firstColumn = Math.max(x1, 0) / tileSize;
+            int lastColumn = Math.min(x2, width - 1) / tileSize;
+            int firstRow = Math.max(y1, 0) / tileSize;
+            int lastRow = Math.min(y2, height - 1) / tileSize;
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    addToBin(row * tileColumns + column, i);
+                }
+            }
+        }
+        for (TileTask task : tasks) {
+            task.reinitialize();
+        }
+        allTiles.reinitialize();
+        pool.invoke(allTiles);
+    }
+
+    /**
+     * Copies the last frame rendered to a Graphics
+     */
+    public void draw(Graphics2D g, int x, int y) {
+        g.drawImage(image, x, y, null);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    private int addItem(int kind, int x, int y, int x2, int y2) {
+        if (itemCount == itemKinds.length) {
+            int capacity = itemCount * 2;
+            itemKinds = Arrays.copyOf(itemKinds, capacity);
+            itemX = Arrays.copyOf(itemX, capacity);
+            itemY = Arrays.copyOf(itemY, capacity);
+            itemX2 = Arrays.copyOf(itemX2, capacity);
+            itemY2 = Arrays.copyOf(itemY2, capacity);
+            itemColors = Arrays.copyOf(itemColors, capacity);
+            itemPixels = Arrays.copyOf(itemPixels, capacity);
+            itemStrides = Arrays.copyOf(itemStrides, capacity);
+            itemPremultiplied = Arrays.copyOf(itemPremultiplied, capacity);
+        }
+        int i = itemCount++;
+        itemKinds[i] = kind;
+        itemX[i] = x;
+        itemY[i] = y;
+        itemX2[i] = x2;
+        itemY2[i] = y2;
+        return i;
+    }
+
+    private void addToBin(int tile, int item) {
+        int size = binSizes[tile];
+        if (size == bins[tile].length) {
+            bins[tile] = Arrays.copyOf(bins[tile], size * 2);
+        }
+        bins[tile][size] = item;
+        binSizes[tile] = size + 1;
+    }
+
+    /**
+     * Draws every item in a tile's bin, clipped to the tile
+     */
+    private void drawTile(int tile) {
+        int left = (tile % tileColumns) * tileSize;
+        int top = (tile / tileColumns) * tileSize;
+        int right = Math.min(left + tileSize, width);
+        int bottom = Math.min(top + tileSize, height);
+        int[] bin = bins[tile];
+        int size = binSizes[tile];
+        for (int b = 0; b < size; b++) {
+            int i = bin[b];
+            switch (itemKinds[i]) {
+                case ITEM_RECT:
+                    fillTile(i, left, top, right, bottom);
+                    break;
+                case ITEM_IMAGE:
+                    drawImageTile(i, left, top, right, bottom);
+                    break;
+                default:
+                    drawLineTile(i, left, top, right, bottom);
+                    break;
+            }
+        }
+    }
+
+    private void fillTile(int i, int left, int top, int right, int bottom) {
+        int x1 = Math.max(itemX[i], left);
+        int x2 = Math.min(itemX2[i], right);
+        int y1 = Math.max(itemY[i], top);
+        int y2 = Math.min(itemY2[i], bottom);
+        int color = itemColors[i];
+        if ((color >>> 24) == 255) {
+            for (int y = y1; y < y2; y++) {
+                Arrays.fill(pixels, y * width + x1, y * width + x2, color);
+            }
+        } else if (color != 0) {
+            for (int y = y1; y < y2; y++) {
+                for (int p = y * width + x1, end = y * width + x2; p < end; p++) {
+                    pixels[p] = blend(pixels[p], color);
+                }
+            }
+        }
+    }
+
+    private void drawImageTile(int i, int left, int top, int right, int bottom) {
+        int x1 = Math.max(itemX[i], left);
+        int x2 = Math.min(itemX2[i], right);
+        int y1 = Math.max(itemY[i], top);
+        int y2 = Math.min(itemY2[i], bottom);
+        int[] source = itemPixels[i];
+        int stride = itemStrides[i];
+        boolean premultiplied = itemPremultiplied[i];
+        for (int y = y1; y < y2; y++) {
+            int s = (y - itemY[i]) * stride + (x1 - itemX[i]);
+            for (int p = y * width + x1, end = y * width + x2; p < end; p++, s++) {
+                int color = source[s];
+                int alpha = color >>> 24;
+                if (alpha == 255) {
+                    pixels[p] = color;
+                } else if (alpha != 0) {
+                    pixels[p] = blend(pixels[p], premultiplied ? color : premultiply(color));
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the part of a line inside a tile (Bresenham's algorithm)
+     */
+    private void drawLineTile(int i, int left, int top, int right, int bottom) {
+        int x = itemX[i];
+        int y = itemY[i];
+        int x2 = itemX2[i];
+        int y2 = itemY2[i];
+        int color = itemColors[i];
+        int dx = Math.abs(x2 - x);
+        int dy = -Math.abs(y2 - y);
+        int stepX = x < x2 ? 1 : -1;
+        int stepY = y < y2 ? 1 : -1;
+        int error = dx + dy;
+        while (true) {
+            if (x >= left && x < right && y >= top && y < bottom) {
+                int p = y * width + x;
+                pixels[p] = blend(pixels[p], color);
+            }
+            if (x == x2 && y == y2) {
+                break;
+            }
+            int e2 = 2 * error;
+            if (e2 >= dy) {
+                error += dy;
+                x += stepX;
+            }
+            if (e2 <= dx) {
+                error += dx;
+                y += stepY;
+            }
+        }
+    }
+
+    /**
+     * Blends a premultiplied color over another (SRC_OVER)
+     */
+    private static int blend(int destination, int source) {
+        int inverse = 255 - (source >>> 24);
+        return source + scale(destination, inverse);
+    }
+
+    /**
+     * Multiplies each channel of a color by alpha / 255, rounded
+     */
+    private static int scale(int color, int alpha) {
+        int redBlue = (color & 0xFF00FF) * alpha + 0x800080;
+        redBlue = ((redBlue + ((redBlue >>> 8) & 0xFF00FF)) >>> 8) & 0xFF00FF;
+        int alphaGreen = ((color >>> 8) & 0xFF00FF) * alpha + 0x800080;
+        alphaGreen = (alphaGreen + ((alphaGreen >>> 8) & 0xFF00FF)) & 0xFF00FF00;
+        return alphaGreen | redBlue;
+    }
+
+    private static int premultiply(int argb) {
+        int alpha = argb >>> 24;
+        if (alpha == 255) {
+            return argb;
+        }
+        return (alpha << 24) | (scale(argb, alpha) & 0xFFFFFF);
+    }
+
+    /**
+     * Copies an image into premultiplied ARGB pixels
+     */
+    private static int[] convert(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(),
+                BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = copy.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+    }
+
+}
@@ -0,0 +1,297 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class runs game events (the end of a round, countdown ticks,
+ * goal expiry, power-ups) at set times, on its own thread.
+ *
+ * Time is measured with System.nanoTime, so timers are unaffected by
+ * changes to the wall clock, and they fire on time whether or not
+ * frames are arriving from Motive.
+ *
+ * Timers are kept in a hierarchical timing wheel: LEVELS wheels of
+ * SLOTS slots each, where a slot of the lowest wheel covers one tick
+ * and a slot of each higher wheel covers a full turn of the wheel below
+ * it. A timer is placed in the lowest wheel whose turn contains its
+ * deadline, and is moved down a wheel each time the wheels turn past
+ * its slot, so scheduling and cancelling a timer take constant time
+ * however many timers are pending.
+ *
+ * Tasks run on the timer thread and should be short.
+ *
+ * @author Lauren Knight
+ */
+public class TimerWheel implements AutoCloseable {
+
+    // the default length of a tick
+    public static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickNanos;
+    private final long startNanos;
+    // the head of each slot's list of timers, by level and slot
+    private final Timer[][] wheels = new Timer[LEVELS][SLOTS];
+    // the last tick that has been processed
+    private long currentTick;
+    private int pendingCount;
+
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * A scheduled task, which may be cancelled before it runs
+     */
+    public final class Timer {
+        private final Runnable task;
+        // the time between runs of a periodic timer, in ticks (0 if not periodic)
+        private final long periodTicks;
+        private long deadlineTick;
+        private boolean pending;
+        private boolean cancelled;
+        private Timer previous;
+        private Timer next;
+        private int level;
+        private int slot;
+
+        private Timer(Runnable task, long deadlineTick, long periodTicks) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+            this.periodTicks = periodTicks;
+        }
+
+        /**
+         * Stops the timer from running (again)
+         * @return true if the timer was pending
+         */
+        public boolean cancel() {
+            synchronized (TimerWheel.this) {
+                cancelled = true;
+                if (!pending) {
+                    return false;
+                }
+                unlink(this);
+                return true;
+            }
+        }
+
+        /**
+         * @return true if the timer is waiting to run
+         */
+        public boolean isPending() {
+            synchronized (TimerWheel.this) {
+                return pending;
+            }
+        }
+
+        /**
+         * @param unit the unit of the result
+         * @return the time until the timer runs, or 0 if it is not pending
+         */
+        public long getRemaining(TimeUnit unit) {
+            long deadlineNanos;
+            synchronized (TimerWheel.this) {
+                if (!pending) {
+                    return 0;
+                }
+                deadlineNanos = startNanos + deadlineTick * tickNanos;
+            }
+            return unit.convert(Math.max(0, deadlineNanos - System.nanoTime()),
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Creates a timer wheel with the default tick, and starts its thread
+     * @param name the name of the timer thread
+     */
+    public TimerWheel(String name) {
+        this(name, DEFAULT_TICK_NANOS);
+    }
+
+    /**
+     * Creates a timer wheel and starts its thread
+     * @param name the name of the timer thread
+     * @param tickNanos the length of a tick; timers fire up to one tick late
+     */
+    public TimerWheel(String name, long tickNanos) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickNanos);
+        }
+        this.tickNanos = tickNanos;
+        startNanos = System.nanoTime();
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Schedules a task to run once
+     * @param task the task to run
+     * @param delay the time to wait before running the task
+     * @param unit the unit of the delay
+     * @return the timer, which can be used to cancel the task
+     */
+    public Timer schedule(Runnable task, long delay, TimeUnit unit) {
+        return schedule(task, delay, 0, unit);
+    }
+
+    /**
+     * Schedules a task to run repeatedly, until it is cancelled
+     * @param task the task to run
+     * @param period the time between runs (and before the first run)
+     * @param unit the unit of the period
+     * @return the timer, which can be used to cancel the task
+     */
+    public Timer scheduleAtFixedRate(Runnable task, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        return schedule(task, period, Math.max(1, unit.toNanos(period) / tickNanos), unit);
+    }
+
+    private Timer schedule(Runnable task, long delay, long periodTicks, TimeUnit unit) {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(Math.max(0, delay));
+        // round up, so that a task never runs early
+        long deadlineTick = (deadlineNanos - startNanos + tickNanos - 1) / tickNanos;
+        synchronized (this) {
+            Timer timer = new Timer(task, Math.max(deadlineTick, currentTick + 1),
+                    periodTicks);
+            link(timer);
+            return timer;
+        }
+    }
+
+    /**
+     * @return the number of timers waiting to run
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Adds a timer to the slot that its deadline falls in, in the lowest
+     * wheel whose current turn contains the deadline
+     */
+    private void link(Timer timer) {
+        int level = 0;
+        while (level < LEVELS - 1
+                && ((timer.deadlineTick ^ currentTick) >>> (SLOT_BITS * (level + 1))) != 0) {
+            level++;
+        }
+        int slot = (int) (timer.deadlineTick >>> (SLOT_BITS * level)) & SLOT_MASK;
+        timer.level = level;
+        timer.slot = slot;
+        timer.previous = null;
+        timer.next = wheels[level][slot];
+        if (timer.next != null) {
+            timer.next.previous = timer;
+        }
+        wheels[level][slot] = timer;
+        timer.pending = true;
+        pendingCount++;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.previous != null) {
+            timer.previous.next = timer.next;
+        } else {
+            wheels[timer.level][timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+        timer.pending = false;
+        pendingCount--;
+    }
+
+    /**
+     * Advances the wheels by one tick, moving timers down from the higher
+     * wheels whose slots have come due
+     * @return the timers due on the new tick, linked through their next fields
+     */
+    private synchronized Timer advance() {
+        currentTick++;
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                break;
+            }
+            int slot = (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK;
+            Timer timer = wheels[level][slot];
+            wheels[level][slot] = null;
+            while (timer != null) {
+                Timer next = timer.next;
+                pendingCount--;
+                link(timer);
+                timer = next;
+            }
+        }
+
+        int slot = (int) currentTick & SLOT_MASK;
+        Timer due = null;
+        Timer timer = wheels[0][slot];
+        while (timer != null) {
+            Timer next = timer.next;
+            if (timer.deadlineTick <= currentTick) {
+                unlink(timer);
+                timer.next = due;
+                due = timer;
+            }
+            timer = next;
+        }
+        return due;
+    }
+
+    private void run() {
+        while (running) {
+            long targetTick = (System.nanoTime() - startNanos) / tickNanos;
+            long tick;
+            synchronized (this) {
+                tick = currentTick;
+            }
+            if (tick >= targetTick) {
+                LockSupport.parkNanos(this,
+                        startNanos + (tick + 1) * tickNanos - System.nanoTime());
+                continue;
+            }
+            Timer due = advance();
+            while (due != null) {
+                Timer next = due.next;
+                due.next = null;
+                try {
+                    due.task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                if (due.periodTicks > 0) {
+                    synchronized (this) {
+                        // a periodic timer cancelled while running stays cancelled
+                        if (!due.cancelled) {
+                            due.deadlineTick += due.periodTicks;
+                            if (due.deadlineTick <= currentTick) {
+                                due.deadlineTick = currentTick + 1;
+                            }
+                            link(due);
+                        }
+                    }
+                }
+                due = next;
+            }
+        }
+    }
+
+    /**
+     * Stops the timer thread; pending timers never run
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+}
@@ -0,0 +1,245 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * This class draws where the cars have driven during the current round:
+ * a fading trail behind each car and a heatmap of every place a car
+ * has been.
+ *
+ * Both are updated incrementally as the cars move. Each new segment
+ * of a car's path is splatted into a preallocated grid of visit counts,
+ * and only the grid cells it touches are recolored (through a color
+ * lookup table) in the heatmap image, so drawing the overlay costs the
+ * same no matter how long the round has gone on. The heatmap image is
+ * kept at the canvas's size, each cell a block of pixels, so that it is
+ * drawn without scaling (scaled drawing creates objects every frame).
+ * The trail is a fixed size ring buffer of recent points per car, drawn
+ * with a precomputed set of fading colors.
+ *
+ * Points are given in canvas (pixel) coordinates.
+ *
+ * @author Lauren Knight
+ */
+public class TrailOverlay {
+
+    // the size of a heatmap cell, in pixels
+    private static final int CELL_SIZE = 4;
+    // visit counts stop increasing here (the hottest color)
+    private static final int MAX_COUNT = 63;
+    // the number of points kept in each car's trail
+    private static final int TRAIL_LENGTH = 240;
+    // the number of distinct shades the trail fades through
+    private static final int TRAIL_SHADES = 16;
+
+    private static final Color TRAIL_COLOR = new Color(255, 220, 64);
+
+    private final int width;
+    private final int height;
+    private final int columns;
+    private final int rows;
+
+    // heatmap
+    private final int[] counts;
+    private final BufferedImage heatmap;
+    private final int[] heatmapPixels;
+    private static final int[] HEAT_COLORS = createHeatColors();
+
+    // trails, one ring buffer of points per car
+    private final int[][] trailX;
+    private final int[][] trailY;
+    private final int[] trailStart;
+    private final int[] trailSize;
+    private static final Color[] TRAIL_COLORS = createTrailColors();
+
+    /**
+     * Creates an overlay
+     * @param width the width of the canvas, in pixels
+     * @param height the height of the canvas, in pixels
+     * @param maxCars the number of cars (body IDs 0 to maxCars - 1)
+     */
+    public TrailOverlay(int width, int height, int maxCars) {
+        this.width = width;
+        this.height = height;
+        columns = (width + CELL_SIZE - 1) / CELL_SIZE;
+        rows = (height + CELL_SIZE - 1) / CELL_SIZE;
+        counts = new int[columns * rows];
+        heatmap = new BufferedImage(columns * CELL_SIZE, rows * CELL_SIZE,
+                BufferedImage.TYPE_INT_ARGB);
+        heatmapPixels = ((DataBufferInt) heatmap.getRaster().getDataBuffer()).getData();
+
+        trailX = new int[maxCars][TRAIL_LENGTH];
+        trailY = new int[maxCars][TRAIL_LENGTH];
+        trailStart = new int[maxCars];
+        trailSize = new int[maxCars];
+    }
+
+    /**
+     * Builds the lookup table from visit count to heatmap color,
+     * running from transparent blue through green and yellow to red.
+     * Counts are scaled logarithmically, so that both a single pass
+     * and a much-driven spot are visible.
+     */
+    private static int[] createHeatColors() {
+        int[] colors = new int[MAX_COUNT + 1];
+        for (int count = 1; count <= MAX_COUNT; count++) {
+            float t = (float) (Math.log(count) / Math.log(MAX_COUNT));
+            float hue = (1 - t) * 0.66f;
+            int rgb = Color.HSBtoRGB(hue, 1f, 1f) & 0xFFFFFF;
+            int alpha = (int) (64 + 128 * t);
+            colors[count] = (alpha << 24) | rgb;
+        }
+        return colors;
+    }
+
+    /**
+     * Builds the trail's fading colors, from transparent (oldest)
+     * to opaque (newest)
+     */
+    private static Color[] createTrailColors() {
+        Color[] colors = new Color[TRAIL_SHADES];
+        for (int i = 0; i < TRAIL_SHADES; i++) {
+            int alpha = 255 * (i + 1) / TRAIL_SHADES;
+            colors[i] = new Color(TRAIL_COLOR.getRed(), TRAIL_COLOR.getGreen(),
+                    TRAIL_COLOR.getBlue(), alpha);
+        }
+        return colors;
+    }
+
+    /**
+     * Adds a car's latest position, extending its trail and
+     * splatting the segment it drove since its previous position
+     * into the heatmap.
+     * @param car the car's body ID
+     * @param x the car's x position on the canvas
+     * @param y the car's y position on the canvas
+     */
+    public synchronized void addPoint(int car, int x, int y) {
+        if (car < 0 || car >= trailSize.length) {
+            return;
+        }
+        int size = trailSize[car];
+        if (size > 0) {
+            int last = (trailStart[car] + size - 1) % TRAIL_LENGTH;
+            int lastX = trailX[car][last];
+            int lastY = trailY[car][last];
+            if (lastX == x && lastY == y) {
+                return;
+            }
+            splatSegment(lastX, lastY, x, y);
+        } else {
+            splatCell(Math.floorDiv(x, CELL_SIZE), Math.floorDiv(y, CELL_SIZE));
+        }
+        int next;
+        if (size == TRAIL_LENGTH) {
+            next = trailStart[car];
+            trailStart[car] = (trailStart[car] + 1) % TRAIL_LENGTH;
+        } else {
+            next = (trailStart[car] + size) % TRAIL_LENGTH;
+            trailSize[car] = size + 1;
+        }
+        trailX[car][next] = x;
+        trailY[car][next] = y;
+    }
+
+    /**
+     * Adds one visit to every heatmap cell along a segment,
+     * except for the cell it starts in (which was counted when
+     * the previous segment ended there)
+     */
+    private void splatSegment(int x0, int y0, int x1, int y1) {
+        int column0 = Math.floorDiv(x0, CELL_SIZE);
+        int row0 = Math.floorDiv(y0, CELL_SIZE);
+        int column1 = Math.floorDiv(x1, CELL_SIZE);
+        int row1 = Math.floorDiv(y1, CELL_SIZE);
+        int steps = Math.max(Math.abs(column1 - column0), Math.abs(row1 - row0));
+        for (int step = 1; step <= steps; step++) {
+            splatCell(column0 + (column1 - column0) * step / steps,
+                    row0 + (row1 - row0) * step / steps);
+        }
+    }
+
+    /**
+     * Adds one visit to a heatmap cell and recolors it
+     */
+    private void splatCell(int column, int row) {
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return;
+        }
+        int cell = row * columns + column;
+        if (counts[cell] < MAX_COUNT) {
+            counts[cell]++;
+            int color = HEAT_COLORS[counts[cell]];
+            int stride = columns * CELL_SIZE;
+            int pixel = row * CELL_SIZE * stride + column * CELL_SIZE;
+            for (int y = 0; y < CELL_SIZE; y++, pixel += stride) {
+                Arrays.fill(heatmapPixels, pixel, pixel + CELL_SIZE, color);
+            }
+        }
+    }
+
+    /**
+     * Clears the trails and heatmap (at the start of a round)
+     */
+    public synchronized void clear() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(heatmapPixels, 0);
+        Arrays.fill(trailSize, 0);
+        Arrays.fill(trailStart, 0);
+    }
+
+    /**
+     * Draws the heatmap and the trails
+     * @param g the canvas to draw to
+     */
+    public synchronized void draw(Graphics2D g) {
+        g.drawImage(heatmap, 0, 0, null);
+
+        for (int car = 0; car < trailSize.length; car++) {
+            int size = trailSize[car];
+            int start = trailStart[car];
+            for (int i = 1; i < size; i++) {
+                int from = (start + i - 1) % TRAIL_LENGTH;
+                int to = (start + i) % TRAIL_LENGTH;
+                // older segments are drawn with more transparent shades
+                int age = size - 1 - i;
+                g.setColor(TRAIL_COLORS[TRAIL_SHADES - 1
+                        - age * TRAIL_SHADES / TRAIL_LENGTH]);
+                g.drawLine(trailX[car][from], trailY[car][from],
+                        trailX[car][to], trailY[car][to]);
+            }
+        }
+    }
+
+    /**
+     * Adds the heatmap and the trails to a frame drawn by a TiledRenderer
+     * @param renderer the renderer describing the frame
+     */
+    public synchronized void draw(TiledRenderer renderer) {
+        renderer.drawImage(heatmap, 0, 0);
+
+        for (int car = 0; car < trailSize.length; car++) {
+            int size = trailSize[car];
+            int start = trailStart[car];
+            for (int i = 1; i < size; i++) {
+                int from = (start + i - 1) % TRAIL_LENGTH;
+                int to = (start + i) % TRAIL_LENGTH;
+                int age = size - 1 - i;
+                renderer.drawLine(trailX[car][from], trailY[car][from],
+                        trailX[car][to], trailY[car][to],
+                        TRAIL_COLORS[TRAIL_SHADES - 1 - age * TRAIL_SHADES / TRAIL_LENGTH]);
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+}
@@ -0,0 +1,352 @@
+package eventlog;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class logs game and stream events (see EventLogFormat) to a
+ * series of rolling files, without holding up the threads that log them.
+ *
+ * Events are written into a preallocated ring buffer: a producer claims
+ * a slot with a single compare-and-set, fills it in and publishes it.
+ * Nothing is allocated, no lock is taken and no I/O is done, so logging
+ * costs tens of nanoseconds on any thread. If the ring is full, the
+ * event is dropped (and counted) rather than waited for.
+ *
+ * A background thread wakes every FLUSH_INTERVAL, takes every published
+ * event from the ring in one batch and appends the batch to the current
+ * file. When a file reaches its maximum size, a new one is started, and
+ * the oldest files are deleted so that at most maxFiles are kept.
+ * If a file can't be written, logging stops: the error is kept (see
+ * getWriteFailure) and later events are counted as dropped. Nothing
+ * is ever printed.
+ *
+ * Event logs can be read with EventLogExport.
+ *
+ * @author Lauren Knight
+ */
+public class EventLog implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final long DEFAULT_MAX_FILE_BYTES = 4 * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 8;
+
+    // how often the background thread writes out events
+    private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final VarHandle PUBLISHED =
+            MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+
+    // the ring: slot i holds an event once published[i] is its sequence + 1
+    private final int mask;
+    private final long[] times;
+    private final int[] types;
+    private final int[] values;
+    private final int[] values2;
+    private final float[] as;
+    private final float[] bs;
+    private final float[] cs;
+    private final long[] published;
+    // the sequence of the next slot to claim, and of the next slot to write out
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+    private final AtomicLong droppedEventCount = new AtomicLong();
+
+    // event times are epoch microseconds, measured with the monotonic clock
+    private final long baseMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    private final long baseNanos = System.nanoTime();
+
+    // used by the writer thread
+    private final ByteBuffer batch;
+    private FileChannel file;
+    private long fileBytes;
+    private long fileStartMillis;
+    // the error that stopped events being written (null if there was none)
+    private volatile IOException writeFailure;
+
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private volatile long eventsWritten;
+
+    /**
+     * Creates a log with the default capacity and file limits, and
+     * starts its background thread, which creates the directory
+     * @param directory the directory to write log files to
+     */
+    public EventLog(Path directory) {
+        this(directory, DEFAULT_CAPACITY, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILES);
+    }
+
+    /**
+     * Creates a log and starts its background thread, which creates
+     * the directory
+     * @param directory the directory to write log files to
+     * @param capacity the number of events the ring holds (rounded up
+     * to a power of two)
+     * @param maxFileBytes the size at which a new file is started
+     * @param maxFiles the number of files kept
+     */
+    public EventLog(Path directory, int capacity, long maxFileBytes, int maxFiles) {
+        if (capacity <= 0 || capacity > 1 << 24 || maxFiles <= 0
+                || maxFileBytes < EventLogFormat.HEADER_BYTES + EventLogFormat.RECORD_BYTES) {
+            throw new IllegalArgumentException("Invalid event log limits");
+        }
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        times = new long[size];
+        types = new int[size];
+        values = new int[size];
+        values2 = new int[size];
+        as = new float[size];
+        bs = new float[size];
+        cs = new float[size];
+        published = new long[size];
+        batch = ByteBuffer.allocateDirect(size * EventLogFormat.RECORD_BYTES);
+
+        writerThread = new Thread(this::writeLoop, "event-log");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Logs an event with no values
+     * @param type the type of event (one of EventLogFormat's EVENT_ constants)
+     */
+    public void log(int type) {
+        log(type, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Logs an event with one value
+     */
+    public void log(int type, int value) {
+        log(type, value, 0, 0, 0, 0);
+    }
+
+    /**
+     * Logs an event with two values
+     */
+    public void log(int type, int value, int value2) {
+        log(type, value, value2, 0, 0, 0);
+    }
+
+    /**
+     * Logs an event. May be called from any thread; never blocks.
+     * @param type the type of event (one of EventLogFormat's EVENT_ constants)
+     * @return false if the ring was full and the event was dropped
+     */
+    public boolean log(int type, int value, int value2, float a, float b, float c) {
+        if (!running) {
+            droppedEventCount.incrementAndGet();
+            return false;
+        }
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail > mask) {
+                droppedEventCount.incrementAndGet();
+                return false;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & mask;
+        times[slot] = baseMicros + (System.nanoTime() - baseNanos) / 1000;
+        types[slot] = type;
+        values[slot] = value;
+        values2[slot] = value2;
+        as[slot] = a;
+        bs[slot] = b;
+        cs[slot] = c;
+        PUBLISHED.setRelease(published, slot, sequence + 1);
+        return true;
+    }
+
+    /**
+     * @return the number of events dropped because the ring was full
+     */
+    public long getDroppedEventCount() {
+        return droppedEventCount.get();
+    }
+
+    /**
+     * @return the error that stopped events being written to files,
+     * or null if there hasn't been one
+     */
+    public IOException getWriteFailure() {
+        return writeFailure;
+    }
+
+    /**
+     * @return the number of events written to files so far
+     */
+    public long getEventsWritten() {
+        return eventsWritten;
+    }
+
+    private void writeLoop() {
+        while (running) {
+            if (!drain()) {
+                LockSupport.parkNanos(this, FLUSH_INTERVAL);
+            }
+        }
+        // write out anything logged before close()
+        drain();
+        closeFile();
+    }
+
+    /**
+     * Moves every published event from the ring into the batch and
+     * writes the batch out
+     * @return true if there were any events
+     */
+    private boolean drain() {
+        long next = tail;
+        batch.clear();
+        while ((long) PUBLISHED.getAcquire(published, (int) next & mask) == next + 1) {
+            int slot = (int) next & mask;
+            batch.putLong(times[slot]);
+            batch.putInt(types[slot]);
+            batch.putInt(values[slot]);
+            batch.putInt(values2[slot]);
+            batch.putFloat(as[slot]);
+            batch.putFloat(bs[slot]);
+            batch.putFloat(cs[slot]);
+            next++;
+            if (!batch.hasRemaining()) {
+                break;
+            }
+        }
+        int count = (int) (next - tail);
+        // hand the slots back to the producers
+        tail = next;
+        if (count == 0) {
+            return false;
+        }
+        batch.flip();
+        write(count);
+        return true;
+    }
+
+    private void write(int count) {
+        if (writeFailure != null) {
+            droppedEventCount.addAndGet(count);
+            return;
+        }
+        try {
+            int end = batch.limit();
+            while (batch.position() < end) {
+                if (file == null || fileBytes + EventLogFormat.RECORD_BYTES > maxFileBytes) {
+                    rollFile();
+                }
+                // as many whole records as fit in the file
+                long room = (maxFileBytes - fileBytes) / EventLogFormat.RECORD_BYTES
+                        * EventLogFormat.RECORD_BYTES;
+                batch.limit((int) Math.min(end, batch.position() + room));
+                while (batch.hasRemaining()) {
+                    fileBytes += file.write(batch);
+                }
+                batch.limit(end);
+            }
+            eventsWritten += count;
+        } catch (IOException e) {
+            // later events are counted as dropped
+            writeFailure = e;
+            droppedEventCount.addAndGet(count);
+            closeFile();
+        }
+    }
+
+    /**
+     * Starts a new file, deleting the oldest files beyond maxFiles
+     */
+    private void rollFile() throws IOException {
+        closeFile();
+        Files.createDirectories(directory);
+        // file names must be unique, even if files fill up within a millisecond
+        long now = Math.max(System.currentTimeMillis(), fileStartMillis + 1);
+        fileStartMillis = now;
+        Path path = directory.resolve(EventLogFormat.FILE_PREFIX + now
+                + EventLogFormat.FILE_EXTENSION);
+        file = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        ByteBuffer header = ByteBuffer.allocate(EventLogFormat.HEADER_BYTES);
+        header.putInt(EventLogFormat.MAGIC);
+        header.putInt(EventLogFormat.VERSION);
+        header.putLong(now);
+        header.flip();
+        while (header.hasRemaining()) {
+            file.write(header);
+        }
+        fileBytes = EventLogFormat.HEADER_BYTES;
+
+        List<Path> files = listFiles(directory);
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    private void closeFile() {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            // nothing more to do
+        }
+        file = null;
+    }
+
+    /**
+     * Lists the event log files in a directory, oldest first
+     * @param directory the log's directory
+     * @return the files, sorted by name
+     * @throws IOException if the directory can't be read
+     */
+    public static List<Path> listFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                EventLogFormat.FILE_PREFIX + "*" + EventLogFormat.FILE_EXTENSION)) {
+            for (Path path : stream) {
+                files.add(path);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Writes out every event logged so far and stops the background thread.
+     * Events logged afterwards are dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
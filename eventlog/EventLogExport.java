@@ -0,0 +1,107 @@
+package eventlog;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This tool exports an event log as text, one event per line:
+ *
+ *   2026-10-19T14:03:12.254118Z ROUND_START highscore=12
+ *
+ * Usage: java eventlog.EventLogExport <log directory or file> [output file]
+ *
+ * Given a directory, every log file in it is exported, oldest first.
+ * The text is written to the output file, or to the console if none is given.
+ *
+ * @author Lauren Knight
+ */
+public class EventLogExport {
+
+    /**
+     * Writes the events in one log file as text
+     * @param path the log file
+     * @param out where to write the text
+     * @return the number of events exported
+     * @throws IOException if the file can't be read or isn't an event log
+     */
+    public static long export(Path path, PrintStream out) throws IOException {
+        try (InputStream file = Files.newInputStream(path);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            if (in.readInt() != EventLogFormat.MAGIC) {
+                throw new IOException(path + " is not an event log");
+            }
+            int version = in.readInt();
+            if (version != EventLogFormat.VERSION) {
+                throw new IOException(path + " has unsupported version " + version);
+            }
+            in.readLong();
+            long count = 0;
+            byte[] record = new byte[EventLogFormat.RECORD_BYTES];
+            ByteBuffer fields = ByteBuffer.wrap(record);
+            while (true) {
+                try {
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    // the end of the file, or a record cut short
+                    return count;
+                }
+                fields.clear();
+                long micros = fields.getLong();
+                int type = fields.getInt();
+                int value = fields.getInt();
+                int value2 = fields.getInt();
+                float a = fields.getFloat();
+                float b = fields.getFloat();
+                float c = fields.getFloat();
+                Instant time = Instant.ofEpochSecond(
+                        TimeUnit.MICROSECONDS.toSeconds(micros),
+                        TimeUnit.MICROSECONDS.toNanos(micros % 1_000_000));
+                out.println(time + " "
+                        + EventLogFormat.describe(type, value, value2, a, b, c));
+                count++;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println(
+                    "Usage: java eventlog.EventLogExport <log directory or file> [output file]");
+            System.exit(2);
+        }
+        Path source = Paths.get(args[0]);
+        try {
+            List<Path> files = Files.isDirectory(source)
+                    ? EventLog.listFiles(source) : Collections.singletonList(source);
+            PrintStream out = args.length == 2
+                    ? new PrintStream(Files.newOutputStream(Paths.get(args[1])), false, "UTF-8")
+                    : System.out;
+            long count = 0;
+            for (Path file : files) {
+                count += export(file, out);
+            }
+            out.flush();
+            if (out != System.out) {
+                out.close();
+                System.out.println("Exported " + count + " events from "
+                        + files.size() + " files to " + args[1]);
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to export event log: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+}
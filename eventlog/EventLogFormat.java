@@ -0,0 +1,124 @@
+package eventlog;
+
+/**
+ * This class describes the format of event log files, and the types
+ * of events that can be logged.
+ *
+ * An event log is a series of files in one directory, named
+ * FILE_PREFIX + the time the file was started (epoch milliseconds)
+ * + FILE_EXTENSION, so that they sort in order by name. Each file is:
+ *
+ *   header: MAGIC (int), VERSION (int), start time (long, epoch ms)
+ *   records, each RECORD_BYTES long:
+ *     time (long, epoch microseconds), type (int),
+ *     value (int), value2 (int), a (float), b (float), c (float)
+ *
+ * Values are big-endian. A file that was being written when the game
+ * stopped may end with part of a record, which readers ignore.
+ *
+ * What value, value2, a, b and c mean depends on the type of event;
+ * see the EVENT_ constants.
+ *
+ * @author Lauren Knight
+ */
+public final class EventLogFormat {
+
+    static final int MAGIC = 0x45564C47;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 + 4 + 8;
+    public static final int RECORD_BYTES = 8 + 4 + 4 + 4 + 4 + 4 + 4;
+
+    public static final String FILE_PREFIX = "events-";
+    public static final String FILE_EXTENSION = ".evlog";
+
+    /** A round started. value: the highscore */
+    public static final int EVENT_ROUND_START = 1;
+    /** A round ended. value: the score, value2: the highscore */
+    public static final int EVENT_ROUND_END = 2;
+    /**
+     * The player reached the goal. value: the score, value2: how long
+     * after the car reached the goal it was detected (microseconds),
+     * a, b: the goal's location
+     */
+    public static final int EVENT_GOAL_HIT = 3;
+    /** A new highscore was set. value: the highscore */
+    public static final int EVENT_HIGHSCORE = 4;
+    /**
+     * The car was aligned with the room. a, b: the alignment vector,
+     * c: the rotation offset (radians)
+     */
+    public static final int EVENT_CALIBRATION = 5;
+    /** The connection to Motive changed. value: the ConnectionState's ordinal */
+    public static final int EVENT_CONNECTION_STATE = 6;
+    /** Motive sent its server info. value, value2: the NatNet version */
+    public static final int EVENT_SERVER_INFO = 7;
+    /** No data arrived from Motive for value milliseconds */
+    public static final int EVENT_STREAM_STALLED = 8;
+    /** A packet from Motive couldn't be handled. value: its message type */
+    public static final int EVENT_BAD_PACKET = 9;
+    /** The scene became active or idle. value: the ActivityLevel's ordinal */
+    public static final int EVENT_ACTIVITY_LEVEL = 10;
+    /**
+     * The car was parked in the target bay. value: the score,
+     * value2: the bay, a, b: the bay's center
+     */
+    public static final int EVENT_PARKED = 11;
+    /**
+     * The car hit an obstacle or left the room while parking.
+     * value: the number of bumps this round, value2: 1 if it left
+     * the room, a, b: the car's location
+     */
+    public static final int EVENT_BUMP = 12;
+
+    private static final String[] CONNECTION_STATES =
+            {"CONNECTING", "CONNECTED", "DISCONNECTED", "STOPPED"};
+    private static final String[] ACTIVITY_LEVELS = {"ACTIVE", "IDLE"};
+
+    private EventLogFormat() {}
+
+    /**
+     * Describes an event as text, for example "GOAL_HIT score=3 x=0.125 y=-0.310"
+     */
+    public static String describe(int type, int value, int value2,
+            float a, float b, float c) {
+        switch (type) {
+            case EVENT_ROUND_START:
+                return "ROUND_START highscore=" + value;
+            case EVENT_ROUND_END:
+                return "ROUND_END score=" + value + " highscore=" + value2;
+            case EVENT_GOAL_HIT:
+                return String.format("GOAL_HIT score=%d x=%.3f y=%.3f delay=%dus",
+                        value, a, b, value2);
+            case EVENT_HIGHSCORE:
+                return "HIGHSCORE highscore=" + value;
+            case EVENT_CALIBRATION:
+                return String.format("CALIBRATION alignment=(%.4f, %.4f) offset=%.4f",
+                        a, b, c);
+            case EVENT_CONNECTION_STATE:
+                return "CONNECTION_STATE " + name(CONNECTION_STATES, value);
+            case EVENT_SERVER_INFO:
+                return "SERVER_INFO natnet=" + value + "." + value2;
+            case EVENT_STREAM_STALLED:
+                return "STREAM_STALLED for=" + value + "ms";
+            case EVENT_BAD_PACKET:
+                return "BAD_PACKET messageType=" + value;
+            case EVENT_ACTIVITY_LEVEL:
+                return "ACTIVITY_LEVEL " + name(ACTIVITY_LEVELS, value);
+            case EVENT_PARKED:
+                return String.format("PARKED score=%d bay=%d x=%.3f y=%.3f",
+                        value, value2, a, b);
+            case EVENT_BUMP:
+                return String.format("BUMP bumps=%d %s x=%.3f y=%.3f",
+                        value, value2 != 0 ? "wall" : "obstacle", a, b);
+            default:
+                return "UNKNOWN(" + type + ") " + value + " " + value2
+                        + " " + a + " " + b + " " + c;
+        }
+    }
+
+    private static String name(String[] names, int ordinal) {
+        return ordinal >= 0 && ordinal < names.length
+                ? names[ordinal] : String.valueOf(ordinal);
+    }
+
+}
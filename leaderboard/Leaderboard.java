@@ -0,0 +1,388 @@
+package leaderboard;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * This class keeps a persistent leaderboard of round results.
+ *
+ * Every result is appended to a checksummed file (see LeaderboardFormat),
+ * and the best results of all time and of today are kept in memory, each
+ * as a top-K heap. Submitting a result updates the heaps in O(log K) and
+ * queues the record for a background thread; it never waits on the disk.
+ *
+ * When the leaderboard is created, the background thread rebuilds the
+ * heaps by scanning the whole file through a memory mapping, then
+ * appends the results submitted since. Results submitted while the
+ * file is still being scanned count straight away.
+ *
+ * "Today" is the current date in the system's time zone; the daily
+ * heap is emptied when the date changes.
+ *
+ * All methods may be called from any thread.
+ *
+ * @author Lauren Knight
+ */
+public class Leaderboard implements AutoCloseable {
+
+    public static final int DEFAULT_SIZE = 10;
+
+    // the number of results that may be waiting to be written
+    private static final int WRITE_QUEUE_SIZE = 1024;
+    // placed on the write queue to tell the writer thread to finish
+    private static final LeaderboardEntry END_OF_LEADERBOARD =
+            new LeaderboardEntry("", 0, 0, 0);
+
+    private final Path path;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    // guarded by this
+    private final TopK allTime;
+    private final TopK today;
+    // today, as [start, end) in epoch milliseconds
+    private long todayStartMillis;
+    private long todayEndMillis;
+    private LeaderboardEntry[] allTimeSorted;
+    private LeaderboardEntry[] todaySorted;
+
+    private final BlockingQueue<LeaderboardEntry> writeQueue =
+            new ArrayBlockingQueue<>(WRITE_QUEUE_SIZE);
+    private final CompletableFuture<Leaderboard> loaded = new CompletableFuture<>();
+    private final Thread writerThread;
+    private boolean closed;
+    private volatile long loadedCount;
+    private volatile long corruptCount;
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Creates a leaderboard keeping the best DEFAULT_SIZE results,
+     * and starts loading it from the file
+     * @param path the leaderboard file (created if it doesn't exist)
+     */
+    public Leaderboard(Path path) {
+        this(path, DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates a leaderboard and starts loading it from the file
+     * @param path the leaderboard file (created if it doesn't exist)
+     * @param size the number of results kept for each period
+     */
+    public Leaderboard(Path path, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive: " + size);
+        }
+        this.path = path;
+        allTime = new TopK(size);
+        today = new TopK(size);
+        rollDay();
+        allTimeSorted = new LeaderboardEntry[0];
+        todaySorted = allTimeSorted;
+        writerThread = new Thread(this::writeLoop, "leaderboard-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Adds a round's result to the leaderboard and queues it to be saved
+     * @param playerName the player's name
+     * @param score the round's score
+     * @param carID the rigid body ID of the car that was driven
+     * @return the entry that was added
+     */
+    public LeaderboardEntry submit(String playerName, int score, int carID) {
+        LeaderboardEntry entry = new LeaderboardEntry(playerName, score,
+                System.currentTimeMillis(), carID);
+        synchronized (this) {
+            if (closed) {
+                droppedCount.incrementAndGet();
+                return entry;
+            }
+            add(entry);
+            if (!writeQueue.offer(entry)) {
+                // the disk has fallen far behind; keep playing
+                droppedCount.incrementAndGet();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Adds an entry to the heaps. Called while holding this object's lock.
+     */
+    private void add(LeaderboardEntry entry) {
+        rollDay();
+        if (allTime.offer(entry)) {
+            allTimeSorted = null;
+        }
+        long time = entry.getTimeMillis();
+        if (time >= todayStartMillis && time < todayEndMillis && today.offer(entry)) {
+            todaySorted = null;
+        }
+    }
+
+    /**
+     * @return true if a result would make the all-time or daily top K
+     */
+    private synchronized boolean isCandidate(int score, long timeMillis) {
+        return allTime.accepts(score, timeMillis)
+                || (timeMillis >= todayStartMillis && timeMillis < todayEndMillis
+                        && today.accepts(score, timeMillis));
+    }
+
+    /**
+     * Empties the daily heap if the date has changed
+     */
+    private void rollDay() {
+        long now = System.currentTimeMillis();
+        if (now >= todayStartMillis && now < todayEndMillis) {
+            return;
+        }
+        LocalDate date = LocalDate.now(zone);
+        todayStartMillis = date.atStartOfDay(zone).toInstant().toEpochMilli();
+        todayEndMillis = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        today.clear();
+        todaySorted = null;
+    }
+
+    /**
+     * @return the best results of all time, best first
+     */
+    public synchronized LeaderboardEntry[] getAllTime() {
+        if (allTimeSorted == null) {
+            allTimeSorted = allTime.sorted();
+        }
+        return allTimeSorted.clone();
+    }
+
+    /**
+     * @return today's best results, best first
+     */
+    public synchronized LeaderboardEntry[] getToday() {
+        rollDay();
+        if (todaySorted == null) {
+            todaySorted = today.sorted();
+        }
+        return todaySorted.clone();
+    }
+
+    /**
+     * @return the best score of all time, or 0 if there are no results
+     */
+    public synchronized int getBestScore() {
+        LeaderboardEntry best = allTime.best();
+        return best == null ? 0 : best.getScore();
+    }
+
+    /**
+     * @return a future that completes once the file has been scanned
+     * (also if it couldn't be read)
+     */
+    public CompletableFuture<Leaderboard> getLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return the number of results read from the file
+     */
+    public long getLoadedCount() {
+        return loadedCount;
+    }
+
+    /**
+     * @return the number of records in the file with a bad checksum
+     */
+    public long getCorruptCount() {
+        return corruptCount;
+    }
+
+    /**
+     * @return the number of results that couldn't be saved
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private void writeLoop() {
+        FileChannel channel = null;
+        try {
+            channel = open();
+        } catch (IOException e) {
+            System.out.println("Unable to open leaderboard " + path + ": " + e.getMessage());
+        }
+        loaded.complete(this);
+
+        // every result waiting is written, and synced, in one go
+        List<LeaderboardEntry> entries = new ArrayList<>(WRITE_QUEUE_SIZE);
+        ByteBuffer records = ByteBuffer.allocate(
+                WRITE_QUEUE_SIZE * LeaderboardFormat.RECORD_BYTES);
+        CRC32 crc = new CRC32();
+        boolean finished = false;
+        while (!finished) {
+            entries.clear();
+            try {
+                entries.add(writeQueue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            writeQueue.drainTo(entries);
+            records.clear();
+            int count = 0;
+            for (LeaderboardEntry entry : entries) {
+                if (entry == END_OF_LEADERBOARD) {
+                    finished = true;
+                } else {
+                    LeaderboardFormat.encode(entry, records, crc);
+                    count++;
+                }
+            }
+            records.flip();
+            if (channel == null) {
+                droppedCount.addAndGet(count);
+                continue;
+            }
+            try {
+                while (records.hasRemaining()) {
+                    channel.write(records);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                System.out.println("Unable to write to leaderboard " + path
+                        + ": " + e.getMessage());
+                droppedCount.addAndGet(count);
+            }
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing more to do
+            }
+        }
+    }
+
+    /**
+     * Opens the file, creating it if needed, and scans its records
+     * into the heaps
+     * @return the file, positioned at its end for appending
+     */
+    private FileChannel open() throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size < LeaderboardFormat.HEADER_BYTES) {
+                ByteBuffer header = ByteBuffer.allocate(LeaderboardFormat.HEADER_BYTES);
+                header.putInt(LeaderboardFormat.MAGIC);
+                header.putInt(LeaderboardFormat.VERSION);
+                header.flip();
+                channel.truncate(0);
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.position(LeaderboardFormat.HEADER_BYTES);
+                return channel;
+            }
+            long records = (size - LeaderboardFormat.HEADER_BYTES)
+                    / LeaderboardFormat.RECORD_BYTES;
+            long end = LeaderboardFormat.HEADER_BYTES
+                    + records * LeaderboardFormat.RECORD_BYTES;
+            scan(channel, end);
+            // drop a record cut short, so that new records line up
+            channel.truncate(end);
+            channel.position(end);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads every record in the file into the heaps
+     * @param end the end of the last whole record
+     */
+    private void scan(FileChannel channel, long end) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LeaderboardFormat.HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("Not a leaderboard file");
+            }
+        }
+        if (header.getInt(0) != LeaderboardFormat.MAGIC) {
+            throw new IOException("Not a leaderboard file");
+        }
+        int version = header.getInt(4);
+        if (version != LeaderboardFormat.VERSION) {
+            throw new IOException("Unsupported leaderboard version " + version);
+        }
+
+        CRC32 crc = new CRC32();
+        long corrupt = 0;
+        long count = 0;
+        // map the records in pieces of whole records, each under 2 GB
+        long chunkBytes = (Integer.MAX_VALUE / LeaderboardFormat.RECORD_BYTES)
+                * (long) LeaderboardFormat.RECORD_BYTES;
+        for (long start = LeaderboardFormat.HEADER_BYTES; start < end; start += chunkBytes) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(chunkBytes, end - start));
+            for (int record = 0; record + LeaderboardFormat.RECORD_BYTES <= map.limit();
+                    record += LeaderboardFormat.RECORD_BYTES) {
+                if (!LeaderboardFormat.checksumMatches(map, record, crc)) {
+                    corrupt++;
+                    continue;
+                }
+                count++;
+                // only results that make a top K are decoded
+                if (isCandidate(LeaderboardFormat.score(map, record),
+                        LeaderboardFormat.timeMillis(map, record))) {
+                    LeaderboardEntry entry = LeaderboardFormat.decode(map, record);
+                    synchronized (this) {
+                        add(entry);
+                    }
+                }
+            }
+        }
+        loadedCount = count;
+        corruptCount = corrupt;
+    }
+
+    /**
+     * Saves the results still waiting to be written and stops
+     * the background thread. Later results are not saved.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            writeQueue.put(END_OF_LEADERBOARD);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
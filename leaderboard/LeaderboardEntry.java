@@ -0,0 +1,68 @@
+package leaderboard;
+
+import java.util.Comparator;
+
+/**
+ * One round's result on the leaderboard.
+ *
+ * @author Lauren Knight
+ */
+public final class LeaderboardEntry {
+
+    /**
+     * Orders entries best first: by score, then (for equal scores)
+     * by who got the score first
+     */
+    public static final Comparator<LeaderboardEntry> BEST_FIRST = (a, b) -> {
+        if (a.score != b.score) {
+            return Integer.compare(b.score, a.score);
+        }
+        return Long.compare(a.timeMillis, b.timeMillis);
+    };
+
+    private final String playerName;
+    private final int score;
+    private final long timeMillis;
+    private final int carID;
+
+    /**
+     * @param playerName the player's name
+     * @param score the round's score
+     * @param timeMillis the time the round ended (epoch milliseconds)
+     * @param carID the rigid body ID of the car that was driven
+     */
+    public LeaderboardEntry(String playerName, int score, long timeMillis, int carID) {
+        if (playerName == null) {
+            throw new NullPointerException("playerName");
+        }
+        this.playerName = playerName;
+        this.score = score;
+        this.timeMillis = timeMillis;
+        this.carID = carID;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return the time the round ended (epoch milliseconds)
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public int getCarID() {
+        return carID;
+    }
+
+    @Override
+    public String toString() {
+        return playerName + " " + score;
+    }
+
+}
@@ -0,0 +1,109 @@
+package leaderboard;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * This class describes the format of leaderboard files.
+ *
+ * A leaderboard file is only ever appended to. It is:
+ *
+ *   header: MAGIC (int), VERSION (int)
+ *   records, each RECORD_BYTES long:
+ *     time the round ended (long, epoch ms), score (int), car ID (int),
+ *     player name (NAME_BYTES of UTF-8, padded with zeros),
+ *     CRC-32 of the rest of the record (int)
+ *
+ * Values are big-endian. Records whose checksum doesn't match are
+ * skipped, and a record cut short at the end of the file (if the game
+ * stopped while writing it) is removed before the file is appended to.
+ *
+ * @author Lauren Knight
+ */
+final class LeaderboardFormat {
+
+    static final int MAGIC = 0x4C445242;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 + 4;
+    static final int NAME_BYTES = 44;
+    static final int RECORD_BYTES = 8 + 4 + 4 + NAME_BYTES + 4;
+
+    private LeaderboardFormat() {}
+
+    /**
+     * Writes an entry as a record at the buffer's position
+     * @param crc a CRC32 to calculate the checksum with
+     */
+    static void encode(LeaderboardEntry entry, ByteBuffer buffer, CRC32 crc) {
+        int start = buffer.position();
+        buffer.putLong(entry.getTimeMillis());
+        buffer.putInt(entry.getScore());
+        buffer.putInt(entry.getCarID());
+        byte[] name = truncatedName(entry.getPlayerName());
+        buffer.put(name);
+        for (int i = name.length; i < NAME_BYTES; i++) {
+            buffer.put((byte) 0);
+        }
+        crc.reset();
+        crc.update(buffer.duplicate().position(start).limit(buffer.position()));
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * @param buffer the records
+     * @param record the index in the buffer of the record's first byte
+     * @param crc a CRC32 to calculate the checksum with
+     * @return true if the record's checksum matches its contents
+     */
+    static boolean checksumMatches(ByteBuffer buffer, int record, CRC32 crc) {
+        int checksumAt = record + RECORD_BYTES - 4;
+        crc.reset();
+        crc.update(buffer.duplicate().position(record).limit(checksumAt));
+        return (int) crc.getValue() == buffer.getInt(checksumAt);
+    }
+
+    static long timeMillis(ByteBuffer buffer, int record) {
+        return buffer.getLong(record);
+    }
+
+    static int score(ByteBuffer buffer, int record) {
+        return buffer.getInt(record + 8);
+    }
+
+    /**
+     * Reads a record (whose checksum has been checked)
+     * @param buffer the records
+     * @param record the index in the buffer of the record's first byte
+     */
+    static LeaderboardEntry decode(ByteBuffer buffer, int record) {
+        byte[] name = new byte[NAME_BYTES];
+        buffer.get(record + 16, name);
+        int length = 0;
+        while (length < NAME_BYTES && name[length] != 0) {
+            length++;
+        }
+        return new LeaderboardEntry(new String(name, 0, length, StandardCharsets.UTF_8),
+                score(buffer, record), timeMillis(buffer, record), buffer.getInt(record + 12));
+    }
+
+    /**
+     * @return the name as UTF-8, cut to at most NAME_BYTES
+     * without splitting a character
+     */
+    private static byte[] truncatedName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= NAME_BYTES) {
+            return bytes;
+        }
+        int length = NAME_BYTES;
+        // back up to the start of a character
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        byte[] truncated = new byte[length];
+        System.arraycopy(bytes, 0, truncated, 0, length);
+        return truncated;
+    }
+
+}
@@ -0,0 +1,115 @@
+package leaderboard;
+
+import java.util.Arrays;
+
+/**
+ * The best K entries seen, kept as a min-heap of size K (the worst of
+ * the best at the root), so offering an entry takes O(log K).
+ *
+ * Not thread safe; Leaderboard guards it.
+ *
+ * @author Lauren Knight
+ */
+final class TopK {
+
+    private final LeaderboardEntry[] heap;
+    private int size;
+
+    TopK(int k) {
+        heap = new LeaderboardEntry[k];
+    }
+
+    /**
+     * Adds an entry if it is among the best K seen so far
+     * @return true if the entry was added
+     */
+    boolean offer(LeaderboardEntry entry) {
+        if (size < heap.length) {
+            heap[size] = entry;
+            siftUp(size++);
+            return true;
+        }
+        if (heap.length == 0 || !isBetter(entry, heap[0])) {
+            return false;
+        }
+        heap[0] = entry;
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * @return true if a result with this score and time would be added
+     */
+    boolean accepts(int score, long timeMillis) {
+        if (size < heap.length) {
+            return true;
+        }
+        LeaderboardEntry worst = heap[0];
+        return score > worst.getScore()
+                || (score == worst.getScore() && timeMillis < worst.getTimeMillis());
+    }
+
+    void clear() {
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @return the best entry, or null if there are none
+     */
+    LeaderboardEntry best() {
+        LeaderboardEntry best = null;
+        for (int i = 0; i < size; i++) {
+            if (best == null || isBetter(heap[i], best)) {
+                best = heap[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return a copy of the entries, best first
+     */
+    LeaderboardEntry[] sorted() {
+        LeaderboardEntry[] entries = Arrays.copyOf(heap, size);
+        Arrays.sort(entries, LeaderboardEntry.BEST_FIRST);
+        return entries;
+    }
+
+    private static boolean isBetter(LeaderboardEntry a, LeaderboardEntry b) {
+        return LeaderboardEntry.BEST_FIRST.compare(a, b) < 0;
+    }
+
+    private void siftUp(int i) {
+        LeaderboardEntry entry = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!isBetter(heap[parent], entry)) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+    }
+
+    private void siftDown(int i) {
+        LeaderboardEntry entry = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && isBetter(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!isBetter(entry, heap[child])) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = entry;
+    }
+
+}
@@ -0,0 +1,20 @@
+package motive;
+
+/**
+ * How busy the scene fed by a CommandStreamManager is, as decided by
+ * the application (for example, nothing has moved for a while between
+ * rounds). Consumers may use it to reduce their own work.
+ * 
+ * @author Lauren Knight
+ */
+public enum ActivityLevel {
+    /**
+     * The scene is in use; consumers should work at full rate
+     */
+    ACTIVE,
+    /**
+     * Nothing is happening in the scene; consumers may do less work
+     * (for example, render or sample less often) until it is active again
+     */
+    IDLE
+}
@@ -0,0 +1,13 @@
+package motive;
+
+/**
+ * A listener interface that allows listening for changes to the
+ * activity level of a CommandStreamManager's scene.
+ * 
+ * activityLevelChanged is called on the thread that changed the level.
+ * 
+ * @author Lauren Knight
+ */
+public interface ActivityLevelListener {
+    void activityLevelChanged(ActivityLevel level);
+}
@@ -0,0 +1,94 @@
+package motive;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the analog samples sent by one force plate
+ * or other device (such as a NI-DAQ) within a single frame from Motive.
+ * 
+ * Each device has a number of channels, and each channel carries
+ * a number of samples taken since the previous frame.
+ * 
+ * AnalogData objects are pooled and reused by the CommandStreamManager:
+ * the object handed to an AnalogDataListener is only valid until the
+ * listener method returns.
+ * 
+ * @author Lauren Knight
+ */
+public class AnalogData {
+
+    private int id;
+    private int channelCount;
+    private int[] channelOffsets = new int[0];
+    private int[] channelFrameCounts = new int[0];
+    private float[] samples = new float[0];
+    private int sampleCount;
+
+    /**
+     * Prepares this object to be filled in with a new frame's data
+     * @param id the device's ID
+     * @param channelCount the number of channels
+     */
+    void reset(int id, int channelCount) {
+        this.id = id;
+        this.channelCount = channelCount;
+        this.sampleCount = 0;
+        if (channelCount > channelOffsets.length) {
+            channelOffsets = Arrays.copyOf(channelOffsets, channelCount);
+            channelFrameCounts = Arrays.copyOf(channelFrameCounts, channelCount);
+        }
+    }
+
+    /**
+     * Begins a channel's samples
+     * @param channel the index of the channel
+     * @param frameCount the number of samples the channel has
+     */
+    void startChannel(int channel, int frameCount) {
+        channelOffsets[channel] = sampleCount;
+        channelFrameCounts[channel] = frameCount;
+        if (sampleCount + frameCount > samples.length) {
+            samples = Arrays.copyOf(samples,
+                    Math.max(sampleCount + frameCount, samples.length * 2));
+        }
+    }
+
+    /**
+     * Stores the next sample of the current channel
+     */
+    void addSample(float sample) {
+        samples[sampleCount++] = sample;
+    }
+
+    /**
+     * @return the ID of the force plate or device
+     */
+    public int getID() {
+        return id;
+    }
+
+    /**
+     * @return the number of channels
+     */
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * @param channel the index of the channel
+     * @return the number of samples the channel has in this frame
+     */
+    public int getFrameCount(int channel) {
+        return channelFrameCounts[channel];
+    }
+
+    /**
+     * @param channel the index of the channel
+     * @param frame the index of the sample within the channel
+     * @return the value of the sample
+     */
+    public float getSample(int channel, int frame) {
+        return samples[channelOffsets[channel] + frame];
+    }
+
+}
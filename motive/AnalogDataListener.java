@@ -0,0 +1,26 @@
+package motive;
+
+/**
+ * A listener interface that allows listening for the analog data
+ * sent by force plates and other devices connected to Motive.
+ * 
+ * The AnalogData passed to the listener is reused for later frames,
+ * so it must not be kept after the method returns.
+ * 
+ * @author Lauren Knight
+ */
+public interface AnalogDataListener {
+
+    /**
+     * Called once per frame for each force plate
+     * @param data the force plate's samples
+     */
+    void forcePlateDataReceived(AnalogData data);
+
+    /**
+     * Called once per frame for each (non force plate) device
+     * @param data the device's samples
+     */
+    void deviceDataReceived(AnalogData data);
+
+}
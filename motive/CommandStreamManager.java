@@ -4,40 +4,64 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import telemetry.FrameDecodedEvent;
+import telemetry.ListenerDispatchEvent;
+import telemetry.PacketReceivedEvent;
 
 /**
  * This class is responsible for talking to Motive's UDP server,
- * which runs on localhost (127.0.0.1) on port 1510.
+ * which by default runs on localhost (127.0.0.1) on port 1510.
  * 
  * As frames are received by this class, any listeners listening for
- * frame updates are updated.
+ * frame updates are updated. Listeners are called on the receiving
+ * thread; listeners that do real work should be wrapped in a
+ * ListenerDispatcher so that they cannot hold up the receiving thread.
  * 
  * The class communicates with Motive via a socket opened on localhost::1512.
- * This port can be changed by updating the value of APPLICATION_PORT.
+ * Other servers and ports can be given to the constructor (a
+ * MultiSourceStreamManager uses one manager per server).
+ * 
+ * The manager is started with start() and stopped with stop(). While it
+ * runs, it watches for the stream stalling (no data for longer than the
+ * no-data timeout, for example because Motive was restarted) and for
+ * socket errors, and reconnects when either happens, waiting a little
+ * longer after each failed attempt. ConnectionStateListeners are told
+ * each time the state of the connection changes.
+ * 
+ * Connecting, losing the connection, stalls and bad packets are reported
+ * to StreamEventListeners if there are any, and printed to the console
+ * otherwise.
  * 
- * Code in the handleFrameData method was adapted from the Motive SDK
- * PythonClient sample.
+ * Code in the handleFrameData method (and the decode methods it calls)
+ * was adapted from the Motive SDK PythonClient sample.
  * 
  * @author Lauren Knight
  */
-public class CommandStreamManager implements Runnable {
+public class CommandStreamManager implements Runnable, StreamSource {
     
     // Byte order used by Motive
     private static final ByteOrder MOTIVE_PACKET_BYTE_ORDER = 
             ByteOrder.LITTLE_ENDIAN;
 
-    // Motive's Command port (this will need to be changed 
+    // Motive's default Command port (this will need to be changed 
     // if Motive's settings are changed)
-    private static final int MOTIVE_COMMAND_PORT = 1510;
-    // The port this application will communicate with Motive from
-    private static final int APPLICATION_PORT = 1512;
+    public static final int MOTIVE_COMMAND_PORT = 1510;
+    // The default port this application will communicate with Motive from
+    public static final int APPLICATION_PORT = 1512;
     
-    private DatagramSocket socket;
-    private InetAddress address;
+    // the socket currently in use (null between connections)
+    private volatile DatagramSocket socket;
+    // Motive's command address and port
+    private final InetSocketAddress server;
+    // the address and port our socket is bound to
+    private final InetSocketAddress local;
     
     // Message type sent to Motive on initial connection
     private static final short MESSAGE_CONNECT = 0;
@@ -48,24 +72,97 @@ public class CommandStreamManager implements Runnable {
     // Message type sent to Motive that lets it know we're still listening
     private static final short MESSAGE_KEEP_ALIVE = 10;
 
+    // The length of the server name at the start of the server info message
+    private static final int SERVER_NAME_LENGTH = 256;
+
+    // The NatNet version assumed until Motive tells us otherwise
+    // (Motive 2.1.1 streams NatNet 3.0)
+    private static final int DEFAULT_NATNET_MAJOR = 3;
+    private static final int DEFAULT_NATNET_MINOR = 0;
+
     // Time between keep alive messages, in milliseconds
     private static final long KEEP_ALIVE_WAIT_PERIOD = 1000; // 1000 ms = 1 second
 
-    // the list of RigidBodyUpdateListeners that will have their update method called
-    // when a frame containing at least one rigid body is received from Motive
-    private List<RigidBodyUpdateListener> rigidBodyUpdateListeners;
-    private List<FrameUpdateListener> frameUpdateListeners;
+    // Time without any data from Motive after which the stream is
+    // considered stalled, in milliseconds (unless changed)
+    public static final long DEFAULT_NO_DATA_TIMEOUT = 1000;
+    // Time waited before reconnecting, in milliseconds; doubled after
+    // each attempt that receives nothing, up to MAX_RECONNECT_DELAY
+    private static final long INITIAL_RECONNECT_DELAY = 10;
+    private static final long MAX_RECONNECT_DELAY = 2000;
+
+    // The number of bytes taken up by a marker's position
+    private static final int MARKER_BYTES = 3 * Float.BYTES;
+    // The number of bytes taken up by a rigid body's position and rotation
+    private static final int RIGID_BODY_POSE_BYTES = 7 * Float.BYTES;
+
+    // the table of RigidBodyUpdateListeners that will have their update method
+    // called, by rigid body ID, when a frame is received from Motive.
+    // Replaced (never modified) each time a listener is added.
+    private volatile RigidBodyRoutingTable rigidBodyRoutes;
+    // Replaced (never modified) each time a listener is added.
+    private volatile FrameUpdateListener[] frameUpdateListeners =
+            new FrameUpdateListener[0];
+    private volatile MarkerCloudListener[] markerCloudListeners =
+            new MarkerCloudListener[0];
+    private volatile SkeletonUpdateListener[] skeletonUpdateListeners =
+            new SkeletonUpdateListener[0];
+    private volatile LabeledMarkerListener[] labeledMarkerListeners =
+            new LabeledMarkerListener[0];
+    private volatile AnalogDataListener[] analogDataListeners =
+            new AnalogDataListener[0];
+    private volatile FrameTimingListener[] frameTimingListeners =
+            new FrameTimingListener[0];
+    private volatile ConnectionStateListener[] connectionStateListeners =
+            new ConnectionStateListener[0];
+    private volatile ActivityLevelListener[] activityLevelListeners =
+            new ActivityLevelListener[0];
+    private volatile StreamEventListener[] streamEventListeners =
+            new StreamEventListener[0];
+
+    // reused objects that frames are decoded into
+    private final Pool<Skeleton> skeletonPool = new Pool<>(Skeleton::new);
+    private final Pool<AnalogData> forcePlatePool = new Pool<>(AnalogData::new);
+    private final Pool<AnalogData> devicePool = new Pool<>(AnalogData::new);
+    private final FrameTiming frameTiming = new FrameTiming();
+
+    // the version of NatNet that Motive is streaming with
+    private volatile int natNetMajor = DEFAULT_NATNET_MAJOR;
+    private volatile int natNetMinor = DEFAULT_NATNET_MINOR;
+
+    private volatile long noDataTimeout = DEFAULT_NO_DATA_TIMEOUT;
+    private volatile ConnectionState connectionState = ConnectionState.STOPPED;
+    private volatile ActivityLevel activityLevel = ActivityLevel.ACTIVE;
+    // held while the activity level changes, so listeners see changes in order
+    private final Object activityLock = new Object();
+    private volatile boolean running;
+    // the receiving thread (null while stopped)
+    private Thread thread;
     
+    /**
+     * Creates a manager for Motive running on this computer,
+     * using the default ports
+     */
     public CommandStreamManager() {
+        // the loopback address is known without a name lookup
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                MOTIVE_COMMAND_PORT), APPLICATION_PORT);
+    }
+
+    /**
+     * Creates a manager for a Motive server
+     * @param server the address and command port of the Motive server
+     * @param localPort the port to receive frames on; each manager
+     * in the same application needs its own port
+     */
+    public CommandStreamManager(InetSocketAddress server, int localPort) {
         super();
-        rigidBodyUpdateListeners = new ArrayList<>();
-        frameUpdateListeners = new ArrayList<>();
-        try {
-            address = InetAddress.getByName("localhost");
-        } catch (IOException e) {
-            System.out.println("Error opening localhost Inet Address");
-            System.out.println(e.getMessage());
-        }
+        this.server = server;
+        // listen on the loopback interface only when Motive is local
+        local = server.getAddress().isLoopbackAddress()
+                ? new InetSocketAddress(server.getAddress(), localPort)
+                : new InetSocketAddress(localPort);
+        rigidBodyRoutes = RigidBodyRoutingTable.EMPTY;
     }
     
     /**
@@ -75,8 +172,48 @@ public class CommandStreamManager implements Runnable {
      * within Motive.
      * @param listener The RigidBodyUpdateListener subscribing to updates.
      */
-    public void addRigidBodyUpdateListener(RigidBodyUpdateListener listener) {
-        rigidBodyUpdateListeners.add(listener);
+    public synchronized void addRigidBodyUpdateListener(RigidBodyUpdateListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        rigidBodyRoutes = rigidBodyRoutes.withAllBodyListener(listener);
+    }
+
+    /**
+     * Adds a RigidBodyUpdateListener that is only updated for
+     * the rigid bodies with the given streaming IDs.
+     * Bodies that no listener is subscribed to are skipped over
+     * without being decoded.
+     * @param listener The RigidBodyUpdateListener subscribing to updates.
+     * @param ids The streaming IDs of the bodies to subscribe to
+     * (0 to 65535)
+     */
+    public synchronized void addRigidBodyUpdateListener(RigidBodyUpdateListener listener,
+            int... ids) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        RigidBodyRoutingTable routes = rigidBodyRoutes;
+        for (int id : ids) {
+            routes = routes.withRangeListener(listener, id, id);
+        }
+        rigidBodyRoutes = routes;
+    }
+
+    /**
+     * Adds a RigidBodyUpdateListener that is only updated for
+     * the rigid bodies with streaming IDs in the given range.
+     * @param listener The RigidBodyUpdateListener subscribing to updates.
+     * @param firstID The first streaming ID of the range
+     * @param lastID The last streaming ID of the range (inclusive, at most 65535)
+     */
+    public synchronized void addRigidBodyUpdateListenerForRange(
+            RigidBodyUpdateListener listener, int firstID, int lastID) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        rigidBodyRoutes = rigidBodyRoutes.withRangeListener(listener,
+                firstID, lastID);
     }
 
     /**
@@ -85,463 +222,886 @@ public class CommandStreamManager implements Runnable {
      * a frame is received from Motive.
      * @param listener The subscribing listener
      */
-    public void addFrameUpdateListener(FrameUpdateListener listener) {
-        frameUpdateListeners.add(listener);
+    public synchronized void addFrameUpdateListener(FrameUpdateListener listener) {
+        frameUpdateListeners = append(frameUpdateListeners, listener);
     }
     
     /**
-     * Sends a 'keep alive' signal to Motive, which tells Motive
-     * that we're still listening for packets.
+     * Adds a MarkerCloudListener to this stream manager.
+     * This will cause the listener to be handed the marker positions
+     * contained in each frame received from Motive.
+     * While no MarkerCloudListener is registered, marker positions
+     * are skipped over without being decoded.
+     * @param listener The subscribing listener
      */
-    private void sendKeepAliveSignal() {
-        byte[] buffer = new byte[5];
-        ByteBuffer wrapper = ByteBuffer.wrap(buffer).order(
-                MOTIVE_PACKET_BYTE_ORDER);
-        try {
-            DatagramPacket sent = new DatagramPacket(buffer, buffer.length, 
-                    address, MOTIVE_COMMAND_PORT);
-            wrapper.putShort(MESSAGE_KEEP_ALIVE);
-            socket.send(sent);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public synchronized void addMarkerCloudListener(MarkerCloudListener listener) {
+        markerCloudListeners = append(markerCloudListeners, listener);
     }
 
     /**
-     * A new Thread is created within the run() method.
-     * This method contains a loop which will call sendKeepAliveSignal
-     * once every KEEP_ALIVE_WAIT_PERIOD milliseconds.
+     * Adds a SkeletonUpdateListener to this stream manager.
+     * This will cause the listener to be updated each time
+     * a skeleton is received from Motive.
+     * While no SkeletonUpdateListener is registered, skeletons
+     * are skipped over without being decoded.
+     * @param listener The subscribing listener
      */
-    private void keepAliveDaemon() {
-        while (true) {
-            try {
-                Thread.sleep(KEEP_ALIVE_WAIT_PERIOD);
-            } catch (InterruptedException e) {}
-            sendKeepAliveSignal();
+    public synchronized void addSkeletonUpdateListener(SkeletonUpdateListener listener) {
+        skeletonUpdateListeners = append(skeletonUpdateListeners, listener);
+    }
+
+    /**
+     * Adds a LabeledMarkerListener to this stream manager.
+     * This will cause the listener to be updated each time
+     * a labeled marker is received from Motive.
+     * While no LabeledMarkerListener is registered, labeled markers
+     * are skipped over without being decoded.
+     * @param listener The subscribing listener
+     */
+    public synchronized void addLabeledMarkerListener(LabeledMarkerListener listener) {
+        labeledMarkerListeners = append(labeledMarkerListeners, listener);
+    }
+
+    /**
+     * Adds an AnalogDataListener to this stream manager.
+     * This will cause the listener to be updated each time
+     * force plate or device data is received from Motive.
+     * While no AnalogDataListener is registered, force plate and
+     * device data is skipped over without being decoded.
+     * @param listener The subscribing listener
+     */
+    public synchronized void addAnalogDataListener(AnalogDataListener listener) {
+        analogDataListeners = append(analogDataListeners, listener);
+    }
+
+    /**
+     * Adds a FrameTimingListener to this stream manager.
+     * This will cause the listener to be updated with the timestamps
+     * of each frame received from Motive.
+     * @param listener The subscribing listener
+     */
+    public synchronized void addFrameTimingListener(FrameTimingListener listener) {
+        frameTimingListeners = append(frameTimingListeners, listener);
+    }
+
+    /**
+     * Adds a ConnectionStateListener to this stream manager.
+     * This will cause the listener to be updated each time the
+     * manager connects to, loses or reconnects to Motive.
+     * @param listener The subscribing listener
+     */
+    public synchronized void addConnectionStateListener(ConnectionStateListener listener) {
+        connectionStateListeners = append(connectionStateListeners, listener);
+    }
+
+    /**
+     * Adds an ActivityLevelListener to this stream manager.
+     * This will cause the listener to be updated each time the
+     * application marks the scene as idle or active again.
+     * @param listener The subscribing listener
+     */
+    public synchronized void addActivityLevelListener(ActivityLevelListener listener) {
+        activityLevelListeners = append(activityLevelListeners, listener);
+    }
+
+    /**
+     * Adds a StreamEventListener to this stream manager. Once one is
+     * added, connection events, stalls and bad packets are no longer
+     * printed to the console.
+     * @param listener The subscribing listener
+     */
+    public synchronized void addStreamEventListener(StreamEventListener listener) {
+        streamEventListeners = append(streamEventListeners, listener);
+    }
+
+    /**
+     * Creates a copy of an array of listeners with a listener added to the end
+     */
+    static <T> T[] append(T[] listeners, T listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
         }
+        T[] result = Arrays.copyOf(listeners, listeners.length + 1);
+        result[listeners.length] = listener;
+        return result;
+    }
+
+    /**
+     * Sets the version of NatNet that frames are decoded with.
+     * This is normally detected automatically when Motive responds
+     * to our connection request, but may be set by hand for servers
+     * that don't report their version.
+     * @param major the major version (2, 3 or 4)
+     * @param minor the minor version
+     */
+    public void setNatNetVersion(int major, int minor) {
+        natNetMinor = minor;
+        natNetMajor = major;
+    }
+
+    /**
+     * Creates a read-only view of the marker positions at the buffer's
+     * current position, without copying them, and moves the buffer's
+     * position past the markers.
+     * @param buffer the buffer containing the frame
+     * @param markerCount the number of markers (x, y, z float triples)
+     * @return a FloatBuffer backed by the buffer's contents
+     */
+    private static FloatBuffer sliceMarkers(ByteBuffer buffer, int markerCount) {
+        int length = markerCount * MARKER_BYTES;
+        FloatBuffer markers = buffer.slice(buffer.position(), length)
+                .order(MOTIVE_PACKET_BYTE_ORDER)
+                .asFloatBuffer()
+                .asReadOnlyBuffer();
+        buffer.position(buffer.position() + length);
+        return markers;
+    }
+
+    /**
+     * Moves the buffer's position past a number of marker positions
+     * @param buffer the buffer containing the frame
+     * @param markerCount the number of markers (x, y, z float triples)
+     */
+    private static void skipMarkers(ByteBuffer buffer, int markerCount) {
+        buffer.position(buffer.position() + markerCount * MARKER_BYTES);
+    }
+
+    /**
+     * Sends a message with no content to Motive
+     * @param socket the socket to send from
+     * @param message the buffer to send the message from
+     * @param messageType the type of message
+     * @param length the length of the message, in bytes
+     */
+    private void sendMessage(DatagramSocket socket, DatagramPacket message,
+            short messageType, int length) throws IOException {
+        byte[] buffer = message.getData();
+        Arrays.fill(buffer, 0, length, (byte) 0);
+        ByteBuffer.wrap(buffer).order(MOTIVE_PACKET_BYTE_ORDER).putShort(messageType);
+        message.setLength(length);
+        socket.send(message);
     }
 
     /**
      * This method turns the packet byte data into readable, usable data
-     * It also updates the stream manager's rigid body listeners
+     * It also updates the stream manager's listeners
      * (This is what drives the animation of the panel)
-     
-     * Note: this method works with Motive version 2.1.1
-
+     * 
+     * The layout of a frame depends on the version of NatNet that Motive
+     * streams with, which is reported when we connect. Motive 1.10.2
+     * streams NatNet 2.10, Motive 2.1.1 streams NatNet 3.0 and Motive 3
+     * streams NatNet 3.1 or 4.x. From NatNet 4.1 on, each section's count
+     * is followed by the section's length in bytes, and an asset section
+     * is added after the skeletons.
+     * 
+     * Sections of the frame that no listener is interested in are skipped
+     * over without being decoded (in one step, when their length is sent).
+     * Decoded data is handed to listeners in reused (pooled) objects, so no
+     * objects are created per frame.
+     * 
      * @param buffer a ByteBuffer passed by run()
      */
-    private void handleFrameDataV2_1_1(ByteBuffer buffer) {
+    private void handleFrameData(ByteBuffer buffer) {
+        final int major = natNetMajor;
+        final int minor = natNetMinor;
+        final boolean sized = isVersionAtLeast(major, minor, 4, 1);
+
+        FrameDecodedEvent decoded = FrameDecodedEvent.startIfEnabled();
         short bufferSize = buffer.getShort();
-        
         int frameNumber = buffer.getInt();
+
+        decodeMarkerSets(buffer, sized);
+        int rigidBodyCount = decodeRigidBodies(buffer, major, minor, sized);
+        if (isVersionAtLeast(major, minor, 2, 1)) {
+            decodeSkeletons(buffer, major, minor, sized);
+        }
+        if (sized) {
+            skipAssets(buffer);
+        }
+        if (isVersionAtLeast(major, minor, 2, 3)) {
+            decodeLabeledMarkers(buffer, major, minor, sized);
+        }
+        if (isVersionAtLeast(major, minor, 2, 9)) {
+            decodeAnalogData(buffer, forcePlatePool, true, sized);
+        }
+        if (isVersionAtLeast(major, minor, 2, 11)) {
+            decodeAnalogData(buffer, devicePool, false, sized);
+        }
+        decodeFrameTiming(buffer, frameNumber, major, minor);
+        if (decoded != null) {
+            decoded.finish(frameNumber, rigidBodyCount);
+        }
+
+        for (FrameUpdateListener listener : frameUpdateListeners) {
+            ListenerDispatchEvent dispatch = ListenerDispatchEvent.startIfEnabled();
+            listener.frameUpdateReceived();
+            if (dispatch != null) {
+                dispatch.finish(listener, "frameUpdateReceived");
+            }
+        }
+    }
+
+    /**
+     * Determines whether a NatNet version is at least a given version
+     * @return true if major.minor is the same as or newer than
+     * requiredMajor.requiredMinor
+     */
+    private static boolean isVersionAtLeast(int major, int minor,
+            int requiredMajor, int requiredMinor) {
+        return major > requiredMajor
+                || (major == requiredMajor && minor >= requiredMinor);
+    }
+
+    /**
+     * Reads the length in bytes that follows a section's count
+     * in NatNet 4.1 and later
+     * @param buffer the frame, positioned after the section's count
+     * @param sized true if the NatNet version sends section lengths
+     * @return the position the section ends at,
+     * or -1 if the length isn't sent
+     */
+    private static int readSectionEnd(ByteBuffer buffer, boolean sized) {
+        if (!sized) {
+            return -1;
+        }
+        int length = buffer.getInt();
+        return buffer.position() + length;
+    }
+
+    /**
+     * Moves to the end of a section, if its length was sent
+     * @param end the position returned by readSectionEnd
+     */
+    private static void endSection(ByteBuffer buffer, int end) {
+        if (end >= 0) {
+            buffer.position(end);
+        }
+    }
+
+    /**
+     * Skips the asset section that NatNet 4.1 added after the skeletons
+     * @param buffer the frame, positioned at the asset count
+     */
+    private static void skipAssets(ByteBuffer buffer) {
+        buffer.getInt();
+        endSection(buffer, readSectionEnd(buffer, true));
+    }
+
+    /**
+     * Decodes the marker set and unlabeled marker sections of a frame
+     * @param buffer the frame, positioned at the marker set count
+     * @param sized true if the sections' lengths are sent
+     */
+    private void decodeMarkerSets(ByteBuffer buffer, boolean sized) {
         final int markerSetCount = buffer.getInt();
-        
+        final MarkerCloudListener[] markerListeners = markerCloudListeners;
+        int end = readSectionEnd(buffer, sized);
+        if (end >= 0 && markerListeners.length == 0) {
+            // skip both sections whole
+            buffer.position(end);
+            buffer.getInt();
+            endSection(buffer, readSectionEnd(buffer, true));
+            return;
+        }
         for (int markerSet = 0; markerSet < markerSetCount; markerSet++) {
-            byte c = 1;
-            int offset = buffer.position();
-            int size = 0;
-            while (c != 0) {
-                c = buffer.get();
-                size++;
-            }
-            
-            int markerCount = buffer.getInt();
-            for (int marker = 0; marker < markerCount; marker++) {
-                float x = buffer.getFloat();
-                float y = buffer.getFloat();
-                float z = buffer.getFloat();
+            // the marker set's name is a null-terminated string
+            int nameOffset = buffer.position();
+            while (buffer.get() != 0) {}
+            int nameLength = buffer.position() - nameOffset - 1;
+
+            final int markerCount = buffer.getInt();
+            if (markerListeners.length == 0) {
+                skipMarkers(buffer, markerCount);
+            } else {
+                ByteBuffer name = buffer.slice(nameOffset, nameLength)
+                        .asReadOnlyBuffer();
+                FloatBuffer markers = sliceMarkers(buffer, markerCount);
+                for (MarkerCloudListener listener : markerListeners) {
+                    listener.markerSetReceived(name.duplicate(),
+                            markers.duplicate());
+                }
             }
         }
+        endSection(buffer, end);
         final int unlabeledMarkerCount = buffer.getInt();
-
-        for (int marker = 0; marker < unlabeledMarkerCount; marker++) {
-            float x = buffer.getFloat();
-            float y = buffer.getFloat();
-            float z = buffer.getFloat();
+        end = readSectionEnd(buffer, sized);
+        if (markerListeners.length == 0) {
+            skipMarkers(buffer, unlabeledMarkerCount);
+        } else {
+            FloatBuffer markers = sliceMarkers(buffer, unlabeledMarkerCount);
+            for (MarkerCloudListener listener : markerListeners) {
+                listener.unlabeledMarkersReceived(markers.duplicate());
+            }
         }
+        endSection(buffer, end);
+    }
 
+    /**
+     * Decodes the rigid body section of a frame, updating the
+     * listeners subscribed to each body
+     * @param buffer the frame, positioned at the rigid body count
+     * @param sized true if the section's length is sent
+     * @return the number of rigid bodies in the frame
+     */
+    private int decodeRigidBodies(ByteBuffer buffer, int major, int minor,
+            boolean sized) {
+        final RigidBodyRoutingTable routes = rigidBodyRoutes;
+        final MarkerCloudListener[] markerListeners = markerCloudListeners;
         final int rigidBodyCount = buffer.getInt();
+        final int end = readSectionEnd(buffer, sized);
         for (int body = 0; body < rigidBodyCount; body++) {
-            // id (this will come into play when we have multiple bodies)
             int bodyID = buffer.getInt();
-            // coordinates of the rigid body (what we wanted!)
-            float x = buffer.getFloat();
-            float y = buffer.getFloat();
-            float z = buffer.getFloat();
-            
-            // rotation as a quaternion
-            float qx = buffer.getFloat();
-            float qy = buffer.getFloat();
-            float qz = buffer.getFloat();
-            float qw = buffer.getFloat();
-
-            for (RigidBodyUpdateListener listener : rigidBodyUpdateListeners) {
-                if (listener != null)
+            RigidBodyUpdateListener[] listeners = routes.listenersFor(bodyID);
+            if (listeners.length == 0) {
+                // nobody is subscribed to this body; skip its pose
+                buffer.position(buffer.position() + RIGID_BODY_POSE_BYTES);
+            } else {
+                // coordinates of the rigid body (what we wanted!)
+                float x = buffer.getFloat();
+                float y = buffer.getFloat();
+                float z = buffer.getFloat();
+
+                // rotation as a quaternion
+                float qx = buffer.getFloat();
+                float qy = buffer.getFloat();
+                float qz = buffer.getFloat();
+                float qw = buffer.getFloat();
+
+                for (RigidBodyUpdateListener listener : listeners) {
                     listener.rigidBodyUpdateReceived(bodyID, x, y, z,
                             qw, qx, qy, qz);
+                }
             }
 
-            // get rid of junk in the way
-            buffer.getFloat();
-            buffer.getShort();
-
-            // determine what direction the body is facing based on the quaternions
-            // this is strictly the rotation along the Z axis
-            // thanks to https://automaticaddison.com/how-to-convert-a-quaternion-to-a-rotation-matrix/
-            // float forwardX = 2 * (quaternions[1] * quaternions[2] + quaternions[0] * quaternions[3]);
-            // float forwardY = 2 * (quaternions[0] * quaternions[0] + quaternions[2] * quaternions[2]) - 1;
-            // float distance = (float) Math.sqrt(forwardX * forwardX + forwardY * forwardY);
-            // if (distance == 0) {
-            //     distance = 1;
-            // }
-
-            // forwardX /= distance;
-            // forwardY /= distance;
-            
-            /*final int rbMarkerCount = buffer.getInt();
-            for (int rbMarker = 0; rbMarker < rbMarkerCount; rbMarker++) {
-                float markerX = buffer.getFloat();
-                float markerY = buffer.getFloat();
-                float markerZ = buffer.getFloat();
-            }
-            System.out.printf("rbMarkerCount: %d\n", rbMarkerCount);
-            
-            for (int rbMarker = 0; rbMarker < rbMarkerCount; rbMarker++) {
-                int markerID = buffer.getInt();
+            // NatNet 2.x lists the body's markers after its pose
+            if (major < 3) {
+                final int rbMarkerCount = buffer.getInt();
+                if (markerListeners.length == 0) {
+                    skipMarkers(buffer, rbMarkerCount);
+                } else {
+                    FloatBuffer markers = sliceMarkers(buffer, rbMarkerCount);
+                    for (MarkerCloudListener listener : markerListeners) {
+                        listener.rigidBodyMarkersReceived(bodyID,
+                                markers.duplicate());
+                    }
+                }
+                skipRigidBodyMarkerDetails(buffer, rbMarkerCount, major);
             }
+            skipRigidBodyQuality(buffer, major, minor);
+        }
+        endSection(buffer, end);
+        return rigidBodyCount;
+    }
 
-            for (int rbMarker = 0; rbMarker < rbMarkerCount; rbMarker++) {
-                float markerSize = buffer.getFloat();
-                System.out.printf("Marker size: %.2f\n");
-            }*/
-
-            // float markerError = buffer.getFloat();
-        }
-        // below is NOT WORKING... but may not be needed ;)
-        // int skeletonCount = buffer.getInt();
-        // for (int skeleton = 0; skeleton < skeletonCount; skeleton++) {
-        //     int skeletonID = buffer.getInt();
-        //     int skeletonRigidBodyCount = buffer.getInt();
-        //     for (int body = 0; body < skeletonRigidBodyCount; body++) {
-        //         int bodyID = buffer.getInt();
-        //         float x = buffer.getFloat();
-        //         float y = buffer.getFloat();
-        //         float z = buffer.getFloat();
-        //         System.out.printf("body %d location: %.2f, %.2f, %.2f\n", 
-        //                 bodyID, x, y, z);
-        //         float orientationX = buffer.getFloat();
-        //         float orientationY = buffer.getFloat();
-        //         float orientationZ = buffer.getFloat();
-        //         int bodyMarkerCount = buffer.getInt();
-        //         for (int marker = 0; marker < bodyMarkerCount; marker++) {
-        //             float markerX = buffer.getFloat();
-        //             float markerY = buffer.getFloat();
-        //             float markerZ = buffer.getFloat();
-        //         }
-        //     }
-        // }
-        for (FrameUpdateListener listener : frameUpdateListeners) {
-            listener.frameUpdateReceived();
+    /**
+     * Skips the marker IDs and sizes that NatNet 2.x sends
+     * after a rigid body's marker positions
+     */
+    private static void skipRigidBodyMarkerDetails(ByteBuffer buffer,
+            int markerCount, int major) {
+        if (major >= 2) {
+            buffer.position(buffer.position()
+                    + markerCount * (Integer.BYTES + Float.BYTES));
         }
     }
-    
+
     /**
-     * This method turns the packet byte data into readable, usable data
-     * It also updates the stream manager's rigid body listeners
-     * (This is what drives the animation of the panel)
-     
-     * Note: this method works with Motive versions 3 or higher
+     * Skips the mean marker error and tracking flags that end
+     * a rigid body
+     */
+    private static void skipRigidBodyQuality(ByteBuffer buffer, int major,
+            int minor) {
+        int length = 0;
+        if (major >= 2) {
+            length += Float.BYTES;
+        }
+        if (isVersionAtLeast(major, minor, 2, 6)) {
+            length += Short.BYTES;
+        }
+        buffer.position(buffer.position() + length);
+    }
 
-     * @param buffer a ByteBuffer passed by run()
+    /**
+     * Decodes the skeleton section of a frame. Each skeleton is made
+     * up of rigid bodies (bones) in the same format as the rigid body
+     * section.
+     * @param buffer the frame, positioned at the skeleton count
+     * @param sized true if the section's length is sent
      */
-    private void handleFrameDataV3(ByteBuffer buffer) {
-        short bufferSize = buffer.getShort();
-        int frameNumber = buffer.getInt();
-        int markerSetCount = buffer.getInt();
-        // List<String> modelNames = new ArrayList<>();
-        for (int markerSet = 0; markerSet < markerSetCount; markerSet++) {
-            byte c = 1;
-            int offset = buffer.position();
-            int size = 0;
-            while (c != 0) {
-                c = buffer.get();
-                size++;
+    private void decodeSkeletons(ByteBuffer buffer, int major, int minor,
+            boolean sized) {
+        final SkeletonUpdateListener[] listeners = skeletonUpdateListeners;
+        final boolean decode = listeners.length > 0;
+        final int skeletonCount = buffer.getInt();
+        final int end = readSectionEnd(buffer, sized);
+        if (end >= 0 && !decode) {
+            buffer.position(end);
+            return;
+        }
+        for (int index = 0; index < skeletonCount; index++) {
+            int skeletonID = buffer.getInt();
+            int boneCount = buffer.getInt();
+            Skeleton skeleton = null;
+            if (decode) {
+                skeleton = skeletonPool.get(index);
+                skeleton.reset(skeletonID, boneCount);
             }
-            // try {
-            //     System.out.println(new String(buffer.array(), offset, size, 
-            //             "UTF-8"));
-            // } catch (UnsupportedEncodingException ex) {}
-            int markerCount = buffer.getInt();
-            for (int marker = 0; marker < markerCount; marker++) {
-                float x = buffer.getFloat();
-                float y = buffer.getFloat();
-                float z = buffer.getFloat();
-                // System.out.printf("%d %.2f %.2f %.2f\n", marker, x, y, z);
+            for (int bone = 0; bone < boneCount; bone++) {
+                int boneID = buffer.getInt();
+                if (decode) {
+                    float x = buffer.getFloat();
+                    float y = buffer.getFloat();
+                    float z = buffer.getFloat();
+                    float qx = buffer.getFloat();
+                    float qy = buffer.getFloat();
+                    float qz = buffer.getFloat();
+                    float qw = buffer.getFloat();
+                    skeleton.setBone(bone, boneID, x, y, z, qw, qx, qy, qz);
+                } else {
+                    buffer.position(buffer.position() + RIGID_BODY_POSE_BYTES);
+                }
+                if (major < 3) {
+                    final int boneMarkerCount = buffer.getInt();
+                    skipMarkers(buffer, boneMarkerCount);
+                    skipRigidBodyMarkerDetails(buffer, boneMarkerCount, major);
+                }
+                if (decode) {
+                    float meanError = major >= 2 ? buffer.getFloat() : 0;
+                    boolean valid = true;
+                    if (isVersionAtLeast(major, minor, 2, 6)) {
+                        valid = (buffer.getShort() & 0x01) != 0;
+                    }
+                    skeleton.setBoneQuality(bone, meanError, valid);
+                } else {
+                    skipRigidBodyQuality(buffer, major, minor);
+                }
+            }
+            if (decode) {
+                for (SkeletonUpdateListener listener : listeners) {
+                    listener.skeletonUpdateReceived(skeleton);
+                }
             }
         }
-        int unlabeledMarkerCount = buffer.getInt();
-        for (int marker = 0; marker < unlabeledMarkerCount; marker++) {
-            float x = buffer.getFloat();
-            float y = buffer.getFloat();
-            float z = buffer.getFloat();
+        endSection(buffer, end);
+    }
+
+    /**
+     * Decodes the labeled marker section of a frame
+     * @param buffer the frame, positioned at the labeled marker count
+     * @param sized true if the section's length is sent
+     */
+    private void decodeLabeledMarkers(ByteBuffer buffer, int major, int minor,
+            boolean sized) {
+        final LabeledMarkerListener[] listeners = labeledMarkerListeners;
+        final boolean hasParams = isVersionAtLeast(major, minor, 2, 6);
+        final boolean hasResidual = major >= 3;
+        final int labeledMarkerCount = buffer.getInt();
+        final int end = readSectionEnd(buffer, sized);
+        if (end >= 0 && listeners.length == 0) {
+            buffer.position(end);
+            return;
         }
-        int rigidBodyCount = buffer.getInt();
-        for (int body = 0; body < rigidBodyCount; body++) {
-            // id (this will come into play when we have multiple bodies)
-            int bodyID = buffer.getInt();
-            // coordinates of the rigid body (what we wanted!)
+        if (listeners.length == 0) {
+            int markerBytes = Integer.BYTES + MARKER_BYTES + Float.BYTES
+                    + (hasParams ? Short.BYTES : 0)
+                    + (hasResidual ? Float.BYTES : 0);
+            buffer.position(buffer.position() + labeledMarkerCount * markerBytes);
+            return;
+        }
+        for (int marker = 0; marker < labeledMarkerCount; marker++) {
+            int id = buffer.getInt();
             float x = buffer.getFloat();
             float y = buffer.getFloat();
             float z = buffer.getFloat();
-            // System.out.printf("id: %d %.2f %.2f %.2f\n", bodyID, x, y, z);
-            
-            float[] quaternions = new float[4];
-            // unneeded rotational information
-            quaternions[0] = buffer.getFloat();
-            quaternions[1] = buffer.getFloat();
-            quaternions[2] = buffer.getFloat();
-            quaternions[3] = buffer.getFloat();
-
-            for (RigidBodyUpdateListener listener : rigidBodyUpdateListeners) {
-                if (listener != null)
-                    listener.rigidBodyUpdateReceived(bodyID, x, y, z,
-                            quaternions[0], quaternions[1], 
-                            quaternions[2], quaternions[3]);
+            float size = buffer.getFloat();
+            int params = hasParams ? buffer.getShort() : 0;
+            float residual = hasResidual ? buffer.getFloat() : 0;
+            for (LabeledMarkerListener listener : listeners) {
+                listener.labeledMarkerReceived(id, x, y, z, size, params,
+                        residual);
             }
+        }
+        endSection(buffer, end);
+    }
 
-            // determine what direction the body is facing based on the quaternions
-            // this is strictly the rotation along the Z axis
-            // thanks to https://automaticaddison.com/how-to-convert-a-quaternion-to-a-rotation-matrix/
-            // float forwardX = 2 * (quaternions[1] * quaternions[2] + quaternions[0] * quaternions[3]);
-            // float forwardY = 2 * (quaternions[0] * quaternions[0] + quaternions[2] * quaternions[2]) - 1;
-            // float distance = (float) Math.sqrt(forwardX * forwardX + forwardY * forwardY);
-            // if (distance == 0) {
-            //     distance = 1;
-            // }
-
-            // forwardX /= distance;
-            // forwardY /= distance;
-            
-            float markerError = buffer.getFloat();
-            byte byteA = buffer.get();
-            byte byteB = buffer.get();
-            boolean trackingValid = (byteA & 0x01) != 0;
-        }
-        // below is NOT WORKING... but may not be needed ;)
-        // int skeletonCount = buffer.getInt();
-        // for (int skeleton = 0; skeleton < skeletonCount; skeleton++) {
-        //     int skeletonID = buffer.getInt();
-        //     int skeletonRigidBodyCount = buffer.getInt();
-        //     for (int body = 0; body < skeletonRigidBodyCount; body++) {
-        //         int bodyID = buffer.getInt();
-        //         float x = buffer.getFloat();
-        //         float y = buffer.getFloat();
-        //         float z = buffer.getFloat();
-        //         System.out.printf("body %d location: %.2f, %.2f, %.2f\n", 
-        //                 bodyID, x, y, z);
-        //         float orientationX = buffer.getFloat();
-        //         float orientationY = buffer.getFloat();
-        //         float orientationZ = buffer.getFloat();
-        //         int bodyMarkerCount = buffer.getInt();
-        //         for (int marker = 0; marker < bodyMarkerCount; marker++) {
-        //             float markerX = buffer.getFloat();
-        //             float markerY = buffer.getFloat();
-        //             float markerZ = buffer.getFloat();
-        //         }
-        //     }
-        // }
-        for (FrameUpdateListener listener : frameUpdateListeners) {
-            listener.frameUpdateReceived();
+    /**
+     * Decodes the force plate or device section of a frame
+     * (both sections have the same layout)
+     * @param buffer the frame, positioned at the force plate/device count
+     * @param pool the pool of objects to decode into
+     * @param forcePlates true for the force plate section,
+     * false for the device section
+     * @param sized true if the section's length is sent
+     */
+    private void decodeAnalogData(ByteBuffer buffer, Pool<AnalogData> pool,
+            boolean forcePlates, boolean sized) {
+        final AnalogDataListener[] listeners = analogDataListeners;
+        final boolean decode = listeners.length > 0;
+        final int count = buffer.getInt();
+        final int end = readSectionEnd(buffer, sized);
+        if (end >= 0 && !decode) {
+            buffer.position(end);
+            return;
         }
+        for (int index = 0; index < count; index++) {
+            int id = buffer.getInt();
+            int channelCount = buffer.getInt();
+            AnalogData data = null;
+            if (decode) {
+                data = pool.get(index);
+                data.reset(id, channelCount);
+            }
+            for (int channel = 0; channel < channelCount; channel++) {
+                int frameCount = buffer.getInt();
+                if (decode) {
+                    data.startChannel(channel, frameCount);
+                    for (int frame = 0; frame < frameCount; frame++) {
+                        data.addSample(buffer.getFloat());
+                    }
+                } else {
+                    buffer.position(buffer.position() + frameCount * Float.BYTES);
+                }
+            }
+            if (decode) {
+                for (AnalogDataListener listener : listeners) {
+                    if (forcePlates) {
+                        listener.forcePlateDataReceived(data);
+                    } else {
+                        listener.deviceDataReceived(data);
+                    }
+                }
+            }
+        }
+        endSection(buffer, end);
     }
 
     /**
-     * This method turns the packet byte data into readable, usable data
-     * It also updates the stream manager's rigid body listeners
-     * (This is what drives the animation of the panel)
-     * 
-     * Note: this version works with Motive version 1.10.2 only.
+     * Decodes the timecode, timestamps and flags that end a frame
+     * @param buffer the frame, positioned at the timecode
+     * @param frameNumber the frame's number
+     */
+    private void decodeFrameTiming(ByteBuffer buffer, int frameNumber,
+            int major, int minor) {
+        final FrameTimingListener[] listeners = frameTimingListeners;
+        final FrameTiming timing = frameTiming;
+        timing.frameNumber = frameNumber;
+        timing.timecode = buffer.getInt();
+        timing.timecodeSubframe = buffer.getInt();
+        if (isVersionAtLeast(major, minor, 2, 7)) {
+            timing.timestamp = buffer.getDouble();
+        } else {
+            timing.timestamp = buffer.getFloat();
+        }
+        if (major >= 3) {
+            timing.cameraMidExposureTimestamp = buffer.getLong();
+            timing.dataReceivedTimestamp = buffer.getLong();
+            timing.transmitTimestamp = buffer.getLong();
+        }
+        if (isVersionAtLeast(major, minor, 4, 1)) {
+            // precision timestamp (seconds and fractional seconds)
+            buffer.getInt();
+            buffer.getInt();
+        }
+        short params = buffer.getShort();
+        timing.recording = (params & 0x01) != 0;
+        timing.trackedModelsChanged = (params & 0x02) != 0;
 
-     * @param buffer a ByteBuffer passed by run()
+        for (FrameTimingListener listener : listeners) {
+            listener.frameTimingReceived(timing);
+        }
+    }
+
+    /**
+     * Reads the NatNet version from the server info message Motive
+     * sends after we connect, so that frames can be decoded correctly
+     * @param buffer the message, positioned after the message type
      */
-    private void handleFrameDataV1_10_2(ByteBuffer buffer) {
+    private void handleServerInfo(ByteBuffer buffer) {
         short bufferSize = buffer.getShort();
-        int frameNumber = buffer.getInt();
-        final int markerSetCount = buffer.getInt();
-        // List<String> modelNames = new ArrayList<>();
-        for (int markerSet = 0; markerSet < markerSetCount; markerSet++) {
-            byte c = 1;
-            int offset = buffer.position();
-            int size = 0;
-            while (c != 0) {
-                c = buffer.get();
-                size++;
-            }
-            // try {
-            //     System.out.println(new String(buffer.array(), offset, size, 
-            //             "UTF-8"));
-            // } catch (UnsupportedEncodingException ex) {}
-            final int markerCount = buffer.getInt();
-            for (int marker = 0; marker < markerCount; marker++) {
-                float x = buffer.getFloat();
-                float y = buffer.getFloat();
-                float z = buffer.getFloat();
-                // System.out.printf("%d %.2f %.2f %.2f\n", marker, x, y, z);
-            }
+        // skip the server's name and the version of Motive
+        buffer.position(buffer.position() + SERVER_NAME_LENGTH + 4);
+        int major = buffer.get();
+        int minor = buffer.get();
+        if (major > 0) {
+            setNatNetVersion(major, minor);
         }
-        final int unlabeledMarkerCount = buffer.getInt();
-        for (int marker = 0; marker < unlabeledMarkerCount; marker++) {
-            float x = buffer.getFloat();
-            float y = buffer.getFloat();
-            float z = buffer.getFloat();
+        StreamEventListener[] listeners = streamEventListeners;
+        if (listeners.length == 0) {
+            System.out.println("Successfully connected to command server! "
+                    + "(NatNet " + natNetMajor + "." + natNetMinor + ")");
         }
-        final int rigidBodyCount = buffer.getInt();
-        for (int body = 0; body < rigidBodyCount; body++) {
-            //System.out.println(body);
-            // id (this will come into play when we have multiple bodies)
-            int bodyID = buffer.getInt();
-            System.out.println(bodyID);
-            //System.out.println("body id: " + bodyID);
-            // coordinates of the rigid body (what we wanted!)
-            float x = buffer.getFloat();
-            float y = buffer.getFloat();
-            float z = buffer.getFloat();
-            // System.out.printf("id: %d %.2f %.2f %.2f\n", bodyID, x, y, z);
-            
-            float[] quaternions = new float[4];
-            // unneeded rotational information
-            quaternions[0] = buffer.getFloat();
-            quaternions[1] = buffer.getFloat();
-            quaternions[2] = buffer.getFloat();
-            quaternions[3] = buffer.getFloat();
-
-            for (RigidBodyUpdateListener listener : rigidBodyUpdateListeners) {
-                if (listener != null)
-                    listener.rigidBodyUpdateReceived(bodyID, x, y, z,
-                            quaternions[0], quaternions[1], 
-                            quaternions[2], quaternions[3]);
+        for (StreamEventListener listener : listeners) {
+            listener.serverInfoReceived(natNetMajor, natNetMinor);
+        }
+    }
+
+    /**
+     * Starts receiving frames from Motive on a new thread.
+     * Does nothing if the manager is already running.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::receiveLoop, "motive-stream " + server);
+        thread.start();
+    }
+
+    /**
+     * Stops receiving frames, closing the socket, and waits for the
+     * receiving thread to finish.
+     * The manager may be started again afterwards.
+     */
+    public void stop() {
+        Thread stopped;
+        synchronized (this) {
+            running = false;
+            stopped = thread;
+            thread = null;
+        }
+        // closing the socket wakes the receiving thread
+        DatagramSocket socket = this.socket;
+        if (socket != null) {
+            socket.close();
+        }
+        if (stopped != null && stopped != Thread.currentThread()) {
+            stopped.interrupt();
+            try {
+                stopped.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+        }
+    }
+
+    /**
+     * @return true if the manager has been started and not stopped
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return the address and command port of the Motive server
+     */
+    public InetSocketAddress getServer() {
+        return server;
+    }
+
+    /**
+     * @return the current state of the connection to Motive
+     */
+    public ConnectionState getConnectionState() {
+        return connectionState;
+    }
+
+    /**
+     * Sets how long the stream may go without any data from Motive before
+     * the manager considers it stalled and reconnects
+     * @param millis the timeout, in milliseconds
+     */
+    public void setNoDataTimeout(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive: " + millis);
+        }
+        noDataTimeout = millis;
+    }
+
+    /**
+     * @return the activity level last set by the application
+     * (ACTIVE until it is first set)
+     */
+    public ActivityLevel getActivityLevel() {
+        return activityLevel;
+    }
 
-            // determine what direction the body is facing based on the quaternions
-            // this is strictly the rotation along the Z axis
-            // thanks to https://automaticaddison.com/how-to-convert-a-quaternion-to-a-rotation-matrix/
-            // float forwardX = 2 * (quaternions[1] * quaternions[2] + quaternions[0] * quaternions[3]);
-            // float forwardY = 2 * (quaternions[0] * quaternions[0] + quaternions[2] * quaternions[2]) - 1;
-            // float distance = (float) Math.sqrt(forwardX * forwardX + forwardY * forwardY);
-            // if (distance == 0) {
-            //     distance = 1;
-            // }
-
-            // forwardX /= distance;
-            // forwardY /= distance;
-            
-            final int rbMarkerCount = buffer.getInt();
-            for (int rbMarker = 0; rbMarker < rbMarkerCount; rbMarker++) {
-                float markerX = buffer.getFloat();
-                float markerY = buffer.getFloat();
-                float markerZ = buffer.getFloat();
+    /**
+     * Tells consumers of this manager's frames how busy the scene is, so
+     * that they can reduce their work while it is idle. Frames are still
+     * received and delivered as usual. ActivityLevelListeners are told,
+     * on the calling thread, if the level changes.
+     * @param level the new activity level
+     */
+    public void setActivityLevel(ActivityLevel level) {
+        if (level == null) {
+            throw new NullPointerException("level");
+        }
+        synchronized (activityLock) {
+            if (activityLevel == level) {
+                return;
+            }
+            activityLevel = level;
+            for (ActivityLevelListener listener : activityLevelListeners) {
+                listener.activityLevelChanged(level);
             }
         }
-        // below is NOT WORKING... but may not be needed ;)
-        // int skeletonCount = buffer.getInt();
-        // for (int skeleton = 0; skeleton < skeletonCount; skeleton++) {
-        //     int skeletonID = buffer.getInt();
-        //     int skeletonRigidBodyCount = buffer.getInt();
-        //     for (int body = 0; body < skeletonRigidBodyCount; body++) {
-        //         int bodyID = buffer.getInt();
-        //         float x = buffer.getFloat();
-        //         float y = buffer.getFloat();
-        //         float z = buffer.getFloat();
-        //         System.out.printf("body %d location: %.2f, %.2f, %.2f\n", 
-        //                 bodyID, x, y, z);
-        //         float orientationX = buffer.getFloat();
-        //         float orientationY = buffer.getFloat();
-        //         float orientationZ = buffer.getFloat();
-        //         int bodyMarkerCount = buffer.getInt();
-        //         for (int marker = 0; marker < bodyMarkerCount; marker++) {
-        //             float markerX = buffer.getFloat();
-        //             float markerY = buffer.getFloat();
-        //             float markerZ = buffer.getFloat();
-        //         }
-        //     }
-        // }
-        for (FrameUpdateListener listener : frameUpdateListeners) {
-            listener.frameUpdateReceived();
+    }
+
+    private void setConnectionState(ConnectionState state) {
+        if (connectionState == state) {
+            return;
+        }
+        connectionState = state;
+        for (ConnectionStateListener listener : connectionStateListeners) {
+            listener.connectionStateChanged(state);
         }
     }
-    
+
+    /**
+     * Receives frames from Motive on the calling thread until stop()
+     * is called. Prefer start(), which creates a thread for this.
+     */
     @Override
     public void run() {
-        try {
-            // Start with an unbound socket
-            socket = new DatagramSocket(APPLICATION_PORT, address);
-            // create a 64K byte buffer
-            byte[] buffer = new byte[64 * 1024];
-            // Create a packet which will be sent to Motive
-            DatagramPacket sent = new DatagramPacket(buffer, 2, address, MOTIVE_COMMAND_PORT);
-            // Send the packet (size of 2 bytes, both bytes 0) to Motive
-            // These two zero bytes indicate the MESSAGE_CONNECT signal,
-            // causing Motive to begin sending us frame data (yay)
-            socket.send(sent);
-            // Create a packet data structure that will be used to 
-            // receive packets from Motive
-            DatagramPacket received = new DatagramPacket(buffer, buffer.length,
-                    sent.getAddress(), sent.getPort());
-            ByteBuffer wrapper = ByteBuffer.wrap(buffer).order(
-                    MOTIVE_PACKET_BYTE_ORDER);
-
-            // Create a background thread that will send Motive a keep alive signal
-            // once every KEEP_ALIVE_WAIT_PERIOD milliseconds 
-            // (this maintains the connection to Motive)
-            new Thread(this::keepAliveDaemon).start();
-
-            // Continuously receive packets from Motive
-            while (true) {
-                // Block thread until packet received
+        synchronized (this) {
+            if (thread != null) {
+                throw new IllegalStateException("Stream manager is already running");
+            }
+            running = true;
+            thread = Thread.currentThread();
+        }
+        receiveLoop();
+    }
+
+    /**
+     * Connects to Motive and receives frames, reconnecting whenever the
+     * stream stalls or the socket fails, until the manager is stopped
+     */
+    private void receiveLoop() {
+        // create a 64K byte buffer
+        byte[] buffer = new byte[64 * 1024];
+        // Create a packet data structure that will be used to
+        // receive packets from Motive
+        DatagramPacket received = new DatagramPacket(buffer, buffer.length);
+        ByteBuffer wrapper = ByteBuffer.wrap(buffer).order(
+                MOTIVE_PACKET_BYTE_ORDER);
+        // Create a packet which will be used to send messages to Motive
+        DatagramPacket sent = new DatagramPacket(new byte[8], 0, server);
+
+        long reconnectDelay = INITIAL_RECONNECT_DELAY;
+        while (running) {
+            setConnectionState(ConnectionState.CONNECTING);
+            try (DatagramSocket socket = new DatagramSocket(local)) {
+                this.socket = socket;
+                if (!running) {
+                    break;
+                }
+                // Send the packet (size of 2 bytes, both bytes 0) to Motive
+                // These two zero bytes indicate the MESSAGE_CONNECT signal,
+                // causing Motive to begin sending us frame data (yay)
+                sendMessage(socket, sent, MESSAGE_CONNECT, 2);
+                if (receiveFrames(socket, received, wrapper, sent)) {
+                    // the connection worked for a while; retry quickly
+                    reconnectDelay = INITIAL_RECONNECT_DELAY;
+                }
+            } catch (IOException e) {
+                if (running) {
+                    StreamEventListener[] listeners = streamEventListeners;
+                    if (listeners.length == 0) {
+                        System.out.println("Lost connection to Motive: " + e.getMessage());
+                    }
+                    for (StreamEventListener listener : listeners) {
+                        listener.connectionLost(e);
+                    }
+                }
+            } finally {
+                this.socket = null;
+            }
+            if (!running) {
+                break;
+            }
+            setConnectionState(ConnectionState.DISCONNECTED);
+            try {
+                Thread.sleep(reconnectDelay);
+            } catch (InterruptedException e) {
+                // stop() interrupts the wait; running is checked above
+            }
+            reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY);
+        }
+        setConnectionState(ConnectionState.STOPPED);
+    }
+
+    /**
+     * Receives packets from Motive until the stream stalls or the manager
+     * is stopped, sending Motive a keep alive signal once every
+     * KEEP_ALIVE_WAIT_PERIOD milliseconds (this maintains the connection)
+     * @return true if any data was received
+     */
+    private boolean receiveFrames(DatagramSocket socket, DatagramPacket received,
+            ByteBuffer wrapper, DatagramPacket sent) throws IOException {
+        long timeout = noDataTimeout;
+        // wake up at least as often as keep alive signals need sending
+        socket.setSoTimeout((int) Math.min(timeout, KEEP_ALIVE_WAIT_PERIOD));
+        boolean receivedData = false;
+        long lastKeepAlive = System.nanoTime();
+        long lastData = lastKeepAlive;
+        // Continuously receive packets from Motive
+        while (running) {
+            try {
+                // Block thread until packet received (or timeout)
+                received.setLength(received.getData().length);
                 socket.receive(received);
+                if (!running) {
+                    // woken up by stop()
+                    break;
+                }
+                lastData = System.nanoTime();
+                if (!receivedData) {
+                    receivedData = true;
+                    setConnectionState(ConnectionState.CONNECTED);
+                }
                 // Determine packet type
                 short messageType = wrapper.getShort();
+                PacketReceivedEvent.emit(received.getLength(), messageType);
                 switch (messageType) {
                     case MESSAGE_SERVER_INFO:
-                        // This only happens once, on initial connection
-                        System.out.println("Successfully connected to "
-                                + "command server!");
+                        // This happens once per connection
+                        handleServerInfo(wrapper);
                         break;
                     case MESSAGE_FRAME_OF_DATA:
                         // This case occurs roughly 60-120 times/second
 
                         // Method call breaks down the packet into useful data
                         // and updates the manager's listeners with this new data 
-                        handleFrameDataV2_1_1(wrapper);
+                        handleFrameData(wrapper);
                         break;
                     default:
                         // do nothing; we don't care about other messages
                 }
+            } catch (SocketTimeoutException e) {
+                if (System.nanoTime() - lastData >= timeout * 1_000_000) {
+                    StreamEventListener[] listeners = streamEventListeners;
+                    if (listeners.length == 0) {
+                        System.out.println("No data from Motive for " + timeout
+                                + " ms; reconnecting");
+                    }
+                    for (StreamEventListener listener : listeners) {
+                        listener.streamStalled(timeout);
+                    }
+                    return receivedData;
+                }
+            } catch (RuntimeException e) {
+                // a malformed packet (or a failing listener)
+                // shouldn't end the stream
+                StreamEventListener[] listeners = streamEventListeners;
+                if (listeners.length == 0) {
+                    System.out.println("Unable to handle packet from Motive: " + e);
+                }
+                for (StreamEventListener listener : listeners) {
+                    listener.badPacketReceived(wrapper.getShort(0), e);
+                }
+            } finally {
                 // reset the wrapper to the first byte in the buffer
-                wrapper.rewind();
+                wrapper.clear();
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Dumps the contents of a given byte array/buffer as hexadecimal
-     * to System.out.
-     * @param array the array/buffer to dump
-     * @param messageLength the length of the contents to dump
-     */
-    private static void dumpBuffer(final byte[] array, final int messageLength) {
-        for (int i = 0; i < messageLength; i++) {
-            System.out.printf("%02X ", array[i]);
-            if (i % 0x10 == 0xF) {
-                System.out.println();
+            long now = System.nanoTime();
+            if (now - lastKeepAlive >= KEEP_ALIVE_WAIT_PERIOD * 1_000_000) {
+                sendMessage(socket, sent, MESSAGE_KEEP_ALIVE, 5);
+                lastKeepAlive = now;
             }
         }
-        if (messageLength % 0x10 != 0) {
-            System.out.println();
-        }
-        System.out.println("- - - - - - - - - - - - - - - - - - - -");
+        return receivedData;
     }
-    
+
 }
@@ -0,0 +1,26 @@
+package motive;
+
+/**
+ * The state of a CommandStreamManager's connection to Motive.
+ * 
+ * @author Lauren Knight
+ */
+public enum ConnectionState {
+    /**
+     * A connection request has been sent; no frames have arrived yet
+     */
+    CONNECTING,
+    /**
+     * Frames are arriving from Motive
+     */
+    CONNECTED,
+    /**
+     * No frames have arrived for longer than the no-data timeout, or the
+     * socket failed; the manager will reconnect after a short wait
+     */
+    DISCONNECTED,
+    /**
+     * The manager is not running
+     */
+    STOPPED
+}
@@ -0,0 +1,13 @@
+package motive;
+
+/**
+ * A listener interface that allows listening for changes to the
+ * state of a CommandStreamManager's connection to Motive.
+ * 
+ * connectionStateChanged is called on the manager's receiving thread.
+ * 
+ * @author Lauren Knight
+ */
+public interface ConnectionStateListener {
+    void connectionStateChanged(ConnectionState state);
+}
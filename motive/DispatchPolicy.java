@@ -0,0 +1,28 @@
+package motive;
+
+/**
+ * The policies a ListenerDispatcher may use when its bounded queue
+ * is full (or, for CONFLATE, how updates are queued at all).
+ *
+ * @author Lauren Knight
+ */
+public enum DispatchPolicy {
+    /**
+     * The receiving thread waits until the listener has made room
+     * in the queue. No updates are ever lost, but a slow listener
+     * will slow down the stream manager.
+     */
+    BLOCK,
+    /**
+     * The oldest queued update is discarded to make room for
+     * the newest one. The receiving thread never waits.
+     */
+    DROP_OLDEST,
+    /**
+     * Only the most recent pose of each rigid body is kept. Frame
+     * updates that arrive before the listener has caught up are
+     * merged into a single frame update. The receiving thread
+     * never waits.
+     */
+    CONFLATE
+}
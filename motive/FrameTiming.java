@@ -0,0 +1,109 @@
+package motive;
+
+/**
+ * This class holds the timing information sent at the end of
+ * each frame from Motive.
+ * 
+ * A single FrameTiming object is reused by the CommandStreamManager
+ * for every frame, so it must not be kept after a FrameTimingListener's
+ * method returns.
+ * 
+ * @author Lauren Knight
+ */
+public class FrameTiming {
+
+    int frameNumber;
+    int timecode;
+    int timecodeSubframe;
+    double timestamp;
+    long cameraMidExposureTimestamp;
+    long dataReceivedTimestamp;
+    long transmitTimestamp;
+    boolean recording;
+    boolean trackedModelsChanged;
+
+    /**
+     * Copies another frame's timing into this object
+     * @param other the timing to copy
+     */
+    void copyFrom(FrameTiming other) {
+        frameNumber = other.frameNumber;
+        timecode = other.timecode;
+        timecodeSubframe = other.timecodeSubframe;
+        timestamp = other.timestamp;
+        cameraMidExposureTimestamp = other.cameraMidExposureTimestamp;
+        dataReceivedTimestamp = other.dataReceivedTimestamp;
+        transmitTimestamp = other.transmitTimestamp;
+        recording = other.recording;
+        trackedModelsChanged = other.trackedModelsChanged;
+    }
+
+    /**
+     * @return the frame's number, which increases by one for each
+     * frame captured by Motive
+     */
+    public int getFrameNumber() {
+        return frameNumber;
+    }
+
+    /**
+     * @return the SMPTE timecode of the frame (0 without a timecode generator)
+     */
+    public int getTimecode() {
+        return timecode;
+    }
+
+    /**
+     * @return the subframe of the SMPTE timecode
+     */
+    public int getTimecodeSubframe() {
+        return timecodeSubframe;
+    }
+
+    /**
+     * @return the time the frame was captured, in seconds since Motive
+     * began capturing
+     */
+    public double getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the high resolution clock time at the middle of the
+     * cameras' exposure (NatNet 3.0 and later, otherwise 0)
+     */
+    public long getCameraMidExposureTimestamp() {
+        return cameraMidExposureTimestamp;
+    }
+
+    /**
+     * @return the high resolution clock time at which Motive received
+     * the camera data (NatNet 3.0 and later, otherwise 0)
+     */
+    public long getDataReceivedTimestamp() {
+        return dataReceivedTimestamp;
+    }
+
+    /**
+     * @return the high resolution clock time at which Motive sent
+     * the frame (NatNet 3.0 and later, otherwise 0)
+     */
+    public long getTransmitTimestamp() {
+        return transmitTimestamp;
+    }
+
+    /**
+     * @return true if Motive was recording when the frame was captured
+     */
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * @return true if the list of tracked assets changed in this frame
+     */
+    public boolean haveTrackedModelsChanged() {
+        return trackedModelsChanged;
+    }
+
+}
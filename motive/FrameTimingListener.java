@@ -0,0 +1,14 @@
+package motive;
+
+/**
+ * A listener interface that allows listening for the timing
+ * information of each frame received from Motive.
+ * 
+ * frameTimingReceived is called after every other listener has been
+ * updated with the frame's contents, but before the FrameUpdateListeners.
+ * 
+ * @author Lauren Knight
+ */
+public interface FrameTimingListener {
+    void frameTimingReceived(FrameTiming timing);
+}
@@ -0,0 +1,19 @@
+package motive;
+
+/**
+ * A listener interface that allows listening for the motion of
+ * rigid bodies, as worked out by a KinematicsTracker.
+ * 
+ * The listener's kinematicsUpdated method is called once for each
+ * rigid body updated in a frame, once its velocity is known (from
+ * the body's second pose on), just after the frame has been received.
+ * Velocities are in meters per second, accelerations in meters per
+ * second squared and yaw rates in radians per second
+ * (counterclockwise seen from above).
+ * 
+ * @author Lauren Knight
+ */
+public interface KinematicsListener {
+    void kinematicsUpdated(int id, float vx, float vy, float vz, float speed,
+            float ax, float ay, float az, float yawRate);
+}
@@ -0,0 +1,381 @@
+package motive;
+
+import vector.Quaternion;
+
+/**
+ * This class works out how each rigid body is moving: its velocity,
+ * speed, acceleration and yaw rate, updated incrementally from the
+ * rigid body stream, so that listeners don't each need to keep their
+ * own history of poses.
+ * 
+ * A tracker is registered with a stream manager (a CommandStreamManager
+ * or MultiSourceStreamManager) as a RigidBodyUpdateListener,
+ * FrameTimingListener and FrameUpdateListener; attachTo does all three.
+ * When each frame is complete, every body updated in it is differenced
+ * against its previous pose, using Motive's frame timestamps, and
+ * KinematicsListeners are told the results.
+ * 
+ * Velocities are finite differences smoothed by an exponential filter
+ * whose time constant is the smoothing time (0 turns smoothing off);
+ * accelerations are smoothed differences of the smoothed velocities.
+ * Because differences are taken over the time between a body's poses,
+ * frames that were dropped, or in which a body wasn't seen, are handled
+ * correctly. A body that hasn't been seen for longer than the maximum
+ * gap starts afresh, as does every body if the frame numbers go
+ * backwards (Motive was restarted).
+ * 
+ * Everything is kept in primitive arrays indexed by rigid body ID, so
+ * no objects are created per frame. The tracker is updated on the
+ * stream manager's receiving thread; its getters should be called from
+ * that thread too (for example from a KinematicsListener).
+ * 
+ * @author Lauren Knight
+ */
+public class KinematicsTracker implements RigidBodyUpdateListener,
+        FrameTimingListener, FrameUpdateListener {
+
+    // the default smoothing time constant, in seconds
+    public static final double DEFAULT_SMOOTHING_TIME = 0.05;
+    // the default longest time between poses that is differenced, in seconds
+    public static final double DEFAULT_MAX_GAP = 0.25;
+
+    // how much is known about a body
+    private static final int NO_POSE = 0;
+    private static final int HAS_POSE = 1;
+    private static final int HAS_VELOCITY = 2;
+    private static final int HAS_ACCELERATION = 3;
+
+    private final int capacity;
+    private volatile double smoothingTime = DEFAULT_SMOOTHING_TIME;
+    private volatile double maxGap = DEFAULT_MAX_GAP;
+
+    // the poses received in the current frame
+    private final double[] frameX;
+    private final double[] frameY;
+    private final double[] frameZ;
+    private final double[] frameYaw;
+    private final boolean[] updated;
+    private final int[] updatedIDs;
+    private int updatedCount;
+
+    // the current frame's number and time
+    private int frameNumber;
+    private double frameTime;
+    private boolean hasFrameTiming;
+    private int lastFrameNumber = -1;
+    private long frameGapCount;
+    private long droppedFrameCount;
+
+    // each body's previous pose and its motion
+    private final int[] state;
+    private final double[] time;
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    private final double[] yaw;
+    private final double[] vx;
+    private final double[] vy;
+    private final double[] vz;
+    private final double[] speed;
+    private final double[] ax;
+    private final double[] ay;
+    private final double[] az;
+    private final double[] yawRate;
+
+    private volatile KinematicsListener[] listeners = new KinematicsListener[0];
+
+    /**
+     * Creates a tracker
+     * @param capacity the number of bodies tracked (IDs 0 to capacity - 1;
+     * other bodies are ignored)
+     */
+    public KinematicsTracker(int capacity) {
+        this.capacity = capacity;
+        frameX = new double[capacity];
+        frameY = new double[capacity];
+        frameZ = new double[capacity];
+        frameYaw = new double[capacity];
+        updated = new boolean[capacity];
+        updatedIDs = new int[capacity];
+        state = new int[capacity];
+        time = new double[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        yaw = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        vz = new double[capacity];
+        speed = new double[capacity];
+        ax = new double[capacity];
+        ay = new double[capacity];
+        az = new double[capacity];
+        yawRate = new double[capacity];
+    }
+
+    /**
+     * Registers this tracker with a stream manager for every body it
+     * can track. Register any FrameUpdateListeners that use the tracker
+     * after this, so that they see the tracker's results for each frame.
+     * @param manager the stream manager
+     */
+    public void attachTo(StreamSource manager) {
+        manager.addRigidBodyUpdateListener(this, allIDs());
+        manager.addFrameTimingListener(this);
+        manager.addFrameUpdateListener(this);
+    }
+
+    private int[] allIDs() {
+        int[] ids = new int[capacity];
+        for (int id = 0; id < capacity; id++) {
+            ids[id] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Adds a KinematicsListener to this tracker
+     * @param listener The subscribing listener
+     */
+    public synchronized void addKinematicsListener(KinematicsListener listener) {
+        listeners = CommandStreamManager.append(listeners, listener);
+    }
+
+    /**
+     * Sets the time constant of the filter smoothing velocities and
+     * accelerations (the default is DEFAULT_SMOOTHING_TIME)
+     * @param seconds the time constant, or 0 for raw finite differences
+     */
+    public void setSmoothingTime(double seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Smoothing time can't be negative");
+        }
+        smoothingTime = seconds;
+    }
+
+    /**
+     * Sets the longest time between a body's poses that is differenced;
+     * after a longer gap the body starts afresh (the default is
+     * DEFAULT_MAX_GAP)
+     * @param seconds the longest gap
+     */
+    public void setMaxGap(double seconds) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("The maximum gap must be positive");
+        }
+        maxGap = seconds;
+    }
+
+    @Override
+    public void rigidBodyUpdateReceived(int id, float x, float y, float z,
+            float qw, float qx, float qy, float qz) {
+        if (id < 0 || id >= capacity) {
+            return;
+        }
+        frameX[id] = x;
+        frameY[id] = y;
+        frameZ[id] = z;
+        frameYaw[id] = Quaternion.upVectorHeading(qw, qx, qy, qz);
+        if (!updated[id]) {
+            updated[id] = true;
+            updatedIDs[updatedCount++] = id;
+        }
+    }
+
+    @Override
+    public void frameTimingReceived(FrameTiming timing) {
+        frameNumber = timing.getFrameNumber();
+        frameTime = timing.getTimestamp();
+        hasFrameTiming = true;
+    }
+
+    @Override
+    public void frameUpdateReceived() {
+        if (!hasFrameTiming) {
+            // not registered for frame timing: fall back on arrival times
+            frameTime = System.nanoTime() / 1e9;
+            frameNumber = lastFrameNumber + 1;
+        }
+        hasFrameTiming = false;
+        if (lastFrameNumber >= 0) {
+            if (frameNumber < lastFrameNumber) {
+                // Motive restarted; nothing before now can be differenced
+                reset();
+            } else if (frameNumber > lastFrameNumber + 1) {
+                frameGapCount++;
+                droppedFrameCount += frameNumber - lastFrameNumber - 1;
+            }
+        }
+        lastFrameNumber = frameNumber;
+
+        final KinematicsListener[] listeners = this.listeners;
+        for (int i = 0; i < updatedCount; i++) {
+            int id = updatedIDs[i];
+            updated[id] = false;
+            update(id);
+            if (state[id] >= HAS_VELOCITY) {
+                for (KinematicsListener listener : listeners) {
+                    listener.kinematicsUpdated(id, (float) vx[id], (float) vy[id],
+                            (float) vz[id], (float) speed[id], (float) ax[id],
+                            (float) ay[id], (float) az[id], (float) yawRate[id]);
+                }
+            }
+        }
+        updatedCount = 0;
+    }
+
+    /**
+     * Differences a body's pose in this frame against its previous pose
+     */
+    private void update(int id) {
+        double dt = frameTime - time[id];
+        if (state[id] != NO_POSE && dt == 0) {
+            // the same pose again (e.g. from another source)
+            return;
+        }
+        if (state[id] == NO_POSE || dt < 0 || dt > maxGap) {
+            // start afresh: nothing is known about the body's motion yet
+            state[id] = HAS_POSE;
+            vx[id] = vy[id] = vz[id] = speed[id] = 0;
+            ax[id] = ay[id] = az[id] = yawRate[id] = 0;
+            storePose(id);
+            return;
+        }
+
+        double newVX = (frameX[id] - x[id]) / dt;
+        double newVY = (frameY[id] - y[id]) / dt;
+        double newVZ = (frameZ[id] - z[id]) / dt;
+        double newYawRate = Double.isNaN(frameYaw[id]) || Double.isNaN(yaw[id])
+                ? yawRate[id] : wrapAngle(frameYaw[id] - yaw[id]) / dt;
+
+        if (state[id] == HAS_POSE) {
+            // the first velocity is the raw difference
+            vx[id] = newVX;
+            vy[id] = newVY;
+            vz[id] = newVZ;
+            yawRate[id] = newYawRate;
+            state[id] = HAS_VELOCITY;
+        } else {
+            // exponential smoothing, weighted by the time since the last pose
+            double smoothing = smoothingTime;
+            double alpha = smoothing == 0 ? 1 : 1 - Math.exp(-dt / smoothing);
+            double smoothedVX = vx[id] + alpha * (newVX - vx[id]);
+            double smoothedVY = vy[id] + alpha * (newVY - vy[id]);
+            double smoothedVZ = vz[id] + alpha * (newVZ - vz[id]);
+            double newAX = (smoothedVX - vx[id]) / dt;
+            double newAY = (smoothedVY - vy[id]) / dt;
+            double newAZ = (smoothedVZ - vz[id]) / dt;
+            if (state[id] == HAS_VELOCITY) {
+                ax[id] = newAX;
+                ay[id] = newAY;
+                az[id] = newAZ;
+                state[id] = HAS_ACCELERATION;
+            } else {
+                ax[id] += alpha * (newAX - ax[id]);
+                ay[id] += alpha * (newAY - ay[id]);
+                az[id] += alpha * (newAZ - az[id]);
+            }
+            vx[id] = smoothedVX;
+            vy[id] = smoothedVY;
+            vz[id] = smoothedVZ;
+            yawRate[id] += alpha * (newYawRate - yawRate[id]);
+        }
+        speed[id] = Math.sqrt(vx[id] * vx[id] + vy[id] * vy[id] + vz[id] * vz[id]);
+        storePose(id);
+    }
+
+    private void storePose(int id) {
+        time[id] = frameTime;
+        x[id] = frameX[id];
+        y[id] = frameY[id];
+        z[id] = frameZ[id];
+        yaw[id] = frameYaw[id];
+    }
+
+    /**
+     * Wraps an angle into [-pi, pi)
+     */
+    private static double wrapAngle(double radians) {
+        return radians - 2 * Math.PI * Math.floor((radians + Math.PI) / (2 * Math.PI));
+    }
+
+    /**
+     * Forgets every body's history
+     */
+    private void reset() {
+        for (int id = 0; id < capacity; id++) {
+            state[id] = NO_POSE;
+        }
+    }
+
+    /**
+     * @param id the rigid body's ID
+     * @return true if the body's velocity is known (it has been seen at
+     * least twice, close enough together)
+     */
+    public boolean hasVelocity(int id) {
+        return id >= 0 && id < capacity && state[id] >= HAS_VELOCITY;
+    }
+
+    /**
+     * @param id the rigid body's ID
+     * @return true if the body's acceleration is known
+     */
+    public boolean hasAcceleration(int id) {
+        return id >= 0 && id < capacity && state[id] >= HAS_ACCELERATION;
+    }
+
+    public double getVelocityX(int id) {
+        return vx[id];
+    }
+
+    public double getVelocityY(int id) {
+        return vy[id];
+    }
+
+    public double getVelocityZ(int id) {
+        return vz[id];
+    }
+
+    /**
+     * @return the body's speed, in meters per second
+     */
+    public double getSpeed(int id) {
+        return speed[id];
+    }
+
+    public double getAccelerationX(int id) {
+        return ax[id];
+    }
+
+    public double getAccelerationY(int id) {
+        return ay[id];
+    }
+
+    public double getAccelerationZ(int id) {
+        return az[id];
+    }
+
+    /**
+     * @return the body's yaw rate, in radians per second
+     * (counterclockwise seen from above)
+     */
+    public double getYawRate(int id) {
+        return yawRate[id];
+    }
+
+    /**
+     * @return the number of times frames were missing from the stream
+     */
+    public long getFrameGapCount() {
+        return frameGapCount;
+    }
+
+    /**
+     * @return the total number of frames missing from the stream
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+}
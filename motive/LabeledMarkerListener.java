@@ -0,0 +1,33 @@
+package motive;
+
+/**
+ * A listener interface that allows listening for the labeled
+ * markers tracked by Motive.
+ * 
+ * The listener's labeledMarkerReceived method will be called
+ * once for each labeled marker each time a frame is received
+ * from Motive.
+ * 
+ * @author Lauren Knight
+ */
+public interface LabeledMarkerListener {
+
+    // bits of the params argument
+    int OCCLUDED = 0x01;
+    int POINT_CLOUD_SOLVED = 0x02;
+    int MODEL_SOLVED = 0x04;
+
+    /**
+     * @param id the marker's ID (the ID of the asset it belongs to in the
+     * upper 16 bits, the marker's ID within the asset in the lower 16)
+     * @param x the marker's x coordinate
+     * @param y the marker's y coordinate
+     * @param z the marker's z coordinate
+     * @param size the marker's diameter, in meters
+     * @param params OCCLUDED, POINT_CLOUD_SOLVED and MODEL_SOLVED flags
+     * @param residual the marker's residual error, in meters
+     * (0 with NatNet versions before 3.0)
+     */
+    void labeledMarkerReceived(int id, float x, float y, float z,
+            float size, int params, float residual);
+}
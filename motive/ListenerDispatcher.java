@@ -0,0 +1,591 @@
+package motive;
+
+import java.util.concurrent.Executor;
+
+import telemetry.ListenerDispatchEvent;
+
+/**
+ * This class moves the work done by a listener off of the
+ * CommandStreamManager's receiving thread.
+ *
+ * A ListenerDispatcher is registered with a CommandStreamManager in
+ * place of the listener it wraps. Updates are copied into a bounded
+ * queue and delivered to the wrapped listener, in the order they were
+ * received, on either a dedicated thread or a caller-provided Executor.
+ *
+ * If the wrapped frame listener also implements FrameTimingListener,
+ * it is handed each frame's timing just before the frame update (the
+ * dispatcher must then also be registered as a FrameTimingListener).
+ *
+ * What happens when the queue is full is decided by the dispatcher's
+ * DispatchPolicy. Queue depth, drop and conflation counts are exposed
+ * so that slow listeners can be spotted.
+ *
+ * A RuntimeException thrown by a wrapped listener is counted (and the
+ * first one printed) and does not stop later updates being delivered.
+ *
+ * The queue is preallocated; no objects are created per update.
+ *
+ * @author Lauren Knight
+ */
+public class ListenerDispatcher implements RigidBodyUpdateListener,
+        FrameUpdateListener, FrameTimingListener {
+
+    // the number of floats stored for each rigid body update
+    private static final int POSE_SIZE = 7;
+
+    // the default capacity of a dispatcher's queue
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final RigidBodyUpdateListener bodyListener;
+    private final FrameUpdateListener frameListener;
+    private final FrameTimingListener timingListener;
+    private final DispatchPolicy policy;
+    private final int capacity;
+
+    // non-null if updates are delivered via a caller-provided executor
+    private final Executor executor;
+    private final Runnable drainTask = this::drain;
+    private Thread dispatchThread;
+
+    private final Object lock = new Object();
+
+    // ring buffer used by the BLOCK and DROP_OLDEST policies.
+    // An entry with a frame flag set is a frame update.
+    private final boolean[] queuedFrames;
+    private final int[] queuedIDs;
+    private final float[] queuedPoses;
+    private final FrameTiming[] queuedTimings;
+    private final boolean[] queuedHasTiming;
+    private int head;
+    private int size;
+
+    // latest-value table used by the CONFLATE policy, indexed by body ID
+    private final float[] latestPoses;
+    private final boolean[] dirty;
+    private final int[] dirtyIDs;
+    private int dirtyCount;
+    private int pendingFrames;
+    private final FrameTiming latestTiming = new FrameTiming();
+    private boolean latestHasTiming;
+
+    // the timing of the frame currently being received
+    private final FrameTiming receivedTiming = new FrameTiming();
+    private boolean hasReceivedTiming;
+
+    // the consumer's copy of a batch of updates, reused each drain
+    private final boolean[] batchFrames;
+    private final int[] batchIDs;
+    private final float[] batchPoses;
+    private final FrameTiming[] batchTimings;
+    private final boolean[] batchHasTiming;
+
+    private boolean drainScheduled;
+    private boolean consumerWaiting;
+    private volatile boolean running = true;
+
+    // metrics
+    private long deliveredCount;
+    private long droppedCount;
+    private long conflatedCount;
+    private int maxQueueDepth;
+    // only touched by the consumer
+    private volatile long failedCount;
+
+    /**
+     * Creates a dispatcher with its own dedicated, daemon dispatch thread.
+     * @param bodyListener the listener receiving rigid body updates (may be null)
+     * @param frameListener the listener receiving frame updates (may be null)
+     * @param policy what to do when the listener falls behind
+     * @param capacity the maximum number of queued updates. With the
+     * CONFLATE policy, this is instead the number of body IDs tracked;
+     * updates for IDs at or above capacity are dropped.
+     */
+    public ListenerDispatcher(RigidBodyUpdateListener bodyListener,
+            FrameUpdateListener frameListener, DispatchPolicy policy,
+            int capacity) {
+        this(bodyListener, frameListener, policy, capacity, null);
+    }
+
+    /**
+     * Creates a dispatcher that delivers updates using the given executor.
+     * At most one delivery task is submitted to the executor at a time, so
+     * updates are still delivered in order.
+     * @param bodyListener the listener receiving rigid body updates (may be null)
+     * @param frameListener the listener receiving frame updates (may be null)
+     * @param policy what to do when the listener falls behind
+     * @param capacity the maximum number of queued updates (see above)
+     * @param executor the executor to deliver updates on, or null to
+     * create a dedicated dispatch thread
+     */
+    public ListenerDispatcher(RigidBodyUpdateListener bodyListener,
+            FrameUpdateListener frameListener, DispatchPolicy policy,
+            int capacity, Executor executor) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.bodyListener = bodyListener;
+        this.frameListener = frameListener;
+        this.timingListener = frameListener instanceof FrameTimingListener
+                ? (FrameTimingListener) frameListener : null;
+        this.policy = policy;
+        this.capacity = capacity;
+        this.executor = executor;
+
+        if (policy == DispatchPolicy.CONFLATE) {
+            queuedFrames = null;
+            queuedIDs = null;
+            queuedPoses = null;
+            queuedTimings = null;
+            queuedHasTiming = null;
+            latestPoses = new float[capacity * POSE_SIZE];
+            dirty = new boolean[capacity];
+            dirtyIDs = new int[capacity];
+        } else {
+            queuedFrames = new boolean[capacity];
+            queuedIDs = new int[capacity];
+            queuedPoses = new float[capacity * POSE_SIZE];
+            queuedTimings = createTimings(capacity);
+            queuedHasTiming = new boolean[capacity];
+            latestPoses = null;
+            dirty = null;
+            dirtyIDs = null;
+        }
+        batchFrames = new boolean[capacity];
+        batchIDs = new int[capacity];
+        batchPoses = new float[capacity * POSE_SIZE];
+        // one extra slot for the timing of a conflated frame
+        batchTimings = createTimings(capacity + 1);
+        batchHasTiming = new boolean[capacity];
+
+        if (executor == null) {
+            dispatchThread = new Thread(this::dispatchLoop,
+                    "listener-dispatch");
+            dispatchThread.setDaemon(true);
+            dispatchThread.start();
+        }
+    }
+
+    @Override
+    public void rigidBodyUpdateReceived(int id, float x, float y, float z,
+            float qw, float qx, float qy, float qz) {
+        if (bodyListener == null) {
+            return;
+        }
+        synchronized (lock) {
+            if (policy == DispatchPolicy.CONFLATE) {
+                if (id < 0 || id >= capacity) {
+                    droppedCount++;
+                    return;
+                }
+                if (dirty[id]) {
+                    conflatedCount++;
+                } else {
+                    dirty[id] = true;
+                    dirtyIDs[dirtyCount++] = id;
+                }
+                storePose(latestPoses, id, x, y, z, qw, qx, qy, qz);
+            } else {
+                int slot = claimSlot();
+                if (slot < 0) {
+                    return;
+                }
+                queuedFrames[slot] = false;
+                queuedIDs[slot] = id;
+                storePose(queuedPoses, slot, x, y, z, qw, qx, qy, qz);
+            }
+            signalConsumer();
+        }
+    }
+
+    @Override
+    public void frameTimingReceived(FrameTiming timing) {
+        if (timingListener == null) {
+            return;
+        }
+        synchronized (lock) {
+            receivedTiming.copyFrom(timing);
+            hasReceivedTiming = true;
+        }
+    }
+
+    @Override
+    public void frameUpdateReceived() {
+        if (frameListener == null) {
+            return;
+        }
+        synchronized (lock) {
+            if (policy == DispatchPolicy.CONFLATE) {
+                if (pendingFrames > 0) {
+                    conflatedCount++;
+                }
+                pendingFrames++;
+                if (hasReceivedTiming) {
+                    latestTiming.copyFrom(receivedTiming);
+                    latestHasTiming = true;
+                }
+            } else {
+                int slot = claimSlot();
+                if (slot < 0) {
+                    hasReceivedTiming = false;
+                    return;
+                }
+                queuedFrames[slot] = true;
+                queuedHasTiming[slot] = hasReceivedTiming;
+                if (hasReceivedTiming) {
+                    queuedTimings[slot].copyFrom(receivedTiming);
+                }
+            }
+            hasReceivedTiming = false;
+            signalConsumer();
+        }
+    }
+
+    /**
+     * Creates an array of reusable FrameTiming objects
+     */
+    private static FrameTiming[] createTimings(int count) {
+        FrameTiming[] timings = new FrameTiming[count];
+        for (int i = 0; i < count; i++) {
+            timings[i] = new FrameTiming();
+        }
+        return timings;
+    }
+
+    /**
+     * Finds a free slot at the tail of the ring buffer, waiting for one
+     * or discarding the oldest entry depending on the policy.
+     * Must be called while holding the lock.
+     * @return the index of the slot, or -1 if the update should be dropped
+     */
+    private int claimSlot() {
+        if (size == capacity) {
+            if (policy == DispatchPolicy.BLOCK) {
+                while (size == capacity && running) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        droppedCount++;
+                        return -1;
+                    }
+                }
+                if (!running) {
+                    return -1;
+                }
+            } else {
+                // DROP_OLDEST
+                head = (head + 1) % capacity;
+                size--;
+                droppedCount++;
+            }
+        }
+        int slot = (head + size) % capacity;
+        size++;
+        if (size > maxQueueDepth) {
+            maxQueueDepth = size;
+        }
+        return slot;
+    }
+
+    /**
+     * Copies a pose into the given array at the given slot
+     */
+    private static void storePose(float[] poses, int slot, float x, float y,
+            float z, float qw, float qx, float qy, float qz) {
+        int i = slot * POSE_SIZE;
+        poses[i] = x;
+        poses[i + 1] = y;
+        poses[i + 2] = z;
+        poses[i + 3] = qw;
+        poses[i + 4] = qx;
+        poses[i + 5] = qy;
+        poses[i + 6] = qz;
+    }
+
+    /**
+     * Lets the consumer know that there is work to do.
+     * Must be called while holding the lock.
+     */
+    private void signalConsumer() {
+        if (executor != null) {
+            if (!drainScheduled) {
+                drainScheduled = true;
+                executor.execute(drainTask);
+            }
+        } else if (consumerWaiting) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Body of the dedicated dispatch thread; waits for updates
+     * and delivers them until the dispatcher is closed.
+     */
+    private void dispatchLoop() {
+        while (running) {
+            synchronized (lock) {
+                while (isEmpty() && running) {
+                    consumerWaiting = true;
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // closed
+                    }
+                    consumerWaiting = false;
+                }
+            }
+            drain();
+        }
+    }
+
+    /**
+     * Delivers queued updates to the wrapped listeners until
+     * the queue is empty.
+     */
+    private void drain() {
+        boolean emptied = false;
+        try {
+            emptied = drainBatches();
+        } finally {
+            if (!emptied) {
+                // let a later update schedule another drain
+                synchronized (lock) {
+                    drainScheduled = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers batches of queued updates until the queue is empty
+     * or the dispatcher is closed
+     * @return true if the queue was emptied (and drainScheduled cleared)
+     */
+    private boolean drainBatches() {
+        while (running) {
+            int count;
+            int frames;
+            boolean frameHasTiming;
+            synchronized (lock) {
+                count = policy == DispatchPolicy.CONFLATE
+                        ? takeConflated() : takeQueued();
+                frames = pendingFrames;
+                pendingFrames = 0;
+                frameHasTiming = latestHasTiming;
+                if (frameHasTiming) {
+                    // the slot after the batch holds the conflated frame's timing
+                    batchTimings[count].copyFrom(latestTiming);
+                    latestHasTiming = false;
+                }
+                if (count == 0 && frames == 0) {
+                    drainScheduled = false;
+                    return true;
+                }
+                if (policy == DispatchPolicy.BLOCK) {
+                    // wake a receiving thread waiting for space
+                    lock.notifyAll();
+                }
+            }
+            deliver(count);
+            if (frames > 0) {
+                if (frameHasTiming) {
+                    deliverTiming(batchTimings[count]);
+                }
+                deliverFrame();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves every queued ring buffer entry into the batch arrays.
+     * Must be called while holding the lock.
+     * @return the number of entries moved
+     */
+    private int takeQueued() {
+        int count = size;
+        for (int i = 0; i < count; i++) {
+            int slot = (head + i) % capacity;
+            batchFrames[i] = queuedFrames[slot];
+            batchIDs[i] = queuedIDs[slot];
+            batchHasTiming[i] = queuedHasTiming[slot];
+            if (queuedHasTiming[slot]) {
+                batchTimings[i].copyFrom(queuedTimings[slot]);
+            }
+            System.arraycopy(queuedPoses, slot * POSE_SIZE,
+                    batchPoses, i * POSE_SIZE, POSE_SIZE);
+        }
+        head = (head + count) % capacity;
+        size = 0;
+        deliveredCount += count;
+        return count;
+    }
+
+    /**
+     * Moves the latest pose of each updated body into the batch arrays.
+     * Must be called while holding the lock.
+     * @return the number of poses moved
+     */
+    private int takeConflated() {
+        int count = dirtyCount;
+        for (int i = 0; i < count; i++) {
+            int id = dirtyIDs[i];
+            dirty[id] = false;
+            batchFrames[i] = false;
+            batchIDs[i] = id;
+            System.arraycopy(latestPoses, id * POSE_SIZE,
+                    batchPoses, i * POSE_SIZE, POSE_SIZE);
+        }
+        dirtyCount = 0;
+        deliveredCount += count;
+        if (pendingFrames > 0) {
+            deliveredCount++;
+        }
+        return count;
+    }
+
+    /**
+     * Calls the wrapped listeners with a batch of updates.
+     * Called without holding the lock.
+     */
+    private void deliver(int count) {
+        for (int i = 0; i < count; i++) {
+            if (batchFrames[i]) {
+                if (batchHasTiming[i]) {
+                    deliverTiming(batchTimings[i]);
+                }
+                deliverFrame();
+            } else {
+                int p = i * POSE_SIZE;
+                try {
+                    bodyListener.rigidBodyUpdateReceived(batchIDs[i],
+                            batchPoses[p], batchPoses[p + 1], batchPoses[p + 2],
+                            batchPoses[p + 3], batchPoses[p + 4],
+                            batchPoses[p + 5], batchPoses[p + 6]);
+                } catch (RuntimeException e) {
+                    listenerFailed(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls the wrapped timing listener
+     */
+    private void deliverTiming(FrameTiming timing) {
+        try {
+            timingListener.frameTimingReceived(timing);
+        } catch (RuntimeException e) {
+            listenerFailed(e);
+        }
+    }
+
+    /**
+     * Calls the wrapped frame listener, timing it if flight
+     * recording of listener dispatches is enabled
+     */
+    private void deliverFrame() {
+        ListenerDispatchEvent dispatch = ListenerDispatchEvent.startIfEnabled();
+        try {
+            frameListener.frameUpdateReceived();
+        } catch (RuntimeException e) {
+            listenerFailed(e);
+        }
+        if (dispatch != null) {
+            dispatch.finish(frameListener, "frameUpdateReceived");
+        }
+    }
+
+    /**
+     * Counts an exception thrown by a wrapped listener, printing the
+     * first one; a failing listener shouldn't stop the dispatcher
+     */
+    private void listenerFailed(RuntimeException e) {
+        if (failedCount++ == 0) {
+            System.out.println("Listener failed (later failures are only counted): " + e);
+        }
+    }
+
+    /**
+     * Must be called while holding the lock.
+     * @return true if there is nothing waiting to be delivered
+     */
+    private boolean isEmpty() {
+        return size == 0 && dirtyCount == 0 && pendingFrames == 0;
+    }
+
+    /**
+     * Stops delivering updates. Updates that have not yet been
+     * delivered are discarded, and a receiving thread blocked on
+     * a full queue is released.
+     */
+    public void close() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the policy used by this dispatcher
+     */
+    public DispatchPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the number of updates currently waiting to be delivered
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return size + dirtyCount + (pendingFrames > 0 ? 1 : 0);
+        }
+    }
+
+    /**
+     * @return the largest number of updates that have been waiting
+     * at once (not used by the CONFLATE policy)
+     */
+    public int getMaxQueueDepth() {
+        synchronized (lock) {
+            return maxQueueDepth;
+        }
+    }
+
+    /**
+     * @return the number of updates handed to the wrapped listeners
+     */
+    public long getDeliveredCount() {
+        synchronized (lock) {
+            return deliveredCount;
+        }
+    }
+
+    /**
+     * @return the number of updates discarded because the queue was full
+     */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    /**
+     * @return the number of updates whose listener threw an exception
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return the number of updates replaced by a newer update
+     * before being delivered (CONFLATE policy only)
+     */
+    public long getConflatedCount() {
+        synchronized (lock) {
+            return conflatedCount;
+        }
+    }
+
+}
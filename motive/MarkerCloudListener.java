@@ -0,0 +1,48 @@
+package motive;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * A listener interface that allows listening for the raw marker
+ * positions contained in each frame received from Motive.
+ * 
+ * Markers are handed to the listener as read-only FloatBuffers
+ * containing x, y, z triples (so a buffer's remaining() / 3 is its
+ * marker count). The buffers point directly into the packet
+ * received from Motive; nothing is copied. Because of this, a buffer
+ * is only valid until the listener method returns, and listeners
+ * that need markers later must copy them out.
+ * 
+ * For the same reason, MarkerCloudListeners are always called on
+ * the stream manager's receiving thread and should be quick.
+ * 
+ * @author Lauren Knight
+ */
+public interface MarkerCloudListener {
+
+    /**
+     * Called once per frame for each marker set (labeled markers
+     * belonging to a rigid body or skeleton asset).
+     * @param name the marker set's name as ASCII bytes (not null-terminated)
+     * @param markers the positions of the set's markers
+     */
+    void markerSetReceived(ByteBuffer name, FloatBuffer markers);
+
+    /**
+     * Called once per frame with the cloud of markers that don't
+     * belong to any marker set.
+     * @param markers the positions of the unlabeled markers
+     */
+    void unlabeledMarkersReceived(FloatBuffer markers);
+
+    /**
+     * Called once per rigid body per frame with the positions of the
+     * markers making up the rigid body. Only older versions of Motive
+     * (1.10.2) include these in the frame.
+     * @param id the rigid body's streaming ID
+     * @param markers the positions of the rigid body's markers
+     */
+    default void rigidBodyMarkersReceived(int id, FloatBuffer markers) {}
+
+}
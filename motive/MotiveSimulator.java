@@ -0,0 +1,295 @@
+package motive;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class stands in for a Motive server, for trying out the game and
+ * its stream managers without cameras.
+ *
+ * The simulator listens for a connection request on its command port,
+ * answers with a server info message (NatNet 3.0, as streamed by Motive
+ * 2.1.1) and then sends frames of data to the client at a fixed rate.
+ * Each simulated rigid body drives around a circle in the middle of a
+ * 1m x 1m space, Z up, facing the way it is driving.
+ *
+ * Usage: java motive.MotiveSimulator [command port] [frame rate] [rigid bodies]
+ *
+ * @author Lauren Knight
+ */
+public class MotiveSimulator implements AutoCloseable {
+
+    private static final ByteOrder MOTIVE_PACKET_BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private static final short MESSAGE_CONNECT = 0;
+    private static final short MESSAGE_SERVER_INFO = 1;
+    private static final short MESSAGE_FRAME_OF_DATA = 7;
+
+    private static final int SERVER_NAME_LENGTH = 256;
+    private static final String SERVER_NAME = "MotiveSimulator";
+
+    // the radius of the circle the bodies drive around, in meters
+    private static final double CIRCLE_RADIUS = 0.3;
+    // the time taken to drive once around the circle, in seconds
+    private static final double LAP_TIME = 6;
+
+    private final DatagramSocket socket;
+    private volatile long frameIntervalNanos;
+    private volatile int bodyCount;
+    private volatile int firstBodyID;
+    private volatile boolean paused;
+
+    private final byte[] buffer = new byte[64 * 1024];
+    private final ByteBuffer wrapper = ByteBuffer.wrap(buffer).order(MOTIVE_PACKET_BYTE_ORDER);
+    private volatile SocketAddress client;
+    private volatile long framesSent;
+
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Creates a simulator on the loopback interface and starts it
+     * @param commandPort the port to listen for connection requests on
+     * @param frameRate the number of frames to send per second
+     * @param bodyCount the number of rigid bodies in each frame
+     * @throws SocketException if the port is in use
+     */
+    public MotiveSimulator(int commandPort, double frameRate, int bodyCount)
+            throws SocketException {
+        setFrameRate(frameRate);
+        setBodyCount(bodyCount);
+        socket = new DatagramSocket(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), commandPort));
+        thread = new Thread(this::run, "motive-simulator " + commandPort);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Changes the number of frames sent per second
+     * @param frameRate the new frame rate
+     */
+    public void setFrameRate(double frameRate) {
+        if (frameRate <= 0) {
+            throw new IllegalArgumentException("Invalid frame rate");
+        }
+        frameIntervalNanos = Math.round(1e9 / frameRate);
+    }
+
+    /**
+     * Changes the number of rigid bodies in each frame
+     * @param bodyCount the new number of rigid bodies
+     */
+    public void setBodyCount(int bodyCount) {
+        if (bodyCount < 0) {
+            throw new IllegalArgumentException("Invalid body count");
+        }
+        this.bodyCount = bodyCount;
+    }
+
+    /**
+     * Sets the ID of the first simulated rigid body; the others follow
+     * on from it. The default is 0 (the player's car).
+     * @param id the first rigid body's streaming ID
+     */
+    public void setFirstBodyID(int id) {
+        firstBodyID = id;
+    }
+
+    /**
+     * Pauses or resumes sending frames (as if Motive had stalled)
+     * @param paused true to stop sending frames
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    /**
+     * @return the number of frames sent so far
+     */
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    /**
+     * @return the port the simulator listens for connection requests on
+     */
+    public int getCommandPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * @return the address of the connected client, or null
+     */
+    public SocketAddress getClient() {
+        return client;
+    }
+
+    private void run() {
+        byte[] request = new byte[64];
+        DatagramPacket received = new DatagramPacket(request, request.length);
+        DatagramPacket sent = new DatagramPacket(buffer, 0);
+        long start = System.nanoTime();
+        long nextFrame = start;
+        int frameNumber = 0;
+        while (running) {
+            try {
+                long wait = nextFrame - System.nanoTime();
+                if (wait > 0 || client == null) {
+                    // listen for requests until the next frame is due
+                    // (or indefinitely, until a client connects)
+                    socket.setSoTimeout(client == null ? 0
+                            : (int) Math.max(1, wait / 1_000_000));
+                    try {
+                        received.setLength(request.length);
+                        socket.receive(received);
+                        short messageType = ByteBuffer.wrap(request)
+                                .order(MOTIVE_PACKET_BYTE_ORDER).getShort();
+                        if (messageType == MESSAGE_CONNECT) {
+                            client = received.getSocketAddress();
+                            sent.setSocketAddress(client);
+                            sent.setLength(writeServerInfo());
+                            socket.send(sent);
+                        }
+                        // keep alive messages need no answer
+                    } catch (SocketTimeoutException e) {
+                        // time to send a frame
+                    }
+                    if (client == null) {
+                        nextFrame = System.nanoTime();
+                    }
+                    continue;
+                }
+                nextFrame += frameIntervalNanos;
+                frameNumber++;
+                if (paused) {
+                    continue;
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                sent.setSocketAddress(client);
+                sent.setLength(writeFrame(frameNumber, seconds));
+                socket.send(sent);
+                framesSent++;
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Simulator unable to send: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a server info message to the buffer
+     * @return the length of the message
+     */
+    private int writeServerInfo() {
+        wrapper.clear();
+        wrapper.putShort(MESSAGE_SERVER_INFO);
+        wrapper.putShort((short) 0);
+        byte[] name = SERVER_NAME.getBytes(StandardCharsets.US_ASCII);
+        wrapper.put(name);
+        wrapper.put(new byte[SERVER_NAME_LENGTH - name.length]);
+        // Motive version 2.1.1.0, then NatNet version 3.0.0.0
+        wrapper.put(new byte[] { 2, 1, 1, 0 });
+        wrapper.put(new byte[] { 3, 0, 0, 0 });
+        wrapper.putShort(2, (short) (wrapper.position() - 4));
+        return wrapper.position();
+    }
+
+    /**
+     * Writes a NatNet 3.0 frame of data message to the buffer
+     * @param frameNumber the frame's number
+     * @param seconds the frame's timestamp
+     * @return the length of the message
+     */
+    private int writeFrame(int frameNumber, double seconds) {
+        wrapper.clear();
+        wrapper.putShort(MESSAGE_FRAME_OF_DATA);
+        wrapper.putShort((short) 0);
+        wrapper.putInt(frameNumber);
+        // no marker sets or unlabeled markers
+        wrapper.putInt(0);
+        wrapper.putInt(0);
+
+        final int bodyCount = this.bodyCount;
+        wrapper.putInt(bodyCount);
+        int firstID = firstBodyID;
+        for (int body = 0; body < bodyCount; body++) {
+            double angle = 2 * Math.PI * (seconds / LAP_TIME + (double) body / Math.max(1, bodyCount));
+            wrapper.putInt(firstID + body);
+            wrapper.putFloat((float) (CIRCLE_RADIUS * Math.cos(angle)));
+            wrapper.putFloat((float) (CIRCLE_RADIUS * Math.sin(angle)));
+            wrapper.putFloat(0);
+            // facing along the circle (the body's Y axis points the way
+            // it is driving): a rotation of angle about Z
+            double halfAngle = angle / 2;
+            wrapper.putFloat(0);
+            wrapper.putFloat(0);
+            wrapper.putFloat((float) Math.sin(halfAngle));
+            wrapper.putFloat((float) Math.cos(halfAngle));
+            // mean marker error, then parameters (tracking valid)
+            wrapper.putFloat(0.0005f);
+            wrapper.putShort((short) 0x01);
+        }
+
+        // no skeletons, labeled markers, force plates or devices
+        wrapper.putInt(0);
+        wrapper.putInt(0);
+        wrapper.putInt(0);
+        wrapper.putInt(0);
+
+        // timecode, timestamp, then the camera, received and transmitted times
+        wrapper.putInt(0);
+        wrapper.putInt(0);
+        wrapper.putDouble(seconds);
+        long ticks = System.nanoTime();
+        wrapper.putLong(ticks);
+        wrapper.putLong(ticks);
+        wrapper.putLong(ticks);
+        wrapper.putShort((short) 0);
+        // end of data tag
+        wrapper.putInt(0);
+        wrapper.putShort(2, (short) (wrapper.position() - 4));
+        return wrapper.position();
+    }
+
+    /**
+     * Stops the simulator and closes its socket
+     */
+    @Override
+    public void close() {
+        running = false;
+        socket.close();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs a simulator until the program is stopped
+     * @param args the command port, frame rate and number of rigid bodies
+     * (defaults: 1510, 120 and 2)
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0])
+                : CommandStreamManager.MOTIVE_COMMAND_PORT;
+        double rate = args.length > 1 ? Double.parseDouble(args[1]) : 120;
+        int bodies = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        MotiveSimulator simulator = new MotiveSimulator(port, rate, bodies);
+        System.out.println("Simulating Motive on port " + port + " (" + rate
+                + " Hz, " + bodies + " rigid bodies)");
+        simulator.thread.join();
+    }
+
+}
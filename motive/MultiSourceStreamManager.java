@@ -0,0 +1,672 @@
+package motive;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class receives frames from several Motive servers at once (for
+ * example, one per capture volume of a larger track) and merges them
+ * into a single stream of frames in one world coordinate frame.
+ *
+ * Each source is received by its own CommandStreamManager, on its own
+ * thread. As a source's frame is decoded, its rigid body poses are moved
+ * into the world frame with the source's RigidTransform, and its
+ * timestamp is converted to the local clock (Motive servers don't share
+ * a clock; the offset between each server's clock and ours is estimated
+ * from the earliest arrival of its frames). The finished frame is then
+ * published to the source's slot.
+ *
+ * Slots are seqlocks: the source's thread never waits for the merging
+ * thread, and the merging thread retries its copy in the rare case that
+ * a slot changed while it was being read. When a frame arrives, the
+ * merging thread waits (up to the alignment window) for the other active
+ * sources' frames of the same instant, then emits one merged frame to
+ * the listeners. If a body is seen by more than one source, the most
+ * recent pose is used. The wait is bounded by the window however many
+ * sources there are.
+ *
+ * Listeners are called on the merging thread, in the same order as
+ * by a CommandStreamManager: rigid bodies, then frame timing, then
+ * frame updates. The merged FrameTiming's frame number counts merged
+ * frames, and its timestamp is in seconds since the manager was created.
+ *
+ * The manager is connected while any of its sources is, and
+ * StreamEventListeners are told of every source's events.
+ *
+ * @author Lauren Knight
+ */
+public class MultiSourceStreamManager implements StreamSource {
+
+    // the most rigid bodies kept from each frame of a source
+    public static final int MAX_BODIES_PER_SOURCE = 64;
+
+    // how long to wait for the other sources' frames once one source's
+    // frame has arrived, in microseconds (unless changed)
+    public static final long DEFAULT_ALIGNMENT_WINDOW_MICROS = 4000;
+
+    // a source that has sent nothing for this long is not waited for
+    private static final long STALE_SOURCE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // how long the merging thread sleeps at a time while nothing arrives
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // how far a source's clock offset estimate may rise per frame, so it
+    // follows slow drift between the clocks
+    private static final long CLOCK_DRIFT_NANOS = 1000;
+    // a larger jump in a source's clock offset restarts the estimate
+    // (for example, when Motive is restarted)
+    private static final long CLOCK_RESYNC_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final VarHandle SEQUENCE;
+    static {
+        try {
+            SEQUENCE = MethodHandles.lookup().findVarHandle(Source.class,
+                    "sequence", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final List<Source> sources = new ArrayList<>();
+
+    private volatile RigidBodyRoutingTable rigidBodyRoutes = RigidBodyRoutingTable.EMPTY;
+    // Replaced (never modified) each time a listener is added.
+    private volatile FrameTimingListener[] frameTimingListeners =
+            new FrameTimingListener[0];
+    private volatile FrameUpdateListener[] frameUpdateListeners =
+            new FrameUpdateListener[0];
+    private volatile ConnectionStateListener[] connectionStateListeners =
+            new ConnectionStateListener[0];
+    private volatile ActivityLevelListener[] activityLevelListeners =
+            new ActivityLevelListener[0];
+    // added to every source's manager
+    private final List<StreamEventListener> streamEventListeners = new ArrayList<>();
+
+    private volatile ConnectionState connectionState = ConnectionState.STOPPED;
+    // held while the combined connection state changes
+    private final Object stateLock = new Object();
+    private volatile ActivityLevel activityLevel = ActivityLevel.ACTIVE;
+    // held while the activity level changes, so listeners see changes in order
+    private final Object activityLock = new Object();
+
+    private volatile long alignmentWindowNanos =
+            TimeUnit.MICROSECONDS.toNanos(DEFAULT_ALIGNMENT_WINDOW_MICROS);
+    private final long startNanos = System.nanoTime();
+
+    private volatile boolean running;
+    private volatile Thread merger;
+    private volatile long mergedFrameCount;
+
+    // the merging thread's working copies
+    private Source[] activeSources;
+    private int[] mergedIDs;
+    private float[] mergedPoses;
+    private long[] mergedTimes;
+    private final FrameTiming frameTiming = new FrameTiming();
+
+    /**
+     * Adds a Motive server to receive frames from.
+     * Sources must be added before the manager is started.
+     * @param server the address and command port of the Motive server
+     * @param localPort the port to receive the server's frames on
+     * (different for each source)
+     * @param toWorld the transform from the server's coordinate frame
+     * to the world frame
+     * @return the source's index
+     */
+    public synchronized int addSource(InetSocketAddress server, int localPort,
+            RigidTransform toWorld) {
+        if (running) {
+            throw new IllegalStateException("Sources must be added before starting");
+        }
+        CommandStreamManager manager = new CommandStreamManager(server, localPort);
+        for (StreamEventListener listener : streamEventListeners) {
+            manager.addStreamEventListener(listener);
+        }
+        manager.addConnectionStateListener(state -> updateConnectionState());
+        sources.add(new Source(manager, toWorld));
+        return sources.size() - 1;
+    }
+
+    /**
+     * Creates a manager from a list of sources, such as
+     * "10.0.0.5:1510:1512:0:0:0:0,10.0.0.6:1510:1513:90:4:0:0".
+     * Sources are separated by commas. Each is the Motive server's host
+     * and command port, the local port to receive its frames on and,
+     * optionally, its transform into the world frame: a rotation about
+     * the vertical axis in degrees, then a translation (x, y, z) in meters.
+     * @param sources the list of sources
+     * @return the (not yet started) manager
+     * @throws IllegalArgumentException if the list can't be read
+     */
+    public static MultiSourceStreamManager parse(String sources) {
+        MultiSourceStreamManager manager = new MultiSourceStreamManager();
+        for (String source : sources.split(",")) {
+            String[] fields = source.trim().split(":");
+            if (fields.length != 3 && fields.length != 7) {
+                throw new IllegalArgumentException("Expected host:port:localPort"
+                        + "[:yaw:x:y:z], not \"" + source + "\"");
+            }
+            try {
+                InetSocketAddress server = new InetSocketAddress(fields[0],
+                        Integer.parseInt(fields[1]));
+                int localPort = Integer.parseInt(fields[2]);
+                RigidTransform toWorld = RigidTransform.IDENTITY;
+                if (fields.length == 7) {
+                    toWorld = RigidTransform.ofYaw(
+                            Math.toRadians(Double.parseDouble(fields[3])),
+                            Double.parseDouble(fields[4]),
+                            Double.parseDouble(fields[5]),
+                            Double.parseDouble(fields[6]));
+                }
+                manager.addSource(server, localPort, toWorld);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad number in \"" + source + "\"", e);
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * Adds a RigidBodyUpdateListener, which is updated with every
+     * rigid body in each merged frame
+     * @param listener The subscribing listener
+     */
+    public synchronized void addRigidBodyUpdateListener(RigidBodyUpdateListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        rigidBodyRoutes = rigidBodyRoutes.withAllBodyListener(listener);
+    }
+
+    /**
+     * Adds a RigidBodyUpdateListener that is only updated for
+     * the given rigid bodies
+     * @param listener The subscribing listener
+     * @param ids the streaming IDs of the bodies the listener is interested in
+     */
+    public synchronized void addRigidBodyUpdateListener(RigidBodyUpdateListener listener,
+            int... ids) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        RigidBodyRoutingTable routes = rigidBodyRoutes;
+        for (int id : ids) {
+            routes = routes.withRangeListener(listener, id, id);
+        }
+        rigidBodyRoutes = routes;
+    }
+
+    /**
+     * Adds a FrameTimingListener, which is updated with the timing
+     * of each merged frame
+     * @param listener The subscribing listener
+     */
+    public synchronized void addFrameTimingListener(FrameTimingListener listener) {
+        frameTimingListeners = CommandStreamManager.append(frameTimingListeners, listener);
+    }
+
+    /**
+     * Adds a FrameUpdateListener, which is updated after each merged frame
+     * @param listener The subscribing listener
+     */
+    public synchronized void addFrameUpdateListener(FrameUpdateListener listener) {
+        frameUpdateListeners = CommandStreamManager.append(frameUpdateListeners, listener);
+    }
+
+    /**
+     * Adds a ConnectionStateListener, which is updated each time the
+     * combined state of the sources' connections changes
+     * @param listener The subscribing listener
+     */
+    public synchronized void addConnectionStateListener(ConnectionStateListener listener) {
+        connectionStateListeners = CommandStreamManager.append(connectionStateListeners,
+                listener);
+    }
+
+    /**
+     * Adds an ActivityLevelListener, which is updated each time the
+     * application marks the scene as idle or active again
+     * @param listener The subscribing listener
+     */
+    public synchronized void addActivityLevelListener(ActivityLevelListener listener) {
+        activityLevelListeners = CommandStreamManager.append(activityLevelListeners,
+                listener);
+    }
+
+    /**
+     * Adds a StreamEventListener to every source (including sources
+     * added later), which is told of the source's connection events,
+     * stalls and bad packets
+     * @param listener The subscribing listener
+     */
+    public synchronized void addStreamEventListener(StreamEventListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        streamEventListeners.add(listener);
+        for (Source source : sources) {
+            source.manager.addStreamEventListener(listener);
+        }
+    }
+
+    /**
+     * Sets how long to wait for the other sources' frames once one
+     * source's frame has arrived. This bounds the latency the merging
+     * adds; sources whose frames arrive later are merged into the next
+     * frame instead.
+     * @param micros the window, in microseconds
+     */
+    public void setAlignmentWindow(long micros) {
+        if (micros < 0) {
+            throw new IllegalArgumentException("Window must not be negative: " + micros);
+        }
+        alignmentWindowNanos = TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    /**
+     * Starts receiving from every source, and merging their frames
+     * on a new thread. Does nothing if the manager is already running.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        activeSources = sources.toArray(new Source[0]);
+        int capacity = Math.max(1, activeSources.length * MAX_BODIES_PER_SOURCE);
+        mergedIDs = new int[capacity];
+        mergedPoses = new float[capacity * RigidTransform.POSE_FLOATS];
+        mergedTimes = new long[capacity];
+
+        running = true;
+        Thread thread = new Thread(this::mergeLoop, "motive-merge");
+        merger = thread;
+        thread.start();
+        for (Source source : activeSources) {
+            source.manager.start();
+        }
+    }
+
+    /**
+     * Stops receiving from every source and waits for the
+     * merging thread to finish
+     */
+    public void stop() {
+        Thread thread;
+        Source[] stopped;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = merger;
+            stopped = activeSources;
+        }
+        for (Source source : stopped) {
+            source.manager.stop();
+        }
+        LockSupport.unpark(thread);
+        if (thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return the number of sources
+     */
+    public synchronized int getSourceCount() {
+        return sources.size();
+    }
+
+    /**
+     * @return CONNECTED if any source is connected; otherwise CONNECTING
+     * or DISCONNECTED while running, and STOPPED when not
+     */
+    public ConnectionState getConnectionState() {
+        return connectionState;
+    }
+
+    /**
+     * Works out the combined state of the sources' connections,
+     * telling the listeners if it changed
+     */
+    private void updateConnectionState() {
+        synchronized (stateLock) {
+            ConnectionState state = combineConnectionStates();
+            if (state == connectionState) {
+                return;
+            }
+            connectionState = state;
+            for (ConnectionStateListener listener : connectionStateListeners) {
+                listener.connectionStateChanged(state);
+            }
+        }
+    }
+
+    private ConnectionState combineConnectionStates() {
+        Source[] started = activeSources;
+        if (!running || started == null) {
+            return ConnectionState.STOPPED;
+        }
+        boolean disconnected = false;
+        for (Source source : started) {
+            switch (source.manager.getConnectionState()) {
+                case CONNECTED:
+                    return ConnectionState.CONNECTED;
+                case DISCONNECTED:
+                    disconnected = true;
+                    break;
+                default:
+            }
+        }
+        return disconnected ? ConnectionState.DISCONNECTED : ConnectionState.CONNECTING;
+    }
+
+    /**
+     * @return the activity level last set by the application
+     * (ACTIVE until it is first set)
+     */
+    public ActivityLevel getActivityLevel() {
+        return activityLevel;
+    }
+
+    /**
+     * Tells consumers of the merged frames how busy the scene is.
+     * ActivityLevelListeners are told, on the calling thread, if the
+     * level changes.
+     * @param level the new activity level
+     */
+    public void setActivityLevel(ActivityLevel level) {
+        if (level == null) {
+            throw new NullPointerException("level");
+        }
+        synchronized (activityLock) {
+            if (activityLevel == level) {
+                return;
+            }
+            activityLevel = level;
+            for (ActivityLevelListener listener : activityLevelListeners) {
+                listener.activityLevelChanged(level);
+            }
+        }
+    }
+
+    /**
+     * @param source the source's index
+     * @return the state of the source's connection to its Motive server
+     */
+    public synchronized ConnectionState getConnectionState(int source) {
+        return sources.get(source).manager.getConnectionState();
+    }
+
+    /**
+     * @return the number of merged frames emitted so far
+     */
+    public long getMergedFrameCount() {
+        return mergedFrameCount;
+    }
+
+    /**
+     * Waits for frames from the sources and merges them,
+     * until the manager is stopped
+     */
+    private void mergeLoop() {
+        final Source[] sources = activeSources;
+        while (running) {
+            if (!hasNewFrame(sources)) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            // wait (for a bounded time) for the other sources' frames
+            // of the same instant
+            long deadline = System.nanoTime() + alignmentWindowNanos;
+            while (running) {
+                long now = System.nanoTime();
+                if (now >= deadline || allActiveSourcesHaveNewFrames(sources, now)) {
+                    break;
+                }
+                LockSupport.parkNanos(this, deadline - now);
+            }
+            emitMergedFrame(sources);
+        }
+    }
+
+    private static boolean hasNewFrame(Source[] sources) {
+        for (Source source : sources) {
+            if (source.hasNewFrame()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean allActiveSourcesHaveNewFrames(Source[] sources, long now) {
+        for (Source source : sources) {
+            if (!source.hasNewFrame()
+                    && now - source.lastPublishedNanos < STALE_SOURCE_NANOS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Combines the sources' newest frames into one frame
+     * and updates the listeners with it
+     */
+    private void emitMergedFrame(Source[] sources) {
+        final int[] ids = mergedIDs;
+        final float[] poses = mergedPoses;
+        final long[] times = mergedTimes;
+        int count = 0;
+        long newest = Long.MIN_VALUE;
+        for (Source source : sources) {
+            if (!source.readFrame()) {
+                continue;
+            }
+            long time = source.readAlignedNanos;
+            newest = Math.max(newest, time);
+            for (int i = 0; i < source.readCount; i++) {
+                int id = source.readIDs[i];
+                int index = indexOf(ids, count, id);
+                if (index < 0) {
+                    index = count++;
+                    ids[index] = id;
+                } else if (times[index] >= time) {
+                    // another source saw this body more recently
+                    continue;
+                }
+                times[index] = time;
+                System.arraycopy(source.readPoses, i * RigidTransform.POSE_FLOATS,
+                        poses, index * RigidTransform.POSE_FLOATS,
+                        RigidTransform.POSE_FLOATS);
+            }
+        }
+        if (newest == Long.MIN_VALUE) {
+            return;
+        }
+
+        final RigidBodyRoutingTable routes = rigidBodyRoutes;
+        for (int i = 0; i < count; i++) {
+            RigidBodyUpdateListener[] listeners = routes.listenersFor(ids[i]);
+            int p = i * RigidTransform.POSE_FLOATS;
+            for (RigidBodyUpdateListener listener : listeners) {
+                listener.rigidBodyUpdateReceived(ids[i], poses[p], poses[p + 1],
+                        poses[p + 2], poses[p + 3], poses[p + 4], poses[p + 5],
+                        poses[p + 6]);
+            }
+        }
+
+        long frameCount = mergedFrameCount + 1;
+        mergedFrameCount = frameCount;
+        FrameTiming timing = frameTiming;
+        timing.frameNumber = (int) frameCount;
+        timing.timestamp = (newest - startNanos) / 1e9;
+        for (FrameTimingListener listener : frameTimingListeners) {
+            listener.frameTimingReceived(timing);
+        }
+        for (FrameUpdateListener listener : frameUpdateListeners) {
+            listener.frameUpdateReceived();
+        }
+    }
+
+    private static int indexOf(int[] ids, int count, int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * One Motive server, its transform into the world frame, and
+     * the slot its frames are published to
+     */
+    private final class Source implements RigidBodyUpdateListener,
+            FrameTimingListener, FrameUpdateListener {
+
+        final CommandStreamManager manager;
+        private final RigidTransform toWorld;
+
+        // the frame being decoded (only used by the source's thread)
+        private final int[] stagedIDs = new int[MAX_BODIES_PER_SOURCE];
+        private final float[] stagedPoses =
+                new float[MAX_BODIES_PER_SOURCE * RigidTransform.POSE_FLOATS];
+        private int stagedCount;
+        private double stagedTimestamp;
+        // our clock minus the server's clock, in nanoseconds
+        private long clockOffsetNanos;
+        private boolean hasClockOffset;
+
+        // the published frame, guarded by the sequence number,
+        // which is odd while the frame is being written
+        @SuppressWarnings("unused")
+        private volatile long sequence;
+        private final int[] publishedIDs = new int[MAX_BODIES_PER_SOURCE];
+        private final float[] publishedPoses =
+                new float[MAX_BODIES_PER_SOURCE * RigidTransform.POSE_FLOATS];
+        private int publishedCount;
+        private long publishedAlignedNanos;
+        volatile long lastPublishedNanos = Long.MIN_VALUE / 2;
+
+        // the merging thread's copy of the published frame
+        final int[] readIDs = new int[MAX_BODIES_PER_SOURCE];
+        final float[] readPoses =
+                new float[MAX_BODIES_PER_SOURCE * RigidTransform.POSE_FLOATS];
+        int readCount;
+        long readAlignedNanos;
+        private long lastReadSequence;
+
+        Source(CommandStreamManager manager, RigidTransform toWorld) {
+            this.manager = manager;
+            this.toWorld = toWorld;
+            manager.addRigidBodyUpdateListener(this);
+            manager.addFrameTimingListener(this);
+            manager.addFrameUpdateListener(this);
+        }
+
+        @Override
+        public void rigidBodyUpdateReceived(int id, float x, float y, float z,
+                float qw, float qx, float qy, float qz) {
+            if (stagedCount == MAX_BODIES_PER_SOURCE) {
+                return;
+            }
+            int p = stagedCount * RigidTransform.POSE_FLOATS;
+            float[] poses = stagedPoses;
+            poses[p] = x;
+            poses[p + 1] = y;
+            poses[p + 2] = z;
+            poses[p + 3] = qw;
+            poses[p + 4] = qx;
+            poses[p + 5] = qy;
+            poses[p + 6] = qz;
+            toWorld.apply(poses, p);
+            stagedIDs[stagedCount++] = id;
+        }
+
+        @Override
+        public void frameTimingReceived(FrameTiming timing) {
+            stagedTimestamp = timing.getTimestamp();
+        }
+
+        /**
+         * Publishes the decoded frame to the slot
+         */
+        @Override
+        public void frameUpdateReceived() {
+            long now = System.nanoTime();
+            long serverNanos = Math.round(stagedTimestamp * 1e9);
+            // frames are never received before they are sent, so the
+            // smallest offset seen is closest to the true offset
+            long offset = now - serverNanos;
+            if (!hasClockOffset || offset < clockOffsetNanos
+                    || offset - clockOffsetNanos > CLOCK_RESYNC_NANOS) {
+                clockOffsetNanos = offset;
+                hasClockOffset = true;
+            } else {
+                clockOffsetNanos += Math.min(CLOCK_DRIFT_NANOS, offset - clockOffsetNanos);
+            }
+
+            long sequence = (long) SEQUENCE.getOpaque(this);
+            SEQUENCE.setOpaque(this, sequence + 1);
+            VarHandle.storeStoreFence();
+            System.arraycopy(stagedIDs, 0, publishedIDs, 0, stagedCount);
+            System.arraycopy(stagedPoses, 0, publishedPoses, 0,
+                    stagedCount * RigidTransform.POSE_FLOATS);
+            publishedCount = stagedCount;
+            publishedAlignedNanos = serverNanos + clockOffsetNanos;
+            SEQUENCE.setRelease(this, sequence + 2);
+            lastPublishedNanos = now;
+
+            stagedCount = 0;
+            LockSupport.unpark(merger);
+        }
+
+        /**
+         * @return true if a frame has been published since the
+         * merging thread last read one
+         */
+        boolean hasNewFrame() {
+            return (long) SEQUENCE.getAcquire(this) != lastReadSequence;
+        }
+
+        /**
+         * Copies the published frame, if it is new, for the merging thread
+         * @return true if a new frame was copied
+         */
+        boolean readFrame() {
+            while (true) {
+                long sequence = (long) SEQUENCE.getAcquire(this);
+                if (sequence == lastReadSequence) {
+                    return false;
+                }
+                if ((sequence & 1) != 0) {
+                    // being written; the writer never waits, so this is brief
+                    Thread.onSpinWait();
+                    continue;
+                }
+                int count = Math.min(publishedCount, MAX_BODIES_PER_SOURCE);
+                System.arraycopy(publishedIDs, 0, readIDs, 0, count);
+                System.arraycopy(publishedPoses, 0, readPoses, 0,
+                        count * RigidTransform.POSE_FLOATS);
+                long alignedNanos = publishedAlignedNanos;
+                VarHandle.loadLoadFence();
+                if ((long) SEQUENCE.getOpaque(this) == sequence) {
+                    readCount = count;
+                    readAlignedNanos = alignedNanos;
+                    lastReadSequence = sequence;
+                    return true;
+                }
+            }
+        }
+    }
+
+}
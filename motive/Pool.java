@@ -0,0 +1,47 @@
+package motive;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * A simple, growable pool of reusable objects, used by the stream
+ * manager to hand listeners decoded data without creating new objects
+ * for each frame.
+ * 
+ * Objects are addressed by index; the same index returns the same object
+ * every frame, so a frame with n items reuses the first n objects. Objects
+ * are only created the first time a frame contains more items than any
+ * frame before it.
+ * 
+ * @author Lauren Knight
+ */
+class Pool<T> {
+
+    private final Supplier<T> factory;
+    private Object[] items = new Object[4];
+    private int count;
+
+    Pool(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Accesses a pooled object, creating it if needed
+     * @param index the index of the object
+     * @return the object at the given index
+     */
+    @SuppressWarnings("unchecked")
+    T get(int index) {
+        if (index >= count) {
+            if (index >= items.length) {
+                items = Arrays.copyOf(items, Math.max(index + 1, items.length * 2));
+            }
+            for (int i = count; i <= index; i++) {
+                items[i] = factory.get();
+            }
+            count = index + 1;
+        }
+        return (T) items[index];
+    }
+
+}
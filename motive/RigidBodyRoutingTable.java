@@ -0,0 +1,110 @@
+package motive;
+
+import java.util.Arrays;
+
+/**
+ * This class maps rigid body streaming IDs to the listeners
+ * subscribed to them.
+ *
+ * The table is rebuilt each time a listener is added, so that looking
+ * up the listeners for a body while decoding a frame is a single array
+ * access. Listeners subscribed to every body are stored in each entry
+ * of the table as well as in a separate array used for IDs beyond the
+ * end of the table.
+ *
+ * Tables are never modified once built; the stream manager swaps in a
+ * new table whenever its subscriptions change.
+ *
+ * @author Lauren Knight
+ */
+class RigidBodyRoutingTable {
+
+    // the largest ID that a listener may subscribe to specifically
+    static final int MAX_ROUTED_ID = 0xFFFF;
+
+    static final RigidBodyUpdateListener[] NO_LISTENERS =
+            new RigidBodyUpdateListener[0];
+
+    static final RigidBodyRoutingTable EMPTY = new RigidBodyRoutingTable(
+            new RigidBodyUpdateListener[0][], NO_LISTENERS);
+
+    // listeners subscribed to each ID (including those subscribed to all IDs)
+    private final RigidBodyUpdateListener[][] routes;
+    // listeners subscribed to all IDs
+    private final RigidBodyUpdateListener[] allBodyListeners;
+
+    private RigidBodyRoutingTable(RigidBodyUpdateListener[][] routes,
+            RigidBodyUpdateListener[] allBodyListeners) {
+        this.routes = routes;
+        this.allBodyListeners = allBodyListeners;
+    }
+
+    /**
+     * Finds the listeners subscribed to a rigid body
+     * @param id the body's streaming ID
+     * @return the subscribed listeners; an empty array if there are none
+     */
+    RigidBodyUpdateListener[] listenersFor(int id) {
+        if (id >= 0 && id < routes.length) {
+            return routes[id];
+        }
+        return allBodyListeners;
+    }
+
+    /**
+     * Builds a new table with a listener subscribed to every body
+     * @param listener the listener to add
+     * @return the new table
+     */
+    RigidBodyRoutingTable withAllBodyListener(RigidBodyUpdateListener listener) {
+        RigidBodyUpdateListener[][] newRoutes = new RigidBodyUpdateListener[routes.length][];
+        for (int id = 0; id < routes.length; id++) {
+            newRoutes[id] = append(routes[id], listener);
+        }
+        return new RigidBodyRoutingTable(newRoutes,
+                append(allBodyListeners, listener));
+    }
+
+    /**
+     * Builds a new table with a listener subscribed to a range of IDs
+     * @param listener the listener to add
+     * @param firstID the first ID of the range
+     * @param lastID the last ID of the range (inclusive)
+     * @return the new table
+     */
+    RigidBodyRoutingTable withRangeListener(RigidBodyUpdateListener listener,
+            int firstID, int lastID) {
+        if (firstID < 0 || lastID > MAX_ROUTED_ID || firstID > lastID) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid rigid body ID range %d-%d (IDs must be 0-%d)",
+                    firstID, lastID, MAX_ROUTED_ID));
+        }
+        int length = Math.max(routes.length, lastID + 1);
+        RigidBodyUpdateListener[][] newRoutes = Arrays.copyOf(routes, length);
+        for (int id = routes.length; id < length; id++) {
+            newRoutes[id] = allBodyListeners;
+        }
+        for (int id = firstID; id <= lastID; id++) {
+            newRoutes[id] = append(newRoutes[id], listener);
+        }
+        return new RigidBodyRoutingTable(newRoutes, allBodyListeners);
+    }
+
+    /**
+     * Creates a copy of an array of listeners with a listener added to
+     * the end, unless the listener is already present.
+     */
+    private static RigidBodyUpdateListener[] append(
+            RigidBodyUpdateListener[] listeners, RigidBodyUpdateListener listener) {
+        for (RigidBodyUpdateListener l : listeners) {
+            if (l == listener) {
+                return listeners;
+            }
+        }
+        RigidBodyUpdateListener[] result = Arrays.copyOf(listeners,
+                listeners.length + 1);
+        result[listeners.length] = listener;
+        return result;
+    }
+
+}
@@ -7,6 +7,8 @@ package motive;
  * The listener's rigidBodyUpdateReceived method will be called
  * once for each rigid body tracked by Motive each time a frame
  * is received from Motive (this occurs 30-60 FPS by default).
+ * Listeners may instead subscribe to specific streaming IDs, in
+ * which case they are only called for those bodies.
  * 
  * @author Lauren Knight
  */
@@ -0,0 +1,104 @@
+package motive;
+
+/**
+ * This class defines a rotation followed by a translation, used to move
+ * poses from one Motive server's coordinate frame into a shared world
+ * frame.
+ * 
+ * Transforms are immutable, and are applied in place to poses stored in
+ * float arrays (x, y, z, qw, qx, qy, qz), so applying one creates
+ * no objects.
+ * 
+ * @author Lauren Knight
+ */
+public final class RigidTransform {
+
+    // the number of floats in a pose: position (3) then rotation (4)
+    static final int POSE_FLOATS = 7;
+
+    public static final RigidTransform IDENTITY =
+            new RigidTransform(1, 0, 0, 0, 0, 0, 0);
+
+    // the rotation, as a unit quaternion
+    private final double qw, qx, qy, qz;
+    // the translation, applied after the rotation
+    private final double tx, ty, tz;
+
+    /**
+     * Creates a transform
+     * @param qw the w component of the rotation quaternion
+     * @param qx the x component of the rotation quaternion
+     * @param qy the y component of the rotation quaternion
+     * @param qz the z component of the rotation quaternion
+     * @param tx the x component of the translation
+     * @param ty the y component of the translation
+     * @param tz the z component of the translation
+     */
+    public RigidTransform(double qw, double qx, double qy, double qz,
+            double tx, double ty, double tz) {
+        double norm = Math.sqrt(qw * qw + qx * qx + qy * qy + qz * qz);
+        if (norm == 0 || Double.isNaN(norm)) {
+            throw new IllegalArgumentException("Rotation must be a non-zero quaternion");
+        }
+        this.qw = qw / norm;
+        this.qx = qx / norm;
+        this.qy = qy / norm;
+        this.qz = qz / norm;
+        this.tx = tx;
+        this.ty = ty;
+        this.tz = tz;
+    }
+
+    /**
+     * Creates a transform that rotates about the vertical (Z) axis,
+     * which is all that is needed between capture volumes that share
+     * a floor
+     * @param yawRadians the rotation about the Z axis
+     * @param tx the x component of the translation
+     * @param ty the y component of the translation
+     * @param tz the z component of the translation
+     * @return the transform
+     */
+    public static RigidTransform ofYaw(double yawRadians, double tx, double ty,
+            double tz) {
+        return new RigidTransform(Math.cos(yawRadians / 2), 0, 0,
+                Math.sin(yawRadians / 2), tx, ty, tz);
+    }
+
+    /**
+     * Transforms a pose in place
+     * @param pose the pose's position and rotation (x, y, z, qw, qx, qy, qz)
+     * @param offset the index of the pose's x component
+     */
+    void apply(float[] pose, int offset) {
+        double x = pose[offset];
+        double y = pose[offset + 1];
+        double z = pose[offset + 2];
+        // rotate the position: v' = v + 2w(u x v) + 2u x (u x v),
+        // where u is the vector part of the rotation
+        double cx = 2 * (qy * z - qz * y);
+        double cy = 2 * (qz * x - qx * z);
+        double cz = 2 * (qx * y - qy * x);
+        pose[offset] = (float) (x + qw * cx + (qy * cz - qz * cy) + tx);
+        pose[offset + 1] = (float) (y + qw * cy + (qz * cx - qx * cz) + ty);
+        pose[offset + 2] = (float) (z + qw * cz + (qx * cy - qy * cx) + tz);
+
+        // rotate the orientation: q' = r * q
+        double w = pose[offset + 3];
+        double px = pose[offset + 4];
+        double py = pose[offset + 5];
+        double pz = pose[offset + 6];
+        pose[offset + 3] = (float) (qw * w - qx * px - qy * py - qz * pz);
+        pose[offset + 4] = (float) (qw * px + qx * w + qy * pz - qz * py);
+        pose[offset + 5] = (float) (qw * py - qx * pz + qy * w + qz * px);
+        pose[offset + 6] = (float) (qw * pz + qx * py - qy * px + qz * w);
+    }
+
+    /**
+     * @return true if this transform leaves poses unchanged
+     */
+    public boolean isIdentity() {
+        return qw == 1 && tx == 0 && ty == 0 && tz == 0;
+    }
+
+}
@@ -0,0 +1,137 @@
+package motive;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the decoded state of one skeleton (for example, a
+ * person wearing a marker suit) within a single frame from Motive.
+ * 
+ * A skeleton is made up of bones, each of which is a rigid body with
+ * its own ID, position and rotation.
+ * 
+ * Skeleton objects are pooled and reused by the CommandStreamManager:
+ * the object handed to a SkeletonUpdateListener is only valid until the
+ * listener method returns. Listeners that need the data later must
+ * copy it out.
+ * 
+ * @author Lauren Knight
+ */
+public class Skeleton {
+
+    // the number of floats stored for each bone
+    private static final int BONE_SIZE = 8;
+
+    private int id;
+    private int boneCount;
+    private int[] boneIDs = new int[0];
+    // x, y, z, qw, qx, qy, qz, mean marker error for each bone
+    private float[] bones = new float[0];
+    private boolean[] trackingValid = new boolean[0];
+
+    /**
+     * Prepares this skeleton to be filled in with a new frame's data
+     * @param id the skeleton's ID
+     * @param boneCount the number of bones in this frame
+     */
+    void reset(int id, int boneCount) {
+        this.id = id;
+        this.boneCount = boneCount;
+        if (boneCount > boneIDs.length) {
+            boneIDs = Arrays.copyOf(boneIDs, boneCount);
+            bones = Arrays.copyOf(bones, boneCount * BONE_SIZE);
+            trackingValid = Arrays.copyOf(trackingValid, boneCount);
+        }
+    }
+
+    /**
+     * Stores a bone's pose
+     */
+    void setBone(int index, int boneID, float x, float y, float z,
+            float qw, float qx, float qy, float qz) {
+        boneIDs[index] = boneID;
+        int i = index * BONE_SIZE;
+        bones[i] = x;
+        bones[i + 1] = y;
+        bones[i + 2] = z;
+        bones[i + 3] = qw;
+        bones[i + 4] = qx;
+        bones[i + 5] = qy;
+        bones[i + 6] = qz;
+    }
+
+    /**
+     * Stores the tracking quality of a bone
+     */
+    void setBoneQuality(int index, float meanError, boolean valid) {
+        bones[index * BONE_SIZE + 7] = meanError;
+        trackingValid[index] = valid;
+    }
+
+    /**
+     * @return the skeleton's ID
+     */
+    public int getID() {
+        return id;
+    }
+
+    /**
+     * @return the number of bones in the skeleton
+     */
+    public int getBoneCount() {
+        return boneCount;
+    }
+
+    /**
+     * @param bone the index of the bone (0 to getBoneCount() - 1)
+     * @return the ID of the bone, as streamed by Motive
+     * (the skeleton's ID in the upper 16 bits, the bone's in the lower 16)
+     */
+    public int getBoneID(int bone) {
+        return boneIDs[bone];
+    }
+
+    public float getX(int bone) {
+        return bones[bone * BONE_SIZE];
+    }
+
+    public float getY(int bone) {
+        return bones[bone * BONE_SIZE + 1];
+    }
+
+    public float getZ(int bone) {
+        return bones[bone * BONE_SIZE + 2];
+    }
+
+    public float getQW(int bone) {
+        return bones[bone * BONE_SIZE + 3];
+    }
+
+    public float getQX(int bone) {
+        return bones[bone * BONE_SIZE + 4];
+    }
+
+    public float getQY(int bone) {
+        return bones[bone * BONE_SIZE + 5];
+    }
+
+    public float getQZ(int bone) {
+        return bones[bone * BONE_SIZE + 6];
+    }
+
+    /**
+     * @param bone the index of the bone
+     * @return the mean error of the bone's markers, in meters
+     */
+    public float getMeanError(int bone) {
+        return bones[bone * BONE_SIZE + 7];
+    }
+
+    /**
+     * @param bone the index of the bone
+     * @return true if Motive was able to track the bone in this frame
+     */
+    public boolean isTrackingValid(int bone) {
+        return trackingValid[bone];
+    }
+
+}
@@ -0,0 +1,18 @@
+package motive;
+
+/**
+ * A listener interface that allows listening for movement
+ * of skeletons within Motive.
+ * 
+ * The listener's skeletonUpdateReceived method will be called
+ * once for each skeleton tracked by Motive each time a frame
+ * is received from Motive.
+ * 
+ * The Skeleton passed to the listener is reused for later frames,
+ * so it must not be kept after the method returns.
+ * 
+ * @author Lauren Knight
+ */
+public interface SkeletonUpdateListener {
+    void skeletonUpdateReceived(Skeleton skeleton);
+}
@@ -0,0 +1,46 @@
+package motive;
+
+import java.io.IOException;
+
+/**
+ * A listener interface for the events in the life of a
+ * CommandStreamManager's connection that would otherwise be printed
+ * to the console: Motive answering, the connection failing, the stream
+ * stalling and packets that can't be handled. An application that
+ * keeps its own log can add one to record them there instead.
+ *
+ * The methods are called on the manager's receiving thread.
+ *
+ * @author Lauren Knight
+ */
+public interface StreamEventListener {
+
+    /**
+     * Called when Motive answers a connection request
+     * @param natNetMajor the major version of NatNet being streamed
+     * @param natNetMinor the minor version
+     */
+    void serverInfoReceived(int natNetMajor, int natNetMinor);
+
+    /**
+     * Called when the socket fails; the manager then reconnects
+     * @param cause the error
+     */
+    void connectionLost(IOException cause);
+
+    /**
+     * Called when no data has arrived for the no-data timeout;
+     * the manager then reconnects
+     * @param timeoutMillis the timeout, in milliseconds
+     */
+    void streamStalled(long timeoutMillis);
+
+    /**
+     * Called when a packet can't be decoded (or a listener fails
+     * while handling it); the packet is skipped
+     * @param messageType the packet's NatNet message type
+     * @param cause the error
+     */
+    void badPacketReceived(short messageType, RuntimeException cause);
+
+}
@@ -0,0 +1,92 @@
+package motive;
+
+/**
+ * A source of frames from Motive, to which an application's listeners
+ * are added: a CommandStreamManager for a single Motive server, or a
+ * MultiSourceStreamManager merging several into one world frame.
+ *
+ * Listeners should be added before the source is started.
+ *
+ * @author Lauren Knight
+ */
+public interface StreamSource {
+
+    /**
+     * Adds a RigidBodyUpdateListener, which is updated with every
+     * rigid body in each frame
+     * @param listener The subscribing listener
+     */
+    void addRigidBodyUpdateListener(RigidBodyUpdateListener listener);
+
+    /**
+     * Adds a RigidBodyUpdateListener that is only updated for
+     * the given rigid bodies
+     * @param listener The subscribing listener
+     * @param ids the streaming IDs of the bodies the listener is interested in
+     */
+    void addRigidBodyUpdateListener(RigidBodyUpdateListener listener, int... ids);
+
+    /**
+     * Adds a FrameTimingListener, which is updated with the timing of
+     * each frame, after its rigid bodies and before the frame update
+     * @param listener The subscribing listener
+     */
+    void addFrameTimingListener(FrameTimingListener listener);
+
+    /**
+     * Adds a FrameUpdateListener, which is updated after each frame
+     * @param listener The subscribing listener
+     */
+    void addFrameUpdateListener(FrameUpdateListener listener);
+
+    /**
+     * Adds a ConnectionStateListener, which is updated each time
+     * the state of the connection to Motive changes
+     * @param listener The subscribing listener
+     */
+    void addConnectionStateListener(ConnectionStateListener listener);
+
+    /**
+     * Adds an ActivityLevelListener, which is updated each time the
+     * application marks the scene as idle or active again
+     * @param listener The subscribing listener
+     */
+    void addActivityLevelListener(ActivityLevelListener listener);
+
+    /**
+     * Adds a StreamEventListener, which is told of connection events,
+     * stalls and bad packets instead of them being printed
+     * @param listener The subscribing listener
+     */
+    void addStreamEventListener(StreamEventListener listener);
+
+    /**
+     * Starts receiving frames. Does nothing if already started.
+     */
+    void start();
+
+    /**
+     * Stops receiving frames and waits for the receiving threads to finish
+     */
+    void stop();
+
+    /**
+     * @return the current state of the connection to Motive
+     */
+    ConnectionState getConnectionState();
+
+    /**
+     * @return the activity level last set by the application
+     * (ACTIVE until it is first set)
+     */
+    ActivityLevel getActivityLevel();
+
+    /**
+     * Tells consumers of this source's frames how busy the scene is.
+     * ActivityLevelListeners are told, on the calling thread, if the
+     * level changes.
+     * @param level the new activity level
+     */
+    void setActivityLevel(ActivityLevel level);
+
+}
@@ -0,0 +1,31 @@
+#!/bin/sh
+# Creates a class data sharing (AppCDS) archive of the classes the game
+# loads while starting up, so later starts can map them from the archive
+# instead of loading and verifying them again. Requires JDK 13 or later.
+#
+# Usage (from the project directory): scripts/create-cds-archive.sh
+#
+# Then start the game with:
+#   java -XX:SharedArchiveFile=build/goal-chase.jsa -jar build/goal-chase.jar
+#
+# Class data sharing only works with classes loaded from jar files, so the
+# game is packaged into build/goal-chase.jar first. Re-run this script
+# whenever the code changes; the JVM ignores an archive that doesn't
+# match its jar.
+set -e
+
+cd "$(dirname "$0")/.."
+
+CLASSES=build/classes
+JAR=build/goal-chase.jar
+ARCHIVE=build/goal-chase.jsa
+
+rm -rf "$CLASSES"
+mkdir -p "$CLASSES"
+javac -d "$CLASSES" $(find . -name '*.java' -not -path './build/*')
+jar --create --file "$JAR" --main-class Main -C "$CLASSES" .
+
+# start the game once, recording every class loaded until it exits
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -jar "$JAR" --exit-after-startup
+
+echo "Created $ARCHIVE"
@@ -0,0 +1,53 @@
+package session;
+
+/**
+ * Reads values of arbitrary bit widths from a byte array,
+ * most significant bit first (the counterpart of BitWriter).
+ * 
+ * @author Lauren Knight
+ */
+class BitReader {
+
+    private byte[] bytes;
+    private long bitPosition;
+    private long bitLimit;
+
+    /**
+     * Points the reader at the start of an array
+     * @param bytes the array to read from
+     * @param length the number of bytes that may be read
+     */
+    void reset(byte[] bytes, int length) {
+        this.bytes = bytes;
+        this.bitPosition = 0;
+        this.bitLimit = (long) length * 8;
+    }
+
+    /**
+     * @return the next bit
+     * @throws IllegalStateException if every bit has been read
+     */
+    boolean readBit() {
+        if (bitPosition >= bitLimit) {
+            throw new IllegalStateException("Read past the end of the data");
+        }
+        boolean bit = (bytes[(int) (bitPosition >>> 3)]
+                & (0x80 >>> (bitPosition & 7))) != 0;
+        bitPosition++;
+        return bit;
+    }
+
+    /**
+     * Reads an unsigned value of the given width
+     * @param width the number of bits to read (0 to 64)
+     * @return the value, in the lowest bits of the result
+     */
+    long readBits(int width) {
+        long value = 0;
+        for (int i = 0; i < width; i++) {
+            value = (value << 1) | (readBit() ? 1 : 0);
+        }
+        return value;
+    }
+
+}
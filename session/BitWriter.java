@@ -0,0 +1,81 @@
+package session;
+
+import java.util.Arrays;
+
+/**
+ * Writes values of arbitrary bit widths into a growable byte array,
+ * most significant bit first. Used to pack the columns of a
+ * trajectory block.
+ * 
+ * A BitWriter is meant to be reused: reset() empties it without
+ * releasing its array.
+ * 
+ * @author Lauren Knight
+ */
+class BitWriter {
+
+    private byte[] bytes;
+    // the number of bits written so far
+    private long bitCount;
+
+    BitWriter(int initialCapacity) {
+        bytes = new byte[initialCapacity];
+    }
+
+    /**
+     * Empties the writer so it can be reused
+     */
+    void reset() {
+        Arrays.fill(bytes, 0, byteLength(), (byte) 0);
+        bitCount = 0;
+    }
+
+    /**
+     * Writes a single bit
+     * @param bit true for 1, false for 0
+     */
+    void writeBit(boolean bit) {
+        ensureCapacity(1);
+        if (bit) {
+            bytes[(int) (bitCount >>> 3)] |= (byte) (0x80 >>> (bitCount & 7));
+        }
+        bitCount++;
+    }
+
+    /**
+     * Writes the lowest bits of a value
+     * @param value the value to write
+     * @param width the number of bits to write (0 to 64)
+     */
+    void writeBits(long value, int width) {
+        ensureCapacity(width);
+        for (int bit = width - 1; bit >= 0; bit--) {
+            if (((value >>> bit) & 1) != 0) {
+                bytes[(int) (bitCount >>> 3)] |= (byte) (0x80 >>> (bitCount & 7));
+            }
+            bitCount++;
+        }
+    }
+
+    /**
+     * @return the number of bytes needed to hold the bits written so far
+     */
+    int byteLength() {
+        return (int) ((bitCount + 7) >>> 3);
+    }
+
+    /**
+     * @return the writer's array (only the first byteLength() bytes are used)
+     */
+    byte[] array() {
+        return bytes;
+    }
+
+    private void ensureCapacity(int bits) {
+        int needed = (int) ((bitCount + bits + 7) >>> 3);
+        if (needed > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(needed, bytes.length * 2));
+        }
+    }
+
+}
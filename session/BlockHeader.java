@@ -0,0 +1,196 @@
+package session;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The header of a block within a session file, summarizing the block
+ * without decoding it: which body it belongs to, the time and frame
+ * range it covers and the bounding box of its samples.
+ * 
+ * Queries use these summaries to skip blocks that can't contain
+ * any matching samples.
+ * 
+ * @author Lauren Knight
+ */
+public class BlockHeader {
+
+    int type;
+    int bodyID;
+    int count;
+    int payloadLength;
+    long firstTime;
+    long lastTime;
+    long firstFrame;
+    long lastFrame;
+    float minX;
+    float maxX;
+    float minY;
+    float maxY;
+    // the file offset of the header
+    long offset;
+
+    /**
+     * Fills in the summary of a pose block
+     */
+    void summarize(PoseBlock block, int payloadLength) {
+        type = SessionFormat.BLOCK_POSES;
+        bodyID = block.bodyID;
+        count = block.count;
+        this.payloadLength = payloadLength;
+        firstTime = block.times[0];
+        lastTime = block.times[count - 1];
+        firstFrame = block.frameNumbers[0];
+        lastFrame = block.frameNumbers[count - 1];
+        minX = Float.POSITIVE_INFINITY;
+        maxX = Float.NEGATIVE_INFINITY;
+        minY = Float.POSITIVE_INFINITY;
+        maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, block.x[i]);
+            maxX = Math.max(maxX, block.x[i]);
+            minY = Math.min(minY, block.y[i]);
+            maxY = Math.max(maxY, block.y[i]);
+        }
+    }
+
+    /**
+     * Fills in the summary of an event block
+     */
+    void summarize(EventBlock block, int payloadLength) {
+        type = SessionFormat.BLOCK_EVENTS;
+        bodyID = -1;
+        count = block.count;
+        this.payloadLength = payloadLength;
+        firstTime = block.times[0];
+        lastTime = block.times[count - 1];
+        firstFrame = 0;
+        lastFrame = 0;
+        minX = 0;
+        maxX = 0;
+        minY = 0;
+        maxY = 0;
+    }
+
+    void write(ByteBuffer buffer) {
+        buffer.putInt(type);
+        buffer.putInt(bodyID);
+        buffer.putInt(count);
+        buffer.putInt(payloadLength);
+        buffer.putLong(firstTime);
+        buffer.putLong(lastTime);
+        buffer.putLong(firstFrame);
+        buffer.putLong(lastFrame);
+        buffer.putFloat(minX);
+        buffer.putFloat(maxX);
+        buffer.putFloat(minY);
+        buffer.putFloat(maxY);
+    }
+
+    void read(ByteBuffer buffer) {
+        type = buffer.getInt();
+        bodyID = buffer.getInt();
+        count = buffer.getInt();
+        payloadLength = buffer.getInt();
+        firstTime = buffer.getLong();
+        lastTime = buffer.getLong();
+        firstFrame = buffer.getLong();
+        lastFrame = buffer.getLong();
+        minX = buffer.getFloat();
+        maxX = buffer.getFloat();
+        minY = buffer.getFloat();
+        maxY = buffer.getFloat();
+    }
+
+    BlockHeader copy() {
+        BlockHeader copy = new BlockHeader();
+        copy.type = type;
+        copy.bodyID = bodyID;
+        copy.count = count;
+        copy.payloadLength = payloadLength;
+        copy.firstTime = firstTime;
+        copy.lastTime = lastTime;
+        copy.firstFrame = firstFrame;
+        copy.lastFrame = lastFrame;
+        copy.minX = minX;
+        copy.maxX = maxX;
+        copy.minY = minY;
+        copy.maxY = maxY;
+        copy.offset = offset;
+        return copy;
+    }
+
+    /**
+     * @return true if the block's time range overlaps [from, to]
+     */
+    public boolean overlapsTime(long from, long to) {
+        return firstTime <= to && lastTime >= from;
+    }
+
+    /**
+     * @return true if the block's frame range overlaps [from, to]
+     */
+    public boolean overlapsFrames(long from, long to) {
+        return firstFrame <= to && lastFrame >= from;
+    }
+
+    /**
+     * @return true if the block's bounding box overlaps the given rectangle
+     */
+    public boolean intersects(float minX, float minY, float maxX, float maxY) {
+        return this.minX <= maxX && this.maxX >= minX
+                && this.minY <= maxY && this.maxY >= minY;
+    }
+
+    /**
+     * @return true if every sample in the block lies within the given rectangle
+     */
+    public boolean isInside(float minX, float minY, float maxX, float maxY) {
+        return this.minX >= minX && this.maxX <= maxX
+                && this.minY >= minY && this.maxY <= maxY;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getBodyID() {
+        return bodyID;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getFirstTime() {
+        return firstTime;
+    }
+
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    public long getFirstFrame() {
+        return firstFrame;
+    }
+
+    public long getLastFrame() {
+        return lastFrame;
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMaxX() {
+        return maxX;
+    }
+
+    public float getMinY() {
+        return minY;
+    }
+
+    public float getMaxY() {
+        return maxY;
+    }
+
+}
@@ -0,0 +1,158 @@
+package session;
+
+/**
+ * Encodes and decodes the columns of a block.
+ * 
+ * Integer columns (frame numbers, timestamps) are delta-of-delta
+ * encoded: samples arriving at a steady rate have a delta-of-delta of
+ * zero, which takes a single bit. Float columns (coordinates, headings)
+ * are XOR encoded against the previous value, storing only the bits
+ * that changed; a body moving smoothly changes few bits between frames.
+ * Both schemes are those used by the Gorilla time series database.
+ * 
+ * @author Lauren Knight
+ */
+final class ColumnCodec {
+
+    private ColumnCodec() {}
+
+    /**
+     * Delta-of-delta encodes a column of longs
+     */
+    static void encodeLongs(BitWriter out, long[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        out.writeBits(values[0], 64);
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = values[i] - values[i - 1];
+            long zigzag = zigzag(delta - previousDelta);
+            previousDelta = delta;
+            if (zigzag == 0) {
+                out.writeBit(false);
+            } else if (zigzag < (1 << 7)) {
+                out.writeBits(0b10, 2);
+                out.writeBits(zigzag, 7);
+            } else if (zigzag < (1 << 9)) {
+                out.writeBits(0b110, 3);
+                out.writeBits(zigzag, 9);
+            } else if (zigzag < (1 << 12)) {
+                out.writeBits(0b1110, 4);
+                out.writeBits(zigzag, 12);
+            } else if (zigzag < (1L << 32)) {
+                out.writeBits(0b11110, 5);
+                out.writeBits(zigzag, 32);
+            } else {
+                out.writeBits(0b11111, 5);
+                out.writeBits(zigzag, 64);
+            }
+        }
+    }
+
+    /**
+     * Decodes a column written by encodeLongs
+     */
+    static void decodeLongs(BitReader in, long[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        values[0] = in.readBits(64);
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long zigzag;
+            if (!in.readBit()) {
+                zigzag = 0;
+            } else if (!in.readBit()) {
+                zigzag = in.readBits(7);
+            } else if (!in.readBit()) {
+                zigzag = in.readBits(9);
+            } else if (!in.readBit()) {
+                zigzag = in.readBits(12);
+            } else if (!in.readBit()) {
+                zigzag = in.readBits(32);
+            } else {
+                zigzag = in.readBits(64);
+            }
+            long delta = previousDelta + unzigzag(zigzag);
+            values[i] = values[i - 1] + delta;
+            previousDelta = delta;
+        }
+    }
+
+    /**
+     * XOR encodes a column of floats
+     */
+    static void encodeFloats(BitWriter out, float[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        int previous = Float.floatToRawIntBits(values[0]);
+        out.writeBits(previous, 32);
+        // the window of meaningful bits used by the previous value
+        int windowLeading = -1;
+        int windowTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            int bits = Float.floatToRawIntBits(values[i]);
+            int xor = bits ^ previous;
+            previous = bits;
+            if (xor == 0) {
+                out.writeBit(false);
+                continue;
+            }
+            out.writeBit(true);
+            int leading = Integer.numberOfLeadingZeros(xor);
+            int trailing = Integer.numberOfTrailingZeros(xor);
+            if (windowLeading >= 0 && leading >= windowLeading
+                    && trailing >= windowTrailing) {
+                // the changed bits fit within the previous window
+                out.writeBit(false);
+                out.writeBits(xor >>> windowTrailing,
+                        32 - windowLeading - windowTrailing);
+            } else {
+                out.writeBit(true);
+                int length = 32 - leading - trailing;
+                out.writeBits(leading, 5);
+                out.writeBits(length - 1, 5);
+                out.writeBits(xor >>> trailing, length);
+                windowLeading = leading;
+                windowTrailing = trailing;
+            }
+        }
+    }
+
+    /**
+     * Decodes a column written by encodeFloats
+     */
+    static void decodeFloats(BitReader in, float[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        int previous = (int) in.readBits(32);
+        values[0] = Float.intBitsToFloat(previous);
+        int windowLeading = 0;
+        int windowTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            if (in.readBit()) {
+                if (in.readBit()) {
+                    windowLeading = (int) in.readBits(5);
+                    int length = (int) in.readBits(5) + 1;
+                    windowTrailing = 32 - windowLeading - length;
+                }
+                int length = 32 - windowLeading - windowTrailing;
+                int xor = (int) in.readBits(length) << windowTrailing;
+                previous ^= xor;
+            }
+            values[i] = Float.intBitsToFloat(previous);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
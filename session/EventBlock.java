@@ -0,0 +1,93 @@
+package session;
+
+/**
+ * A block of game events (goals, round start and end, calibration),
+ * stored column by column. Each event has a type (see SessionFormat)
+ * and two values whose meaning depends on the type.
+ * 
+ * EventBlocks are reused: the block returned by a SessionReader is
+ * overwritten when the reader moves to the next block.
+ * 
+ * @author Lauren Knight
+ */
+public class EventBlock {
+
+    // the maximum number of events in a block
+    static final int CAPACITY = 256;
+
+    int count;
+    final long[] times = new long[CAPACITY];
+    final long[] types = new long[CAPACITY];
+    final float[] a = new float[CAPACITY];
+    final float[] b = new float[CAPACITY];
+
+    /**
+     * Appends an event to the block
+     * @return true if the block is now full
+     */
+    boolean add(long time, int type, float a, float b) {
+        this.times[count] = time;
+        this.types[count] = type;
+        this.a[count] = a;
+        this.b[count] = b;
+        count++;
+        return count == CAPACITY;
+    }
+
+    /**
+     * Writes the block's columns
+     */
+    void encode(BitWriter out) {
+        ColumnCodec.encodeLongs(out, times, count);
+        for (int i = 0; i < count; i++) {
+            out.writeBits(types[i], 8);
+        }
+        ColumnCodec.encodeFloats(out, a, count);
+        ColumnCodec.encodeFloats(out, b, count);
+    }
+
+    /**
+     * Reads the block's columns
+     */
+    void decode(BitReader in, int count) {
+        this.count = count;
+        ColumnCodec.decodeLongs(in, times, count);
+        for (int i = 0; i < count; i++) {
+            types[i] = in.readBits(8);
+        }
+        ColumnCodec.decodeFloats(in, a, count);
+        ColumnCodec.decodeFloats(in, b, count);
+    }
+
+    /**
+     * @return the number of events in the block
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param i the index of the event
+     * @return the time of the event, in microseconds (Motive's clock)
+     */
+    public long getTime(int i) {
+        return times[i];
+    }
+
+    /**
+     * @param i the index of the event
+     * @return the event's type (one of SessionFormat's EVENT_ constants)
+     */
+    public int getType(int i) {
+        return (int) types[i];
+    }
+
+    public float getA(int i) {
+        return a[i];
+    }
+
+    public float getB(int i) {
+        return b[i];
+    }
+
+}
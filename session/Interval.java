@@ -0,0 +1,77 @@
+package session;
+
+import java.nio.file.Path;
+
+/**
+ * A span of time during which a body's poses continuously matched
+ * a query (for example, the car stayed within a region of the room).
+ * 
+ * @author Lauren Knight
+ */
+public class Interval {
+
+    private final Path session;
+    private final int bodyID;
+    private final long startTime;
+    private final long endTime;
+    private final long startFrame;
+    private final long endFrame;
+
+    Interval(Path session, int bodyID, long startTime, long endTime,
+            long startFrame, long endFrame) {
+        this.session = session;
+        this.bodyID = bodyID;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.startFrame = startFrame;
+        this.endFrame = endFrame;
+    }
+
+    /**
+     * @return the session file the interval was found in
+     */
+    public Path getSession() {
+        return session;
+    }
+
+    public int getBodyID() {
+        return bodyID;
+    }
+
+    /**
+     * @return the time of the first matching pose, in microseconds
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the time of the last matching pose, in microseconds
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public long getStartFrame() {
+        return startFrame;
+    }
+
+    public long getEndFrame() {
+        return endFrame;
+    }
+
+    /**
+     * @return the length of the interval, in microseconds
+     */
+    public long getDuration() {
+        return endTime - startTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s body %d frames %d-%d (%.3f s)",
+                session.getFileName(), bodyID, startFrame, endFrame,
+                getDuration() / 1e6);
+    }
+
+}
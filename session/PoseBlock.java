@@ -0,0 +1,116 @@
+package session;
+
+/**
+ * A block of consecutive pose samples of a single body, stored
+ * column by column.
+ * 
+ * PoseBlocks are reused: the block returned by a SessionReader is
+ * overwritten when the reader moves to the next block.
+ * 
+ * @author Lauren Knight
+ */
+public class PoseBlock {
+
+    int bodyID;
+    int count;
+    final long[] frameNumbers = new long[SessionFormat.BLOCK_SIZE];
+    final long[] times = new long[SessionFormat.BLOCK_SIZE];
+    final float[] x = new float[SessionFormat.BLOCK_SIZE];
+    final float[] y = new float[SessionFormat.BLOCK_SIZE];
+    final float[] z = new float[SessionFormat.BLOCK_SIZE];
+    final float[] headings = new float[SessionFormat.BLOCK_SIZE];
+
+    /**
+     * Appends a sample to the block
+     * @return true if the block is now full
+     */
+    boolean add(long frameNumber, long time, float x, float y, float z,
+            float heading) {
+        this.frameNumbers[count] = frameNumber;
+        this.times[count] = time;
+        this.x[count] = x;
+        this.y[count] = y;
+        this.z[count] = z;
+        this.headings[count] = heading;
+        count++;
+        return count == SessionFormat.BLOCK_SIZE;
+    }
+
+    /**
+     * Writes the block's columns
+     */
+    void encode(BitWriter out) {
+        ColumnCodec.encodeLongs(out, frameNumbers, count);
+        ColumnCodec.encodeLongs(out, times, count);
+        ColumnCodec.encodeFloats(out, x, count);
+        ColumnCodec.encodeFloats(out, y, count);
+        ColumnCodec.encodeFloats(out, z, count);
+        ColumnCodec.encodeFloats(out, headings, count);
+    }
+
+    /**
+     * Reads the block's columns
+     */
+    void decode(BitReader in, int bodyID, int count) {
+        this.bodyID = bodyID;
+        this.count = count;
+        ColumnCodec.decodeLongs(in, frameNumbers, count);
+        ColumnCodec.decodeLongs(in, times, count);
+        ColumnCodec.decodeFloats(in, x, count);
+        ColumnCodec.decodeFloats(in, y, count);
+        ColumnCodec.decodeFloats(in, z, count);
+        ColumnCodec.decodeFloats(in, headings, count);
+    }
+
+    /**
+     * @return the streaming ID of the body the samples belong to
+     */
+    public int getBodyID() {
+        return bodyID;
+    }
+
+    /**
+     * @return the number of samples in the block
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param i the index of the sample
+     * @return the number of the Motive frame the sample was taken from
+     */
+    public long getFrameNumber(int i) {
+        return frameNumbers[i];
+    }
+
+    /**
+     * @param i the index of the sample
+     * @return the time of the sample, in microseconds (Motive's clock)
+     */
+    public long getTime(int i) {
+        return times[i];
+    }
+
+    public float getX(int i) {
+        return x[i];
+    }
+
+    public float getY(int i) {
+        return y[i];
+    }
+
+    public float getZ(int i) {
+        return z[i];
+    }
+
+    /**
+     * @param i the index of the sample
+     * @return the body's rotation about the Z axis, in radians, as
+     * reported by Motive (not corrected by the alignment calibration)
+     */
+    public float getHeading(int i) {
+        return headings[i];
+    }
+
+}
@@ -0,0 +1,76 @@
+package session;
+
+import java.nio.file.Path;
+
+/**
+ * A single recorded pose returned by a query.
+ * 
+ * @author Lauren Knight
+ */
+public class PoseSample {
+
+    private final Path session;
+    private final int bodyID;
+    private final long frameNumber;
+    private final long time;
+    private final float x;
+    private final float y;
+    private final float z;
+    private final float heading;
+
+    PoseSample(Path session, PoseBlock block, int i) {
+        this.session = session;
+        this.bodyID = block.bodyID;
+        this.frameNumber = block.frameNumbers[i];
+        this.time = block.times[i];
+        this.x = block.x[i];
+        this.y = block.y[i];
+        this.z = block.z[i];
+        this.heading = block.headings[i];
+    }
+
+    /**
+     * @return the session file the pose was recorded in
+     */
+    public Path getSession() {
+        return session;
+    }
+
+    public int getBodyID() {
+        return bodyID;
+    }
+
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    /**
+     * @return the time of the pose, in microseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public float getHeading() {
+        return heading;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s body %d frame %d t=%d (%.3f, %.3f, %.3f) %.3f",
+                session.getFileName(), bodyID, frameNumber, time, x, y, z, heading);
+    }
+
+}
@@ -0,0 +1,19 @@
+package session;
+
+/**
+ * A pose that is filled in place, so that replaying a recording
+ * creates no objects. See PoseStream.poseAt.
+ *
+ * @author Lauren Knight
+ */
+public class PoseSlot {
+
+    // the time of the pose, in microseconds
+    public long time;
+    public double x;
+    public double y;
+    public double z;
+    // the body's rotation as recorded (NaN if it was on its side)
+    public double heading;
+
+}
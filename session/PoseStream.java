@@ -0,0 +1,201 @@
+package session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class replays one body's recorded poses from a session file,
+ * for example to show a ghost of an earlier round.
+ *
+ * The file is never loaded whole. A reader thread decodes it one block
+ * at a time into a fixed-size ring of samples, staying up to capacity
+ * samples ahead of the time being replayed, and waits while the ring
+ * is full. poseAt() only reads the ring, so replaying never touches the
+ * disk and, once started, creates no objects. However long the round
+ * was, and however many streams are open, each holds only its ring and
+ * one decoded block.
+ *
+ * poseAt() must always be called from the same thread, with times that
+ * (mostly) increase; the ring only holds samples from the last one
+ * replayed onwards.
+ *
+ * @author Lauren Knight
+ */
+public class PoseStream implements Closeable {
+
+    private final Path path;
+    private final int bodyID;
+    private final Thread readerThread;
+
+    // the ring of samples; sample n is at index n & mask
+    private final int mask;
+    private final long[] times;
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private final float[] headings;
+
+    // the number of samples the reader has put in the ring
+    private volatile long written;
+    // the oldest sample still needed; the reader may overwrite those before it
+    private volatile long consumed;
+    // set once the reader has put every sample in the ring (or failed)
+    private volatile boolean finished;
+    // set while the reader is waiting for room in the ring
+    private volatile boolean waiting;
+    private volatile boolean closed;
+
+    /**
+     * Opens a session file and starts reading it ahead
+     * @param path the file to replay
+     * @param bodyID the streaming ID of the body to replay
+     * @param capacity the most samples to read ahead
+     * (rounded up to a power of two)
+     */
+    public PoseStream(Path path, int bodyID, int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        }
+        this.path = path;
+        this.bodyID = bodyID;
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        times = new long[size];
+        x = new float[size];
+        y = new float[size];
+        z = new float[size];
+        headings = new float[size];
+        readerThread = new Thread(this::readLoop, "pose-stream-" + path.getFileName());
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Finds the body's pose at a time, interpolating between the two
+     * samples either side of it
+     * @param time the time, in microseconds (as recorded)
+     * @param slot where to store the pose
+     * @return false if there is no pose at that time: it is before the
+     * first sample or after the last, or nothing has been read yet.
+     * If the reader has fallen behind, the latest sample read is used.
+     */
+    public boolean poseAt(long time, PoseSlot slot) {
+        boolean done = finished;
+        long available = written;
+        long i = consumed;
+        if (i >= available) {
+            return false;
+        }
+        while (i + 1 < available && times[(int) ((i + 1) & mask)] <= time) {
+            i++;
+        }
+        if (i != consumed) {
+            consumed = i;
+            // wake the reader once half the ring is free
+            if (waiting && available - i <= (mask + 1) / 2) {
+                LockSupport.unpark(readerThread);
+            }
+        }
+
+        int k = (int) (i & mask);
+        if (time < times[k] && i == 0) {
+            return false;
+        }
+        if (i + 1 < available && time > times[k]) {
+            int next = (int) ((i + 1) & mask);
+            double f = (double) (time - times[k]) / (times[next] - times[k]);
+            slot.time = time;
+            slot.x = x[k] + (x[next] - x[k]) * f;
+            slot.y = y[k] + (y[next] - y[k]) * f;
+            slot.z = z[k] + (z[next] - z[k]) * f;
+            slot.heading = interpolateAngle(headings[k], headings[next], f);
+            return true;
+        }
+        if (done && i + 1 >= available && time > times[k]) {
+            // past the end of the recording
+            return false;
+        }
+        slot.time = times[k];
+        slot.x = x[k];
+        slot.y = y[k];
+        slot.z = z[k];
+        slot.heading = headings[k];
+        return true;
+    }
+
+    private static double interpolateAngle(double from, double to, double f) {
+        if (Double.isNaN(from)) {
+            return to;
+        }
+        if (Double.isNaN(to)) {
+            return from;
+        }
+        return from + Math.IEEEremainder(to - from, 2 * Math.PI) * f;
+    }
+
+    /**
+     * @return true once every sample has been read into the ring
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the file being replayed
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Body of the reader thread. Copies the body's samples into the
+     * ring, block by block, waiting whenever it is full.
+     */
+    private void readLoop() {
+        try (SessionReader reader = new SessionReader(path)) {
+            long n = 0;
+            while (!closed && reader.next()) {
+                if (reader.getBlockType() != SessionFormat.BLOCK_POSES
+                        || reader.getBodyID() != bodyID) {
+                    continue;
+                }
+                PoseBlock block = reader.poses();
+                for (int j = 0; j < block.count; j++) {
+                    while (n - consumed > mask) {
+                        waiting = true;
+                        if (n - consumed > mask && !closed) {
+                            LockSupport.park(this);
+                        }
+                        waiting = false;
+                        if (closed) {
+                            return;
+                        }
+                    }
+                    int k = (int) (n & mask);
+                    times[k] = block.times[j];
+                    x[k] = block.x[j];
+                    y[k] = block.y[j];
+                    z[k] = block.z[j];
+                    headings[k] = block.headings[j];
+                    written = ++n;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to replay " + path + ": " + e.getMessage());
+        } finally {
+            finished = true;
+        }
+    }
+
+    /**
+     * Stops the reader thread and closes the file
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(readerThread);
+    }
+
+}
@@ -0,0 +1,156 @@
+package session;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The results of a query, delivered as they are found.
+ * 
+ * Results are produced in parallel by the query engine and handed over
+ * through a bounded queue, so the first results are available before
+ * the query finishes and a slow consumer holds back the search instead
+ * of letting results pile up in memory. Results from different files
+ * may be interleaved; results from the same file are in time order.
+ * 
+ * Closing the results before reaching the end cancels the query.
+ * 
+ * @author Lauren Knight
+ */
+public class QueryResults<T> implements Iterator<T>, AutoCloseable {
+
+    // the number of results that may be waiting to be consumed
+    private static final int CAPACITY = 1024;
+
+    // placed on the queue once the query has finished
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+    private Object next;
+    private boolean finished;
+
+    QueryResults() {}
+
+    /**
+     * Hands a result to the consumer, waiting for space in the queue.
+     * Called by the engine's worker threads.
+     * @param result the result
+     * @return false if the query has been cancelled
+     */
+    boolean publish(T result) {
+        return put(result);
+    }
+
+    /**
+     * Marks the end of the results. Called once, when the query finishes.
+     * @param failure the error that ended the query, or null
+     */
+    void finish(Throwable failure) {
+        this.failure = failure;
+        put(END);
+    }
+
+    /**
+     * @return true if the consumer has closed the results
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    private boolean put(Object item) {
+        if (queue.offer(item)) {
+            return !cancelled;
+        }
+        Put put = new Put(item);
+        try {
+            ForkJoinPool.managedBlock(put);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return put.done && !cancelled;
+    }
+
+    /**
+     * Waits for space in the queue without starving the fork-join pool
+     */
+    private final class Put implements ForkJoinPool.ManagedBlocker {
+        private final Object item;
+        private boolean done;
+
+        Put(Object item) {
+            this.item = item;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (!done && !cancelled) {
+                done = queue.offer(item, 10, TimeUnit.MILLISECONDS);
+            }
+            return done || cancelled;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (!done && !cancelled) {
+                done = queue.offer(item);
+            }
+            return done || cancelled;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (finished) {
+            return false;
+        }
+        try {
+            Object item = queue.take();
+            if (item == END) {
+                finished = true;
+                if (failure != null) {
+                    throw new IllegalStateException("Query failed", failure);
+                }
+                return false;
+            }
+            next = item;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            return false;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T result = (T) next;
+        next = null;
+        return result;
+    }
+
+    /**
+     * Cancels the query (if it is still running) and discards
+     * any results that haven't been consumed.
+     */
+    @Override
+    public void close() {
+        cancelled = true;
+        finished = true;
+        next = null;
+        queue.clear();
+    }
+
+}
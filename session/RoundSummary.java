@@ -0,0 +1,129 @@
+package session;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * What a finished round's recording says about the round: its final
+ * score, when it started and how the room was calibrated. Only the
+ * event blocks are decoded, so summarizing a file is cheap however
+ * long the round was.
+ *
+ * @author Lauren Knight
+ */
+public class RoundSummary {
+
+    private final Path path;
+    private final int score;
+    private final long startTime;
+    private final double rotationOffset;
+    private final double initialRotation;
+
+    private RoundSummary(Path path, int score, long startTime,
+            double rotationOffset, double initialRotation) {
+        this.path = path;
+        this.score = score;
+        this.startTime = startTime;
+        this.rotationOffset = rotationOffset;
+        this.initialRotation = initialRotation;
+    }
+
+    /**
+     * Summarizes a recording
+     * @param path the session file
+     * @return the summary, or null if the round never ended
+     * (the recording was cut short)
+     * @throws IOException if the file can't be read
+     */
+    public static RoundSummary read(Path path) throws IOException {
+        try (SessionReader reader = new SessionReader(path)) {
+            long startTime = Long.MIN_VALUE;
+            int score = -1;
+            double rotationOffset = 0;
+            double initialRotation = 0;
+            for (BlockHeader block : reader.getIndex().getBlocks()) {
+                if (block.type != SessionFormat.BLOCK_EVENTS) {
+                    continue;
+                }
+                reader.seek(block);
+                EventBlock events = reader.events();
+                for (int i = 0; i < events.count; i++) {
+                    switch ((int) events.types[i]) {
+                        case SessionFormat.EVENT_ROUND_START:
+                            startTime = events.times[i];
+                            break;
+                        case SessionFormat.EVENT_CALIBRATION:
+                            rotationOffset = events.a[i];
+                            initialRotation = events.b[i];
+                            break;
+                        case SessionFormat.EVENT_ROUND_END:
+                            score = (int) events.a[i];
+                            break;
+                    }
+                }
+            }
+            if (startTime == Long.MIN_VALUE || score < 0) {
+                return null;
+            }
+            return new RoundSummary(path, score, startTime,
+                    rotationOffset, initialRotation);
+        }
+    }
+
+    /**
+     * Finds the round with the best score (the earliest, if several
+     * share it) among session files. Files that can't be read, or whose
+     * round never ended, are skipped.
+     * @param sessions the session files, oldest first
+     * @return the best round, or null if there are none
+     */
+    public static RoundSummary findBest(List<Path> sessions) {
+        RoundSummary best = null;
+        for (Path session : sessions) {
+            try {
+                RoundSummary summary = read(session);
+                if (summary != null && (best == null || summary.score > best.score)) {
+                    best = summary;
+                }
+            } catch (IOException e) {
+                // not a usable recording
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the session file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return the time the round started, in microseconds
+     * (on the same clock as the recorded poses)
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the rotation offset the round was played with (radians)
+     */
+    public double getRotationOffset() {
+        return rotationOffset;
+    }
+
+    /**
+     * @return the player car's initial rotation in the round (radians)
+     */
+    public double getInitialRotation() {
+        return initialRotation;
+    }
+
+}
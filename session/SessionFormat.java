@@ -0,0 +1,69 @@
+package session;
+
+/**
+ * Constants describing the layout of a recorded session (.traj) file.
+ * 
+ * A session file holds one round. It starts with a file header:
+ *   magic (int), format version (int), round start time (long, epoch ms)
+ * 
+ * followed by any number of blocks, each with a block header:
+ *   block type (int), body ID (int, -1 for event blocks),
+ *   sample count (int), payload length in bytes (int),
+ *   first and last sample time (longs, us),
+ *   first and last frame number (longs, 0 for event blocks),
+ *   min x, max x, min y, max y of the block's samples
+ *   (floats, 0 for event blocks)
+ * 
+ * and a payload of bit-packed columns (see ColumnCodec). Pose blocks
+ * hold up to BLOCK_SIZE samples of one body; event blocks hold game
+ * events such as goals being placed and scored.
+ * 
+ * When a recording is finished, an index is appended: a copy of every
+ * block header, each followed by the block's file offset (long), then
+ * a trailer holding the index's offset (long), the number of entries
+ * (int) and INDEX_MAGIC (int). Files whose recording was cut short have
+ * no index, and are indexed by reading each block header instead.
+ * 
+ * All values are big-endian.
+ * 
+ * @author Lauren Knight
+ */
+public final class SessionFormat {
+
+    // "TRAJ"
+    static final int MAGIC = 0x5452414A;
+    static final int VERSION = 2;
+    // "INDX"
+    static final int INDEX_MAGIC = 0x494E4458;
+
+    static final int FILE_HEADER_BYTES = 16;
+    static final int BLOCK_HEADER_BYTES = 64;
+    static final int INDEX_ENTRY_BYTES = BLOCK_HEADER_BYTES + 8;
+    static final int INDEX_TRAILER_BYTES = 16;
+
+    // the file extension used by session files
+    public static final String FILE_EXTENSION = ".traj";
+
+    // the maximum number of samples in a block
+    public static final int BLOCK_SIZE = 1024;
+
+    // block types
+    public static final int BLOCK_POSES = 1;
+    public static final int BLOCK_EVENTS = 2;
+
+    // event types
+    // a = 0, b = 0
+    public static final int EVENT_ROUND_START = 1;
+    // a = final score, b = 0
+    public static final int EVENT_ROUND_END = 2;
+    // a new goal appeared; a = goal x, b = goal y
+    public static final int EVENT_GOAL_PLACED = 3;
+    // the player reached the goal; a = the new score, b = 0
+    public static final int EVENT_GOAL_SCORED = 4;
+    // a = rotation offset (radians, from the alignment vector),
+    // b = the player car's initial rotation (radians)
+    public static final int EVENT_CALIBRATION = 5;
+
+    private SessionFormat() {}
+
+}
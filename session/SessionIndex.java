@@ -0,0 +1,122 @@
+package session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The index of a session file: the header of every block, in file
+ * order, along with a summary of the whole file. The index lets a query
+ * decide which blocks (or whether any block of a file) could match
+ * without reading the blocks themselves.
+ * 
+ * Within a file, each body's blocks are in time order, so the blocks
+ * covering a time range can be found by binary search.
+ * 
+ * @author Lauren Knight
+ */
+public class SessionIndex {
+
+    private final List<BlockHeader> blocks;
+    private final long firstTime;
+    private final long lastTime;
+    private final float minX;
+    private final float maxX;
+    private final float minY;
+    private final float maxY;
+
+    SessionIndex(List<BlockHeader> blocks) {
+        this.blocks = Collections.unmodifiableList(new ArrayList<>(blocks));
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        float x0 = Float.POSITIVE_INFINITY;
+        float x1 = Float.NEGATIVE_INFINITY;
+        float y0 = Float.POSITIVE_INFINITY;
+        float y1 = Float.NEGATIVE_INFINITY;
+        for (BlockHeader block : blocks) {
+            first = Math.min(first, block.firstTime);
+            last = Math.max(last, block.lastTime);
+            if (block.type == SessionFormat.BLOCK_POSES) {
+                x0 = Math.min(x0, block.minX);
+                x1 = Math.max(x1, block.maxX);
+                y0 = Math.min(y0, block.minY);
+                y1 = Math.max(y1, block.maxY);
+            }
+        }
+        firstTime = first;
+        lastTime = last;
+        minX = x0;
+        maxX = x1;
+        minY = y0;
+        maxY = y1;
+    }
+
+    /**
+     * @return every block header, in file order
+     */
+    public List<BlockHeader> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Finds the pose blocks of a body, in time order
+     * @param bodyID the body's streaming ID
+     * @return the body's blocks
+     */
+    public List<BlockHeader> getPoseBlocks(int bodyID) {
+        List<BlockHeader> result = new ArrayList<>();
+        for (BlockHeader block : blocks) {
+            if (block.type == SessionFormat.BLOCK_POSES && block.bodyID == bodyID) {
+                result.add(block);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the first of a body's blocks (as returned by getPoseBlocks)
+     * that ends at or after the given time
+     * @param bodyBlocks a body's blocks, in time order
+     * @param time the time, in microseconds
+     * @return the index of the block, or bodyBlocks.size() if there is none
+     */
+    public static int findFirstBlockEndingAfter(List<BlockHeader> bodyBlocks,
+            long time) {
+        int low = 0;
+        int high = bodyBlocks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bodyBlocks.get(mid).lastTime < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return true if the file has samples within [from, to]
+     */
+    public boolean overlapsTime(long from, long to) {
+        return !blocks.isEmpty() && firstTime <= to && lastTime >= from;
+    }
+
+    /**
+     * @return true if the bounding box of every sample in the file
+     * overlaps the given rectangle
+     */
+    public boolean intersects(float minX, float minY, float maxX, float maxY) {
+        return this.minX <= maxX && this.maxX >= minX
+                && this.minY <= maxY && this.maxY >= minY;
+    }
+
+    public long getFirstTime() {
+        return firstTime;
+    }
+
+    public long getLastTime() {
+        return lastTime;
+    }
+
+}
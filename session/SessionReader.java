@@ -0,0 +1,339 @@
+package session;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reads a session (.traj) file one block at a time.
+ * 
+ * next() reads only a block's header; the block's columns are decoded
+ * when poses() or events() is called, so blocks that aren't needed can
+ * be skipped cheaply. Only one block is held in memory at a time, and
+ * the same PoseBlock and EventBlock objects are reused for every block.
+ * 
+ * getIndex() gives the headers of every block at once, and seek()
+ * jumps straight to a block, which lets queries skip whole blocks.
+ * 
+ * @author Lauren Knight
+ */
+public class SessionReader implements Closeable {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long roundStartMillis;
+    // the offset of the end of the last block (the start of the index, if any)
+    private final long dataEnd;
+    // the offset of the index, or -1 if the file has none
+    private final long indexOffset;
+    private final int indexEntryCount;
+
+    private final ByteBuffer header = ByteBuffer.allocate(
+            SessionFormat.BLOCK_HEADER_BYTES);
+    private byte[] payload = new byte[16 * 1024];
+    private final BitReader bits = new BitReader();
+    private final PoseBlock poses = new PoseBlock();
+    private final EventBlock events = new EventBlock();
+
+    // the file position of the next block header
+    private long position;
+
+    // the current block's header
+    private BlockHeader current = new BlockHeader();
+    private boolean decoded;
+
+    /**
+     * Opens a session file and reads its header
+     * @param path the file to read
+     * @throws IOException if the file can't be read or isn't a session file
+     */
+    public SessionReader(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer fileHeader = ByteBuffer.allocate(
+                    SessionFormat.FILE_HEADER_BYTES);
+            readFully(fileHeader, 0);
+            if (fileHeader.getInt() != SessionFormat.MAGIC) {
+                throw new IOException(path + " is not a session file");
+            }
+            int version = fileHeader.getInt();
+            if (version != SessionFormat.VERSION) {
+                throw new IOException(path + " has unsupported version " + version);
+            }
+            roundStartMillis = fileHeader.getLong();
+            position = SessionFormat.FILE_HEADER_BYTES;
+
+            // look for the index at the end of the file
+            long size = channel.size();
+            long offset = -1;
+            int entries = 0;
+            if (size >= SessionFormat.FILE_HEADER_BYTES
+                    + SessionFormat.INDEX_TRAILER_BYTES) {
+                ByteBuffer trailer = ByteBuffer.allocate(
+                        SessionFormat.INDEX_TRAILER_BYTES);
+                readFully(trailer, size - SessionFormat.INDEX_TRAILER_BYTES);
+                long trailerOffset = trailer.getLong();
+                int trailerEntries = trailer.getInt();
+                if (trailer.getInt() == SessionFormat.INDEX_MAGIC
+                        && trailerEntries >= 0
+                        && trailerOffset >= SessionFormat.FILE_HEADER_BYTES
+                        && trailerOffset + (long) trailerEntries
+                            * SessionFormat.INDEX_ENTRY_BYTES
+                            + SessionFormat.INDEX_TRAILER_BYTES == size) {
+                    offset = trailerOffset;
+                    entries = trailerEntries;
+                }
+            }
+            indexOffset = offset;
+            indexEntryCount = entries;
+            dataEnd = offset >= 0 ? offset : size;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the next block, reading its header
+     * @return false if there are no more blocks
+     * @throws IOException if the file can't be read, or the block's
+     * header is corrupt
+     */
+    public boolean next() throws IOException {
+        if (position + SessionFormat.BLOCK_HEADER_BYTES > dataEnd) {
+            return false;
+        }
+        header.clear();
+        readFully(header, position);
+        current.read(header);
+        current.offset = position;
+        checkBlock(current);
+        long end = position + SessionFormat.BLOCK_HEADER_BYTES
+                + current.payloadLength;
+        if (end > dataEnd) {
+            // the last block was cut off (the game was closed mid-write)
+            return false;
+        }
+        position = end;
+        decoded = false;
+        return true;
+    }
+
+    /**
+     * Checks that a block's header can be trusted to find its payload
+     * @throws IOException if it can't
+     */
+    private void checkBlock(BlockHeader block) throws IOException {
+        if (block.payloadLength < 0 || block.offset < SessionFormat.FILE_HEADER_BYTES
+                || block.count < 0 || block.count > capacityOf(block.type)) {
+            throw new IOException(path + " has a corrupt block at " + block.offset);
+        }
+    }
+
+    /**
+     * @return the most values a block of the given type can hold
+     * (unknown types are skipped, so any count is accepted)
+     */
+    private static int capacityOf(int type) {
+        switch (type) {
+            case SessionFormat.BLOCK_POSES:
+                return SessionFormat.BLOCK_SIZE;
+            case SessionFormat.BLOCK_EVENTS:
+                return EventBlock.CAPACITY;
+            default:
+                return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Makes the given block the current block, so that its columns can
+     * be decoded with poses() or events(). next() continues with the
+     * block that follows it.
+     * @param block a header from this file's index
+     */
+    public void seek(BlockHeader block) {
+        current = block.copy();
+        position = block.offset + SessionFormat.BLOCK_HEADER_BYTES
+                + block.payloadLength;
+        decoded = false;
+    }
+
+    /**
+     * Reads the file's index, or builds it by reading every block
+     * header if the file has no index.
+     * @return the index
+     * @throws IOException if the file can't be read
+     */
+    public SessionIndex getIndex() throws IOException {
+        List<BlockHeader> blocks = new ArrayList<>();
+        if (indexOffset >= 0) {
+            ByteBuffer index = ByteBuffer.allocate(
+                    indexEntryCount * SessionFormat.INDEX_ENTRY_BYTES);
+            readFully(index, indexOffset);
+            for (int i = 0; i < indexEntryCount; i++) {
+                BlockHeader block = new BlockHeader();
+                block.read(index);
+                block.offset = index.getLong();
+                checkBlock(block);
+                if (block.offset + SessionFormat.BLOCK_HEADER_BYTES
+                        + block.payloadLength > dataEnd) {
+                    throw new IOException(path + " has a corrupt index");
+                }
+                blocks.add(block);
+            }
+        } else {
+            long savedPosition = position;
+            BlockHeader savedCurrent = current;
+            current = new BlockHeader();
+            position = SessionFormat.FILE_HEADER_BYTES;
+            while (next()) {
+                blocks.add(current.copy());
+            }
+            position = savedPosition;
+            current = savedCurrent;
+        }
+        return new SessionIndex(blocks);
+    }
+
+    /**
+     * Decodes the current block's columns as poses
+     * @return the decoded block (reused by later calls)
+     * @throws IOException if the file can't be read
+     * @throws IllegalStateException if the current block isn't a pose block
+     */
+    public PoseBlock poses() throws IOException {
+        if (current.type != SessionFormat.BLOCK_POSES) {
+            throw new IllegalStateException("Not a pose block");
+        }
+        if (!decoded) {
+            readPayload();
+            try {
+                poses.decode(bits, current.bodyID, current.count);
+            } catch (IllegalStateException e) {
+                throw corruptPayload(e);
+            }
+            decoded = true;
+        }
+        return poses;
+    }
+
+    /**
+     * Decodes the current block's columns as events
+     * @return the decoded block (reused by later calls)
+     * @throws IOException if the file can't be read
+     * @throws IllegalStateException if the current block isn't an event block
+     */
+    public EventBlock events() throws IOException {
+        if (current.type != SessionFormat.BLOCK_EVENTS) {
+            throw new IllegalStateException("Not an event block");
+        }
+        if (!decoded) {
+            readPayload();
+            try {
+                events.decode(bits, current.count);
+            } catch (IllegalStateException e) {
+                throw corruptPayload(e);
+            }
+            decoded = true;
+        }
+        return events;
+    }
+
+    private void readPayload() throws IOException {
+        int length = current.payloadLength;
+        if (length > payload.length) {
+            payload = new byte[Math.max(length, payload.length * 2)];
+        }
+        readFully(ByteBuffer.wrap(payload, 0, length),
+                current.offset + SessionFormat.BLOCK_HEADER_BYTES);
+        bits.reset(payload, length);
+    }
+
+    /**
+     * @return the error for a payload whose columns run past its end
+     */
+    private IOException corruptPayload(IllegalStateException cause) {
+        return new IOException(path + " has a corrupt block at " + current.offset, cause);
+    }
+
+    private void readFully(ByteBuffer buffer, long filePosition) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, filePosition);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of " + path);
+            }
+            filePosition += read;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * @return the time the round started (epoch milliseconds)
+     */
+    public long getRoundStartMillis() {
+        return roundStartMillis;
+    }
+
+    /**
+     * @return the current block's header (reused by later calls to next())
+     */
+    public BlockHeader getHeader() {
+        return current;
+    }
+
+    /**
+     * @return the current block's type (SessionFormat.BLOCK_POSES or BLOCK_EVENTS)
+     */
+    public int getBlockType() {
+        return current.type;
+    }
+
+    /**
+     * @return the ID of the body the current block belongs to
+     * (-1 for event blocks)
+     */
+    public int getBodyID() {
+        return current.bodyID;
+    }
+
+    /**
+     * @return the number of samples or events in the current block
+     */
+    public int getCount() {
+        return current.count;
+    }
+
+    /**
+     * @return the time of the current block's first sample, in microseconds
+     */
+    public long getFirstTime() {
+        return current.firstTime;
+    }
+
+    /**
+     * @return the time of the current block's last sample, in microseconds
+     */
+    public long getLastTime() {
+        return current.lastTime;
+    }
+
+    /**
+     * @return the file being read
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
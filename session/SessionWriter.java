@@ -0,0 +1,327 @@
+package session;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class records one round of play to a session (.traj) file.
+ * 
+ * Poses and events are collected into blocks in memory. Full blocks
+ * are handed to a background thread, which encodes them and appends
+ * them to the file, so recording never waits on the disk.
+ * 
+ * Memory use is bounded: blocks come from a fixed-size pool, and if
+ * the background thread falls so far behind that the pool runs out,
+ * new samples are dropped (and counted) rather than queued.
+ * 
+ * When the writer is closed, an index of every block is appended
+ * to the file (see SessionFormat).
+ * 
+ * The record methods may be called from any thread.
+ * 
+ * @author Lauren Knight
+ */
+public class SessionWriter {
+
+    // the number of pose blocks that may be filled or waiting to be written
+    private static final int POSE_BLOCK_POOL_SIZE = 16;
+    // the number of event blocks that may be filled or waiting to be written
+    private static final int EVENT_BLOCK_POOL_SIZE = 2;
+    // the maximum number of bodies recorded at once
+    private static final int MAX_BODIES = 8;
+
+    // placed on the write queue to tell the writer thread to finish
+    private static final Object END_OF_SESSION = new Object();
+
+    private final Path path;
+    private final long roundStartMillis;
+
+    private final BlockingQueue<PoseBlock> freePoseBlocks =
+            new ArrayBlockingQueue<>(POSE_BLOCK_POOL_SIZE);
+    private final BlockingQueue<EventBlock> freeEventBlocks =
+            new ArrayBlockingQueue<>(EVENT_BLOCK_POOL_SIZE);
+    // blocks (and END_OF_SESSION) waiting for the writer thread
+    private final BlockingQueue<Object> writeQueue = new ArrayBlockingQueue<>(
+            POSE_BLOCK_POOL_SIZE + EVENT_BLOCK_POOL_SIZE + 1);
+
+    // the block being filled for each body
+    private final int[] bodyIDs = new int[MAX_BODIES];
+    private final PoseBlock[] currentPoseBlocks = new PoseBlock[MAX_BODIES];
+    private int bodyCount;
+    private EventBlock currentEventBlock;
+
+    // the headers of the blocks written so far (used by the writer thread)
+    private final List<BlockHeader> index = new ArrayList<>();
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(
+            SessionFormat.BLOCK_HEADER_BYTES);
+
+    private final Thread writerThread;
+    private boolean closed;
+    private volatile long droppedSampleCount;
+    private volatile long bytesWritten;
+
+    /**
+     * Creates a writer and starts its background thread, which creates
+     * the file (and its parent directories).
+     * @param path the file to record to
+     * @param roundStartMillis the time the round started (epoch milliseconds)
+     */
+    public SessionWriter(Path path, long roundStartMillis) {
+        this.path = path;
+        this.roundStartMillis = roundStartMillis;
+        for (int i = 0; i < POSE_BLOCK_POOL_SIZE; i++) {
+            freePoseBlocks.add(new PoseBlock());
+        }
+        for (int i = 0; i < EVENT_BLOCK_POOL_SIZE; i++) {
+            freeEventBlocks.add(new EventBlock());
+        }
+        writerThread = new Thread(this::writeLoop, "session-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Records a body's pose
+     * @param bodyID the body's streaming ID
+     * @param frameNumber the number of the Motive frame the pose came from
+     * @param time the time of the pose, in microseconds
+     * @param x the body's x coordinate
+     * @param y the body's y coordinate
+     * @param z the body's z coordinate
+     * @param heading the body's rotation about the Z axis, in radians
+     */
+    public synchronized void recordPose(int bodyID, long frameNumber, long time,
+            float x, float y, float z, float heading) {
+        if (closed) {
+            return;
+        }
+        int slot = slotFor(bodyID);
+        if (slot < 0) {
+            droppedSampleCount++;
+            return;
+        }
+        PoseBlock block = currentPoseBlocks[slot];
+        if (block == null) {
+            block = freePoseBlocks.poll();
+            if (block == null) {
+                droppedSampleCount++;
+                return;
+            }
+            block.bodyID = bodyID;
+            block.count = 0;
+            currentPoseBlocks[slot] = block;
+        }
+        if (block.add(frameNumber, time, x, y, z, heading)) {
+            writeQueue.add(block);
+            currentPoseBlocks[slot] = null;
+        }
+    }
+
+    /**
+     * Records a game event
+     * @param time the time of the event, in microseconds
+     * @param type the type of the event (one of SessionFormat's EVENT_ constants)
+     * @param a the first value of the event
+     * @param b the second value of the event
+     */
+    public synchronized void recordEvent(long time, int type, float a, float b) {
+        if (closed) {
+            return;
+        }
+        EventBlock block = currentEventBlock;
+        if (block == null) {
+            block = freeEventBlocks.poll();
+            if (block == null) {
+                droppedSampleCount++;
+                return;
+            }
+            block.count = 0;
+            currentEventBlock = block;
+        }
+        if (block.add(time, type, a, b)) {
+            writeQueue.add(block);
+            currentEventBlock = null;
+        }
+    }
+
+    /**
+     * Finds the slot holding a body's current block
+     * @return the slot, or -1 if too many bodies are being recorded
+     */
+    private int slotFor(int bodyID) {
+        for (int i = 0; i < bodyCount; i++) {
+            if (bodyIDs[i] == bodyID) {
+                return i;
+            }
+        }
+        if (bodyCount == MAX_BODIES) {
+            return -1;
+        }
+        bodyIDs[bodyCount] = bodyID;
+        return bodyCount++;
+    }
+
+    /**
+     * Hands any partially filled blocks to the writer thread and tells
+     * it to finish the file. Returns immediately; the file is complete
+     * once the writer thread exits (see awaitClose()).
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (int i = 0; i < bodyCount; i++) {
+            if (currentPoseBlocks[i] != null) {
+                writeQueue.add(currentPoseBlocks[i]);
+                currentPoseBlocks[i] = null;
+            }
+        }
+        if (currentEventBlock != null) {
+            writeQueue.add(currentEventBlock);
+            currentEventBlock = null;
+        }
+        writeQueue.add(END_OF_SESSION);
+    }
+
+    /**
+     * Waits for the writer thread to finish writing the file
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitClose() throws InterruptedException {
+        writerThread.join();
+    }
+
+    /**
+     * Body of the writer thread. Encodes and writes blocks as they
+     * are filled, then returns them to the pool.
+     */
+    private void writeLoop() {
+        BitWriter bits = new BitWriter(16 * 1024);
+        DataOutputStream out = null;
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(path)));
+            out.writeInt(SessionFormat.MAGIC);
+            out.writeInt(SessionFormat.VERSION);
+            out.writeLong(roundStartMillis);
+            bytesWritten = SessionFormat.FILE_HEADER_BYTES;
+        } catch (IOException e) {
+            System.out.println("Unable to create session file " + path);
+            e.printStackTrace();
+            out = null;
+        }
+        while (true) {
+            Object item;
+            try {
+                item = writeQueue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (item == END_OF_SESSION) {
+                break;
+            }
+            try {
+                if (out != null) {
+                    writeBlock(out, bits, item);
+                }
+            } catch (IOException e) {
+                System.out.println("Unable to write to session file " + path);
+                e.printStackTrace();
+                out = null;
+            }
+            if (item instanceof PoseBlock) {
+                freePoseBlocks.add((PoseBlock) item);
+            } else {
+                freeEventBlocks.add((EventBlock) item);
+            }
+        }
+        if (out != null) {
+            try {
+                writeIndex(out);
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Encodes a block and writes it (header and payload) to the file
+     */
+    private void writeBlock(DataOutputStream out, BitWriter bits, Object item)
+            throws IOException {
+        bits.reset();
+        BlockHeader header = new BlockHeader();
+        if (item instanceof PoseBlock) {
+            PoseBlock block = (PoseBlock) item;
+            block.encode(bits);
+            header.summarize(block, bits.byteLength());
+        } else {
+            EventBlock block = (EventBlock) item;
+            block.encode(bits);
+            header.summarize(block, bits.byteLength());
+        }
+        header.offset = bytesWritten;
+        headerBuffer.clear();
+        header.write(headerBuffer);
+        out.write(headerBuffer.array(), 0, SessionFormat.BLOCK_HEADER_BYTES);
+        out.write(bits.array(), 0, bits.byteLength());
+        bytesWritten += SessionFormat.BLOCK_HEADER_BYTES + bits.byteLength();
+        index.add(header);
+    }
+
+    /**
+     * Appends the index of every block written, so that readers can
+     * find blocks without reading the whole file
+     */
+    private void writeIndex(DataOutputStream out) throws IOException {
+        long indexOffset = bytesWritten;
+        for (BlockHeader header : index) {
+            headerBuffer.clear();
+            header.write(headerBuffer);
+            out.write(headerBuffer.array(), 0, SessionFormat.BLOCK_HEADER_BYTES);
+            out.writeLong(header.offset);
+        }
+        out.writeLong(indexOffset);
+        out.writeInt(index.size());
+        out.writeInt(SessionFormat.INDEX_MAGIC);
+        bytesWritten += (long) index.size() * SessionFormat.INDEX_ENTRY_BYTES
+                + SessionFormat.INDEX_TRAILER_BYTES;
+    }
+
+    /**
+     * @return the file being recorded to
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the number of samples and events dropped because the
+     * writer thread fell behind (or too many bodies were recorded)
+     */
+    public long getDroppedSampleCount() {
+        return droppedSampleCount;
+    }
+
+    /**
+     * @return the number of bytes written to the file so far
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+}
@@ -0,0 +1,156 @@
+package session;
+
+/**
+ * Describes which recorded poses of a body a query is interested in:
+ * those within a time range, a frame range and a rectangle of the
+ * room. Any of the three may be left unbounded.
+ * 
+ * TrajectoryQuery objects are immutable; the with methods return
+ * a narrowed copy.
+ * 
+ * @author Lauren Knight
+ */
+public class TrajectoryQuery {
+
+    private final int bodyID;
+    private final long fromTime;
+    private final long toTime;
+    private final long fromFrame;
+    private final long toFrame;
+    private final float minX;
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+
+    private TrajectoryQuery(int bodyID, long fromTime, long toTime,
+            long fromFrame, long toFrame,
+            float minX, float minY, float maxX, float maxY) {
+        this.bodyID = bodyID;
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+        this.fromFrame = fromFrame;
+        this.toFrame = toFrame;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Creates a query matching every recorded pose of a body
+     * @param bodyID the body's streaming ID
+     * @return the query
+     */
+    public static TrajectoryQuery forBody(int bodyID) {
+        return new TrajectoryQuery(bodyID, Long.MIN_VALUE, Long.MAX_VALUE,
+                Long.MIN_VALUE, Long.MAX_VALUE,
+                Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param from the start of the range, in microseconds (inclusive)
+     * @param to the end of the range, in microseconds (inclusive)
+     * @return a copy of this query limited to a time range
+     */
+    public TrajectoryQuery withTimeRange(long from, long to) {
+        return new TrajectoryQuery(bodyID, from, to, fromFrame, toFrame,
+                minX, minY, maxX, maxY);
+    }
+
+    /**
+     * @param from the first frame number (inclusive)
+     * @param to the last frame number (inclusive)
+     * @return a copy of this query limited to a range of Motive frames
+     */
+    public TrajectoryQuery withFrameRange(long from, long to) {
+        return new TrajectoryQuery(bodyID, fromTime, toTime, from, to,
+                minX, minY, maxX, maxY);
+    }
+
+    /**
+     * @return a copy of this query limited to poses within a rectangle
+     * of the room (in Motive's coordinates, meters)
+     */
+    public TrajectoryQuery withRegion(float minX, float minY, float maxX,
+            float maxY) {
+        return new TrajectoryQuery(bodyID, fromTime, toTime, fromFrame, toFrame,
+                minX, minY, maxX, maxY);
+    }
+
+    /**
+     * @return true if none of a file's samples can match this query
+     */
+    boolean excludes(SessionIndex index) {
+        return !index.overlapsTime(fromTime, toTime)
+                || !index.intersects(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * @return true if a block's time and frame ranges overlap this query's
+     */
+    boolean overlapsRanges(BlockHeader block) {
+        return block.overlapsTime(fromTime, toTime)
+                && block.overlapsFrames(fromFrame, toFrame);
+    }
+
+    /**
+     * @return true if a block's time and frame ranges lie entirely
+     * within this query's
+     */
+    boolean containsRanges(BlockHeader block) {
+        return block.firstTime >= fromTime && block.lastTime <= toTime
+                && block.firstFrame >= fromFrame && block.lastFrame <= toFrame;
+    }
+
+    /**
+     * @return true if a block's bounding box overlaps this query's region
+     */
+    boolean intersectsRegion(BlockHeader block) {
+        return block.intersects(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * @return true if every sample of a block is inside this query's region
+     */
+    boolean containsRegion(BlockHeader block) {
+        return block.isInside(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * @return true if the given sample of a block matches this query
+     */
+    boolean matches(PoseBlock block, int i) {
+        long time = block.times[i];
+        long frame = block.frameNumbers[i];
+        float x = block.x[i];
+        float y = block.y[i];
+        return time >= fromTime && time <= toTime
+                && frame >= fromFrame && frame <= toFrame
+                && x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    /**
+     * @return true if the given sample is within this query's time and
+     * frame ranges (ignoring the region)
+     */
+    boolean inRanges(PoseBlock block, int i) {
+        long time = block.times[i];
+        long frame = block.frameNumbers[i];
+        return time >= fromTime && time <= toTime
+                && frame >= fromFrame && frame <= toFrame;
+    }
+
+    public int getBodyID() {
+        return bodyID;
+    }
+
+    public long getFromTime() {
+        return fromTime;
+    }
+
+    public long getToTime() {
+        return toTime;
+    }
+
+}
@@ -0,0 +1,284 @@
+package session;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class answers questions about recorded sessions, such as
+ * "every pose of car 0 between frames A and B" or "every interval
+ * during which car 0 was inside this rectangle", across many files.
+ * 
+ * Files are searched in parallel on a fork-join pool. Within a file,
+ * the session index is used to skip work: whole files whose time range
+ * or bounding box can't match are skipped, the first block in a time
+ * range is found by binary search, blocks whose bounding box misses
+ * the query's region are skipped without being decoded, and (for
+ * interval queries) blocks lying entirely inside the region aren't
+ * decoded either.
+ * 
+ * @author Lauren Knight
+ */
+public class TrajectoryQueryEngine {
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an engine that runs queries on the common fork-join pool
+     */
+    public TrajectoryQueryEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an engine that runs queries on the given pool
+     * @param pool the pool to search files on
+     */
+    public TrajectoryQueryEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Lists the session files in a directory
+     * @param directory the directory to search (not recursively)
+     * @return the session files, sorted by name (and so by start time)
+     * @throws IOException if the directory can't be read
+     */
+    public static List<Path> listSessions(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(p -> p.getFileName().toString()
+                            .endsWith(SessionFormat.FILE_EXTENSION))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Finds every recorded pose matching a query
+     * @param sessions the session files to search
+     * @param query the query
+     * @return the matching poses, delivered as they are found
+     */
+    public QueryResults<PoseSample> findPoses(List<Path> sessions,
+            TrajectoryQuery query) {
+        QueryResults<PoseSample> results = new QueryResults<>();
+        start(sessions, results, (reader, index) ->
+                searchPoses(reader, index, query, results));
+        return results;
+    }
+
+    /**
+     * Finds every interval during which a body's poses continuously
+     * matched a query
+     * @param sessions the session files to search
+     * @param query the query
+     * @return the intervals, delivered as they are found
+     */
+    public QueryResults<Interval> findIntervals(List<Path> sessions,
+            TrajectoryQuery query) {
+        QueryResults<Interval> results = new QueryResults<>();
+        start(sessions, results, (reader, index) ->
+                searchIntervals(reader, index, query, results));
+        return results;
+    }
+
+    /**
+     * The work done on each file by a query
+     */
+    private interface FileSearch {
+        void search(SessionReader reader, SessionIndex index) throws IOException;
+    }
+
+    /**
+     * Begins searching files in the background
+     */
+    private void start(List<Path> sessions, QueryResults<?> results,
+            FileSearch search) {
+        List<Path> files = new ArrayList<>(sessions);
+        pool.execute(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                Throwable failure = null;
+                try {
+                    new SearchTask(files, 0, files.size(), search, results)
+                            .invoke();
+                } catch (Throwable t) {
+                    failure = t;
+                }
+                results.finish(failure);
+            }
+        });
+    }
+
+    /**
+     * Searches a range of files, splitting the range in half until
+     * each task has a single file.
+     */
+    @SuppressWarnings("serial")
+    private static class SearchTask extends RecursiveAction {
+
+        private final List<Path> files;
+        private final int from;
+        private final int to;
+        private final FileSearch search;
+        private final QueryResults<?> results;
+
+        SearchTask(List<Path> files, int from, int to, FileSearch search,
+                QueryResults<?> results) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.search = search;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (results.isCancelled() || from >= to) {
+                return;
+            }
+            if (to - from == 1) {
+                Path path = files.get(from);
+                try (SessionReader reader = new SessionReader(path)) {
+                    search.search(reader, reader.getIndex());
+                } catch (IOException e) {
+                    // skip files that can't be read rather than
+                    // failing the whole query
+                    System.out.println("Unable to read session " + path
+                            + ": " + e.getMessage());
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SearchTask(files, from, middle, search, results),
+                    new SearchTask(files, middle, to, search, results));
+        }
+    }
+
+    /**
+     * Publishes the poses in one file that match a query
+     */
+    private static void searchPoses(SessionReader reader, SessionIndex index,
+            TrajectoryQuery query, QueryResults<PoseSample> results)
+            throws IOException {
+        if (query.excludes(index)) {
+            return;
+        }
+        List<BlockHeader> blocks = index.getPoseBlocks(query.getBodyID());
+        int first = SessionIndex.findFirstBlockEndingAfter(blocks,
+                query.getFromTime());
+        for (int b = first; b < blocks.size(); b++) {
+            BlockHeader block = blocks.get(b);
+            if (block.getFirstTime() > query.getToTime()) {
+                break;
+            }
+            if (!query.overlapsRanges(block) || !query.intersectsRegion(block)) {
+                continue;
+            }
+            reader.seek(block);
+            PoseBlock poses = reader.poses();
+            for (int i = 0; i < poses.count; i++) {
+                if (query.matches(poses, i)
+                        && !results.publish(new PoseSample(reader.getPath(), poses, i))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes the intervals in one file during which
+     * a body's poses matched a query
+     */
+    private static void searchIntervals(SessionReader reader, SessionIndex index,
+            TrajectoryQuery query, QueryResults<Interval> results)
+            throws IOException {
+        if (query.excludes(index)) {
+            return;
+        }
+        IntervalBuilder intervals = new IntervalBuilder(reader.getPath(),
+                query.getBodyID(), results);
+        List<BlockHeader> blocks = index.getPoseBlocks(query.getBodyID());
+        int first = SessionIndex.findFirstBlockEndingAfter(blocks,
+                query.getFromTime());
+        for (int b = first; b < blocks.size() && !results.isCancelled(); b++) {
+            BlockHeader block = blocks.get(b);
+            if (block.getFirstTime() > query.getToTime()) {
+                break;
+            }
+            if (!query.overlapsRanges(block)) {
+                continue;
+            }
+            if (!query.intersectsRegion(block)) {
+                // the body was outside the region for the whole block
+                intervals.end();
+                continue;
+            }
+            if (query.containsRegion(block) && query.containsRanges(block)) {
+                // the body was inside the region for the whole block
+                intervals.extend(block.getFirstTime(), block.getFirstFrame());
+                intervals.extend(block.getLastTime(), block.getLastFrame());
+                continue;
+            }
+            reader.seek(block);
+            PoseBlock poses = reader.poses();
+            for (int i = 0; i < poses.count; i++) {
+                if (!query.inRanges(poses, i)) {
+                    continue;
+                }
+                if (query.matches(poses, i)) {
+                    intervals.extend(poses.times[i], poses.frameNumbers[i]);
+                } else {
+                    intervals.end();
+                }
+            }
+        }
+        intervals.end();
+    }
+
+    /**
+     * Joins consecutive matching poses into intervals
+     */
+    private static class IntervalBuilder {
+        private final Path session;
+        private final int bodyID;
+        private final QueryResults<Interval> results;
+        private boolean open;
+        private long startTime;
+        private long endTime;
+        private long startFrame;
+        private long endFrame;
+
+        IntervalBuilder(Path session, int bodyID, QueryResults<Interval> results) {
+            this.session = session;
+            this.bodyID = bodyID;
+            this.results = results;
+        }
+
+        void extend(long time, long frame) {
+            if (!open) {
+                open = true;
+                startTime = time;
+                startFrame = frame;
+            }
+            endTime = time;
+            endFrame = frame;
+        }
+
+        void end() {
+            if (open) {
+                open = false;
+                results.publish(new Interval(session, bodyID, startTime,
+                        endTime, startFrame, endFrame));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package spectator;
+
+/**
+ * This class holds the state of the game that spectators see:
+ * whether a round is being played, the score, the time remaining,
+ * the goal's location and the location and heading of each car.
+ *
+ * The game fills in a GameState and hands it to a SpectatorServer,
+ * which copies it; the same object can be filled in and published
+ * again for every frame.
+ *
+ * As snapshot fields (see SnapshotFormat), the state is:
+ *   playing (0 or 1), score, highscore, time remaining, goal x,
+ *   goal y, car count, then for each car: ID, x, y, heading
+ *
+ * @author Lauren Knight
+ */
+public class GameState {
+
+    // the number of fields before the cars, and for each car
+    static final int HEADER_FIELDS = 7;
+    static final int CAR_FIELDS = 4;
+
+    // the most cars a state can hold
+    public static final int MAX_CARS = 64;
+
+    boolean playing;
+    int score;
+    int highscore;
+    long timeRemainingMillis;
+    double goalX;
+    double goalY;
+    int carCount;
+    final int[] carIDs = new int[MAX_CARS];
+    final double[] carX = new double[MAX_CARS];
+    final double[] carY = new double[MAX_CARS];
+    final double[] carHeadings = new double[MAX_CARS];
+
+    /**
+     * Sets the state of the round
+     * @param playing true if a round is being played
+     * @param score the current (or last) round's score
+     * @param highscore the highest score so far
+     * @param timeRemainingMillis the time left in the round
+     */
+    public void setRound(boolean playing, int score, int highscore,
+            long timeRemainingMillis) {
+        this.playing = playing;
+        this.score = score;
+        this.highscore = highscore;
+        this.timeRemainingMillis = timeRemainingMillis;
+    }
+
+    /**
+     * Sets the goal's location
+     * @param x the goal's x coordinate, in meters
+     * @param y the goal's y coordinate, in meters
+     */
+    public void setGoal(double x, double y) {
+        goalX = x;
+        goalY = y;
+    }
+
+    /**
+     * Removes every car
+     */
+    public void clearCars() {
+        carCount = 0;
+    }
+
+    /**
+     * Adds a car (ignored if there are already MAX_CARS cars)
+     * @param id the car's rigid body ID
+     * @param x the car's x coordinate, in meters
+     * @param y the car's y coordinate, in meters
+     * @param heading the direction the car faces, in radians
+     */
+    public void addCar(int id, double x, double y, double heading) {
+        if (carCount == MAX_CARS) {
+            return;
+        }
+        carIDs[carCount] = id;
+        carX[carCount] = x;
+        carY[carCount] = y;
+        carHeadings[carCount] = heading;
+        carCount++;
+    }
+
+    /**
+     * Copies another state into this one
+     */
+    void copyFrom(GameState other) {
+        playing = other.playing;
+        score = other.score;
+        highscore = other.highscore;
+        timeRemainingMillis = other.timeRemainingMillis;
+        goalX = other.goalX;
+        goalY = other.goalY;
+        carCount = other.carCount;
+        System.arraycopy(other.carIDs, 0, carIDs, 0, carCount);
+        System.arraycopy(other.carX, 0, carX, 0, carCount);
+        System.arraycopy(other.carY, 0, carY, 0, carCount);
+        System.arraycopy(other.carHeadings, 0, carHeadings, 0, carCount);
+    }
+
+    /**
+     * @return the number of snapshot fields for this state
+     */
+    int getFieldCount() {
+        return HEADER_FIELDS + carCount * CAR_FIELDS;
+    }
+
+    /**
+     * Quantizes this state into snapshot fields
+     * @param fields the array to fill (at least getFieldCount() long)
+     * @param positionPrecision meters per unit of position
+     * @param headingPrecision radians per unit of heading
+     * @param timePrecision milliseconds per unit of time
+     */
+    void quantize(int[] fields, double positionPrecision, double headingPrecision,
+            int timePrecision) {
+        fields[0] = playing ? 1 : 0;
+        fields[1] = score;
+        fields[2] = highscore;
+        fields[3] = (int) (timeRemainingMillis / timePrecision);
+        fields[4] = (int) Math.round(goalX / positionPrecision);
+        fields[5] = (int) Math.round(goalY / positionPrecision);
+        fields[6] = carCount;
+        int f = HEADER_FIELDS;
+        for (int car = 0; car < carCount; car++) {
+            fields[f++] = carIDs[car];
+            fields[f++] = (int) Math.round(carX[car] / positionPrecision);
+            fields[f++] = (int) Math.round(carY[car] / positionPrecision);
+            fields[f++] = (int) Math.round(carHeadings[car] / headingPrecision);
+        }
+    }
+
+}
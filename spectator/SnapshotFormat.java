@@ -0,0 +1,95 @@
+package spectator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Constants and helpers describing the messages a SpectatorServer sends.
+ *
+ * A snapshot of the game is a list of integer fields (see GameState for
+ * their order). Positions, headings and the time remaining are quantized
+ * to the server's precision before they are sent.
+ *
+ * Each message starts with its length in bytes (int, not counting the
+ * length itself), followed by its type (byte) and the snapshot's
+ * sequence number (int). Then, for a KEYFRAME:
+ *   position precision (double, meters), heading precision (double,
+ *   radians), time precision (int, ms), field count (varint),
+ *   every field (zigzag varints)
+ *
+ * and for a DELTA, which is relative to the previous snapshot sent to the
+ * same client and has the same number of fields:
+ *   a bitmap of the fields that changed (one bit per field, in
+ *   ceil(field count / 8) bytes), then the difference of each changed
+ *   field from its previous value (zigzag varints)
+ *
+ * A client's first message is always a keyframe, as is any message whose
+ * field count differs from the previous one. Snapshots that a slow client
+ * can't keep up with are skipped, so sequence numbers may jump.
+ *
+ * All fixed-size values are big-endian.
+ *
+ * @author Lauren Knight
+ */
+public final class SnapshotFormat {
+
+    // message types
+    public static final byte KEYFRAME = 1;
+    public static final byte DELTA = 2;
+
+    // the length, type and sequence number of a message
+    static final int MESSAGE_HEADER_BYTES = 4 + 1 + 4;
+    // the precisions in a keyframe
+    static final int KEYFRAME_HEADER_BYTES = 8 + 8 + 4;
+    // the most bytes a varint takes
+    static final int MAX_VARINT_BYTES = 5;
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * @return the most bytes a message with the given number of fields can take
+     */
+    static int maxMessageBytes(int fieldCount) {
+        return MESSAGE_HEADER_BYTES + KEYFRAME_HEADER_BYTES
+                + (fieldCount + 1) * MAX_VARINT_BYTES + (fieldCount + 7) / 8;
+    }
+
+    /**
+     * Writes an unsigned variable-length integer, 7 bits per byte
+     */
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned variable-length integer
+     */
+    static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Maps signed integers to unsigned ones, so that small negative
+     * numbers take few bytes as varints
+     */
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
@@ -0,0 +1,183 @@
+package spectator;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * This class receives game snapshots from a SpectatorServer and keeps
+ * the latest state, for scoreboards and maps on other screens.
+ *
+ * Run on its own, it prints a simple scoreboard to the console:
+ *
+ * Usage: java spectator.SpectatorClient <host> <port>
+ *
+ * @author Lauren Knight
+ */
+public class SpectatorClient implements AutoCloseable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private byte[] message = new byte[256];
+
+    private int[] fields = new int[GameState.HEADER_FIELDS];
+    private int fieldCount;
+    private int sequence;
+    private double positionPrecision;
+    private double headingPrecision;
+    private int timePrecision;
+
+    /**
+     * Connects to a spectator server
+     * @param host the server's host name or address
+     * @param port the server's port
+     * @throws IOException if the server can't be reached
+     */
+    public SpectatorClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    /**
+     * Waits for the next snapshot and applies it
+     * @throws IOException if the connection is lost
+     */
+    public void readSnapshot() throws IOException {
+        int length = in.readInt();
+        if (length > message.length) {
+            message = new byte[Math.max(length, 2 * message.length)];
+        }
+        in.readFully(message, 0, length);
+        ByteBuffer buffer = ByteBuffer.wrap(message, 0, length);
+        byte type = buffer.get();
+        sequence = buffer.getInt();
+        if (type == SnapshotFormat.KEYFRAME) {
+            positionPrecision = buffer.getDouble();
+            headingPrecision = buffer.getDouble();
+            timePrecision = buffer.getInt();
+            fieldCount = SnapshotFormat.getVarint(buffer);
+            if (fields.length < fieldCount) {
+                fields = new int[fieldCount];
+            }
+            for (int f = 0; f < fieldCount; f++) {
+                fields[f] = SnapshotFormat.unzigzag(SnapshotFormat.getVarint(buffer));
+            }
+        } else if (type == SnapshotFormat.DELTA) {
+            if (fieldCount == 0) {
+                throw new IOException("Delta received before a keyframe");
+            }
+            int bitmap = buffer.position();
+            buffer.position(bitmap + (fieldCount + 7) / 8);
+            for (int f = 0; f < fieldCount; f++) {
+                if ((message[bitmap + f / 8] & (1 << (f % 8))) != 0) {
+                    fields[f] += SnapshotFormat.unzigzag(SnapshotFormat.getVarint(buffer));
+                }
+            }
+        } else {
+            throw new IOException("Unknown message type " + type);
+        }
+    }
+
+    /**
+     * @return the sequence number of the latest snapshot
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    public boolean isPlaying() {
+        return fields[0] != 0;
+    }
+
+    public int getScore() {
+        return fields[1];
+    }
+
+    public int getHighscore() {
+        return fields[2];
+    }
+
+    /**
+     * @return the time left in the round, in milliseconds
+     */
+    public long getTimeRemainingMillis() {
+        return (long) fields[3] * timePrecision;
+    }
+
+    public double getGoalX() {
+        return fields[4] * positionPrecision;
+    }
+
+    public double getGoalY() {
+        return fields[5] * positionPrecision;
+    }
+
+    public int getCarCount() {
+        return fieldCount > 0 ? fields[6] : 0;
+    }
+
+    public int getCarID(int car) {
+        return fields[GameState.HEADER_FIELDS + car * GameState.CAR_FIELDS];
+    }
+
+    public double getCarX(int car) {
+        return fields[GameState.HEADER_FIELDS + car * GameState.CAR_FIELDS + 1]
+                * positionPrecision;
+    }
+
+    public double getCarY(int car) {
+        return fields[GameState.HEADER_FIELDS + car * GameState.CAR_FIELDS + 2]
+                * positionPrecision;
+    }
+
+    public double getCarHeading(int car) {
+        return fields[GameState.HEADER_FIELDS + car * GameState.CAR_FIELDS + 3]
+                * headingPrecision;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Prints a scoreboard line about once a second
+     * @param args the server's host and port
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: java spectator.SpectatorClient <host> <port>");
+            System.exit(2);
+        }
+        try (SpectatorClient client = new SpectatorClient(args[0],
+                Integer.parseInt(args[1]))) {
+            long lastPrint = 0;
+            while (true) {
+                client.readSnapshot();
+                long now = System.currentTimeMillis();
+                if (now - lastPrint < 1000) {
+                    continue;
+                }
+                lastPrint = now;
+                long seconds = client.getTimeRemainingMillis() / 1000;
+                StringBuilder line = new StringBuilder();
+                line.append(client.isPlaying()
+                        ? String.format("%d:%02d  Score: %d", seconds / 60, seconds % 60,
+                                client.getScore())
+                        : String.format("Not playing  Previous score: %d", client.getScore()));
+                line.append(String.format("  Highscore: %d", client.getHighscore()));
+                for (int car = 0; car < client.getCarCount(); car++) {
+                    line.append(String.format("  car %d (%.2f, %.2f)", client.getCarID(car),
+                            client.getCarX(car), client.getCarY(car)));
+                }
+                System.out.println(line);
+            }
+        } catch (IOException e) {
+            System.out.println("Lost connection to the game: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,375 @@
+package spectator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class broadcasts the state of the game to spectator clients
+ * (scoreboards and maps on other screens) over TCP.
+ *
+ * The game publishes its state as often as it likes; publishing only
+ * copies the state. The server's own thread takes a snapshot of the
+ * latest state at a fixed rate, quantizes it and sends each client the
+ * difference from the last snapshot that client was sent (see
+ * SnapshotFormat).
+ *
+ * All sockets are non-blocking and served by one selector. Each client
+ * has room for a single message: if a client hasn't finished receiving
+ * its previous message when the next snapshot is taken, that snapshot
+ * is skipped for the client rather than queued, and the client catches
+ * up with a delta from its last snapshot once it has drained. A slow
+ * spectator therefore never holds up the game or the other spectators,
+ * and never falls behind.
+ *
+ * @author Lauren Knight
+ */
+public class SpectatorServer implements AutoCloseable {
+
+    // defaults: 20 snapshots per second, 1 mm, about 0.06 degrees, 100 ms
+    public static final double DEFAULT_SNAPSHOT_RATE = 20;
+    public static final double DEFAULT_POSITION_PRECISION = 0.001;
+    public static final double DEFAULT_HEADING_PRECISION = 0.001;
+    public static final int DEFAULT_TIME_PRECISION = 100;
+
+    private final double positionPrecision;
+    private final double headingPrecision;
+    private final int timePrecision;
+    private final long snapshotIntervalNanos;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final List<Client> clients = new ArrayList<>();
+
+    // the latest published state (guarded by itself)
+    private final GameState published = new GameState();
+    private boolean publishedChanged;
+    // the server thread's copy, and its quantized fields
+    private final GameState snapshotState = new GameState();
+    private int[] fields = new int[GameState.HEADER_FIELDS];
+    private int sequence;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(256);
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile int clientCount;
+    private volatile long droppedSnapshotCount;
+
+    /**
+     * A connected spectator
+     */
+    private static final class Client {
+        final SocketChannel channel;
+        ByteBuffer out = ByteBuffer.allocate(0);
+        // the fields of the last snapshot sent (null before the first)
+        int[] baseline;
+        int baselineCount;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Creates a server with the default rate and precisions, and starts it
+     * @param port the TCP port to listen on
+     * @throws IOException if the port can't be listened on
+     */
+    public SpectatorServer(int port) throws IOException {
+        this(port, DEFAULT_SNAPSHOT_RATE, DEFAULT_POSITION_PRECISION,
+                DEFAULT_HEADING_PRECISION, DEFAULT_TIME_PRECISION);
+    }
+
+    /**
+     * Creates a server and starts it
+     * @param port the TCP port to listen on
+     * @param snapshotRate the number of snapshots sent per second
+     * @param positionPrecision the precision positions are sent with, in meters
+     * @param headingPrecision the precision headings are sent with, in radians
+     * @param timePrecision the precision the time remaining is sent with, in ms
+     * @throws IOException if the port can't be listened on
+     */
+    public SpectatorServer(int port, double snapshotRate, double positionPrecision,
+            double headingPrecision, int timePrecision) throws IOException {
+        if (snapshotRate <= 0 || positionPrecision <= 0 || headingPrecision <= 0
+                || timePrecision <= 0) {
+            throw new IllegalArgumentException("Rate and precisions must be positive");
+        }
+        this.positionPrecision = positionPrecision;
+        this.headingPrecision = headingPrecision;
+        this.timePrecision = timePrecision;
+        snapshotIntervalNanos = Math.round(1e9 / snapshotRate);
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        thread = new Thread(this::run, "spectator-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Publishes the latest state of the game, to be sent with the next
+     * snapshot. The state is copied, so it may be reused.
+     * @param state the state of the game
+     */
+    public void publish(GameState state) {
+        synchronized (published) {
+            published.copyFrom(state);
+            publishedChanged = true;
+        }
+    }
+
+    /**
+     * @return the number of connected spectators
+     */
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * @return the number of snapshots skipped for clients that
+     * were still receiving an earlier snapshot
+     */
+    public long getDroppedSnapshotCount() {
+        return droppedSnapshotCount;
+    }
+
+    /**
+     * @return the port the server is listening on
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void run() {
+        long nextSnapshot = System.nanoTime();
+        try {
+            while (running) {
+                long wait = nextSnapshot - System.nanoTime();
+                if (wait > 0) {
+                    selector.select(Math.max(1, wait / 1_000_000));
+                } else {
+                    selector.selectNow();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                long now = System.nanoTime();
+                if (now - nextSnapshot >= 0) {
+                    broadcast();
+                    nextSnapshot += snapshotIntervalNanos;
+                    if (now - nextSnapshot >= 0) {
+                        // fell behind; don't try to catch up
+                        nextSnapshot = now + snapshotIntervalNanos;
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                System.out.println("Spectator server stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Client client = (Client) key.attachment();
+        try {
+            if (key.isReadable()) {
+                // spectators don't send anything; reading detects them leaving
+                readBuffer.clear();
+                if (client.channel.read(readBuffer) < 0) {
+                    disconnect(client);
+                    return;
+                }
+            }
+            if (key.isWritable()) {
+                client.channel.write(client.out);
+                if (!client.out.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+        } catch (IOException e) {
+            disconnect(client);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Client client = new Client(channel);
+            channel.register(selector, SelectionKey.OP_READ, client);
+            clients.add(client);
+            clientCount = clients.size();
+        } catch (IOException e) {
+            System.out.println("Unable to accept spectator: " + e.getMessage());
+        }
+    }
+
+    private void disconnect(Client client) {
+        clients.remove(client);
+        clientCount = clients.size();
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            // already gone
+        }
+    }
+
+    /**
+     * Takes a snapshot of the latest state and sends it to every
+     * client that is ready for it
+     */
+    private void broadcast() {
+        if (clients.isEmpty()) {
+            return;
+        }
+        synchronized (published) {
+            if (publishedChanged) {
+                snapshotState.copyFrom(published);
+                publishedChanged = false;
+            }
+        }
+        int fieldCount = snapshotState.getFieldCount();
+        if (fields.length < fieldCount) {
+            fields = new int[fieldCount];
+        }
+        snapshotState.quantize(fields, positionPrecision, headingPrecision, timePrecision);
+        sequence++;
+
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            if (client.baseline != null && client.baselineCount == fieldCount
+                    && Arrays.equals(client.baseline, 0, fieldCount, fields, 0, fieldCount)) {
+                // nothing has changed for this client
+                continue;
+            }
+            if (client.out.hasRemaining()) {
+                // still sending an earlier snapshot: skip this one
+                droppedSnapshotCount++;
+                continue;
+            }
+            encode(client, fieldCount);
+            try {
+                client.channel.write(client.out);
+                if (client.out.hasRemaining()) {
+                    client.channel.keyFor(selector).interestOps(
+                            SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            } catch (IOException e) {
+                disconnect(client);
+            }
+        }
+    }
+
+    /**
+     * Encodes the current snapshot for a client, as a keyframe or as
+     * a delta from the last snapshot the client was sent, and makes
+     * it the client's new baseline
+     */
+    private void encode(Client client, int fieldCount) {
+        int maxBytes = SnapshotFormat.maxMessageBytes(fieldCount);
+        if (client.out.capacity() < maxBytes) {
+            client.out = ByteBuffer.allocate(Math.max(maxBytes, 2 * client.out.capacity()));
+        }
+        ByteBuffer out = client.out;
+        out.clear();
+        out.putInt(0);
+        boolean keyframe = client.baseline == null || client.baselineCount != fieldCount;
+        out.put(keyframe ? SnapshotFormat.KEYFRAME : SnapshotFormat.DELTA);
+        out.putInt(sequence);
+        if (keyframe) {
+            out.putDouble(positionPrecision);
+            out.putDouble(headingPrecision);
+            out.putInt(timePrecision);
+            SnapshotFormat.putVarint(out, fieldCount);
+            for (int f = 0; f < fieldCount; f++) {
+                SnapshotFormat.putVarint(out, SnapshotFormat.zigzag(fields[f]));
+            }
+        } else {
+            int[] baseline = client.baseline;
+            int bitmap = out.position();
+            int bitmapBytes = (fieldCount + 7) / 8;
+            for (int b = 0; b < bitmapBytes; b++) {
+                out.put((byte) 0);
+            }
+            for (int f = 0; f < fieldCount; f++) {
+                if (fields[f] != baseline[f]) {
+                    int index = bitmap + f / 8;
+                    out.put(index, (byte) (out.get(index) | (1 << (f % 8))));
+                    SnapshotFormat.putVarint(out,
+                            SnapshotFormat.zigzag(fields[f] - baseline[f]));
+                }
+            }
+        }
+        out.putInt(0, out.position() - 4);
+        out.flip();
+
+        if (client.baseline == null || client.baseline.length < fieldCount) {
+            client.baseline = new int[fields.length];
+        }
+        System.arraycopy(fields, 0, client.baseline, 0, fieldCount);
+        client.baselineCount = fieldCount;
+    }
+
+    /**
+     * Stops the server and disconnects every spectator
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Client client : clients) {
+            try {
+                client.channel.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            // nothing more to do
+        }
+    }
+
+}
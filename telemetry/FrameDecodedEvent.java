@@ -0,0 +1,62 @@
+package telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for decoding a frame of data from Motive.
+ * The event's duration is the time taken to decode the frame and call
+ * the rigid body, skeleton, marker and timing listeners (but not the
+ * frame update listeners, which have their own ListenerDispatchEvents).
+ *
+ * @author Lauren Knight
+ */
+@Name("goalchase.FrameDecoded")
+@Label("Frame Decoded")
+@Description("A frame of data from Motive, decoded")
+@Category({ "Goal Chase", "Motive" })
+@Enabled(false)
+@StackTrace(false)
+public class FrameDecodedEvent extends jdk.jfr.Event {
+
+    private static final EventType TYPE = EventType.getEventType(FrameDecodedEvent.class);
+
+    @Label("Frame Number")
+    long frameNumber;
+
+    @Label("Rigid Body Count")
+    int bodyCount;
+
+    /**
+     * Starts timing a frame's decoding
+     * @return the started event, or null if the event is disabled
+     */
+    public static FrameDecodedEvent startIfEnabled() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        FrameDecodedEvent event = new FrameDecodedEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Stops timing and records the event
+     * @param frameNumber the frame's number
+     * @param bodyCount the number of rigid bodies in the frame
+     */
+    public void finish(long frameNumber, int bodyCount) {
+        end();
+        if (shouldCommit()) {
+            this.frameNumber = frameNumber;
+            this.bodyCount = bodyCount;
+            commit();
+        }
+    }
+
+}
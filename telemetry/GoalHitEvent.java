@@ -0,0 +1,62 @@
+package telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event for the player's car reaching the goal
+ *
+ * @author Lauren Knight
+ */
+@Name("goalchase.GoalHit")
+@Label("Goal Hit")
+@Description("The player's car reached the goal")
+@Category({ "Goal Chase", "Game" })
+@Enabled(false)
+@StackTrace(false)
+public class GoalHitEvent extends jdk.jfr.Event {
+
+    private static final EventType TYPE = EventType.getEventType(GoalHitEvent.class);
+
+    @Label("Score")
+    int score;
+
+    @Label("Goal X")
+    double goalX;
+
+    @Label("Goal Y")
+    double goalY;
+
+    @Label("Detection Delay")
+    @Description("The time from the car reaching the goal (between frames) "
+            + "to the frame it was detected in, in Motive's time")
+    @Timespan(Timespan.MICROSECONDS)
+    long detectionDelay;
+
+    /**
+     * Records a goal, if the event is enabled
+     * @param score the score after the goal
+     * @param goalX the goal's x coordinate
+     * @param goalY the goal's y coordinate
+     * @param detectionDelayMicros the time between the car reaching the
+     * goal and the frame it was detected in
+     */
+    public static void emit(int score, double goalX, double goalY,
+            long detectionDelayMicros) {
+        if (TYPE.isEnabled()) {
+            GoalHitEvent event = new GoalHitEvent();
+            event.score = score;
+            event.goalX = goalX;
+            event.goalY = goalY;
+            event.detectionDelay = detectionDelayMicros;
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for calling a listener with an update.
+ * The event's duration is the time the listener took.
+ *
+ * @author Lauren Knight
+ */
+@Name("goalchase.ListenerDispatch")
+@Label("Listener Dispatch")
+@Description("A listener called with an update from Motive")
+@Category({ "Goal Chase", "Motive" })
+@Enabled(false)
+@StackTrace(false)
+public class ListenerDispatchEvent extends jdk.jfr.Event {
+
+    private static final EventType TYPE = EventType.getEventType(ListenerDispatchEvent.class);
+
+    @Label("Listener Class")
+    Class<?> listenerClass;
+
+    @Label("Callback")
+    String callback;
+
+    /**
+     * Starts timing a listener call
+     * @return the started event, or null if the event is disabled
+     */
+    public static ListenerDispatchEvent startIfEnabled() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        ListenerDispatchEvent event = new ListenerDispatchEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Stops timing and records the event
+     * @param listener the listener that was called
+     * @param callback the name of the method that was called
+     */
+    public void finish(Object listener, String callback) {
+        end();
+        if (shouldCommit()) {
+            listenerClass = listener.getClass();
+            this.callback = callback;
+            commit();
+        }
+    }
+
+}
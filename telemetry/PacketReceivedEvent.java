@@ -0,0 +1,51 @@
+package telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for each packet received from Motive.
+ *
+ * Like all of the game's events, it is disabled unless a recording
+ * enables it (see scripts/goal-chase.jfc).
+ *
+ * @author Lauren Knight
+ */
+@Name("goalchase.PacketReceived")
+@Label("Packet Received")
+@Description("A packet received from Motive")
+@Category({ "Goal Chase", "Motive" })
+@Enabled(false)
+@StackTrace(false)
+public class PacketReceivedEvent extends jdk.jfr.Event {
+
+    private static final EventType TYPE = EventType.getEventType(PacketReceivedEvent.class);
+
+    @Label("Size")
+    @DataAmount
+    int size;
+
+    @Label("Message Type")
+    short messageType;
+
+    /**
+     * Records a packet, if the event is enabled
+     * @param size the packet's length in bytes
+     * @param messageType the NatNet message type
+     */
+    public static void emit(int size, short messageType) {
+        if (TYPE.isEnabled()) {
+            PacketReceivedEvent event = new PacketReceivedEvent();
+            event.size = size;
+            event.messageType = messageType;
+            event.commit();
+        }
+    }
+
+}
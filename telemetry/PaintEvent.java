@@ -0,0 +1,82 @@
+package telemetry;
+
+import java.awt.Rectangle;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for painting the game. The event's duration
+ * is the time taken to paint, and the dirty area is the part of the
+ * canvas Swing asked to be repainted (its clip).
+ *
+ * @author Lauren Knight
+ */
+@Name("goalchase.Paint")
+@Label("Paint")
+@Description("The game canvas painted")
+@Category({ "Goal Chase", "Rendering" })
+@Enabled(false)
+@StackTrace(false)
+public class PaintEvent extends jdk.jfr.Event {
+
+    private static final EventType TYPE = EventType.getEventType(PaintEvent.class);
+
+    @Label("Dirty X")
+    int dirtyX;
+
+    @Label("Dirty Y")
+    int dirtyY;
+
+    @Label("Dirty Width")
+    int dirtyWidth;
+
+    @Label("Dirty Height")
+    int dirtyHeight;
+
+    @Label("Dirty Area")
+    @Description("The number of pixels repainted")
+    long dirtyArea;
+
+    /**
+     * Starts timing a paint
+     * @return the started event, or null if the event is disabled
+     */
+    public static PaintEvent startIfEnabled() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        PaintEvent event = new PaintEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Stops timing and records the event
+     * @param dirty the area that was repainted (null for all of it)
+     * @param width the canvas's width
+     * @param height the canvas's height
+     */
+    public void finish(Rectangle dirty, int width, int height) {
+        end();
+        if (shouldCommit()) {
+            if (dirty != null) {
+                dirtyX = dirty.x;
+                dirtyY = dirty.y;
+                dirtyWidth = dirty.width;
+                dirtyHeight = dirty.height;
+            } else {
+                dirtyWidth = width;
+                dirtyHeight = height;
+            }
+            dirtyArea = (long) dirtyWidth * dirtyHeight;
+            commit();
+        }
+    }
+
+}
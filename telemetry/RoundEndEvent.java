@@ -0,0 +1,46 @@
+package telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for the end of a round
+ *
+ * @author Lauren Knight
+ */
+@Name("goalchase.RoundEnd")
+@Label("Round End")
+@Description("A round of the game ended")
+@Category({ "Goal Chase", "Game" })
+@Enabled(false)
+@StackTrace(false)
+public class RoundEndEvent extends jdk.jfr.Event {
+
+    private static final EventType TYPE = EventType.getEventType(RoundEndEvent.class);
+
+    @Label("Score")
+    int score;
+
+    @Label("Highscore")
+    int highscore;
+
+    /**
+     * Records the end of a round, if the event is enabled
+     * @param score the round's score
+     * @param highscore the highscore after the round
+     */
+    public static void emit(int score, int highscore) {
+        if (TYPE.isEnabled()) {
+            RoundEndEvent event = new RoundEndEvent();
+            event.score = score;
+            event.highscore = highscore;
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for the start of a round
+ *
+ * @author Lauren Knight
+ */
+@Name("goalchase.RoundStart")
+@Label("Round Start")
+@Description("A round of the game started")
+@Category({ "Goal Chase", "Game" })
+@Enabled(false)
+@StackTrace(false)
+public class RoundStartEvent extends jdk.jfr.Event {
+
+    private static final EventType TYPE = EventType.getEventType(RoundStartEvent.class);
+
+    @Label("Highscore")
+    int highscore;
+
+    /**
+     * Records the start of a round, if the event is enabled
+     * @param highscore the highscore before the round
+     */
+    public static void emit(int highscore) {
+        if (TYPE.isEnabled()) {
+            RoundStartEvent event = new RoundStartEvent();
+            event.highscore = highscore;
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package vector;
+
+/**
+ * This class contains intersection tests between simple shapes.
+ * The tests take their coordinates as primitives, so that they can be
+ * run once per frame without creating any vectors.
+ *
+ * @author Lauren Knight
+ */
+public final class Intersections {
+
+    private Intersections() {
+    }
+
+    /**
+     * Finds where a point moving along a line segment first enters
+     * a circle.
+     * @param x0 the x coordinate of the start of the segment
+     * @param y0 the y coordinate of the start of the segment
+     * @param x1 the x coordinate of the end of the segment
+     * @param y1 the y coordinate of the end of the segment
+     * @param cx the x coordinate of the center of the circle
+     * @param cy the y coordinate of the center of the circle
+     * @param radius the radius of the circle
+     * @return the fraction of the way along the segment (0 to 1) at which
+     * it first comes within the radius of the center; 0 if it starts
+     * inside the circle, or NaN if it never comes within the radius
+     */
+    public static double segmentCircleEntry(double x0, double y0,
+            double x1, double y1, double cx, double cy, double radius) {
+        // solve |start + t * d - center|^2 = r^2 for t,
+        // where d is the segment's direction
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double fx = x0 - cx;
+        double fy = y0 - cy;
+        double c = fx * fx + fy * fy - radius * radius;
+        if (c <= 0) {
+            return 0;
+        }
+        double a = dx * dx + dy * dy;
+        if (a == 0) {
+            return Double.NaN;
+        }
+        double b = fx * dx + fy * dy;
+        double discriminant = b * b - a * c;
+        if (b >= 0 || discriminant < 0) {
+            // moving away from the circle, or passing it by
+            return Double.NaN;
+        }
+        double t = (-b - Math.sqrt(discriminant)) / a;
+        return t <= 1 ? t : Double.NaN;
+    }
+
+}
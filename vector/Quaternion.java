@@ -29,4 +29,19 @@ public class Quaternion {
         // );
     }
 
+    /**
+     * Finds the direction of a quaternion's up vector (see toUpVector)
+     * in the XY plane, without creating any objects
+     * @return the up vector's angle from the X axis, in radians
+     * (NaN if the up vector is vertical)
+     */
+    public static double upVectorHeading(double w, double x, double y, double z) {
+        double upX = 2 * (x*y - w*z);
+        double upY = 1 - 2 * (x * x + z * z);
+        if (upX == 0 && upY == 0) {
+            return Double.NaN;
+        }
+        return Math.atan2(upY, upX);
+    }
+
 }